@@ -31,11 +31,15 @@ import com.shc.silenceengine.io.DirectFloatBuffer;
 
 import java.nio.ByteBuffer;
 
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
 /**
  * @author Sri Harsha Chilakapti
  */
 class AndroidGraphicsDevice implements IGraphicsDevice
 {
+    private String extensions;
+
     @Override
     public int glGenBuffers()
     {
@@ -81,6 +85,26 @@ class AndroidGraphicsDevice implements IGraphicsDevice
         GLES30.glBufferSubData(target, offset, data.sizeBytes(), (ByteBuffer) data.nativeBuffer());
     }
 
+    @Override
+    public void glBufferSubDataUnsynchronized(int target, int offset, int size, DirectBuffer data)
+    {
+        final int access = GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_RANGE_BIT | GLES30.GL_MAP_UNSYNCHRONIZED_BIT;
+        ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(target, offset, size, access);
+
+        // Fallback to a regular upload if the driver fails to map the range
+        if (mapped == null)
+        {
+            glBufferSubData(target, offset, size, data);
+            return;
+        }
+
+        ByteBuffer source = ((ByteBuffer) data.nativeBuffer()).duplicate();
+        source.position(0).limit(size);
+
+        mapped.put(source);
+        GLES30.glUnmapBuffer(target);
+    }
+
     @Override
     public void glDeleteBuffers(int... buffer)
     {
@@ -123,7 +147,7 @@ class AndroidGraphicsDevice implements IGraphicsDevice
     @Override
     public void glClear(int flags)
     {
-        Data.renderCallsThisFrame = 0;
+        IGraphicsDevice.super.glClear(flags);
         GLES30.glClear(flags);
     }
 
@@ -147,6 +171,25 @@ class AndroidGraphicsDevice implements IGraphicsDevice
         GLES30.glDrawArrays(primitive, offset, vertexCount);
     }
 
+    @Override
+    public void glDrawArraysInstanced(int primitive, int offset, int vertexCount, int instanceCount)
+    {
+        IGraphicsDevice.super.glDrawArraysInstanced(primitive, offset, vertexCount, instanceCount);
+        GLES30.glDrawArraysInstanced(primitive, offset, vertexCount, instanceCount);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor)
+    {
+        GLES30.glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public boolean isInstancingSupported()
+    {
+        return true;
+    }
+
     @Override
     public void glDrawElements(int primitive, int vertexCount, int type, int offset)
     {
@@ -209,6 +252,14 @@ class AndroidGraphicsDevice implements IGraphicsDevice
         return GLES30.glGetError();
     }
 
+    @Override
+    public int glGetInteger(int param)
+    {
+        int[] value = new int[1];
+        GLES30.glGetIntegerv(param, value, 0);
+        return value[0];
+    }
+
     @Override
     public int glCreateProgram()
     {
@@ -402,7 +453,67 @@ class AndroidGraphicsDevice implements IGraphicsDevice
     @Override
     public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, DirectBuffer pixels)
     {
-        GLES30.glTexImage2D(target, level, internalFormat, width, height, border, format, type, (ByteBuffer) pixels.nativeBuffer());
+        // Without any pixels the storage is only allocated
+        GLES30.glTexImage2D(target, level, internalFormat, width, height, border, format, type,
+                pixels == null ? null : (ByteBuffer) pixels.nativeBuffer());
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                                       DirectBuffer data, int offset, int size)
+    {
+        ByteBuffer buffer = ((ByteBuffer) data.nativeBuffer()).duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + size);
+
+        GLES30.glCompressedTexImage2D(target, level, internalFormat, width, height, border, size, buffer);
+    }
+
+    @Override
+    public boolean isCompressedFormatSupported(int internalFormat)
+    {
+        if (extensions == null)
+            extensions = GLES30.glGetString(GLES30.GL_EXTENSIONS);
+
+        switch (internalFormat)
+        {
+            case GL_COMPRESSED_RGB_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT3_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT5_EXT:
+                return extensions.contains("GL_EXT_texture_compression_s3tc");
+
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT3_EXT:
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT:
+                return extensions.contains("GL_EXT_texture_compression_s3tc_srgb");
+
+            // ETC2 is a part of OpenGL ES 3.0
+            case GL_COMPRESSED_RGB8_ETC2:
+            case GL_COMPRESSED_RGBA8_ETC2_EAC:
+                return true;
+
+            case GL_ETC1_RGB8_OES:
+                return extensions.contains("GL_OES_compressed_ETC1_RGB8_texture");
+
+            default:
+                return internalFormat >= GL_COMPRESSED_RGBA_ASTC_4x4_KHR
+                       && internalFormat <= GL_COMPRESSED_RGBA_ASTC_12x12_KHR
+                       && extensions.contains("GL_KHR_texture_compression_astc_ldr");
+        }
+    }
+
+    @Override
+    public boolean isTextureMaxLevelSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isDepthTextureSupported()
+    {
+        // Depth textures are core in OpenGL ES 3.0
+        return true;
     }
 
     @Override
@@ -35,6 +35,9 @@ import com.shc.silenceengine.io.FileReader;
 import com.shc.silenceengine.io.FileWriter;
 import com.shc.silenceengine.io.IODevice;
 import com.shc.silenceengine.io.ImageReader;
+import com.shc.silenceengine.utils.TaskManager;
+import com.shc.silenceengine.utils.functional.Provider;
+import com.shc.silenceengine.utils.functional.SimpleCallback;
 
 /**
  * @author Sri Harsha Chilakapati
@@ -87,6 +90,17 @@ class AndroidIODevice implements IODevice
         return fileWriter;
     }
 
+    @Override
+    public void runAsync(Provider<SimpleCallback> task)
+    {
+        // The result of the AsyncRunner is delivered on the UI thread, which has no GL context
+        AsyncRunner.runAsync(() ->
+        {
+            SimpleCallback callback = task.provide();
+            return () -> TaskManager.runOnUpdate(callback);
+        });
+    }
+
     @Override
     public JSONObject getPreferences(String name)
     {
@@ -26,8 +26,8 @@ package com.shc.silenceengine.backend.android;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import com.shc.silenceengine.core.SilenceEngine;
 import com.shc.silenceengine.core.SilenceException;
-import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.Image;
 import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.io.ImageReader;
@@ -74,6 +74,30 @@ class AndroidImageReader extends ImageReader
         return (int) inSampleSize;
     }
 
+    private static Bitmap decodeBitmap(DirectBuffer memory, BitmapFactory.Options options)
+    {
+        options.inJustDecodeBounds = true;
+
+        BitmapFactory.decodeStream(new DirectBufferInputStream(memory), null, options);
+
+        // Keep the original size in the options, they are overwritten by the next decode
+        int originalWidth = options.outWidth;
+        int originalHeight = options.outHeight;
+
+        options.inSampleSize = calculateInSampleSize(options);
+        options.inJustDecodeBounds = false;
+
+        Bitmap bitmap = BitmapFactory.decodeStream(new DirectBufferInputStream(memory), null, options);
+
+        if (bitmap == null)
+            throw new SilenceException(new IOException("Error decoding image from memory"));
+
+        options.outWidth = originalWidth;
+        options.outHeight = originalHeight;
+
+        return bitmap;
+    }
+
     @Override
     public void readImage(DirectBuffer memory, UniCallback<Image> uniCallback, UniCallback<Throwable> onError)
     {
@@ -82,35 +106,22 @@ class AndroidImageReader extends ImageReader
             try
             {
                 BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-
-                BitmapFactory.decodeStream(new DirectBufferInputStream(memory), null, options);
-
-                int originalWidth = options.outWidth;
-                int originalHeight = options.outHeight;
-
-                options.inSampleSize = calculateInSampleSize(options);
-                options.inJustDecodeBounds = false;
-
-                Bitmap bitmap = BitmapFactory.decodeStream(new DirectBufferInputStream(memory), null, options);
+                Bitmap bitmap = decodeBitmap(memory, options);
 
-                if (bitmap == null)
-                    throw new SilenceException(new IOException("Error decoding image from memory"));
+                Image image = new Image(bitmap.getWidth(), bitmap.getHeight(), options.outWidth, options.outHeight);
 
-                Image image = new Image(bitmap.getWidth(), bitmap.getHeight(), originalWidth, originalHeight);
+                // Read the pixels a row at a time, they are un-premultiplied ARGB ints
+                int[] row = new int[image.getWidth()];
 
-                for (int x = 0; x < image.getWidth(); x++)
-                    for (int y = 0; y < image.getHeight(); y++)
-                    {
-                        int pixel = bitmap.getPixel(x, y);
+                for (int y = 0; y < image.getHeight(); y++)
+                {
+                    bitmap.getPixels(row, 0, row.length, 0, y, row.length, 1);
 
-                        float a = android.graphics.Color.alpha(pixel) / 255f;
-                        float r = android.graphics.Color.red(pixel) / 255f;
-                        float g = android.graphics.Color.green(pixel) / 255f;
-                        float b = android.graphics.Color.blue(pixel) / 255f;
+                    for (int x = 0; x < row.length; x++)
+                        row[x] = (row[x] << 8) | (row[x] >>> 24);
 
-                        image.setPixel(x, y, new Color(r, g, b, a));
-                    }
+                    image.writeRow(y, row);
+                }
 
                 bitmap.recycle();
                 bitmap = null;
@@ -24,13 +24,17 @@
 
 package com.shc.silenceengine.backend.gwt;
 
+import com.google.gwt.dom.client.CanvasElement;
 import com.google.gwt.typedarrays.client.Float32ArrayNative;
 import com.google.gwt.typedarrays.client.Uint8ArrayNative;
 import com.google.gwt.typedarrays.shared.ArrayBufferView;
+import com.shc.silenceengine.core.SilenceEngine;
 import com.shc.silenceengine.graphics.IGraphicsDevice;
+import com.shc.silenceengine.graphics.opengl.GLException;
 import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.io.DirectFloatBuffer;
 import com.shc.webgl4j.client.WebGL10;
+import com.shc.webgl4j.client.WebGL20;
 
 import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
 
@@ -39,6 +43,9 @@ import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
  */
 class GwtGraphicsDevice implements IGraphicsDevice
 {
+    // Whether the ANGLE_instanced_arrays extension is available, or null until it is looked up
+    private Boolean instancedArrays;
+
     @Override
     public int glGenBuffers()
     {
@@ -145,6 +152,66 @@ class GwtGraphicsDevice implements IGraphicsDevice
         WebGL10.glDrawArrays(primitive, offset, vertexCount);
     }
 
+    @Override
+    public void glDrawArraysInstanced(int primitive, int offset, int vertexCount, int instanceCount)
+    {
+        checkInstancing();
+
+        IGraphicsDevice.super.glDrawArraysInstanced(primitive, offset, vertexCount, instanceCount);
+
+        if (WebGL20.isContextCompatible())
+            WebGL20.glDrawArraysInstanced(primitive, offset, vertexCount, instanceCount);
+        else
+            drawArraysInstancedANGLE(getCanvasElement(), primitive, offset, vertexCount, instanceCount);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor)
+    {
+        checkInstancing();
+
+        if (WebGL20.isContextCompatible())
+            WebGL20.glVertexAttribDivisor(index, divisor);
+        else
+            vertexAttribDivisorANGLE(getCanvasElement(), index, divisor);
+    }
+
+    @Override
+    public boolean isInstancingSupported()
+    {
+        if (WebGL20.isContextCompatible())
+            return true;
+
+        // WebGL 1.0 has instancing with an extension, which is looked up only once
+        if (instancedArrays == null)
+            instancedArrays = hasExtension(getCanvasElement(), "ANGLE_instanced_arrays");
+
+        return instancedArrays;
+    }
+
+    private void checkInstancing()
+    {
+        if (!isInstancingSupported())
+            throw new GLException("Instanced rendering needs a WebGL 2.0 context or the ANGLE_instanced_arrays " +
+                                  "extension");
+    }
+
+    private CanvasElement getCanvasElement()
+    {
+        return ((GwtDisplayDevice) SilenceEngine.display).canvas.getCanvasElement();
+    }
+
+    private native void drawArraysInstancedANGLE(CanvasElement canvas, int mode, int first, int count,
+                                                 int primcount) /*-{
+        var gl = canvas.getContext("webgl") || canvas.getContext("experimental-webgl");
+        gl.getExtension("ANGLE_instanced_arrays").drawArraysInstancedANGLE(mode, first, count, primcount);
+    }-*/;
+
+    private native void vertexAttribDivisorANGLE(CanvasElement canvas, int index, int divisor) /*-{
+        var gl = canvas.getContext("webgl") || canvas.getContext("experimental-webgl");
+        gl.getExtension("ANGLE_instanced_arrays").vertexAttribDivisorANGLE(index, divisor);
+    }-*/;
+
     @Override
     public void glDrawElements(int primitive, int vertexCount, int type, int offset)
     {
@@ -206,6 +273,18 @@ class GwtGraphicsDevice implements IGraphicsDevice
         return WebGL10.glGetError();
     }
 
+    @Override
+    public int glGetInteger(int param)
+    {
+        return getParameter(getCanvasElement(), param);
+    }
+
+    private native int getParameter(CanvasElement canvas, int param) /*-{
+        // Asking for the context again returns the one that is already created for the canvas
+        var gl = canvas.getContext("webgl2") || canvas.getContext("webgl") || canvas.getContext("experimental-webgl");
+        return gl.getParameter(param);
+    }-*/;
+
     @Override
     public int glCreateProgram()
     {
@@ -400,7 +479,8 @@ class GwtGraphicsDevice implements IGraphicsDevice
     {
         ArrayBufferView arrayBufferView = null;
 
-        switch (type)
+        // Without any pixels the storage is only allocated
+        switch (pixels == null ? 0 : type)
         {
             case GL_FLOAT:
                 arrayBufferView = Float32ArrayNative.create(((ArrayBufferView) pixels.nativeBuffer()).buffer());
@@ -414,6 +494,68 @@ class GwtGraphicsDevice implements IGraphicsDevice
         WebGL10.glTexImage2D(target, level, internalFormat, width, height, border, format, type, arrayBufferView);
     }
 
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                                       DirectBuffer data, int offset, int size)
+    {
+        ArrayBufferView view = (ArrayBufferView) data.nativeBuffer();
+        WebGL10.glCompressedTexImage2D(target, level, internalFormat, width, height, border,
+                Uint8ArrayNative.create(view.buffer(), view.byteOffset() + offset, size));
+    }
+
+    @Override
+    public boolean isCompressedFormatSupported(int internalFormat)
+    {
+        CanvasElement canvas = getCanvasElement();
+
+        switch (internalFormat)
+        {
+            case GL_COMPRESSED_RGB_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT3_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT5_EXT:
+                return hasExtension(canvas, "WEBGL_compressed_texture_s3tc");
+
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT3_EXT:
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT:
+                return hasExtension(canvas, "WEBGL_compressed_texture_s3tc_srgb");
+
+            case GL_COMPRESSED_RGB8_ETC2:
+            case GL_COMPRESSED_RGBA8_ETC2_EAC:
+                return hasExtension(canvas, "WEBGL_compressed_texture_etc");
+
+            case GL_ETC1_RGB8_OES:
+                return hasExtension(canvas, "WEBGL_compressed_texture_etc1");
+
+            default:
+                return internalFormat >= GL_COMPRESSED_RGBA_ASTC_4x4_KHR
+                       && internalFormat <= GL_COMPRESSED_RGBA_ASTC_12x12_KHR
+                       && hasExtension(canvas, "WEBGL_compressed_texture_astc");
+        }
+    }
+
+    @Override
+    public boolean isTextureMaxLevelSupported()
+    {
+        return WebGL20.isContextCompatible();
+    }
+
+    @Override
+    public boolean isDepthTextureSupported()
+    {
+        if (WebGL20.isContextCompatible())
+            return true;
+
+        return hasExtension(getCanvasElement(), "WEBGL_depth_texture");
+    }
+
+    private native boolean hasExtension(CanvasElement canvas, String name) /*-{
+        // The compressed formats can only be used after their extension is enabled, which getExtension does
+        var gl = canvas.getContext("webgl2") || canvas.getContext("webgl") || canvas.getContext("experimental-webgl");
+        return gl.getExtension(name) != null;
+    }-*/;
+
     @Override
     public void glGenerateMipmap(int target)
     {
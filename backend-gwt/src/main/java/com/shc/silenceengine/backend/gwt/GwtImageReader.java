@@ -28,7 +28,6 @@ import com.google.gwt.canvas.dom.client.ImageData;
 import com.google.gwt.typedarrays.shared.ArrayBuffer;
 import com.google.gwt.typedarrays.shared.ArrayBufferView;
 import com.shc.silenceengine.core.SilenceException;
-import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.Image;
 import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.io.ImageReader;
@@ -42,20 +41,9 @@ class GwtImageReader extends ImageReader
     private static void jsLoadedCallback(ImageData pixels, int width, int height, int oWidth, int oHeight,
                                          UniCallback<Image> onComplete)
     {
-        Image image = new Image(width, height, oWidth, oHeight);
-
-        for (int x = 0; x < width; x++)
-        {
-            for (int y = 0; y < height; y++)
-                image.setPixel(x, y, new Color(
-                        pixels.getRedAt(x, y) / 255f,
-                        pixels.getGreenAt(x, y) / 255f,
-                        pixels.getBlueAt(x, y) / 255f,
-                        pixels.getAlphaAt(x, y) / 255f
-                ));
-        }
-
-        onComplete.invoke(image);
+        // The canvas already has the pixels as RGBA8, so they are just wrapped
+        DirectBuffer data = new GwtDirectBuffer(getBuffer(pixels));
+        onComplete.invoke(new Image(data, width, height, oWidth, oHeight, Image.Format.RGBA8));
     }
 
     @Override
@@ -64,6 +52,10 @@ class GwtImageReader extends ImageReader
         getImage(((ArrayBufferView) memory.nativeBuffer()).buffer(), onComplete, e -> onError.invoke(new SilenceException(e)));
     }
 
+    private static native ArrayBuffer getBuffer(ImageData pixels) /*-{
+        return pixels.data.buffer;
+    }-*/;
+
     private native void getImage(ArrayBuffer memory, UniCallback<Image> onComplete, UniCallback<String> onError) /*-{
         var arrayBufferView = new Uint8Array(memory);
         var blob = new Blob([arrayBufferView], {type: "image/jpeg"});
@@ -93,7 +93,7 @@ class LwjglDisplayDevice implements IDisplayDevice
                 windowHeight = height;
             }
 
-            SilenceEngine.eventManager.raiseResizeEvent();
+            LwjglRuntime.raiseResizeEvent();
         });
 
         window.setFocusCallback((window1, focus1) ->
@@ -128,7 +128,7 @@ class LwjglDisplayDevice implements IDisplayDevice
             windowHeight = height;
         }
 
-        SilenceEngine.eventManager.raiseResizeEvent();
+        LwjglRuntime.raiseResizeEvent();
     }
 
     @Override
@@ -154,7 +154,7 @@ class LwjglDisplayDevice implements IDisplayDevice
             this.fullscreen = false;
         }
 
-        SilenceEngine.eventManager.raiseResizeEvent();
+        LwjglRuntime.raiseResizeEvent();
     }
 
     @Override
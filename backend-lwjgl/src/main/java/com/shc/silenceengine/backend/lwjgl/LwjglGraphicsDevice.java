@@ -25,17 +25,28 @@
 package com.shc.silenceengine.backend.lwjgl;
 
 import com.shc.silenceengine.graphics.IGraphicsDevice;
+import com.shc.silenceengine.graphics.opengl.GLException;
 import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.io.DirectFloatBuffer;
+import com.shc.silenceengine.utils.functional.UniCallback;
+import org.lwjgl.opengl.ARBInstancedArrays;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.opengl.GLDebugMessageCallback;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.KHRDebug;
 import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
 
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
 /**
  * An implementation of {@link IGraphicsDevice}
  *
@@ -43,9 +54,32 @@ import java.nio.ByteBuffer;
  */
 class LwjglGraphicsDevice implements IGraphicsDevice
 {
+    /**
+     * The thread that owns the OpenGL context while the runtime is pipelined, or null when the context is current on
+     * the main thread.
+     */
+    static volatile Thread renderThread;
+
+    private GLDebugMessageCallback debugMessageCallback;
+
+    /**
+     * Fails with a clear error when an OpenGL object is created or the viewport is changed on the update thread while
+     * the context belongs to the render thread, instead of letting the driver crash on a thread that has no context.
+     */
+    private static void checkThread()
+    {
+        Thread owner = renderThread;
+
+        if (owner != null && owner != Thread.currentThread())
+            throw new GLException("The OpenGL context belongs to the render thread while the runtime is pipelined, " +
+                                  "post the graphics work with TaskManager.runOnRender");
+    }
+
     @Override
     public int glGenBuffers()
     {
+        checkThread();
+
         return GL15.glGenBuffers();
     }
 
@@ -58,6 +92,8 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public void glBufferData(int value, DirectBuffer data, int usage)
     {
+        checkThread();
+
         GL15.glBufferData(value, (ByteBuffer) data.nativeBuffer(), usage);
     }
 
@@ -76,6 +112,8 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public void glBufferData(int target, int capacity, int usage)
     {
+        checkThread();
+
         GL15.glBufferData(target, capacity, usage);
     }
 
@@ -85,6 +123,23 @@ class LwjglGraphicsDevice implements IGraphicsDevice
         GL15.glBufferSubData(target, offset, (ByteBuffer) data.nativeBuffer());
     }
 
+    @Override
+    public void glBufferSubDataUnsynchronized(int target, int offset, int size, DirectBuffer data)
+    {
+        final int access = GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_RANGE_BIT | GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+        long address = GL30.nglMapBufferRange(target, offset, size, access);
+
+        // Fallback to a regular upload if the driver fails to map the range
+        if (address == MemoryUtil.NULL)
+        {
+            glBufferSubData(target, offset, size, data);
+            return;
+        }
+
+        MemoryUtil.memCopy(MemoryUtil.memAddress((ByteBuffer) data.nativeBuffer()), address, size);
+        GL15.glUnmapBuffer(target);
+    }
+
     @Override
     public void glDeleteBuffers(int... buffer)
     {
@@ -95,6 +150,8 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public int glGenFramebuffers()
     {
+        checkThread();
+
         return GL30.glGenFramebuffers();
     }
 
@@ -119,6 +176,8 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public void glViewport(int x, int y, int width, int height)
     {
+        checkThread();
+
         GL11.glViewport(x, y, width, height);
     }
 
@@ -149,6 +208,29 @@ class LwjglGraphicsDevice implements IGraphicsDevice
         GL11.glDrawArrays(primitive, offset, vertexCount);
     }
 
+    @Override
+    public void glDrawArraysInstanced(int primitive, int offset, int vertexCount, int instanceCount)
+    {
+        IGraphicsDevice.super.glDrawArraysInstanced(primitive, offset, vertexCount, instanceCount);
+        GL31.glDrawArraysInstanced(primitive, offset, vertexCount, instanceCount);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor)
+    {
+        // The context is created as 3.2 core, where the divisor is only available as an extension
+        if (GL.getCapabilities().OpenGL33)
+            GL33.glVertexAttribDivisor(index, divisor);
+        else
+            ARBInstancedArrays.glVertexAttribDivisorARB(index, divisor);
+    }
+
+    @Override
+    public boolean isInstancingSupported()
+    {
+        return GL.getCapabilities().OpenGL33 || GL.getCapabilities().GL_ARB_instanced_arrays;
+    }
+
     @Override
     public void glDrawElements(int primitive, int vertexCount, int type, int offset)
     {
@@ -210,9 +292,52 @@ class LwjglGraphicsDevice implements IGraphicsDevice
         return GL11.glGetError();
     }
 
+    @Override
+    public boolean setDebugOutputCallback(UniCallback<String> callback)
+    {
+        GLCapabilities caps = GL.getCapabilities();
+
+        if (!caps.OpenGL43 && !caps.GL_KHR_debug)
+            return false;
+
+        if (debugMessageCallback != null)
+        {
+            KHRDebug.glDebugMessageCallback(null, 0);
+            debugMessageCallback.free();
+            debugMessageCallback = null;
+        }
+
+        if (callback == null)
+        {
+            GL11.glDisable(KHRDebug.GL_DEBUG_OUTPUT);
+            return true;
+        }
+
+        debugMessageCallback = GLDebugMessageCallback.create((source, type, id, severity, length, message, userParam) ->
+        {
+            // Only the errors are reported, the other messages are just performance or portability hints
+            if (type == KHRDebug.GL_DEBUG_TYPE_ERROR)
+                callback.invoke(GLDebugMessageCallback.getMessage(length, message));
+        });
+
+        GL11.glEnable(KHRDebug.GL_DEBUG_OUTPUT);
+        GL11.glEnable(KHRDebug.GL_DEBUG_OUTPUT_SYNCHRONOUS);
+        KHRDebug.glDebugMessageCallback(debugMessageCallback, 0);
+
+        return true;
+    }
+
+    @Override
+    public int glGetInteger(int param)
+    {
+        return GL11.glGetInteger(param);
+    }
+
     @Override
     public int glCreateProgram()
     {
+        checkThread();
+
         return GL20.glCreateProgram();
     }
 
@@ -309,13 +434,15 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public void glUniformMatrix3fv(int location, boolean transpose, DirectFloatBuffer matrix)
     {
-        GL20.glUniformMatrix3fv(location, transpose, ((ByteBuffer) matrix.getDirectBuffer().nativeBuffer()).asFloatBuffer());
+        // Pass the address directly, creating a FloatBuffer view allocates on every upload
+        GL20.nglUniformMatrix3fv(location, 1, transpose, MemoryUtil.memAddress((ByteBuffer) matrix.getDirectBuffer().nativeBuffer()));
     }
 
     @Override
     public void glUniformMatrix4fv(int location, boolean transpose, DirectFloatBuffer matrix)
     {
-        GL20.glUniformMatrix4fv(location, transpose, ((ByteBuffer) matrix.getDirectBuffer().nativeBuffer()).asFloatBuffer());
+        // Pass the address directly, creating a FloatBuffer view allocates on every upload
+        GL20.nglUniformMatrix4fv(location, 1, transpose, MemoryUtil.memAddress((ByteBuffer) matrix.getDirectBuffer().nativeBuffer()));
     }
 
     @Override
@@ -328,6 +455,8 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public int glCreateShader(int type)
     {
+        checkThread();
+
         return GL20.glCreateShader(type);
     }
 
@@ -365,6 +494,8 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public int glGenTextures()
     {
+        checkThread();
+
         return GL11.glGenTextures();
     }
 
@@ -389,7 +520,68 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, DirectBuffer pixels)
     {
-        GL11.glTexImage2D(target, level, internalFormat, width, height, border, format, type, (ByteBuffer) pixels.nativeBuffer());
+        checkThread();
+
+        // Without any pixels the storage is only allocated
+        GL11.glTexImage2D(target, level, internalFormat, width, height, border, format, type,
+                pixels == null ? null : (ByteBuffer) pixels.nativeBuffer());
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                                       DirectBuffer data, int offset, int size)
+    {
+        checkThread();
+
+        long address = MemoryUtil.memAddress((ByteBuffer) data.nativeBuffer()) + offset;
+        GL13.nglCompressedTexImage2D(target, level, internalFormat, width, height, border, size, address);
+    }
+
+    @Override
+    public boolean isCompressedFormatSupported(int internalFormat)
+    {
+        GLCapabilities caps = GL.getCapabilities();
+
+        switch (internalFormat)
+        {
+            case GL_COMPRESSED_RGB_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT3_EXT:
+            case GL_COMPRESSED_RGBA_S3TC_DXT5_EXT:
+                return caps.GL_EXT_texture_compression_s3tc;
+
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT1_EXT:
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT3_EXT:
+            case GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT:
+                return caps.GL_EXT_texture_compression_s3tc && caps.GL_EXT_texture_sRGB;
+
+            case GL_COMPRESSED_RGB8_ETC2:
+            case GL_COMPRESSED_RGBA8_ETC2_EAC:
+                return caps.OpenGL43 || caps.GL_ARB_ES3_compatibility;
+
+            case GL_ETC1_RGB8_OES:
+                return false;
+
+            default:
+                // All the ASTC block sizes come with the same extension
+                return internalFormat >= GL_COMPRESSED_RGBA_ASTC_4x4_KHR
+                       && internalFormat <= GL_COMPRESSED_RGBA_ASTC_12x12_KHR
+                       && caps.GL_KHR_texture_compression_astc_ldr;
+        }
+    }
+
+    @Override
+    public boolean isTextureMaxLevelSupported()
+    {
+        // The context is always created as OpenGL 3.2 core
+        return true;
+    }
+
+    @Override
+    public boolean isDepthTextureSupported()
+    {
+        // Depth textures are core since OpenGL 1.4
+        return true;
     }
 
     @Override
@@ -408,6 +600,8 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public int glGenVertexArrays()
     {
+        checkThread();
+
         return GL30.glGenVertexArrays();
     }
 
@@ -426,7 +620,7 @@ class LwjglGraphicsDevice implements IGraphicsDevice
     @Override
     public void glDisableVertexAttribArray(int index)
     {
-        GL20.glEnableVertexAttribArray(index);
+        GL20.glDisableVertexAttribArray(index);
     }
 
     @Override
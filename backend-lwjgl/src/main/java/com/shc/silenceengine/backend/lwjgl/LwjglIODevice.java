@@ -34,6 +34,9 @@ import com.shc.silenceengine.io.FileReader;
 import com.shc.silenceengine.io.FileWriter;
 import com.shc.silenceengine.io.IODevice;
 import com.shc.silenceengine.io.ImageReader;
+import com.shc.silenceengine.utils.TaskManager;
+import com.shc.silenceengine.utils.functional.Provider;
+import com.shc.silenceengine.utils.functional.SimpleCallback;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -107,6 +110,23 @@ class LwjglIODevice implements IODevice
         return fileWriter;
     }
 
+    @Override
+    public void runAsync(Provider<SimpleCallback> task)
+    {
+        new Thread(() ->
+        {
+            try
+            {
+                SimpleCallback callback = task.provide();
+                TaskManager.runOnUpdate(callback);
+            }
+            catch (Throwable e)
+            {
+                TaskManager.runOnUpdate(() -> SilenceException.reThrow(e));
+            }
+        }).start();
+    }
+
     @Override
     public JSONObject getPreferences(String name)
     {
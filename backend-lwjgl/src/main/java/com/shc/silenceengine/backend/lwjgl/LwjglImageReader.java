@@ -25,7 +25,6 @@
 package com.shc.silenceengine.backend.lwjgl;
 
 import com.shc.silenceengine.core.SilenceException;
-import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.Image;
 import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.io.ImageReader;
@@ -43,6 +42,25 @@ import static org.lwjgl.stb.STBImage.*;
  */
 class LwjglImageReader extends ImageReader
 {
+    /**
+     * Decodes an image into RGBA8 pixels with STB. The pixels are allocated with the LWJGL allocator, so they are
+     * handed over to the image as they are, and freed like any other direct buffer when the image is disposed.
+     */
+    private static Image decode(DirectBuffer memory)
+    {
+        IntBuffer width = BufferUtils.createIntBuffer(1);
+        IntBuffer height = BufferUtils.createIntBuffer(1);
+        IntBuffer components = BufferUtils.createIntBuffer(1);
+
+        ByteBuffer imageBuffer = stbi_load_from_memory((ByteBuffer) memory.nativeBuffer(), width, height, components, 4);
+
+        if (imageBuffer == null)
+            throw new SilenceException("Failed to load image: " + stbi_failure_reason());
+
+        return new Image(new LwjglDirectBuffer(imageBuffer), width.get(0), height.get(0), width.get(0), height.get(0),
+                Image.Format.RGBA8);
+    }
+
     @Override
     public void readImage(DirectBuffer memory, UniCallback<Image> onComplete, UniCallback<Throwable> onError)
     {
@@ -50,34 +68,7 @@ class LwjglImageReader extends ImageReader
         {
             try
             {
-                IntBuffer width = BufferUtils.createIntBuffer(1);
-                IntBuffer height = BufferUtils.createIntBuffer(1);
-                IntBuffer components = BufferUtils.createIntBuffer(1);
-
-                ByteBuffer imageBuffer = stbi_load_from_memory((ByteBuffer) memory.nativeBuffer(), width, height, components, 4);
-
-                if (imageBuffer == null)
-                    throw new SilenceException("Failed to load image: " + stbi_failure_reason());
-
-                Image image = new Image(width.get(0), height.get(0));
-
-                for (int y = 0; y < image.getHeight(); y++)
-                {
-                    for (int x = 0; x < image.getWidth(); x++)
-                    {
-                        int start = 4 * (y * image.getWidth() + x);
-
-                        float r = (imageBuffer.get(start) & 0xff) / 255f;
-                        float g = (imageBuffer.get(start + 1) & 0xff) / 255f;
-                        float b = (imageBuffer.get(start + 2) & 0xff) / 255f;
-                        float a = (imageBuffer.get(start + 3) & 0xff) / 255f;
-
-                        image.setPixel(x, y, new Color(r, g, b, a));
-                    }
-                }
-
-                stbi_image_free(imageBuffer);
-
+                Image image = decode(memory);
                 TaskManager.runOnUpdate(() -> onComplete.invoke(image));
             }
             catch (Throwable e)
@@ -0,0 +1,282 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.backend.lwjgl;
+
+import com.shc.silenceengine.backend.lwjgl.glfw.Window;
+import com.shc.silenceengine.core.IRenderPipeline;
+import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.graphics.opengl.GLContext;
+import com.shc.silenceengine.graphics.opengl.GLError;
+import com.shc.silenceengine.utils.TaskManager;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * <p>The render thread of the pipelined mode of the {@link LwjglRuntime}. The update thread captures every frame into
+ * one of two or three snapshots of a {@link IRenderPipeline}, while this thread owns the OpenGL context and draws the
+ * latest snapshot that was captured, so the next frame can be simulated while the previous one is being drawn.</p>
+ *
+ * <p>Every snapshot is in one of four states. The update thread takes a free snapshot to capture into, and marks it
+ * ready when the capture is done. The render thread takes the ready snapshot, draws it and frees it again. With three
+ * snapshots, a ready snapshot that is replaced by a newer one before it was drawn is freed right away, so the update
+ * thread never waits for the render thread and the render thread always draws the newest frame. With two snapshots,
+ * the update thread waits until the render thread is done with the previous frame.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+final class LwjglRenderThread<T> implements Runnable
+{
+    private static final int FREE      = 0;
+    private static final int CAPTURING = 1;
+    private static final int READY     = 2;
+    private static final int RENDERING = 3;
+
+    private final IRenderPipeline<T> pipeline;
+    private final Window             window;
+
+    private final Object[] snapshots;
+    private final float[]  deltas;
+    private final int[]    states;
+
+    private final Object lock = new Object();
+
+    private Thread  thread;
+    private boolean running;
+
+    private Throwable error;
+
+    private int framesRendered;
+    private int framesDropped;
+
+    LwjglRenderThread(IRenderPipeline<T> pipeline, Window window, int bufferCount)
+    {
+        if (bufferCount != 2 && bufferCount != 3)
+            throw new SilenceException("The render pipeline can only be double or triple buffered");
+
+        this.pipeline = pipeline;
+        this.window = window;
+
+        snapshots = new Object[bufferCount];
+        deltas = new float[bufferCount];
+        states = new int[bufferCount];
+
+        for (int i = 0; i < bufferCount; i++)
+            snapshots[i] = pipeline.createSnapshot();
+    }
+
+    /**
+     * Moves the OpenGL context from the calling thread to the render thread and starts drawing.
+     */
+    void start()
+    {
+        running = true;
+
+        // A context can only be current on one thread at a time
+        glfwMakeContextCurrent(NULL);
+
+        thread = new Thread(this, "SilenceEngine Render Thread");
+        thread.start();
+    }
+
+    /**
+     * Captures the current frame into a free snapshot and hands it over to the render thread. This is called on the
+     * update thread in place of the render event.
+     *
+     * @param delta The time since the last frame.
+     */
+    @SuppressWarnings("unchecked")
+    void produce(float delta)
+    {
+        int index;
+
+        synchronized (lock)
+        {
+            checkError();
+
+            while ((index = findSnapshot(FREE)) == -1 && running)
+                waitForChange();
+
+            if (index == -1)
+                return;
+
+            states[index] = CAPTURING;
+        }
+
+        pipeline.capture((T) snapshots[index], delta);
+
+        synchronized (lock)
+        {
+            // The older frame that is still waiting is dropped in favour of this one
+            int stale = findSnapshot(READY);
+
+            if (stale != -1)
+            {
+                states[stale] = FREE;
+                framesDropped++;
+            }
+
+            deltas[index] = delta;
+            states[index] = READY;
+
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run()
+    {
+        window.makeCurrent();
+        LwjglGraphicsDevice.renderThread = Thread.currentThread();
+
+        try
+        {
+            while (true)
+            {
+                int index;
+
+                synchronized (lock)
+                {
+                    while ((index = findSnapshot(READY)) == -1 && running)
+                        waitForChange();
+
+                    if (index == -1)
+                        break;
+
+                    states[index] = RENDERING;
+                }
+
+                GLContext.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+
+                // Graphics work that was posted from the other threads, like uploading loaded textures
+                TaskManager.forceRenderTasks(deltas[index]);
+
+                pipeline.render((T) snapshots[index], deltas[index]);
+                GLError.checkFrame();
+
+                window.swapBuffers();
+
+                synchronized (lock)
+                {
+                    states[index] = FREE;
+                    framesRendered++;
+
+                    lock.notifyAll();
+                }
+            }
+        }
+        catch (Throwable throwable)
+        {
+            synchronized (lock)
+            {
+                error = throwable;
+                running = false;
+
+                lock.notifyAll();
+            }
+        }
+        finally
+        {
+            LwjglGraphicsDevice.renderThread = null;
+            glfwMakeContextCurrent(NULL);
+        }
+    }
+
+    /**
+     * Stops the render thread after the frame it is drawing, and moves the OpenGL context back to the calling thread.
+     */
+    void stop()
+    {
+        synchronized (lock)
+        {
+            running = false;
+            lock.notifyAll();
+        }
+
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        window.makeCurrent();
+    }
+
+    boolean isStarted()
+    {
+        return thread != null;
+    }
+
+    int getFramesRendered()
+    {
+        synchronized (lock)
+        {
+            return framesRendered;
+        }
+    }
+
+    int getFramesDropped()
+    {
+        synchronized (lock)
+        {
+            return framesDropped;
+        }
+    }
+
+    private int findSnapshot(int state)
+    {
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i] == state)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private void waitForChange()
+    {
+        try
+        {
+            lock.wait();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void checkError()
+    {
+        if (error != null)
+            SilenceException.reThrow(error);
+    }
+}
@@ -27,7 +27,9 @@ package com.shc.silenceengine.backend.lwjgl;
 import com.shc.silenceengine.backend.lwjgl.glfw.GLFW3;
 import com.shc.silenceengine.backend.lwjgl.glfw.Window;
 import com.shc.silenceengine.core.Game;
+import com.shc.silenceengine.core.IRenderPipeline;
 import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.graphics.opengl.GLContext;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.utils.TaskManager;
 import com.shc.silenceengine.utils.functional.SimpleCallback;
@@ -41,7 +43,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * The LwjglRuntime initializes the LWJGL library, and starts the native event loop.
+ * <p>The LwjglRuntime initializes the LWJGL library, and starts the native event loop.</p>
+ *
+ * <p>By default the updates, the rendering and the buffer swaps of every frame run one after the other on the main
+ * thread. When started with an {@link IRenderPipeline}, the runtime runs pipelined instead: the main thread polls the
+ * events, runs the updates and captures every frame into a snapshot, while a separate render thread owns the OpenGL
+ * context and draws the previous snapshot. The render events of the game are not raised in this mode, the pipeline
+ * draws the frames. Resize events are still raised on the main thread, together with the rest of the game state, and
+ * only the viewport change is posted to the render thread.</p>
+ *
+ * <p>The update thread has no OpenGL context in this mode. The engine loaders upload their textures with
+ * {@link TaskManager#runOnRender(com.shc.silenceengine.utils.functional.Provider,
+ * com.shc.silenceengine.utils.functional.UniCallback)}, and games have to post their own graphics work the same way.
+ * Creating OpenGL objects on the update thread fails with a {@link com.shc.silenceengine.graphics.opengl.GLException}
+ * instead of crashing in the driver, and so does changing the viewport from a resize handler.</p>
  *
  * @author Sri Harsha Chilakapati
  */
@@ -49,6 +64,8 @@ public final class LwjglRuntime
 {
     private static SilenceEngine.Platform platform;
 
+    private static LwjglRenderThread<?> renderThread;
+
     private LwjglRuntime()
     {
     }
@@ -122,6 +139,31 @@ public final class LwjglRuntime
     }
 
     public static void start(Game game)
+    {
+        start(game, null, 0);
+    }
+
+    /**
+     * Starts the game in the pipelined mode, with three snapshots so that the update thread never waits for the render
+     * thread.
+     *
+     * @param game     The game to start.
+     * @param pipeline The pipeline that captures and draws the frames.
+     */
+    public static void start(Game game, IRenderPipeline<?> pipeline)
+    {
+        start(game, pipeline, 3);
+    }
+
+    /**
+     * Starts the game in the pipelined mode.
+     *
+     * @param game        The game to start.
+     * @param pipeline    The pipeline that captures and draws the frames, or {@code null} to render on the main thread.
+     * @param bufferCount The number of snapshots, two to make the update thread wait for the frame being drawn, or
+     *                    three to drop the frames that the render thread couldn't keep up with.
+     */
+    public static void start(Game game, IRenderPipeline<?> pipeline, int bufferCount)
     {
         SilenceEngine.log = new LwjglLogDevice();
 
@@ -143,6 +185,9 @@ public final class LwjglRuntime
 
         Window window = ((LwjglDisplayDevice) SilenceEngine.display).window;
 
+        if (pipeline != null)
+            renderThread = new LwjglRenderThread<>(pipeline, window, bufferCount);
+
         final SimpleCallback[] performLoopFrame = {
                 () ->
                 {
@@ -153,6 +198,7 @@ public final class LwjglRuntime
         };
 
         final boolean[] gameDone = { false };
+        final boolean[] startPipeline = { false };
 
         // Stop events from happening until game is initialized
         SilenceEngine.eventManager.waitUntil(() -> gameDone[0]);
@@ -173,21 +219,92 @@ public final class LwjglRuntime
 
                 // Raise a resize event now
                 SilenceEngine.eventManager.raiseResizeEvent();
+
+                // The context is handed over to the render thread at the start of the next frame, after the
+                // pending tasks of this frame are done on this thread
+                startPipeline[0] = renderThread != null;
             });
         });
 
-        // The native event loop
-        while (!window.shouldClose())
+        try
+        {
+            // The native event loop
+            while (!window.shouldClose())
+            {
+                if (startPipeline[0])
+                {
+                    // The frames are captured from now on, and drawn by the render thread
+                    SilenceEngine.eventManager.setRenderEventRedirect(renderThread::produce);
+                    renderThread.start();
+
+                    startPipeline[0] = false;
+                }
+
+                GLFW3.pollEvents();
+                LwjglInputDevice.pollControllers();
+
+                performLoopFrame[0].invoke();
+
+                // The render thread swaps the buffers once it owns the context
+                if (!isPipelined())
+                    window.swapBuffers();
+            }
+        }
+        finally
+        {
+            // Even when the render thread failed, the context has to be back on this thread to dispose the game
+            if (isPipelined())
+            {
+                SilenceEngine.eventManager.setRenderEventRedirect(null);
+                renderThread.stop();
+            }
+
+            renderThread = null;
+
+            // Raise the dispose event finally
+            SilenceEngine.eventManager.raiseDisposeEvent();
+        }
+    }
+
+    /**
+     * @return Whether the frames are currently drawn on a separate render thread.
+     */
+    public static boolean isPipelined()
+    {
+        return renderThread != null && renderThread.isStarted();
+    }
+
+    /**
+     * @return The number of frames drawn by the render thread, or zero if the runtime is not pipelined.
+     */
+    public static int getFramesRendered()
+    {
+        return renderThread == null ? 0 : renderThread.getFramesRendered();
+    }
+
+    /**
+     * @return The number of captured frames that were replaced by a newer one before they could be drawn.
+     */
+    public static int getFramesDropped()
+    {
+        return renderThread == null ? 0 : renderThread.getFramesDropped();
+    }
+
+    /**
+     * Raises a resize event on the update thread. When pipelined, the viewport is changed with the render tasks, as the
+     * handlers can't use OpenGL on the update thread.
+     */
+    static void raiseResizeEvent()
+    {
+        if (isPipelined())
         {
-            GLFW3.pollEvents();
-            LwjglInputDevice.pollControllers();
+            final int width = SilenceEngine.display.getWidth();
+            final int height = SilenceEngine.display.getHeight();
 
-            performLoopFrame[0].invoke();
-            window.swapBuffers();
+            TaskManager.runOnRender(() -> GLContext.viewport(0, 0, width, height));
         }
 
-        // Raise the dispose event finally
-        SilenceEngine.eventManager.raiseDisposeEvent();
+        SilenceEngine.eventManager.raiseResizeEvent();
     }
 
     static SilenceEngine.Platform getPlatform()
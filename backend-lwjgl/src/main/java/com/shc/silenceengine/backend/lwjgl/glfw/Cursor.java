@@ -25,7 +25,6 @@
 package com.shc.silenceengine.backend.lwjgl.glfw;
 
 import com.shc.silenceengine.core.SilenceException;
-import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.Image;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFWImage;
@@ -64,28 +63,23 @@ public class Cursor
 
         ByteBuffer data = BufferUtils.createByteBuffer(width * height * 4);
 
-        Color color = Color.REUSABLE_STACK.pop();
+        int[] row = new int[width];
 
         for (int y = 0; y < height; y++)
         {
+            image.readRow(y, row);
+
             for (int x = 0; x < width; x++)
             {
-                image.getPixel(x, y, color);
-
-                float r = (color.r * 255f);
-                float g = (color.g * 255f);
-                float b = (color.b * 255f);
-                float a = ((1 - color.a) * 255f);
+                int rgba = row[x];
 
-                data.put((byte) r)
-                        .put((byte) g)
-                        .put((byte) b)
-                        .put((byte) a);
+                data.put((byte) (rgba >>> 24))
+                        .put((byte) (rgba >> 16))
+                        .put((byte) (rgba >> 8))
+                        .put((byte) (255 - (rgba & 0xFF)));
             }
         }
 
-        Color.REUSABLE_STACK.push(color);
-
         data.flip();
         glfwImage.pixels(data);
 
@@ -26,7 +26,6 @@ package com.shc.silenceengine.backend.lwjgl.glfw;
 
 import com.shc.silenceengine.backend.lwjgl.glfw.callbacks.*;
 import com.shc.silenceengine.core.SilenceEngine;
-import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.Image;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.math.Vector2;
@@ -826,27 +825,10 @@ public class Window
 
         ByteBuffer data = BufferUtils.createByteBuffer(width * height * 4);
 
-        Color color = Color.REUSABLE_STACK.pop();
+        byte[] row = new byte[width * 4];
 
         for (int y = 0; y < height; y++)
-        {
-            for (int x = 0; x < width; x++)
-            {
-                image.getPixel(x, y, color);
-
-                float r = (color.r * 255f);
-                float g = (color.g * 255f);
-                float b = (color.b * 255f);
-                float a = (color.a * 255f);
-
-                data.put((byte) r)
-                        .put((byte) g)
-                        .put((byte) b)
-                        .put((byte) a);
-            }
-        }
-
-        Color.REUSABLE_STACK.push(color);
+            data.put(image.readRow(y, row));
 
         data.flip();
         glfwImage.pixels(data);
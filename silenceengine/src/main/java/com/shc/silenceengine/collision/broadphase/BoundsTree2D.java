@@ -0,0 +1,201 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.collision.broadphase;
+
+import com.shc.silenceengine.math.geom2d.Rectangle;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A spatial index of arbitrary objects by their bounding rectangles, built on the same {@link DynamicTree} as the
+ * {@link DynamicTree2D} broadphase. Unlike the broadphase, the objects need not be collision components, which makes
+ * it suitable for finding the objects that are visible in a view.
+ *
+ * <p>The rectangles in the tree are enlarged by a margin, and an object is only moved in the tree when its bounds leave
+ * the enlarged rectangle, so the objects that move a little every frame do not restructure the tree every frame. The
+ * queries are conservative by the margin, they may return objects that are just outside the queried rectangle.</p>
+ *
+ * @param <T> The type of the objects in the tree.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class BoundsTree2D<T>
+{
+    private DynamicTree<AABB, T> dynamicTree;
+    private Map<T, Integer>      proxyMap;
+
+    private AABB queryAABB;
+
+    private float margin;
+
+    public BoundsTree2D()
+    {
+        this(0);
+    }
+
+    /**
+     * @param margin The distance by which the bounds of the objects are enlarged in the tree.
+     */
+    public BoundsTree2D(float margin)
+    {
+        this.margin = margin;
+
+        dynamicTree = new DynamicTree<>(AABB::new);
+        proxyMap = new HashMap<>();
+
+        queryAABB = new AABB();
+    }
+
+    public void clear()
+    {
+        for (int proxy : proxyMap.values())
+            dynamicTree.destroyProxy(proxy);
+
+        proxyMap.clear();
+    }
+
+    public void insert(T object, Rectangle bounds)
+    {
+        AABB aabb = new AABB();
+        aabb.setFat(bounds, margin);
+
+        proxyMap.put(object, dynamicTree.createProxy(aabb, object));
+    }
+
+    /**
+     * Updates the bounds of an object in the tree, inserting it if it is not in the tree yet. The tree is only changed
+     * if the new bounds are not contained in the enlarged bounds the object is stored with.
+     *
+     * @param object The object whose bounds are changed.
+     * @param bounds The new bounds of the object.
+     */
+    public void update(T object, Rectangle bounds)
+    {
+        Integer proxy = proxyMap.get(object);
+
+        if (proxy == null)
+        {
+            insert(object, bounds);
+            return;
+        }
+
+        AABB aabb = dynamicTree.getAABB(proxy);
+
+        if (aabb.contains(bounds))
+            return;
+
+        aabb.setFat(bounds, margin);
+        dynamicTree.updateProxy(proxy);
+    }
+
+    public void remove(T object)
+    {
+        Integer proxy = proxyMap.remove(object);
+
+        if (proxy != null)
+            dynamicTree.destroyProxy(proxy);
+    }
+
+    public boolean contains(T object)
+    {
+        return proxyMap.containsKey(object);
+    }
+
+    /**
+     * @return The objects in the tree. Removing objects through this set is not allowed, use {@link #remove(Object)}.
+     */
+    public Set<T> getObjects()
+    {
+        return proxyMap.keySet();
+    }
+
+    public int size()
+    {
+        return proxyMap.size();
+    }
+
+    /**
+     * Finds the objects whose bounds intersect a rectangle. The returned list is reused by the next query.
+     *
+     * @param rect The rectangle to query.
+     *
+     * @return The list of the objects that intersect the rectangle.
+     */
+    public List<T> retrieve(Rectangle rect)
+    {
+        queryAABB.rect.set(rect);
+        return dynamicTree.query(queryAABB, AABB::intersects);
+    }
+
+    private static class AABB implements DynamicTree.AABB
+    {
+        Rectangle rect;
+
+        AABB()
+        {
+            rect = new Rectangle();
+        }
+
+        public static boolean intersects(AABB aabb1, AABB aabb2)
+        {
+            return aabb1.rect.intersects(aabb2.rect);
+        }
+
+        void setFat(Rectangle bounds, float margin)
+        {
+            rect.set(bounds.x - margin, bounds.y - margin, bounds.width + 2 * margin, bounds.height + 2 * margin);
+        }
+
+        boolean contains(Rectangle bounds)
+        {
+            return bounds.x >= rect.x && bounds.y >= rect.y
+                   && bounds.x + bounds.width <= rect.x + rect.width
+                   && bounds.y + bounds.height <= rect.y + rect.height;
+        }
+
+        @Override
+        public float getPerimeter()
+        {
+            return 2f * (rect.width + rect.height);
+        }
+
+        @Override
+        public void setToCombine(DynamicTree.AABB aabb1, DynamicTree.AABB aabb2)
+        {
+            Rectangle rect1 = ((AABB) aabb1).rect;
+            Rectangle rect2 = ((AABB) aabb2).rect;
+
+            final float minX = Math.min(rect1.x, rect2.x);
+            final float minY = Math.min(rect1.y, rect2.y);
+            final float maxX = Math.max(rect1.x + rect1.width, rect2.x + rect2.width);
+            final float maxY = Math.max(rect1.y + rect1.height, rect2.y + rect2.height);
+
+            rect.set(minX, minY, maxX - minX, maxY - minY);
+        }
+    }
+}
@@ -82,6 +82,7 @@ class DynamicTree<AABBType extends DynamicTree.AABB, CollisionType>
         buildFreeList();
 
         freeList = 0;
+        root = Node.NULL;
 
         // The list to return on retrieval
         retrieveList = new ArrayList<>();
@@ -29,6 +29,7 @@ import com.shc.silenceengine.events.IRenderEventHandler;
 import com.shc.silenceengine.events.IResizeEventHandler;
 import com.shc.silenceengine.events.IUpdateEventHandler;
 import com.shc.silenceengine.graphics.opengl.GLContext;
+import com.shc.silenceengine.graphics.opengl.GLError;
 import com.shc.silenceengine.utils.GameTimer;
 import com.shc.silenceengine.utils.functional.Provider;
 
@@ -54,6 +55,8 @@ public final class EventManager
     private boolean           waiting;
     private Provider<Boolean> waitCondition;
 
+    private IRenderEventHandler renderEventRedirect;
+
     /**
      * Prevent instantiation by the users.
      */
@@ -172,8 +175,30 @@ public final class EventManager
             handler.update(deltaTime);
     }
 
+    /**
+     * Redirects the render events to a single handler. While a redirect is set, raising a render event neither clears
+     * the screen nor invokes the render handlers, and only the redirect is invoked. This is used by runtimes that draw
+     * on a separate thread, where the render event on the update thread only captures the state to be drawn.
+     *
+     * @param redirect The handler to redirect the render events to, or {@code null} to remove the redirect.
+     */
+    public void setRenderEventRedirect(IRenderEventHandler redirect)
+    {
+        renderEventRedirect = redirect;
+    }
+
     public void raiseRenderEvent(float delta)
     {
+        if (renderEventRedirect != null)
+        {
+            processHandlers();
+
+            if (!waiting)
+                renderEventRedirect.render(delta);
+
+            return;
+        }
+
         GLContext.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
         processHandlers();
 
@@ -182,6 +207,8 @@ public final class EventManager
 
         for (IRenderEventHandler handler : renderEventHandlers)
             handler.render(delta);
+
+        GLError.checkFrame();
     }
 
     public void raiseResizeEvent()
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.core;
+
+/**
+ * <p>A render pipeline splits the drawing of a frame into two steps, so that a runtime can draw the frame on a separate
+ * thread while the next one is being simulated. The state that is needed to draw is first captured on the update
+ * thread into a snapshot, and the snapshot is then drawn on the render thread, which owns the graphics context.</p>
+ *
+ * <p>The runtime creates a fixed number of snapshots up front and reuses them. A snapshot is never captured into while
+ * it is being drawn, so the render step can read it without any locks, but it must not touch the live game state. The
+ * capture step must not make any graphics calls, use the {@link com.shc.silenceengine.utils.TaskManager#runOnRender}
+ * method for those.</p>
+ *
+ * @param <T> The type of the snapshots.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public interface IRenderPipeline<T>
+{
+    /**
+     * @return A new empty snapshot. This is called once for every buffer the runtime uses.
+     */
+    T createSnapshot();
+
+    /**
+     * Captures the state that is needed to draw a frame, called on the update thread after the updates of the frame.
+     *
+     * @param snapshot The snapshot to capture into, which holds the state of an older frame.
+     * @param delta    The time since the last frame.
+     */
+    void capture(T snapshot, float delta);
+
+    /**
+     * Draws a captured snapshot, called on the render thread with the graphics context current.
+     *
+     * @param snapshot The snapshot to draw.
+     * @param delta    The time that the snapshot was captured with.
+     */
+    void render(T snapshot, float delta);
+}
@@ -28,13 +28,18 @@ import com.shc.silenceengine.audio.AudioDevice.AudioFormat;
 import com.shc.silenceengine.audio.Sound;
 import com.shc.silenceengine.audio.openal.ALBuffer;
 import com.shc.silenceengine.graphics.Image;
+import com.shc.silenceengine.graphics.TextureAtlas;
 import com.shc.silenceengine.graphics.fonts.BitmapFont;
 import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.io.CompressedImageReader;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.utils.IDGenerator;
+import com.shc.silenceengine.utils.TaskManager;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -55,11 +60,16 @@ public class ResourceLoader
 
     private boolean active;
 
+    // The atlas to pack the textures into, and the paths of the textures packed into it
+    private TextureAtlas   textureAtlas;
+    private List<FilePath> atlasPaths;
+
     public ResourceLoader()
     {
         toBeLoaded = new HashMap<>();
         idMap = new HashMap<>();
         loaded = new HashMap<>();
+        atlasPaths = new ArrayList<>();
     }
 
     public static void setHelper(Class<? extends IResource> clazz, ILoadHelper loadHelper)
@@ -77,13 +87,38 @@ public class ResourceLoader
 
     private static void textureLoadHelper(FilePath path, ISubmitter<Texture> submitter)
     {
+        if (CompressedImageReader.isSupportedFile(path))
+        {
+            CompressedImageReader.readImage(path)
+                    .then(img -> TaskManager.runOnRender(() ->
+                    {
+                        try
+                        {
+                            return Texture.fromCompressedImage(img);
+                        }
+                        finally
+                        {
+                            img.dispose();
+                        }
+                    }, texture -> submitter.submit(texture, path)))
+                    .whenThrown(SilenceException::reThrow);
+
+            return;
+        }
+
         SilenceEngine.io.getImageReader()
                 .readImage(path)
-                .then(img ->
+                .then(img -> TaskManager.runOnRender(() ->
                 {
-                    submitter.submit(Texture.fromImage(img), path);
-                    img.dispose();
-                })
+                    try
+                    {
+                        return Texture.fromImage(img);
+                    }
+                    finally
+                    {
+                        img.dispose();
+                    }
+                }, texture -> submitter.submit(texture, path)))
                 .whenThrown(SilenceException::reThrow);
     }
 
@@ -154,6 +189,26 @@ public class ResourceLoader
         return (T) loaded.get(idMap.get(id));
     }
 
+    /**
+     * Packs all the textures defined in this loader into a texture atlas, instead of creating a texture for each of
+     * them. The resources of the textures will then be the {@link com.shc.silenceengine.graphics.opengl.SubTexture}
+     * regions of the atlas, and the atlas is disposed along with the other resources.
+     *
+     * @param textureAtlas The atlas to pack the textures into. It should not have been packed already.
+     *
+     * @return This ResourceLoader for chaining.
+     */
+    public ResourceLoader packTextures(TextureAtlas textureAtlas)
+    {
+        this.textureAtlas = textureAtlas;
+        return this;
+    }
+
+    public TextureAtlas getTextureAtlas()
+    {
+        return textureAtlas;
+    }
+
     public void start()
     {
         Iterator<FilePath> iterator = toBeLoaded.keySet().iterator();
@@ -164,6 +219,13 @@ public class ResourceLoader
 
             Class<? extends IResource> type = toBeLoaded.get(path);
 
+            if (textureAtlas != null && type == Texture.class)
+            {
+                atlasPaths.add(path);
+                iterator.remove();
+                continue;
+            }
+
             ILoadHelper<?> loadHelper = loadHelpers.get(type);
             loadHelper.load(path, (resource, path1) ->
             {
@@ -174,9 +236,56 @@ public class ResourceLoader
             iterator.remove();
         }
 
+        if (!atlasPaths.isEmpty())
+            loadAtlas();
+
         active = true;
     }
 
+    /**
+     * Reads all the images of the textures to be packed, and builds the atlas once they are all read. The textures are
+     * only submitted when the atlas is built.
+     */
+    private void loadAtlas()
+    {
+        final List<FilePath> paths = new ArrayList<>(atlasPaths);
+        final Image[] images = new Image[paths.size()];
+        final int[] remaining = { paths.size() };
+
+        for (int i = 0; i < paths.size(); i++)
+        {
+            final int index = i;
+
+            SilenceEngine.io.getImageReader()
+                    .readImage(paths.get(i))
+                    .then(image ->
+                    {
+                        images[index] = image;
+
+                        if (--remaining[0] > 0)
+                            return;
+
+                        // Add the images in the order they were defined, so the packing is deterministic
+                        final int[] regions = new int[images.length];
+
+                        for (int j = 0; j < images.length; j++)
+                            regions[j] = textureAtlas.add(images[j]);
+
+                        textureAtlas.build(atlas ->
+                        {
+                            for (int j = 0; j < paths.size(); j++)
+                            {
+                                done++;
+                                loaded.put(paths.get(j), atlas.getRegion(regions[j]));
+
+                                images[j].dispose();
+                            }
+                        });
+                    })
+                    .whenThrown(SilenceException::reThrow);
+        }
+    }
+
     public float getPercentage()
     {
         return (float) done / (float) count * 100f;
@@ -189,8 +298,15 @@ public class ResourceLoader
 
     public void disposeAll()
     {
-        for (IResource resource : loaded.values())
-            resource.dispose();
+        for (Map.Entry<FilePath, IResource> entry : loaded.entrySet())
+        {
+            // The regions of the atlas are disposed with the atlas
+            if (!atlasPaths.contains(entry.getKey()))
+                entry.getValue().dispose();
+        }
+
+        if (textureAtlas != null && textureAtlas.isPacked() && !textureAtlas.isDisposed())
+            textureAtlas.dispose();
     }
 
     public boolean isActive()
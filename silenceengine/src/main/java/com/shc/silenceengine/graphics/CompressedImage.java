@@ -0,0 +1,296 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.IResource;
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.io.DirectBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
+/**
+ * An image whose pixels are compressed in one of the block compressed {@link Format}s that the GPU can sample from
+ * directly. The data is kept in the buffer it was read from, and each of the mip levels is just a range in that
+ * buffer, so nothing is copied until it is uploaded to a texture.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class CompressedImage implements IResource
+{
+    private DirectBuffer data;
+    private Format       format;
+
+    private List<Level> levels = new ArrayList<>();
+
+    private boolean disposed;
+
+    public CompressedImage(DirectBuffer data, Format format)
+    {
+        this.data = data;
+        this.format = format;
+    }
+
+    /**
+     * Adds the next mip level of this image. The levels should be added starting from the base level, each one half the
+     * size of the previous level.
+     *
+     * @param width  The width of the level in pixels.
+     * @param height The height of the level in pixels.
+     * @param offset The offset of the level in the data buffer in bytes.
+     * @param size   The size of the level in bytes.
+     *
+     * @return This image, for chaining.
+     */
+    public CompressedImage addLevel(int width, int height, int offset, int size)
+    {
+        if (size < format.getLevelSize(width, height))
+            throw new IllegalArgumentException("Level " + levels.size() + " is too small for a " + width + "x" + height
+                                               + " " + format + " image");
+
+        if (offset < 0 || offset + size > data.sizeBytes())
+            throw new IllegalArgumentException("Level " + levels.size() + " is out of the bounds of the data");
+
+        levels.add(new Level(width, height, offset, size));
+        return this;
+    }
+
+    /**
+     * @return Whether this image has all the mip levels down to 1x1.
+     */
+    public boolean hasCompleteMipChain()
+    {
+        if (levels.isEmpty())
+            return false;
+
+        Level last = levels.get(levels.size() - 1);
+        return last.width == 1 && last.height == 1;
+    }
+
+    public DirectBuffer getData()
+    {
+        return data;
+    }
+
+    public Format getFormat()
+    {
+        return format;
+    }
+
+    public int getWidth()
+    {
+        return levels.isEmpty() ? 0 : levels.get(0).width;
+    }
+
+    public int getHeight()
+    {
+        return levels.isEmpty() ? 0 : levels.get(0).height;
+    }
+
+    public int getLevelCount()
+    {
+        return levels.size();
+    }
+
+    public Level getLevel(int level)
+    {
+        return levels.get(level);
+    }
+
+    public List<Level> getLevels()
+    {
+        return Collections.unmodifiableList(levels);
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (disposed)
+            return;
+
+        SilenceEngine.io.free(data);
+        disposed = true;
+    }
+
+    public boolean isDisposed()
+    {
+        return disposed;
+    }
+
+    /**
+     * The families of the compressed formats. The formats of a family are usually all supported or not at all.
+     */
+    public enum Family
+    {
+        BCN, ETC, ASTC
+    }
+
+    /**
+     * The block compressed formats of the images. Every format stores the pixels in fixed size blocks, the partial
+     * blocks at the right and bottom edges are padded to a full block.
+     */
+    public enum Format
+    {
+        BC1_RGB(GL_COMPRESSED_RGB_S3TC_DXT1_EXT, Family.BCN, 4, 4, 8),
+        BC1_RGBA(GL_COMPRESSED_RGBA_S3TC_DXT1_EXT, Family.BCN, 4, 4, 8),
+        BC2(GL_COMPRESSED_RGBA_S3TC_DXT3_EXT, Family.BCN, 4, 4, 16),
+        BC3(GL_COMPRESSED_RGBA_S3TC_DXT5_EXT, Family.BCN, 4, 4, 16),
+
+        BC1_SRGB_ALPHA(GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT1_EXT, Family.BCN, 4, 4, 8),
+        BC2_SRGB(GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT3_EXT, Family.BCN, 4, 4, 16),
+        BC3_SRGB(GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT, Family.BCN, 4, 4, 16),
+
+        ETC1(GL_ETC1_RGB8_OES, Family.ETC, 4, 4, 8),
+        ETC2_RGB(GL_COMPRESSED_RGB8_ETC2, Family.ETC, 4, 4, 8),
+        ETC2_RGBA(GL_COMPRESSED_RGBA8_ETC2_EAC, Family.ETC, 4, 4, 16),
+
+        ASTC_4x4(GL_COMPRESSED_RGBA_ASTC_4x4_KHR, Family.ASTC, 4, 4, 16),
+        ASTC_5x4(GL_COMPRESSED_RGBA_ASTC_5x4_KHR, Family.ASTC, 5, 4, 16),
+        ASTC_5x5(GL_COMPRESSED_RGBA_ASTC_5x5_KHR, Family.ASTC, 5, 5, 16),
+        ASTC_6x5(GL_COMPRESSED_RGBA_ASTC_6x5_KHR, Family.ASTC, 6, 5, 16),
+        ASTC_6x6(GL_COMPRESSED_RGBA_ASTC_6x6_KHR, Family.ASTC, 6, 6, 16),
+        ASTC_8x5(GL_COMPRESSED_RGBA_ASTC_8x5_KHR, Family.ASTC, 8, 5, 16),
+        ASTC_8x6(GL_COMPRESSED_RGBA_ASTC_8x6_KHR, Family.ASTC, 8, 6, 16),
+        ASTC_8x8(GL_COMPRESSED_RGBA_ASTC_8x8_KHR, Family.ASTC, 8, 8, 16),
+        ASTC_10x5(GL_COMPRESSED_RGBA_ASTC_10x5_KHR, Family.ASTC, 10, 5, 16),
+        ASTC_10x6(GL_COMPRESSED_RGBA_ASTC_10x6_KHR, Family.ASTC, 10, 6, 16),
+        ASTC_10x8(GL_COMPRESSED_RGBA_ASTC_10x8_KHR, Family.ASTC, 10, 8, 16),
+        ASTC_10x10(GL_COMPRESSED_RGBA_ASTC_10x10_KHR, Family.ASTC, 10, 10, 16),
+        ASTC_12x10(GL_COMPRESSED_RGBA_ASTC_12x10_KHR, Family.ASTC, 12, 10, 16),
+        ASTC_12x12(GL_COMPRESSED_RGBA_ASTC_12x12_KHR, Family.ASTC, 12, 12, 16);
+
+        int    glInternalFormat;
+        Family family;
+        int    blockWidth;
+        int    blockHeight;
+        int    blockBytes;
+
+        Format(int glInternalFormat, Family family, int blockWidth, int blockHeight, int blockBytes)
+        {
+            this.glInternalFormat = glInternalFormat;
+            this.family = family;
+            this.blockWidth = blockWidth;
+            this.blockHeight = blockHeight;
+            this.blockBytes = blockBytes;
+        }
+
+        /**
+         * @param glInternalFormat The OpenGL internal format.
+         *
+         * @return The format with the internal format, or null if there is no such format.
+         */
+        public static Format fromGlInternalFormat(int glInternalFormat)
+        {
+            for (Format format : values())
+                if (format.glInternalFormat == glInternalFormat)
+                    return format;
+
+            return null;
+        }
+
+        /**
+         * @param width  The width of the level in pixels.
+         * @param height The height of the level in pixels.
+         *
+         * @return The number of bytes taken by a level of the size in this format.
+         */
+        public int getLevelSize(int width, int height)
+        {
+            int blocksX = (width + blockWidth - 1) / blockWidth;
+            int blocksY = (height + blockHeight - 1) / blockHeight;
+
+            return Math.max(1, blocksX) * Math.max(1, blocksY) * blockBytes;
+        }
+
+        /**
+         * @return Whether the graphics device can upload this format without decoding it first.
+         */
+        public boolean isSupported()
+        {
+            return SilenceEngine.graphics.isCompressedFormatSupported(glInternalFormat);
+        }
+
+        /**
+         * @return Whether the colors of this format are in the sRGB color space, and are converted to linear when they
+         * are sampled.
+         */
+        public boolean isSRGB()
+        {
+            return this == BC1_SRGB_ALPHA || this == BC2_SRGB || this == BC3_SRGB;
+        }
+
+        public boolean hasAlpha()
+        {
+            return this != BC1_RGB && this != ETC1 && this != ETC2_RGB;
+        }
+
+        public int getGlInternalFormat()
+        {
+            return glInternalFormat;
+        }
+
+        public Family getFamily()
+        {
+            return family;
+        }
+
+        public int getBlockWidth()
+        {
+            return blockWidth;
+        }
+
+        public int getBlockHeight()
+        {
+            return blockHeight;
+        }
+
+        public int getBlockBytes()
+        {
+            return blockBytes;
+        }
+    }
+
+    /**
+     * A single mip level of a compressed image, as a range of bytes in the data of the image.
+     */
+    public static class Level
+    {
+        public final int width;
+        public final int height;
+        public final int offset;
+        public final int size;
+
+        Level(int width, int height, int offset, int size)
+        {
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.io.DirectBuffer;
+
+/**
+ * Decodes the block compressed images to RGBA8 pixels on the CPU. This is the fallback that is used when the graphics
+ * device cannot sample from a compressed format, so the images still show up, although they take up four to eight
+ * times the memory. The BCn (S3TC) and ETC families can be decoded, ASTC can not.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public final class CompressedImageDecoder
+{
+    private static final int[][] ETC_MODIFIERS = {
+            { 2, 8 }, { 5, 17 }, { 9, 29 }, { 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 }
+    };
+
+    private static final int[] ETC_DISTANCES = { 3, 6, 11, 16, 23, 32, 41, 64 };
+
+    private static final int[][] EAC_MODIFIERS = {
+            { -3, -6, -9, -15, 2, 5, 8, 14 },
+            { -3, -7, -10, -13, 2, 6, 9, 12 },
+            { -2, -5, -8, -13, 1, 4, 7, 12 },
+            { -2, -4, -6, -13, 1, 3, 5, 12 },
+            { -3, -6, -8, -12, 2, 5, 7, 11 },
+            { -3, -7, -9, -11, 2, 6, 8, 10 },
+            { -4, -7, -8, -11, 3, 6, 7, 10 },
+            { -3, -5, -8, -11, 2, 4, 7, 10 },
+            { -2, -6, -8, -10, 1, 5, 7, 9 },
+            { -2, -5, -8, -10, 1, 4, 7, 9 },
+            { -2, -4, -8, -10, 1, 3, 7, 9 },
+            { -2, -5, -7, -10, 1, 4, 6, 9 },
+            { -3, -4, -7, -10, 2, 3, 6, 9 },
+            { -1, -2, -3, -10, 0, 1, 2, 9 },
+            { -4, -6, -8, -9, 3, 5, 7, 8 },
+            { -3, -5, -7, -9, 2, 4, 6, 8 }
+    };
+
+    private CompressedImageDecoder()
+    {
+    }
+
+    /**
+     * @param format The compressed format.
+     *
+     * @return Whether the images in the format can be decoded on the CPU.
+     */
+    public static boolean canDecode(CompressedImage.Format format)
+    {
+        // The decoded sRGB pixels would be uploaded as linear RGBA, and sampled with the wrong gamma
+        return format.getFamily() != CompressedImage.Family.ASTC && !format.isSRGB();
+    }
+
+    /**
+     * Decodes a mip level of a compressed image into a new RGBA8 {@link Image}.
+     *
+     * @param image The compressed image.
+     * @param level The mip level to decode.
+     *
+     * @return The decoded image, which should be disposed once it is uploaded.
+     */
+    public static Image decode(CompressedImage image, int level)
+    {
+        CompressedImage.Level mip = image.getLevel(level);
+        DirectBuffer pixels = SilenceEngine.io.create(mip.width * mip.height * 4);
+
+        decode(image.getFormat(), image.getData(), mip.offset, mip.width, mip.height, pixels);
+
+        return new Image(pixels, mip.width, mip.height, mip.width, mip.height, Image.Format.RGBA8);
+    }
+
+    /**
+     * Decodes the blocks of a compressed image into tightly packed RGBA8 pixels. The pixels of the partial blocks that
+     * lie outside the image are discarded.
+     *
+     * @param format The compressed format of the source.
+     * @param source The buffer containing the compressed blocks.
+     * @param offset The offset of the first block in the source, in bytes.
+     * @param width  The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param dest   The buffer to write the pixels to, at least {@code width * height * 4} bytes.
+     */
+    public static void decode(CompressedImage.Format format, DirectBuffer source, int offset, int width, int height,
+                              DirectBuffer dest)
+    {
+        if (!canDecode(format))
+            throw new SilenceException("Cannot decode " + format + " images on the CPU");
+
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+
+        int[] block = new int[16];
+
+        for (int by = 0; by < blocksY; by++)
+        {
+            for (int bx = 0; bx < blocksX; bx++)
+            {
+                switch (format)
+                {
+                    case BC1_RGB:
+                        decodeBC1(source, offset, block, true, false);
+                        break;
+
+                    case BC1_RGBA:
+                        decodeBC1(source, offset, block, true, true);
+                        break;
+
+                    case BC2:
+                        decodeBC1(source, offset + 8, block, false, false);
+                        decodeBC2Alpha(source, offset, block);
+                        break;
+
+                    case BC3:
+                        decodeBC1(source, offset + 8, block, false, false);
+                        decodeBC3Alpha(source, offset, block);
+                        break;
+
+                    case ETC1:
+                        decodeETC(source, offset, block, false);
+                        break;
+
+                    case ETC2_RGB:
+                        decodeETC(source, offset, block, true);
+                        break;
+
+                    case ETC2_RGBA:
+                        decodeETC(source, offset + 8, block, true);
+                        decodeEACAlpha(source, offset, block);
+                        break;
+                }
+
+                offset += format.getBlockBytes();
+                writeBlock(block, bx * 4, by * 4, width, height, dest);
+            }
+        }
+    }
+
+    private static void writeBlock(int[] block, int startX, int startY, int width, int height, DirectBuffer dest)
+    {
+        for (int y = 0; y < 4 && startY + y < height; y++)
+        {
+            for (int x = 0; x < 4 && startX + x < width; x++)
+            {
+                int rgba = block[y * 4 + x];
+                int index = ((startY + y) * width + startX + x) * 4;
+
+                dest.writeByte(index, (byte) (rgba >>> 24))
+                        .writeByte(index + 1, (byte) (rgba >>> 16))
+                        .writeByte(index + 2, (byte) (rgba >>> 8))
+                        .writeByte(index + 3, (byte) rgba);
+            }
+        }
+    }
+
+    private static int readUnsignedByte(DirectBuffer buffer, int index)
+    {
+        return buffer.readByte(index) & 0xFF;
+    }
+
+    private static int readShortLE(DirectBuffer buffer, int index)
+    {
+        return readUnsignedByte(buffer, index) | (readUnsignedByte(buffer, index + 1) << 8);
+    }
+
+    private static int readIntLE(DirectBuffer buffer, int index)
+    {
+        return readShortLE(buffer, index) | (readShortLE(buffer, index + 2) << 16);
+    }
+
+    private static int readIntBE(DirectBuffer buffer, int index)
+    {
+        return (readUnsignedByte(buffer, index) << 24) | (readUnsignedByte(buffer, index + 1) << 16)
+               | (readUnsignedByte(buffer, index + 2) << 8) | readUnsignedByte(buffer, index + 3);
+    }
+
+    private static int clamp(int value)
+    {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    private static int rgba(int r, int g, int b, int a)
+    {
+        return (clamp(r) << 24) | (clamp(g) << 16) | (clamp(b) << 8) | a;
+    }
+
+    private static int expand565(int color)
+    {
+        int r = (color >> 11) & 31;
+        int g = (color >> 5) & 63;
+        int b = color & 31;
+
+        return rgba((r << 3) | (r >> 2), (g << 2) | (g >> 4), (b << 3) | (b >> 2), 255);
+    }
+
+    private static int mix(int c0, int c1, int w0, int w1, int div)
+    {
+        int r = (((c0 >>> 24) & 0xFF) * w0 + ((c1 >>> 24) & 0xFF) * w1) / div;
+        int g = (((c0 >>> 16) & 0xFF) * w0 + ((c1 >>> 16) & 0xFF) * w1) / div;
+        int b = (((c0 >>> 8) & 0xFF) * w0 + ((c1 >>> 8) & 0xFF) * w1) / div;
+
+        return rgba(r, g, b, 255);
+    }
+
+    private static void decodeBC1(DirectBuffer source, int offset, int[] block, boolean allowThreeColor,
+                                  boolean transparentBlack)
+    {
+        int color0 = readShortLE(source, offset);
+        int color1 = readShortLE(source, offset + 2);
+        int indices = readIntLE(source, offset + 4);
+
+        int[] palette = new int[4];
+        palette[0] = expand565(color0);
+        palette[1] = expand565(color1);
+
+        if (color0 > color1 || !allowThreeColor)
+        {
+            palette[2] = mix(palette[0], palette[1], 2, 1, 3);
+            palette[3] = mix(palette[0], palette[1], 1, 2, 3);
+        }
+        else
+        {
+            palette[2] = mix(palette[0], palette[1], 1, 1, 2);
+            palette[3] = transparentBlack ? 0 : rgba(0, 0, 0, 255);
+        }
+
+        for (int i = 0; i < 16; i++)
+            block[i] = palette[(indices >>> (2 * i)) & 3];
+    }
+
+    private static void decodeBC2Alpha(DirectBuffer source, int offset, int[] block)
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            int alpha = (readUnsignedByte(source, offset + i / 2) >> (4 * (i & 1))) & 15;
+            block[i] = (block[i] & 0xFFFFFF00) | (alpha * 17);
+        }
+    }
+
+    private static void decodeBC3Alpha(DirectBuffer source, int offset, int[] block)
+    {
+        int alpha0 = readUnsignedByte(source, offset);
+        int alpha1 = readUnsignedByte(source, offset + 1);
+
+        int[] palette = new int[8];
+        palette[0] = alpha0;
+        palette[1] = alpha1;
+
+        if (alpha0 > alpha1)
+        {
+            for (int i = 2; i < 8; i++)
+                palette[i] = ((8 - i) * alpha0 + (i - 1) * alpha1) / 7;
+        }
+        else
+        {
+            for (int i = 2; i < 6; i++)
+                palette[i] = ((6 - i) * alpha0 + (i - 1) * alpha1) / 5;
+
+            palette[6] = 0;
+            palette[7] = 255;
+        }
+
+        // The 48 bits of indices, three bits for every pixel
+        long indices = 0;
+
+        for (int i = 0; i < 6; i++)
+            indices |= (long) readUnsignedByte(source, offset + 2 + i) << (8 * i);
+
+        for (int i = 0; i < 16; i++)
+            block[i] = (block[i] & 0xFFFFFF00) | palette[(int) (indices >>> (3 * i)) & 7];
+    }
+
+    private static void decodeEACAlpha(DirectBuffer source, int offset, int[] block)
+    {
+        int base = readUnsignedByte(source, offset);
+        int multiplier = readUnsignedByte(source, offset + 1) >> 4;
+        int[] modifiers = EAC_MODIFIERS[readUnsignedByte(source, offset + 1) & 15];
+
+        long indices = 0;
+
+        for (int i = 0; i < 6; i++)
+            indices = (indices << 8) | readUnsignedByte(source, offset + 2 + i);
+
+        // The pixels are stored in columns, the first pixel in the most significant bits
+        for (int p = 0; p < 16; p++)
+        {
+            int index = (int) (indices >>> (45 - 3 * p)) & 7;
+            int alpha = clamp(base + modifiers[index] * multiplier);
+
+            int x = p / 4;
+            int y = p % 4;
+
+            block[y * 4 + x] = (block[y * 4 + x] & 0xFFFFFF00) | alpha;
+        }
+    }
+
+    private static int extend4(int value)
+    {
+        return value * 17;
+    }
+
+    private static int extend5(int value)
+    {
+        return (value << 3) | (value >> 2);
+    }
+
+    private static int extend6(int value)
+    {
+        return (value << 2) | (value >> 4);
+    }
+
+    private static int extend7(int value)
+    {
+        return (value << 1) | (value >> 6);
+    }
+
+    private static int signed3(int value)
+    {
+        return (value << 29) >> 29;
+    }
+
+    private static void decodeETC(DirectBuffer source, int offset, int[] block, boolean etc2)
+    {
+        int high = readIntBE(source, offset);
+        int low = readIntBE(source, offset + 4);
+
+        boolean differential = ((high >> 1) & 1) == 1;
+        boolean flipped = (high & 1) == 1;
+
+        int r1, g1, b1, r2, g2, b2;
+
+        if (differential)
+        {
+            int r = (high >>> 27) & 31;
+            int g = (high >> 19) & 31;
+            int b = (high >> 11) & 31;
+
+            int rd = r + signed3(high >> 24);
+            int gd = g + signed3(high >> 16);
+            int bd = b + signed3(high >> 8);
+
+            if (etc2)
+            {
+                // The invalid differential colors select the extra modes of ETC2
+                if (rd < 0 || rd > 31)
+                {
+                    decodeETC2T(high, low, block);
+                    return;
+                }
+
+                if (gd < 0 || gd > 31)
+                {
+                    decodeETC2H(high, low, block);
+                    return;
+                }
+
+                if (bd < 0 || bd > 31)
+                {
+                    decodeETC2Planar(high, low, block);
+                    return;
+                }
+            }
+
+            r1 = extend5(r);
+            g1 = extend5(g);
+            b1 = extend5(b);
+            r2 = extend5(rd & 31);
+            g2 = extend5(gd & 31);
+            b2 = extend5(bd & 31);
+        }
+        else
+        {
+            r1 = extend4((high >>> 28) & 15);
+            r2 = extend4((high >> 24) & 15);
+            g1 = extend4((high >> 20) & 15);
+            g2 = extend4((high >> 16) & 15);
+            b1 = extend4((high >> 12) & 15);
+            b2 = extend4((high >> 8) & 15);
+        }
+
+        int[] modifiers1 = ETC_MODIFIERS[(high >> 5) & 7];
+        int[] modifiers2 = ETC_MODIFIERS[(high >> 2) & 7];
+
+        for (int p = 0; p < 16; p++)
+        {
+            int x = p / 4;
+            int y = p % 4;
+
+            boolean second = flipped ? y >= 2 : x >= 2;
+            int[] modifiers = second ? modifiers2 : modifiers1;
+
+            int index = (((low >>> (16 + p)) & 1) << 1) | ((low >>> p) & 1);
+            int modifier = (index & 1) == 0 ? modifiers[0] : modifiers[1];
+
+            if (index >= 2)
+                modifier = -modifier;
+
+            block[y * 4 + x] = second ? rgba(r2 + modifier, g2 + modifier, b2 + modifier, 255)
+                                      : rgba(r1 + modifier, g1 + modifier, b1 + modifier, 255);
+        }
+    }
+
+    private static void writePaintColors(int low, int[] paint, int[] block)
+    {
+        for (int p = 0; p < 16; p++)
+        {
+            int index = (((low >>> (16 + p)) & 1) << 1) | ((low >>> p) & 1);
+            block[(p % 4) * 4 + p / 4] = paint[index];
+        }
+    }
+
+    private static void decodeETC2T(int high, int low, int[] block)
+    {
+        int r1 = extend4((((high >> 27) & 3) << 2) | ((high >> 24) & 3));
+        int g1 = extend4((high >> 20) & 15);
+        int b1 = extend4((high >> 16) & 15);
+        int r2 = extend4((high >> 12) & 15);
+        int g2 = extend4((high >> 8) & 15);
+        int b2 = extend4((high >> 4) & 15);
+
+        int distance = ETC_DISTANCES[(((high >> 2) & 3) << 1) | (high & 1)];
+
+        int[] paint = {
+                rgba(r1, g1, b1, 255),
+                rgba(r2 + distance, g2 + distance, b2 + distance, 255),
+                rgba(r2, g2, b2, 255),
+                rgba(r2 - distance, g2 - distance, b2 - distance, 255)
+        };
+
+        writePaintColors(low, paint, block);
+    }
+
+    private static void decodeETC2H(int high, int low, int[] block)
+    {
+        int r1 = (high >> 27) & 15;
+        int g1 = (((high >> 24) & 7) << 1) | ((high >> 20) & 1);
+        int b1 = (((high >> 19) & 1) << 3) | ((high >> 15) & 7);
+        int r2 = (high >> 11) & 15;
+        int g2 = (high >> 7) & 15;
+        int b2 = (high >> 3) & 15;
+
+        // The last bit of the distance index is implied by the order of the two base colors
+        int order = ((r1 << 8) | (g1 << 4) | b1) >= ((r2 << 8) | (g2 << 4) | b2) ? 1 : 0;
+        int distance = ETC_DISTANCES[(((high >> 2) & 1) << 2) | ((high & 1) << 1) | order];
+
+        r1 = extend4(r1);
+        g1 = extend4(g1);
+        b1 = extend4(b1);
+        r2 = extend4(r2);
+        g2 = extend4(g2);
+        b2 = extend4(b2);
+
+        int[] paint = {
+                rgba(r1 + distance, g1 + distance, b1 + distance, 255),
+                rgba(r1 - distance, g1 - distance, b1 - distance, 255),
+                rgba(r2 + distance, g2 + distance, b2 + distance, 255),
+                rgba(r2 - distance, g2 - distance, b2 - distance, 255)
+        };
+
+        writePaintColors(low, paint, block);
+    }
+
+    private static void decodeETC2Planar(int high, int low, int[] block)
+    {
+        int ro = extend6((high >> 25) & 63);
+        int go = extend7((((high >> 24) & 1) << 6) | ((high >> 17) & 63));
+        int bo = extend6((((high >> 16) & 1) << 5) | (((high >> 11) & 3) << 3) | ((high >> 7) & 7));
+        int rh = extend6((((high >> 2) & 31) << 1) | (high & 1));
+        int gh = extend7((low >>> 25) & 127);
+        int bh = extend6((low >> 19) & 63);
+        int rv = extend6((low >> 13) & 63);
+        int gv = extend7((low >> 6) & 127);
+        int bv = extend6(low & 63);
+
+        for (int y = 0; y < 4; y++)
+        {
+            for (int x = 0; x < 4; x++)
+            {
+                int r = (x * (rh - ro) + y * (rv - ro) + 4 * ro + 2) >> 2;
+                int g = (x * (gh - go) + y * (gv - go) + 4 * go + 2) >> 2;
+                int b = (x * (bh - bo) + y * (bv - bo) + 4 * bo + 2) >> 2;
+
+                block[y * 4 + x] = rgba(r, g, b, 255);
+            }
+        }
+    }
+}
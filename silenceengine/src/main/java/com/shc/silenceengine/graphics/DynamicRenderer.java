@@ -32,30 +32,42 @@ import com.shc.silenceengine.graphics.opengl.Primitive;
 import com.shc.silenceengine.graphics.opengl.Program;
 import com.shc.silenceengine.graphics.opengl.VertexArray;
 import com.shc.silenceengine.io.DirectBuffer;
-import com.shc.silenceengine.io.PrimitiveSize;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.math.Vector4;
+import com.shc.silenceengine.utils.MathUtils;
 
 import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
 
 /**
+ * The DynamicRenderer collects vertices into a single interleaved buffer laid out according to a {@link VertexFormat}
+ * and draws them with a single buffer object. Only the attributes that are used by the current program, that is, the
+ * ones that have a valid location, are stored in the buffer, so unused attributes cost neither memory nor bandwidth.
+ * Every flush streams the batch into the VBO right after the previous one, and the VBO is orphaned only when it is
+ * full, instead of being re-specified on every flush.
+ *
+ * <p>Quads can be batched with {@link #beginQuads()}, in which case only four vertices are written for every quad, and
+ * they are drawn as triangles through a static index buffer that is shared by all the renderers.</p>
+ *
  * @author Sri Harsha Chilakapati
  * @author Heiko Brumme
  */
 public class DynamicRenderer implements IResource
 {
-    // The no. of components in vertex, normal, color and texcoord
+    // The no. of components in vertex, normal, color and texcoord of the default format
     public static final int NUM_VERTEX_COMPONENTS   = 4;
     public static final int NUM_NORMAL_COMPONENTS   = 4;
     public static final int NUM_COLOR_COMPONENTS    = 4;
     public static final int NUM_TEXCOORD_COMPONENTS = 2;
 
-    // The sizes of the components in bytes
-    public static final int SIZE_OF_VERTEX   = PrimitiveSize.FLOAT * NUM_VERTEX_COMPONENTS;
-    public static final int SIZE_OF_NORMAL   = PrimitiveSize.FLOAT * NUM_NORMAL_COMPONENTS;
-    public static final int SIZE_OF_COLOR    = PrimitiveSize.FLOAT * NUM_COLOR_COMPONENTS;
-    public static final int SIZE_OF_TEXCOORD = PrimitiveSize.FLOAT * NUM_TEXCOORD_COMPONENTS;
+    // The minimum size of the ring buffer the batches are streamed into, 1 MiB
+    public static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+
+    // The maximum no. of quads in a single draw call, limited by the range of unsigned short indices
+    public static final int MAX_QUADS = 65536 / 4;
+
+    // The index buffer shared by all the renderers that batch quads, created when it is first used
+    private static BufferObject quadIndexBuffer;
 
     // The maximum size of the batch, by default is 1024^2 = 10,48,576 vertices
     private int maxBatchSize;
@@ -66,18 +78,36 @@ public class DynamicRenderer implements IResource
     // Active state of this batcher
     private boolean active = false;
 
-    // The mapped buffers to store the collected data
-    private DirectBuffer vBuffer;
-    private DirectBuffer cBuffer;
-    private DirectBuffer tBuffer;
-    private DirectBuffer nBuffer;
+    // The format declared by the user, and the subset of it that is actually stored
+    private VertexFormat vertexFormat;
+    private VertexFormat activeFormat;
+
+    // The elements of the active format, null if the attribute is not stored
+    private VertexFormat.Element vertexElement;
+    private VertexFormat.Element colorElement;
+    private VertexFormat.Element texCoordElement;
+    private VertexFormat.Element normalElement;
+    private VertexFormat.Element textureSlotElement;
+
+    // The size of a single vertex in the active format
+    private int stride;
+
+    // The mapped buffer to store the collected interleaved data
+    private DirectBuffer buffer;
 
-    // VAO and VBOs
+    // VAO and VBO
     private VertexArray  vao;
-    private BufferObject vboVert;
-    private BufferObject vboCol;
-    private BufferObject vboTex;
-    private BufferObject vboNorm;
+    private BufferObject vbo;
+
+    // Whether the attribute pointers of the VAO need to be specified again
+    private boolean attributesDirty = true;
+
+    // The byte offset in the VBO the attribute pointers are currently relative to
+    private int pointerOffset;
+
+    // Whether the vertices are batched as quads, and whether the VAO has the quad indices bound
+    private boolean quads;
+    private boolean quadIndicesBound;
 
     // VBO index locations in shader
     private int vertexLocation   = -1;
@@ -85,11 +115,14 @@ public class DynamicRenderer implements IResource
     private int texCoordLocation = -1;
     private int normalLocation   = -1;
 
+    private int textureSlotLocation = -1;
+
     // The no. of vertices in the current batch
     private int vertexCount;
     private int colorCount;
     private int texCoordCount;
     private int normalCount;
+    private int textureSlotCount;
 
     // The rendering mode
     private Primitive beginMode;
@@ -115,37 +148,65 @@ public class DynamicRenderer implements IResource
      */
     public DynamicRenderer(int batchSize, int maxBatchSize)
     {
+        this(VertexFormat.createDefault(), batchSize, maxBatchSize);
+    }
+
+    /**
+     * Creates the DynamicRenderer with a custom vertex format, and initialises OpenGL
+     *
+     * @param vertexFormat The format of the vertices collected by this renderer.
+     * @param batchSize    The size of the initial batch size.
+     * @param maxBatchSize The maximum size of the batch.
+     */
+    public DynamicRenderer(VertexFormat vertexFormat, int batchSize, int maxBatchSize)
+    {
+        this.vertexFormat = vertexFormat;
         this.batchSize = batchSize;
         this.maxBatchSize = maxBatchSize;
 
-        // Create the buffers
-        vBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_VERTEX);
-        nBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_NORMAL);
-        cBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_COLOR);
-        tBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_TEXCOORD);
+        // Create the layout and the buffer
+        updateActiveFormat();
 
         // Initialise OpenGL handles
         initGLHandles();
     }
 
-    public DirectBuffer getVBuffer()
+    /**
+     * @return The buffer holding the interleaved data of the current batch, laid out in the active format.
+     */
+    public DirectBuffer getBuffer()
     {
-        return vBuffer;
+        return buffer;
     }
 
-    public DirectBuffer getCBuffer()
+    public VertexFormat getVertexFormat()
     {
-        return cBuffer;
+        return vertexFormat;
     }
 
-    public DirectBuffer getTBuffer()
+    /**
+     * Sets the format of the vertices collected by this renderer. Any vertices pending in the batch are flushed first.
+     *
+     * @param vertexFormat The new vertex format.
+     */
+    public void setVertexFormat(VertexFormat vertexFormat)
     {
-        return tBuffer;
+        if (vertexFormat == this.vertexFormat)
+            return;
+
+        flush();
+
+        this.vertexFormat = vertexFormat;
+        updateActiveFormat();
     }
 
-    public DirectBuffer getNBuffer()
+    /**
+     * @return The format in which the data is actually stored in the buffer. This contains only those elements of the
+     * vertex format whose attributes have a valid location.
+     */
+    public VertexFormat getActiveFormat()
     {
-        return nBuffer;
+        return activeFormat;
     }
 
     public int getVertexCount()
@@ -160,15 +221,6 @@ public class DynamicRenderer implements IResource
 
     public void setMaxBatchSize(int maxBatchSize)
     {
-        if (maxBatchSize > this.maxBatchSize)
-        {
-            // Resize the VBOs data store
-            vboVert.uploadData(maxBatchSize * SIZE_OF_VERTEX, BufferObject.Usage.STREAM_DRAW);
-            vboNorm.uploadData(maxBatchSize * SIZE_OF_NORMAL, BufferObject.Usage.STREAM_DRAW);
-            vboCol.uploadData(maxBatchSize * SIZE_OF_COLOR, BufferObject.Usage.STREAM_DRAW);
-            vboTex.uploadData(maxBatchSize * SIZE_OF_TEXCOORD, BufferObject.Usage.STREAM_DRAW);
-        }
-
         this.maxBatchSize = maxBatchSize;
     }
 
@@ -185,23 +237,71 @@ public class DynamicRenderer implements IResource
         // Don't increase past the max batch size
         batchSize = Math.min(batchSize, maxBatchSize);
 
-        // Free old buffers
-        SilenceEngine.io.free(vBuffer);
-        SilenceEngine.io.free(nBuffer);
-        SilenceEngine.io.free(cBuffer);
-        SilenceEngine.io.free(tBuffer);
+        this.batchSize = batchSize;
+        resizeBuffer();
+    }
 
-        // Create new buffers
-        vBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_VERTEX);
-        nBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_NORMAL);
-        cBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_COLOR);
-        tBuffer = SilenceEngine.io.create(batchSize * SIZE_OF_TEXCOORD);
+    /**
+     * Recreates the buffer to hold the current batch size in the active format, retaining the vertices already in it.
+     */
+    private void resizeBuffer()
+    {
+        DirectBuffer oldBuffer = buffer;
+        buffer = SilenceEngine.io.create(Math.max(batchSize * stride, 4));
 
-        this.batchSize = batchSize;
+        if (oldBuffer == null)
+            return;
+
+        // Copy over the vertices that are already collected
+        final int vertices = Math.max(Math.max(vertexCount, colorCount),
+                Math.max(Math.max(texCoordCount, normalCount), textureSlotCount));
+
+        final int bytes = Math.min(vertices * stride, buffer.sizeBytes());
+
+        for (int i = 0; i < bytes; i += 4)
+            buffer.writeInt(i, oldBuffer.readInt(i));
+
+        SilenceEngine.io.free(oldBuffer);
     }
 
     /**
-     * Initialises VAOs and VBOs and creates the data store to store the entire batch.
+     * Recomputes the active format from the vertex format and the attribute locations, and reallocates the buffer if
+     * the size of a vertex has changed.
+     */
+    private void updateActiveFormat()
+    {
+        activeFormat = new VertexFormat();
+
+        for (VertexFormat.Element element : vertexFormat.getElements())
+        {
+            if (getLocation(element.attribute) == -1)
+                continue;
+
+            activeFormat.add(element.attribute, element.count, element.type, element.normalized);
+        }
+
+        vertexElement = activeFormat.get(VertexFormat.Attribute.POSITION);
+        colorElement = activeFormat.get(VertexFormat.Attribute.COLOR);
+        texCoordElement = activeFormat.get(VertexFormat.Attribute.TEXCOORD);
+        normalElement = activeFormat.get(VertexFormat.Attribute.NORMAL);
+        textureSlotElement = activeFormat.get(VertexFormat.Attribute.TEXTURE_SLOT);
+
+        attributesDirty = true;
+
+        if (buffer == null || stride != activeFormat.getStride())
+        {
+            stride = activeFormat.getStride();
+
+            if (buffer != null)
+                SilenceEngine.io.free(buffer);
+
+            buffer = null;
+            resizeBuffer();
+        }
+    }
+
+    /**
+     * Initialises the VAO and the VBO. The data store of the VBO is created lazily when the batch is flushed.
      */
     private void initGLHandles()
     {
@@ -209,11 +309,8 @@ public class DynamicRenderer implements IResource
         vao = new VertexArray();
         vao.bind();
 
-        // Create VBOs
-        vboVert = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
-        vboCol = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
-        vboTex = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
-        vboNorm = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
+        // Create the VBO
+        vbo = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
     }
 
     public void begin(Primitive beginMode)
@@ -238,9 +335,24 @@ public class DynamicRenderer implements IResource
         colorCount = 0;
         texCoordCount = 0;
         normalCount = 0;
+        textureSlotCount = 0;
 
         this.beginMode = beginMode;
         this.renderPolicy = renderPolicy;
+
+        quads = false;
+    }
+
+    /**
+     * Begins the batcher to collect quads. Every four vertices make up a quad, and they should be specified in order
+     * around the quad. The quads are drawn as two triangles each, {@code (0, 1, 2)} and {@code (2, 3, 0)}, using the
+     * shared quad index buffer. Callers should use {@link #flushOnOverflow(int)} before every quad, so that a quad is
+     * never split across two batches.
+     */
+    public void beginQuads()
+    {
+        begin(Primitive.TRIANGLES, RenderPolicy.PERFORM_RENDER);
+        quads = true;
     }
 
     public void begin()
@@ -287,23 +399,16 @@ public class DynamicRenderer implements IResource
         // Bind the VAO
         vao.bind();
 
-        vao.enableAttributeArray(vertexLocation);
-        if (colorLocation != -1) vao.enableAttributeArray(colorLocation);
-        if (texCoordLocation != -1) vao.enableAttributeArray(texCoordLocation);
-        if (normalLocation != -1) vao.enableAttributeArray(normalLocation);
-
         // Setup the buffers
-        setupBuffers();
+        int first = setupBuffers();
 
         // Do a rendering
-        GLContext.drawArrays(vao, beginMode, 0, vertexCount);
+        if (quads)
+            GLContext.drawElements(vao, beginMode, 0, vertexCount / 4 * 6, GL_UNSIGNED_SHORT);
+        else
+            GLContext.drawArrays(vao, beginMode, first, vertexCount);
 
         // Unbind the VAO
-        vao.disableAttributeArray(vertexLocation);
-        if (colorLocation != -1) vao.disableAttributeArray(colorLocation);
-        if (texCoordLocation != -1) vao.disableAttributeArray(texCoordLocation);
-        if (normalLocation != -1) vao.disableAttributeArray(normalLocation);
-
         GLContext.bindVertexArray(null);
 
         // Clear the vertex count
@@ -311,39 +416,97 @@ public class DynamicRenderer implements IResource
         colorCount = 0;
         texCoordCount = 0;
         normalCount = 0;
+        textureSlotCount = 0;
     }
 
-    private void setupBuffers()
+    /**
+     * Streams the collected vertices into the VBO and specifies the attribute pointers if needed.
+     *
+     * @return The index of the first streamed vertex in the VBO, relative to the attribute pointers.
+     */
+    private int setupBuffers()
     {
         vao.bind();
 
-        if (vertexLocation != -1)
-        {
-            vboVert.uploadData(vBuffer.sizeBytes(), BufferObject.Usage.DYNAMIC_DRAW);
-            vboVert.uploadData(vBuffer, BufferObject.Usage.DYNAMIC_DRAW);
-            vao.pointAttribute(vertexLocation, NUM_VERTEX_COMPONENTS, GL_FLOAT, vboVert);
-        }
+        final int sizeBytes = vertexCount * stride;
 
-        if (colorLocation != -1)
+        // Create the ring buffer, large enough to hold several batches before it has to be orphaned
+        if (vbo.getCapacity() < sizeBytes)
+            vbo.uploadData(Math.max(STREAM_BUFFER_SIZE, 4 * buffer.sizeBytes()), BufferObject.Usage.STREAM_DRAW);
+
+        // Upload only the vertices that are collected, after the ones of the previous flushes
+        final int offset = vbo.streamData(buffer, sizeBytes, stride);
+
+        if (quads)
         {
-            vboCol.uploadData(cBuffer.sizeBytes(), BufferObject.Usage.DYNAMIC_DRAW);
-            vboCol.uploadData(cBuffer, BufferObject.Usage.DYNAMIC_DRAW);
-            vao.pointAttribute(colorLocation, NUM_COLOR_COMPONENTS, GL_FLOAT, vboCol);
+            // The indices always start at zero, so the pointers are offset to the first vertex of this batch instead
+            pointAttributes(offset);
+
+            if (!quadIndicesBound)
+            {
+                // The element array buffer binding is stored in the VAO, so this has to be done just once
+                getQuadIndexBuffer().bind(true);
+                quadIndicesBound = true;
+            }
+
+            return 0;
         }
 
-        if (normalLocation != -1)
+        // The VAO remembers the attribute pointers, so specify them only when the layout or locations change
+        if (attributesDirty || pointerOffset != 0)
+            pointAttributes(0);
+
+        return offset / stride;
+    }
+
+    /**
+     * Specifies the attribute pointers of the active format in the VAO, relative to an offset in the VBO.
+     */
+    private void pointAttributes(int baseOffset)
+    {
+        for (VertexFormat.Element element : activeFormat.getElements())
         {
-            vboNorm.uploadData(nBuffer.sizeBytes(), BufferObject.Usage.DYNAMIC_DRAW);
-            vboNorm.uploadData(nBuffer, BufferObject.Usage.DYNAMIC_DRAW);
-            vao.pointAttribute(normalLocation, NUM_NORMAL_COMPONENTS, GL_FLOAT, vboNorm);
+            int location = getLocation(element.attribute);
+
+            vao.pointAttribute(location, element.count, element.type, element.normalized, stride,
+                    baseOffset + element.offset, vbo);
+
+            if (attributesDirty)
+                vao.enableAttributeArray(location);
         }
 
-        if (texCoordLocation != -1)
+        attributesDirty = false;
+        pointerOffset = baseOffset;
+    }
+
+    /**
+     * @return The static index buffer that draws {@link #MAX_QUADS} quads as triangles.
+     */
+    private static BufferObject getQuadIndexBuffer()
+    {
+        if (quadIndexBuffer != null)
+            return quadIndexBuffer;
+
+        DirectBuffer indices = SilenceEngine.io.create(MAX_QUADS * 6 * 2);
+
+        for (int i = 0, offset = 0; i < MAX_QUADS; i++, offset += 12)
         {
-            vboTex.uploadData(tBuffer.sizeBytes(), BufferObject.Usage.DYNAMIC_DRAW);
-            vboTex.uploadData(tBuffer, BufferObject.Usage.DYNAMIC_DRAW);
-            vao.pointAttribute(texCoordLocation, NUM_TEXCOORD_COMPONENTS, GL_FLOAT, vboTex);
+            final int vertex = i * 4;
+
+            indices.writeShort(offset, (short) vertex)
+                    .writeShort(offset + 2, (short) (vertex + 1))
+                    .writeShort(offset + 4, (short) (vertex + 2))
+                    .writeShort(offset + 6, (short) (vertex + 2))
+                    .writeShort(offset + 8, (short) (vertex + 3))
+                    .writeShort(offset + 10, (short) vertex);
         }
+
+        quadIndexBuffer = new BufferObject(BufferObject.Target.ELEMENT_ARRAY_BUFFER);
+        quadIndexBuffer.uploadData(indices, BufferObject.Usage.STATIC_DRAW);
+
+        SilenceEngine.io.free(indices);
+
+        return quadIndexBuffer;
     }
 
     private void fillBuffers()
@@ -351,6 +514,12 @@ public class DynamicRenderer implements IResource
         // Determine the fill color
         Color col = texCoordCount == vertexCount ? Color.BLACK : Color.WHITE;
 
+        // Attributes that are not stored need not be filled
+        if (colorElement == null) colorCount = Math.max(colorCount, vertexCount);
+        if (texCoordElement == null) texCoordCount = Math.max(texCoordCount, vertexCount);
+        if (normalElement == null) normalCount = Math.max(normalCount, vertexCount);
+        if (textureSlotElement == null) textureSlotCount = Math.max(textureSlotCount, vertexCount);
+
         // Fill the color buffers
         while (colorCount < vertexCount)
             color(col);
@@ -362,6 +531,87 @@ public class DynamicRenderer implements IResource
         // Fill the normal buffers
         while (normalCount < vertexCount)
             normal(0, 0, 0, 0);
+
+        // Fill the texture slots, the first slot is the texture bound to the first unit
+        while (textureSlotCount < vertexCount)
+            textureSlot(0);
+    }
+
+    /**
+     * Writes the components of an element of a vertex into the buffer. Only as many components as the element has
+     * are written, and nothing is written if the element is not stored.
+     */
+    private void write(VertexFormat.Element element, int index, float x, float y, float z, float w)
+    {
+        if (element == null)
+            return;
+
+        final int offset = stride * index + element.offset;
+
+        if (element.type == GL_FLOAT)
+        {
+            buffer.writeFloat(offset, x);
+
+            if (element.count > 1) buffer.writeFloat(offset + 4, y);
+            if (element.count > 2) buffer.writeFloat(offset + 8, z);
+            if (element.count > 3) buffer.writeFloat(offset + 12, w);
+
+            return;
+        }
+
+        final int componentSize = element.size / element.count;
+
+        writeComponent(element, offset, x);
+
+        if (element.count > 1) writeComponent(element, offset + componentSize, y);
+        if (element.count > 2) writeComponent(element, offset + componentSize * 2, z);
+        if (element.count > 3) writeComponent(element, offset + componentSize * 3, w);
+    }
+
+    /**
+     * Converts a single component to the type of the element and writes it. Normalized unsigned components are
+     * clamped to the range of 0-1, and normalized signed components are clamped to the range of -1 to 1.
+     */
+    private void writeComponent(VertexFormat.Element element, int offset, float value)
+    {
+        switch (element.type)
+        {
+            case GL_UNSIGNED_BYTE:
+                if (element.normalized)
+                    value = MathUtils.clamp(value, 0, 1) * 255 + 0.5f;
+
+                buffer.writeByte(offset, (byte) (int) value);
+                break;
+
+            case GL_BYTE:
+                if (element.normalized)
+                    value = Math.round(MathUtils.clamp(value, -1, 1) * 127);
+
+                buffer.writeByte(offset, (byte) value);
+                break;
+
+            case GL_UNSIGNED_SHORT:
+                if (element.normalized)
+                    value = MathUtils.clamp(value, 0, 1) * 65535 + 0.5f;
+
+                buffer.writeShort(offset, (short) (int) value);
+                break;
+
+            case GL_SHORT:
+                if (element.normalized)
+                    value = Math.round(MathUtils.clamp(value, -1, 1) * 32767);
+
+                buffer.writeShort(offset, (short) value);
+                break;
+
+            case GL_INT:
+            case GL_UNSIGNED_INT:
+                buffer.writeInt(offset, (int) value);
+                break;
+
+            default:
+                buffer.writeFloat(offset, value);
+        }
     }
 
     public void vertex(float x, float y)
@@ -371,6 +621,10 @@ public class DynamicRenderer implements IResource
 
     public void vertex(float x, float y, float z, float w)
     {
+        // The indices can't address more vertices than this in a single draw call
+        if (quads && vertexCount == MAX_QUADS * 4)
+            flush();
+
         if (vertexCount >= batchSize)
         {
             if (batchSize >= maxBatchSize)
@@ -383,20 +637,27 @@ public class DynamicRenderer implements IResource
 
         fillBuffers();
 
-        final int offset = SIZE_OF_VERTEX * vertexCount;
-
-        vBuffer.writeFloat(offset, x)
-                .writeFloat(offset + 4, y)
-                .writeFloat(offset + 8, z)
-                .writeFloat(offset + 12, w);
+        write(vertexElement, vertexCount, x, y, z, w);
 
         vertexCount++;
     }
 
-    public void flushOnOverflow(int capacity)
+    /**
+     * Flushes the batch if the next vertices will not fit in it.
+     *
+     * @param capacity The number of vertices that are going to be written.
+     *
+     * @return Whether the batch is flushed.
+     */
+    public boolean flushOnOverflow(int capacity)
     {
-        if (vertexCount + capacity >= batchSize)
+        if (vertexCount + capacity >= batchSize || (quads && vertexCount + capacity > MAX_QUADS * 4))
+        {
             flush();
+            return true;
+        }
+
+        return false;
     }
 
     public void vertex(float x, float y, float z)
@@ -431,17 +692,40 @@ public class DynamicRenderer implements IResource
 
     public void color(float r, float g, float b, float a)
     {
-        final int offset = SIZE_OF_COLOR * colorCount;
-
         // Add the specified color
-        cBuffer.writeFloat(offset, r)
-                .writeFloat(offset + 4, g)
-                .writeFloat(offset + 8, b)
-                .writeFloat(offset + 12, a);
-
+        write(colorElement, colorCount, r, g, b, a);
         colorCount++;
     }
 
+    /**
+     * Adds a color packed into an integer, in the same {@code 0xRRGGBBAA} order as returned by {@link Color#getRGBA()}.
+     * When the color is stored as four normalized unsigned bytes, the packed color is written as is without any
+     * conversion.
+     *
+     * @param packedRgba The color packed into an integer.
+     */
+    public void color(int packedRgba)
+    {
+        if (colorElement != null && colorElement.type == GL_UNSIGNED_BYTE && colorElement.normalized
+            && colorElement.count == 4)
+        {
+            final int offset = stride * colorCount + colorElement.offset;
+
+            buffer.writeByte(offset, (byte) (packedRgba >>> 24))
+                    .writeByte(offset + 1, (byte) (packedRgba >>> 16))
+                    .writeByte(offset + 2, (byte) (packedRgba >>> 8))
+                    .writeByte(offset + 3, (byte) packedRgba);
+
+            colorCount++;
+            return;
+        }
+
+        color(((packedRgba >>> 24) & 0xFF) / 255f,
+                ((packedRgba >>> 16) & 0xFF) / 255f,
+                ((packedRgba >>> 8) & 0xFF) / 255f,
+                (packedRgba & 0xFF) / 255f);
+    }
+
     public void texCoord(Vector2 v)
     {
         texCoord(v.x, v.y);
@@ -449,12 +733,8 @@ public class DynamicRenderer implements IResource
 
     public void texCoord(float u, float v)
     {
-        final int offset = SIZE_OF_TEXCOORD * texCoordCount;
-
         // Add the specified texcoord
-        tBuffer.writeFloat(offset, u)
-                .writeFloat(offset + 4, v);
-
+        write(texCoordElement, texCoordCount, u, v, 0, 0);
         texCoordCount++;
     }
 
@@ -465,13 +745,7 @@ public class DynamicRenderer implements IResource
 
     public void normal(float x, float y, float z, float w)
     {
-        final int offset = SIZE_OF_NORMAL * normalCount;
-
-        nBuffer.writeFloat(offset, x)
-                .writeFloat(offset + 4, y)
-                .writeFloat(offset + 8, z)
-                .writeFloat(offset + 12, w);
-
+        write(normalElement, normalCount, x, y, z, w);
         normalCount++;
     }
 
@@ -480,21 +754,68 @@ public class DynamicRenderer implements IResource
         normal(n.x, n.y, n.z, 0);
     }
 
+    /**
+     * Specifies the texture slot of the vertex, that is, the index of the texture in the sampler array of the program.
+     * Programs that sample a single texture have no texture slot attribute, and this is then ignored.
+     *
+     * @param slot The texture slot of the vertex.
+     */
+    public void textureSlot(int slot)
+    {
+        write(textureSlotElement, textureSlotCount, slot, 0, 0, 0);
+        textureSlotCount++;
+    }
+
     public void dispose()
     {
         GLContext.bindVertexArray(null);
         vao.dispose();
 
         GLContext.bindVertexBuffer(null);
-        vboVert.dispose();
-        vboCol.dispose();
-        vboTex.dispose();
-        vboNorm.dispose();
+        vbo.dispose();
+
+        SilenceEngine.io.free(buffer);
+    }
+
+    /**
+     * @param attribute The attribute of which the location is required.
+     *
+     * @return The location of the attribute in the shader, or -1 if it is not used.
+     */
+    public int getLocation(VertexFormat.Attribute attribute)
+    {
+        switch (attribute)
+        {
+            case POSITION:
+                return vertexLocation;
+            case COLOR:
+                return colorLocation;
+            case TEXCOORD:
+                return texCoordLocation;
+            case NORMAL:
+                return normalLocation;
+            case TEXTURE_SLOT:
+                return textureSlotLocation;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Called whenever a location changes. Pending vertices are stored in the old layout, so they are flushed before
+     * the location is changed, and the location that is no longer used is disabled in the VAO.
+     */
+    private boolean prepareLocationChange(int oldLocation, int newLocation)
+    {
+        if (oldLocation == newLocation)
+            return false;
+
+        flush();
+
+        if (oldLocation != -1)
+            vao.disableAttributeArray(oldLocation);
 
-        SilenceEngine.io.free(vBuffer);
-        SilenceEngine.io.free(nBuffer);
-        SilenceEngine.io.free(cBuffer);
-        SilenceEngine.io.free(tBuffer);
+        return true;
     }
 
     public int getVertexLocation()
@@ -504,7 +825,11 @@ public class DynamicRenderer implements IResource
 
     public void setVertexLocation(int vertexLocation)
     {
+        if (!prepareLocationChange(this.vertexLocation, vertexLocation))
+            return;
+
         this.vertexLocation = vertexLocation;
+        updateActiveFormat();
     }
 
     public int getColorLocation()
@@ -514,7 +839,11 @@ public class DynamicRenderer implements IResource
 
     public void setColorLocation(int colorLocation)
     {
+        if (!prepareLocationChange(this.colorLocation, colorLocation))
+            return;
+
         this.colorLocation = colorLocation;
+        updateActiveFormat();
     }
 
     public int getTexCoordLocation()
@@ -524,7 +853,11 @@ public class DynamicRenderer implements IResource
 
     public void setTexCoordLocation(int texCoordLocation)
     {
+        if (!prepareLocationChange(this.texCoordLocation, texCoordLocation))
+            return;
+
         this.texCoordLocation = texCoordLocation;
+        updateActiveFormat();
     }
 
     public int getNormalLocation()
@@ -534,7 +867,25 @@ public class DynamicRenderer implements IResource
 
     public void setNormalLocation(int normalLocation)
     {
+        if (!prepareLocationChange(this.normalLocation, normalLocation))
+            return;
+
         this.normalLocation = normalLocation;
+        updateActiveFormat();
+    }
+
+    public int getTextureSlotLocation()
+    {
+        return textureSlotLocation;
+    }
+
+    public void setTextureSlotLocation(int textureSlotLocation)
+    {
+        if (!prepareLocationChange(this.textureSlotLocation, textureSlotLocation))
+            return;
+
+        this.textureSlotLocation = textureSlotLocation;
+        updateActiveFormat();
     }
 
     public boolean isActive()
@@ -547,6 +898,14 @@ public class DynamicRenderer implements IResource
         return beginMode;
     }
 
+    /**
+     * @return Whether the vertices are being batched as quads.
+     */
+    public boolean isBatchingQuads()
+    {
+        return quads;
+    }
+
     public enum RenderPolicy
     {
         PERFORM_RENDER,
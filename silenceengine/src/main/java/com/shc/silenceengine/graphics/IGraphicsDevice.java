@@ -36,6 +36,7 @@ import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.io.DirectFloatBuffer;
 import com.shc.silenceengine.logging.Logger;
 import com.shc.silenceengine.utils.functional.SimpleCallback;
+import com.shc.silenceengine.utils.functional.UniCallback;
 
 import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
 
@@ -115,6 +116,22 @@ public interface IGraphicsDevice
 
     void glBufferSubData(int target, int offset, DirectBuffer data);
 
+    /**
+     * Uploads data into a region of the buffer bound to the target, without synchronizing with the draw calls that are
+     * still pending on the GPU. The caller guarantees that no pending draw call reads from the region, which is the
+     * case for streaming uploads into a ring buffer that is orphaned when it wraps around. Devices that can map the
+     * buffer unsynchronized should override this, the default just falls back to {@code glBufferSubData}.
+     *
+     * @param target The target to which the buffer is bound.
+     * @param offset The byte offset into the buffer at which the data is written.
+     * @param size   The number of bytes to write, starting at the beginning of the data.
+     * @param data   The data to upload.
+     */
+    default void glBufferSubDataUnsynchronized(int target, int offset, int size, DirectBuffer data)
+    {
+        glBufferSubData(target, offset, size, data);
+    }
+
     void glDeleteBuffers(int... buffer);
 
     int glGenFramebuffers();
@@ -130,6 +147,8 @@ public interface IGraphicsDevice
     default void glClear(int flags)
     {
         Data.renderCallsThisFrame = 0;
+        Data.stateChangesThisFrame = 0;
+        Data.elidedStateChangesThisFrame = 0;
     }
 
     int glCheckFramebufferStatus(int target);
@@ -148,6 +167,36 @@ public interface IGraphicsDevice
         Data.totalRenderCalls++;
     }
 
+    /**
+     * Draws several instances of a range of vertices in a single call. Devices should call this default method from
+     * their implementations so that the render calls are counted.
+     *
+     * @param primitive     The primitive to render.
+     * @param offset        The index of the first vertex.
+     * @param vertexCount   The number of vertices in every instance.
+     * @param instanceCount The number of instances to draw.
+     */
+    default void glDrawArraysInstanced(int primitive, int offset, int vertexCount, int instanceCount)
+    {
+        Data.renderCallsThisFrame++;
+        Data.totalRenderCalls++;
+    }
+
+    /**
+     * Sets the rate at which a vertex attribute advances during instanced rendering. A divisor of zero advances the
+     * attribute once per vertex, and a divisor of N advances it once every N instances.
+     *
+     * @param index   The location of the vertex attribute.
+     * @param divisor The number of instances that share each value of the attribute.
+     */
+    void glVertexAttribDivisor(int index, int divisor);
+
+    /**
+     * @return Whether this device supports {@link #glDrawArraysInstanced(int, int, int, int)} and {@link
+     * #glVertexAttribDivisor(int, int)}.
+     */
+    boolean isInstancingSupported();
+
     void glEnable(int capability);
 
     void glBlendFunc(int src, int dst);
@@ -166,6 +215,29 @@ public interface IGraphicsDevice
 
     int glGetError();
 
+    /**
+     * Enables the debug output of the context, and delivers the messages of the errors to the callback synchronously,
+     * that is, before the call that caused the error returns. Devices that don't support the debug output should
+     * return false, in which case the errors are read with {@link #glGetError()}.
+     *
+     * @param callback The callback that receives the error messages.
+     *
+     * @return True if the debug output is enabled, else False.
+     */
+    default boolean setDebugOutputCallback(UniCallback<String> callback)
+    {
+        return false;
+    }
+
+    /**
+     * Queries the value of an integer state or implementation limit, like {@code GL_MAX_TEXTURE_IMAGE_UNITS}.
+     *
+     * @param param The name of the parameter to query.
+     *
+     * @return The value of the parameter.
+     */
+    int glGetInteger(int param);
+
     int glCreateProgram();
 
     void glAttachShader(int program, int shader);
@@ -227,6 +299,43 @@ public interface IGraphicsDevice
     void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int format,
                       int type, DirectBuffer pixels);
 
+    /**
+     * Uploads a level of a texture in a compressed internal format. The data is read from a range of the buffer, so
+     * that the levels in a texture container can be uploaded without copying them out of it.
+     *
+     * @param target         The target of the texture.
+     * @param level          The mipmap level to upload.
+     * @param internalFormat The compressed internal format of the data.
+     * @param width          The width of the level.
+     * @param height         The height of the level.
+     * @param border         The border, which has to be zero.
+     * @param data           The buffer that contains the compressed data.
+     * @param offset         The offset of the level in the buffer, in bytes.
+     * @param size           The size of the level in bytes.
+     */
+    void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                                DirectBuffer data, int offset, int size);
+
+    /**
+     * @param internalFormat A compressed internal format, like {@code GL_COMPRESSED_RGB8_ETC2}.
+     *
+     * @return True if textures in the compressed format can be uploaded on this device, else False.
+     */
+    boolean isCompressedFormatSupported(int internalFormat);
+
+    /**
+     * @return Whether the {@code GL_TEXTURE_MAX_LEVEL} texture parameter is available, which is the case with OpenGL
+     * 3, OpenGL ES 3 and WebGL 2, but not with OpenGL ES 2 and WebGL 1.
+     */
+    boolean isTextureMaxLevelSupported();
+
+    /**
+     * @return Whether textures can be created with the {@code GL_DEPTH_COMPONENT} format and used as depth attachments,
+     * which is the case with OpenGL 3, OpenGL ES 3 and WebGL 2, and with WebGL 1 only with the {@code
+     * WEBGL_depth_texture} extension.
+     */
+    boolean isDepthTextureSupported();
+
     void glGenerateMipmap(int target);
 
     void glDeleteTextures(int... texture);
@@ -285,6 +394,29 @@ public interface IGraphicsDevice
         public static final int GL_COLOR_CLEAR_VALUE                            = 0x0C22;
         public static final int GL_COLOR_WRITEMASK                              = 0x0C23;
         public static final int GL_COMPILE_STATUS                               = 0x8B81;
+        public static final int GL_COMPRESSED_RGB8_ETC2                         = 0x9274;
+        public static final int GL_COMPRESSED_RGBA8_ETC2_EAC                    = 0x9278;
+        public static final int GL_COMPRESSED_RGBA_ASTC_10x10_KHR               = 0x93BB;
+        public static final int GL_COMPRESSED_RGBA_ASTC_10x5_KHR                = 0x93B8;
+        public static final int GL_COMPRESSED_RGBA_ASTC_10x6_KHR                = 0x93B9;
+        public static final int GL_COMPRESSED_RGBA_ASTC_10x8_KHR                = 0x93BA;
+        public static final int GL_COMPRESSED_RGBA_ASTC_12x10_KHR               = 0x93BC;
+        public static final int GL_COMPRESSED_RGBA_ASTC_12x12_KHR               = 0x93BD;
+        public static final int GL_COMPRESSED_RGBA_ASTC_4x4_KHR                 = 0x93B0;
+        public static final int GL_COMPRESSED_RGBA_ASTC_5x4_KHR                 = 0x93B1;
+        public static final int GL_COMPRESSED_RGBA_ASTC_5x5_KHR                 = 0x93B2;
+        public static final int GL_COMPRESSED_RGBA_ASTC_6x5_KHR                 = 0x93B3;
+        public static final int GL_COMPRESSED_RGBA_ASTC_6x6_KHR                 = 0x93B4;
+        public static final int GL_COMPRESSED_RGBA_ASTC_8x5_KHR                 = 0x93B5;
+        public static final int GL_COMPRESSED_RGBA_ASTC_8x6_KHR                 = 0x93B6;
+        public static final int GL_COMPRESSED_RGBA_ASTC_8x8_KHR                 = 0x93B7;
+        public static final int GL_COMPRESSED_RGBA_S3TC_DXT1_EXT                = 0x83F1;
+        public static final int GL_COMPRESSED_RGBA_S3TC_DXT3_EXT                = 0x83F2;
+        public static final int GL_COMPRESSED_RGBA_S3TC_DXT5_EXT                = 0x83F3;
+        public static final int GL_COMPRESSED_RGB_S3TC_DXT1_EXT                 = 0x83F0;
+        public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT1_EXT          = 0x8C4D;
+        public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT3_EXT          = 0x8C4E;
+        public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT          = 0x8C4F;
         public static final int GL_COMPRESSED_TEXTURE_FORMATS                   = 0x86A3;
         public static final int GL_CONSTANT_ALPHA                               = 0x8003;
         public static final int GL_CONSTANT_COLOR                               = 0x8001;
@@ -317,6 +449,7 @@ public interface IGraphicsDevice
         public static final int GL_ELEMENT_ARRAY_BUFFER                         = 0x8893;
         public static final int GL_ELEMENT_ARRAY_BUFFER_BINDING                 = 0x8895;
         public static final int GL_EQUAL                                        = 0x0202;
+        public static final int GL_ETC1_RGB8_OES                                = 0x8D64;
         public static final int GL_FALSE                                        = 0x0000;
         public static final int GL_FASTEST                                      = 0x1101;
         public static final int GL_FLOAT                                        = 0x1406;
@@ -400,6 +533,7 @@ public interface IGraphicsDevice
         public static final int GL_NONE                                         = 0x0000;
         public static final int GL_NOTEQUAL                                     = 0x0205;
         public static final int GL_NOERROR                                      = 0x0000;
+        public static final int GL_NUM_COMPRESSED_TEXTURE_FORMATS               = 0x86A2;
         public static final int GL_ONE                                          = 0x0001;
         public static final int GL_ONE_MINUS_CONSTANT_ALPHA                     = 0x8004;
         public static final int GL_ONE_MINUS_CONSTANT_COLOR                     = 0x8002;
@@ -517,6 +651,7 @@ public interface IGraphicsDevice
         public static final int GL_TEXTURE_CUBE_MAP_POSITIVE_Y                  = 0x8517;
         public static final int GL_TEXTURE_CUBE_MAP_POSITIVE_Z                  = 0x8519;
         public static final int GL_TEXTURE_MAG_FILTER                           = 0x2800;
+        public static final int GL_TEXTURE_MAX_LEVEL                            = 0x813D;
         public static final int GL_TEXTURE_MIN_FILTER                           = 0x2801;
         public static final int GL_TEXTURE_WRAP_S                               = 0x2802;
         public static final int GL_TEXTURE_WRAP_T                               = 0x2803;
@@ -557,6 +692,12 @@ public interface IGraphicsDevice
     {
         public static int totalRenderCalls     = 0;
         public static int renderCallsThisFrame = 0;
+
+        // State changes that reached the driver, and the ones skipped by the state cache in GLContext
+        public static int totalStateChanges           = 0;
+        public static int stateChangesThisFrame       = 0;
+        public static int totalElidedStateChanges     = 0;
+        public static int elidedStateChangesThisFrame = 0;
     }
 
     final class Programs
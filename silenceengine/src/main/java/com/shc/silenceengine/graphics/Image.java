@@ -27,13 +27,18 @@ package com.shc.silenceengine.graphics;
 import com.shc.silenceengine.core.IResource;
 import com.shc.silenceengine.core.SilenceEngine;
 import com.shc.silenceengine.io.DirectBuffer;
-import com.shc.silenceengine.io.DirectFloatBuffer;
+import com.shc.silenceengine.io.PrimitiveSize;
+import com.shc.silenceengine.utils.MathUtils;
 
 /**
  * Represents an image in memory. This is not a texture. The main difference between the image and texture is that image
  * resides in the main memory that is RAM, and the texture is it's copy which resides in the video memory, that is VRAM.
  * Textures are created using images.
  *
+ * <p>The pixels are stored in one of the {@link Format}s, which is RGBA8 unless specified otherwise. Accessing the
+ * pixels as packed RGBA ints with {@link #getPixelRGBA(int, int)} or a row at a time with the {@code readRow} and
+ * {@code writeRow} methods is much faster than going through a {@link Color} for every pixel.</p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class Image implements IResource
@@ -46,21 +51,57 @@ public class Image implements IResource
     private int originalWidth;
     private int originalHeight;
 
-    private DirectFloatBuffer imageData;
+    private Format       format;
+    private DirectBuffer imageData;
 
     public Image(int width, int height)
     {
-        this(width, height, width, height);
+        this(width, height, Format.RGBA8);
+    }
+
+    public Image(int width, int height, Format format)
+    {
+        this(width, height, width, height, format);
     }
 
     public Image(int width, int height, int originalWidth, int originalHeight)
     {
+        this(width, height, originalWidth, originalHeight, Format.RGBA8);
+    }
+
+    public Image(int width, int height, int originalWidth, int originalHeight, Format format)
+    {
+        this(SilenceEngine.io.create(width * height * format.bytesPerPixel), width, height, originalWidth,
+                originalHeight, format);
+    }
+
+    /**
+     * Creates an image that uses the pixels in a buffer, without copying them. The image owns the buffer, and frees it
+     * when it is disposed.
+     *
+     * @param imageData      The pixels, in rows from the top to the bottom.
+     * @param width          The width of the image.
+     * @param height         The height of the image.
+     * @param originalWidth  The width of the image before it was resized to fit the device.
+     * @param originalHeight The height of the image before it was resized to fit the device.
+     * @param format         The format of the pixels in the buffer.
+     */
+    public Image(DirectBuffer imageData, int width, int height, int originalWidth, int originalHeight, Format format)
+    {
+        if (imageData.sizeBytes() < width * height * format.bytesPerPixel)
+            throw new IllegalArgumentException("The data is too small for a " + width + "x" + height + " image");
+
+        this.imageData = imageData;
         this.width = width;
         this.height = height;
         this.originalWidth = originalWidth;
         this.originalHeight = originalHeight;
+        this.format = format;
+    }
 
-        imageData = new DirectFloatBuffer(width * height * 4);
+    private static int toByte(float value)
+    {
+        return (int) (MathUtils.clamp(value, 0, 1) * 255f + 0.5f);
     }
 
     public Image setPixel(int x, int y, Color pixel)
@@ -68,14 +109,19 @@ public class Image implements IResource
         if (pixel == null)
             throw new IllegalArgumentException("pixel cannot be null.");
 
-        int start = 4 * (width * y + x);
+        if (format == Format.RGBA32F)
+        {
+            int start = 16 * (width * y + x);
+
+            imageData.writeFloat(start, pixel.r)
+                    .writeFloat(start + 4, pixel.g)
+                    .writeFloat(start + 8, pixel.b)
+                    .writeFloat(start + 12, pixel.a);
 
-        imageData.write(start, pixel.r)
-                .write(start + 1, pixel.g)
-                .write(start + 2, pixel.b)
-                .write(start + 3, pixel.a);
+            return this;
+        }
 
-        return this;
+        return setPixelRGBA(x, y, toByte(pixel.r) << 24 | toByte(pixel.g) << 16 | toByte(pixel.b) << 8 | toByte(pixel.a));
     }
 
     public Color getPixel(int x, int y, Color pixelOut)
@@ -83,16 +129,203 @@ public class Image implements IResource
         if (pixelOut == null)
             throw new IllegalArgumentException("pixelOut cannot be null.");
 
-        int start = 4 * (width * y + x);
+        if (format == Format.RGBA32F)
+        {
+            int start = 16 * (width * y + x);
+
+            pixelOut.r = imageData.readFloat(start);
+            pixelOut.g = imageData.readFloat(start + 4);
+            pixelOut.b = imageData.readFloat(start + 8);
+            pixelOut.a = imageData.readFloat(start + 12);
+
+            return pixelOut;
+        }
+
+        int rgba = getPixelRGBA(x, y);
 
-        pixelOut.r = imageData.read(start);
-        pixelOut.g = imageData.read(start + 1);
-        pixelOut.b = imageData.read(start + 2);
-        pixelOut.a = imageData.read(start + 3);
+        pixelOut.r = (rgba >>> 24) / 255f;
+        pixelOut.g = ((rgba >> 16) & 0xFF) / 255f;
+        pixelOut.b = ((rgba >> 8) & 0xFF) / 255f;
+        pixelOut.a = (rgba & 0xFF) / 255f;
 
         return pixelOut;
     }
 
+    /**
+     * Gets a pixel as a packed int, in the {@code 0xRRGGBBAA} order used by {@link Color#getRGBA()}. The missing
+     * channels of the format are read as 255, so the RGB8 images are opaque and the A8 images are white.
+     *
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     *
+     * @return The packed RGBA value of the pixel.
+     */
+    public int getPixelRGBA(int x, int y)
+    {
+        int start = format.bytesPerPixel * (width * y + x);
+
+        switch (format)
+        {
+            case RGBA8:
+                return (imageData.readByte(start) & 0xFF) << 24
+                       | (imageData.readByte(start + 1) & 0xFF) << 16
+                       | (imageData.readByte(start + 2) & 0xFF) << 8
+                       | (imageData.readByte(start + 3) & 0xFF);
+
+            case RGB8:
+                return (imageData.readByte(start) & 0xFF) << 24
+                       | (imageData.readByte(start + 1) & 0xFF) << 16
+                       | (imageData.readByte(start + 2) & 0xFF) << 8
+                       | 0xFF;
+
+            case A8:
+                return 0xFFFFFF00 | (imageData.readByte(start) & 0xFF);
+
+            default:
+                return toByte(imageData.readFloat(start)) << 24
+                       | toByte(imageData.readFloat(start + 4)) << 16
+                       | toByte(imageData.readFloat(start + 8)) << 8
+                       | toByte(imageData.readFloat(start + 12));
+        }
+    }
+
+    /**
+     * Sets a pixel from a packed int, in the {@code 0xRRGGBBAA} order used by {@link Color#getRGBA()}. The channels
+     * that are not in the format are dropped.
+     *
+     * @param x    The x-coordinate of the pixel.
+     * @param y    The y-coordinate of the pixel.
+     * @param rgba The packed RGBA value of the pixel.
+     *
+     * @return This image for chaining calls.
+     */
+    public Image setPixelRGBA(int x, int y, int rgba)
+    {
+        int start = format.bytesPerPixel * (width * y + x);
+
+        switch (format)
+        {
+            case RGBA8:
+                imageData.writeByte(start, (byte) (rgba >>> 24))
+                        .writeByte(start + 1, (byte) (rgba >> 16))
+                        .writeByte(start + 2, (byte) (rgba >> 8))
+                        .writeByte(start + 3, (byte) rgba);
+                break;
+
+            case RGB8:
+                imageData.writeByte(start, (byte) (rgba >>> 24))
+                        .writeByte(start + 1, (byte) (rgba >> 16))
+                        .writeByte(start + 2, (byte) (rgba >> 8));
+                break;
+
+            case A8:
+                imageData.writeByte(start, (byte) rgba);
+                break;
+
+            default:
+                imageData.writeFloat(start, (rgba >>> 24) / 255f)
+                        .writeFloat(start + 4, ((rgba >> 16) & 0xFF) / 255f)
+                        .writeFloat(start + 8, ((rgba >> 8) & 0xFF) / 255f)
+                        .writeFloat(start + 12, (rgba & 0xFF) / 255f);
+        }
+
+        return this;
+    }
+
+    /**
+     * Reads a row of pixels as packed RGBA ints, see {@link #getPixelRGBA(int, int)}.
+     *
+     * @param y    The row to read.
+     * @param dest The array to read the row into, at least as long as the width of the image.
+     *
+     * @return The dest array.
+     */
+    public int[] readRow(int y, int[] dest)
+    {
+        for (int x = 0; x < width; x++)
+            dest[x] = getPixelRGBA(x, y);
+
+        return dest;
+    }
+
+    /**
+     * Reads a row of pixels as RGBA8 bytes, four bytes for every pixel irrespective of the format of the image.
+     *
+     * @param y    The row to read.
+     * @param dest The array to read the row into, at least four times as long as the width of the image.
+     *
+     * @return The dest array.
+     */
+    public byte[] readRow(int y, byte[] dest)
+    {
+        int start = width * y;
+
+        if (format == Format.RGBA8)
+        {
+            for (int i = 0; i < width * 4; i++)
+                dest[i] = imageData.readByte(start * 4 + i);
+
+            return dest;
+        }
+
+        for (int x = 0, i = 0; x < width; x++)
+        {
+            int rgba = getPixelRGBA(x, y);
+
+            dest[i++] = (byte) (rgba >>> 24);
+            dest[i++] = (byte) (rgba >> 16);
+            dest[i++] = (byte) (rgba >> 8);
+            dest[i++] = (byte) rgba;
+        }
+
+        return dest;
+    }
+
+    /**
+     * Writes a row of pixels from packed RGBA ints, see {@link #setPixelRGBA(int, int, int)}.
+     *
+     * @param y      The row to write.
+     * @param source The pixels of the row, at least as many as the width of the image.
+     *
+     * @return This image for chaining calls.
+     */
+    public Image writeRow(int y, int[] source)
+    {
+        for (int x = 0; x < width; x++)
+            setPixelRGBA(x, y, source[x]);
+
+        return this;
+    }
+
+    /**
+     * Writes a row of pixels from RGBA8 bytes, four bytes for every pixel irrespective of the format of the image.
+     *
+     * @param y      The row to write.
+     * @param source The pixels of the row, at least four times as many bytes as the width of the image.
+     *
+     * @return This image for chaining calls.
+     */
+    public Image writeRow(int y, byte[] source)
+    {
+        int start = width * y;
+
+        if (format == Format.RGBA8)
+        {
+            for (int i = 0; i < width * 4; i++)
+                imageData.writeByte(start * 4 + i, source[i]);
+
+            return this;
+        }
+
+        for (int x = 0, i = 0; x < width; x++, i += 4)
+            setPixelRGBA(x, y, (source[i] & 0xFF) << 24
+                               | (source[i + 1] & 0xFF) << 16
+                               | (source[i + 2] & 0xFF) << 8
+                               | (source[i + 3] & 0xFF));
+
+        return this;
+    }
+
     public int getWidth()
     {
         return width;
@@ -113,9 +346,14 @@ public class Image implements IResource
         return originalHeight;
     }
 
+    public Format getFormat()
+    {
+        return format;
+    }
+
     public DirectBuffer getImageData()
     {
-        return imageData.getDirectBuffer();
+        return imageData;
     }
 
     public void dispose()
@@ -126,7 +364,30 @@ public class Image implements IResource
             return;
         }
 
-        SilenceEngine.io.free(imageData.getDirectBuffer());
+        SilenceEngine.io.free(imageData);
         isDisposed = true;
     }
+
+    /**
+     * The formats of storing the pixels of an image.
+     */
+    public enum Format
+    {
+        RGBA8(4),
+        RGB8(3),
+        A8(1),
+        RGBA32F(4 * PrimitiveSize.FLOAT);
+
+        int bytesPerPixel;
+
+        Format(int bytesPerPixel)
+        {
+            this.bytesPerPixel = bytesPerPixel;
+        }
+
+        public int getBytesPerPixel()
+        {
+            return bytesPerPixel;
+        }
+    }
 }
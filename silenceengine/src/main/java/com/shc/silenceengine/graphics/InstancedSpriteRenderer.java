@@ -0,0 +1,345 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.graphics.opengl.BufferObject;
+import com.shc.silenceengine.graphics.opengl.GLContext;
+import com.shc.silenceengine.graphics.opengl.Primitive;
+import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.graphics.opengl.VertexArray;
+import com.shc.silenceengine.graphics.programs.InstancedSpriteProgram;
+import com.shc.silenceengine.io.DirectBuffer;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Transform;
+import com.shc.silenceengine.utils.MathUtils;
+import com.shc.silenceengine.utils.functional.UniCallback;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
+/**
+ * A sprite renderer that draws every sprite as an instance of a single unit quad. Instead of transforming the four
+ * corners of every sprite on the CPU, only a compact record of the sprite is written per instance, and the corners
+ * are transformed in the vertex shader. The record contains the 2D affine transform already scaled to the size of the
+ * texture, the layer of the sprite which is used as the depth, the texture rectangle as normalized shorts and the tint
+ * packed as RGBA8, which comes to {@link #INSTANCE_SIZE} bytes per sprite.
+ *
+ * <p>Instancing is not available everywhere, notably on WebGL 1.0 contexts without the {@code ANGLE_instanced_arrays}
+ * extension, so check {@link #isSupported()} and fall back to the {@link SpriteRenderer} when it is not.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class InstancedSpriteRenderer
+{
+    // The size in bytes of a single instance record
+    public static final int INSTANCE_SIZE = 40;
+
+    // The offsets of the attributes in the instance record
+    private static final int TRANSFORM_OFFSET   = 0;
+    private static final int TRANSLATION_OFFSET = 16;
+    private static final int UV_RECT_OFFSET     = 28;
+    private static final int TINT_OFFSET        = 36;
+
+    private static InstancedSpriteProgram program;
+
+    private static int instances;
+
+    private Color tempCol = new Color();
+
+    private final int maxInstances;
+
+    private DirectBuffer instanceData;
+    private int          instanceCount;
+
+    private VertexArray  vao;
+    private BufferObject cornerBuffer;
+    private BufferObject instanceBuffer;
+
+    // The byte offset in the instance buffer the instance attributes are currently pointed at
+    private int pointerOffset = -1;
+
+    private Texture currentTexture;
+
+    private boolean active;
+    private boolean disposed;
+
+    // Instantiation should happen only via static method
+    private InstancedSpriteRenderer(int maxInstances)
+    {
+        this.maxInstances = maxInstances;
+
+        instanceData = SilenceEngine.io.create(maxInstances * INSTANCE_SIZE);
+
+        vao = new VertexArray();
+        vao.bind();
+
+        // The corners of the unit quad, drawn as a triangle strip
+        DirectBuffer corners = DirectBuffer.wrap(0f, 0f, 1f, 0f, 0f, 1f, 1f, 1f);
+
+        cornerBuffer = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
+        cornerBuffer.uploadData(corners, BufferObject.Usage.STATIC_DRAW);
+
+        DirectBuffer.free(corners);
+
+        vao.pointAttribute(program.getAttribute(InstancedSpriteProgram.CORNER_ATTRIB), 2, GL_FLOAT, cornerBuffer);
+        vao.enableAttributeArray(program.getAttribute(InstancedSpriteProgram.CORNER_ATTRIB));
+
+        instanceBuffer = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
+
+        enableInstanceAttribute(InstancedSpriteProgram.TRANSFORM_ATTRIB);
+        enableInstanceAttribute(InstancedSpriteProgram.TRANSLATION_ATTRIB);
+        enableInstanceAttribute(InstancedSpriteProgram.UV_RECT_ATTRIB);
+        enableInstanceAttribute(InstancedSpriteProgram.TINT_ATTRIB);
+
+        GLContext.bindVertexArray(null);
+    }
+
+    /**
+     * @return Whether the graphics device is capable of instanced rendering.
+     */
+    public static boolean isSupported()
+    {
+        return SilenceEngine.graphics.isInstancingSupported();
+    }
+
+    public static void create(UniCallback<InstancedSpriteRenderer> onComplete)
+    {
+        create(4096, onComplete);
+    }
+
+    /**
+     * Creates an InstancedSpriteRenderer asynchronously, as the shaders are read from the resources.
+     *
+     * @param maxInstances The maximum number of sprites in a single draw call.
+     * @param onComplete   The callback to receive the created renderer.
+     */
+    public static void create(int maxInstances, UniCallback<InstancedSpriteRenderer> onComplete)
+    {
+        if (!isSupported())
+            throw new SilenceException("Instanced rendering is not supported by this graphics device");
+
+        instances++;
+
+        if (program != null && program.isValid())
+        {
+            onComplete.invoke(new InstancedSpriteRenderer(maxInstances));
+            return;
+        }
+
+        InstancedSpriteProgram.create(program ->
+        {
+            InstancedSpriteRenderer.program = program;
+            onComplete.invoke(new InstancedSpriteRenderer(maxInstances));
+        });
+    }
+
+    private void enableInstanceAttribute(String name)
+    {
+        int location = program.getAttribute(name);
+
+        if (location == -1)
+            return;
+
+        vao.enableAttributeArray(location);
+        vao.setAttributeDivisor(location, 1);
+    }
+
+    private void pointInstanceAttribute(String name, int count, int type, boolean normalized, int offset)
+    {
+        int location = program.getAttribute(name);
+
+        if (location != -1)
+            vao.pointAttribute(location, count, type, normalized, INSTANCE_SIZE, offset, instanceBuffer);
+    }
+
+    public void begin()
+    {
+        if (active)
+            throw new IllegalStateException("Renderer Already Active!");
+
+        active = true;
+        instanceCount = 0;
+
+        program.use();
+    }
+
+    public void render(Sprite sprite, Transform transform)
+    {
+        render(sprite, transform, Color.BLACK);
+    }
+
+    public void render(Sprite sprite, Transform transform, Color tint)
+    {
+        render(sprite, transform, tint, 1);
+    }
+
+    public void render(Sprite sprite, Transform transform, Color tint, float opacity)
+    {
+        render(sprite, transform, tint, opacity, transform.matrix.get(3, 2));
+    }
+
+    /**
+     * Adds a sprite to the batch. Only the 2D part of the transform is used, the layer is used as the depth instead.
+     *
+     * @param sprite    The sprite to render.
+     * @param transform The transform of the sprite.
+     * @param tint      The color that is added to the color of the sprite.
+     * @param opacity   The opacity of the sprite, multiplied with the alpha of the tint.
+     * @param layer     The depth at which the sprite is rendered.
+     */
+    public void render(Sprite sprite, Transform transform, Color tint, float opacity, float layer)
+    {
+        Texture texture = sprite.getCurrentFrame();
+
+        if (currentTexture == null || texture.getID() != currentTexture.getID())
+        {
+            flush();
+            texture.bind(0);
+            program.setUniform("tex", 0);
+        }
+
+        currentTexture = texture;
+
+        if (instanceCount == maxInstances)
+            flush();
+
+        tempCol.set(tint).a *= opacity;
+
+        final float tw = texture.getWidth() / 2;
+        final float th = texture.getHeight() / 2;
+
+        final Matrix4 m = transform.matrix;
+        final int offset = instanceCount * INSTANCE_SIZE;
+
+        instanceData.writeFloat(offset + TRANSFORM_OFFSET, m.get(0, 0) * tw)
+                .writeFloat(offset + TRANSFORM_OFFSET + 4, m.get(0, 1) * tw)
+                .writeFloat(offset + TRANSFORM_OFFSET + 8, m.get(1, 0) * th)
+                .writeFloat(offset + TRANSFORM_OFFSET + 12, m.get(1, 1) * th)
+
+                .writeFloat(offset + TRANSLATION_OFFSET, m.get(3, 0))
+                .writeFloat(offset + TRANSLATION_OFFSET + 4, m.get(3, 1))
+                .writeFloat(offset + TRANSLATION_OFFSET + 8, layer)
+
+                .writeShort(offset + UV_RECT_OFFSET, toUnsignedShort(texture.getMinU()))
+                .writeShort(offset + UV_RECT_OFFSET + 2, toUnsignedShort(texture.getMinV()))
+                .writeShort(offset + UV_RECT_OFFSET + 4, toUnsignedShort(texture.getMaxU()))
+                .writeShort(offset + UV_RECT_OFFSET + 6, toUnsignedShort(texture.getMaxV()))
+
+                .writeByte(offset + TINT_OFFSET, (byte) tempCol.getRed())
+                .writeByte(offset + TINT_OFFSET + 1, (byte) tempCol.getGreen())
+                .writeByte(offset + TINT_OFFSET + 2, (byte) tempCol.getBlue())
+                .writeByte(offset + TINT_OFFSET + 3, (byte) tempCol.getAlpha());
+
+        instanceCount++;
+    }
+
+    private static short toUnsignedShort(float value)
+    {
+        return (short) (int) (MathUtils.clamp(value, 0, 1) * 65535 + 0.5f);
+    }
+
+    /**
+     * Draws all the sprites collected so far with a single instanced draw call.
+     */
+    public void flush()
+    {
+        if (instanceCount == 0)
+            return;
+
+        program.prepareFrame();
+
+        vao.bind();
+
+        final int sizeBytes = instanceCount * INSTANCE_SIZE;
+
+        // The instance records are streamed into a ring buffer, just like the DynamicRenderer does with the vertices
+        if (instanceBuffer.getCapacity() < sizeBytes)
+            instanceBuffer.uploadData(Math.max(DynamicRenderer.STREAM_BUFFER_SIZE, 4 * instanceData.sizeBytes()),
+                    BufferObject.Usage.STREAM_DRAW);
+
+        final int offset = instanceBuffer.streamData(instanceData, sizeBytes, INSTANCE_SIZE);
+
+        // There is no base instance in GLES 3.0 and WebGL 2.0, so point the attributes at the streamed records
+        if (offset != pointerOffset)
+        {
+            pointInstanceAttribute(InstancedSpriteProgram.TRANSFORM_ATTRIB, 4, GL_FLOAT, false, offset + TRANSFORM_OFFSET);
+            pointInstanceAttribute(InstancedSpriteProgram.TRANSLATION_ATTRIB, 3, GL_FLOAT, false, offset + TRANSLATION_OFFSET);
+            pointInstanceAttribute(InstancedSpriteProgram.UV_RECT_ATTRIB, 4, GL_UNSIGNED_SHORT, true, offset + UV_RECT_OFFSET);
+            pointInstanceAttribute(InstancedSpriteProgram.TINT_ATTRIB, 4, GL_UNSIGNED_BYTE, true, offset + TINT_OFFSET);
+
+            pointerOffset = offset;
+        }
+
+        GLContext.drawArraysInstanced(vao, Primitive.TRIANGLE_STRIP, 0, 4, instanceCount);
+        GLContext.bindVertexArray(null);
+
+        instanceCount = 0;
+    }
+
+    public void end()
+    {
+        if (!active)
+            throw new IllegalStateException("Renderer not Active!");
+
+        flush();
+
+        active = false;
+        currentTexture = null;
+    }
+
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    public int getMaxInstances()
+    {
+        return maxInstances;
+    }
+
+    public void dispose()
+    {
+        if (disposed)
+            throw new SilenceException("Cannot dispose an already disposed object");
+
+        instances--;
+
+        GLContext.bindVertexArray(null);
+        vao.dispose();
+        cornerBuffer.dispose();
+        instanceBuffer.dispose();
+
+        SilenceEngine.io.free(instanceData);
+
+        if (instances == 0)
+        {
+            program.dispose();
+            program = null;
+        }
+
+        disposed = true;
+    }
+}
@@ -24,15 +24,26 @@
 
 package com.shc.silenceengine.graphics;
 
+import com.shc.silenceengine.graphics.opengl.GLException;
 import com.shc.silenceengine.graphics.opengl.Primitive;
+import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.utils.IDGenerator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
 
 /**
+ * A mesh of vertices, with optional colors, normals, tangents, bi-tangents and texture coordinates per vertex. The
+ * vertices are drawn in the order of the lists, unless the mesh has {@link #indices}, which are then the order of the
+ * vertices to draw. Use {@link #weld()} to turn a mesh with repeated vertices into an indexed mesh.
+ *
  * @author Sri Harsha Chilakapati
  */
 public class Mesh
@@ -48,6 +59,235 @@ public class Mesh
 
     public Primitive renderMode = Primitive.TRIANGLES;
 
+    // The indices of the vertices to draw, null if the vertices are drawn in the order they are in the lists
+    public int[] indices;
+
+    /**
+     * Creates a mesh out of the vertices collected by a DynamicRenderer, usually one that is used with the
+     * {@link DynamicRenderer.RenderPolicy#NO_RENDER} policy to capture geometry. Only the attributes that are stored in
+     * the active format of the renderer are copied, and the texture slots are ignored.
+     *
+     * @param renderer The renderer that has collected the vertices.
+     *
+     * @return A new, non indexed mesh with the vertices of the renderer.
+     */
+    public static Mesh fromDynamicRenderer(DynamicRenderer renderer)
+    {
+        Mesh mesh = new Mesh();
+        mesh.renderMode = renderer.getBeginMode();
+
+        VertexFormat format = renderer.getActiveFormat();
+        DirectBuffer buffer = renderer.getBuffer();
+
+        VertexFormat.Element position = format.get(VertexFormat.Attribute.POSITION);
+        VertexFormat.Element color = format.get(VertexFormat.Attribute.COLOR);
+        VertexFormat.Element texCoord = format.get(VertexFormat.Attribute.TEXCOORD);
+        VertexFormat.Element normal = format.get(VertexFormat.Attribute.NORMAL);
+
+        float[] components = new float[4];
+
+        for (int i = 0; i < renderer.getVertexCount(); i++)
+        {
+            int vertex = i * format.getStride();
+
+            if (position != null)
+            {
+                readElement(buffer, vertex, position, components, 0);
+                mesh.vertices.add(new Vector3(components[0], components[1], components[2]));
+            }
+
+            if (color != null)
+            {
+                readElement(buffer, vertex, color, components, 1);
+                mesh.colors.add(new Color(components[0], components[1], components[2], components[3]));
+            }
+
+            if (texCoord != null)
+            {
+                readElement(buffer, vertex, texCoord, components, 0);
+                mesh.uvs.add(new Vector2(components[0], components[1]));
+            }
+
+            if (normal != null)
+            {
+                readElement(buffer, vertex, normal, components, 0);
+                mesh.normals.add(new Vector3(components[0], components[1], components[2]));
+            }
+        }
+
+        return mesh;
+    }
+
+    private static void readElement(DirectBuffer buffer, int vertex, VertexFormat.Element element, float[] components,
+                                    float missing)
+    {
+        int offset = vertex + element.offset;
+        int size = VertexFormat.sizeOf(element.type);
+
+        for (int i = 0; i < components.length; i++)
+        {
+            if (i >= element.count)
+            {
+                components[i] = missing;
+                continue;
+            }
+
+            switch (element.type)
+            {
+                case GL_FLOAT:
+                    components[i] = buffer.readFloat(offset);
+                    break;
+
+                case GL_UNSIGNED_BYTE:
+                    components[i] = buffer.readByte(offset) & 0xFF;
+                    if (element.normalized) components[i] /= 0xFF;
+                    break;
+
+                case GL_UNSIGNED_SHORT:
+                    components[i] = buffer.readShort(offset) & 0xFFFF;
+                    if (element.normalized) components[i] /= 0xFFFF;
+                    break;
+
+                default:
+                    throw new GLException("Cannot read vertex components of type " + element.type);
+            }
+
+            offset += size;
+        }
+    }
+
+    public boolean isIndexed()
+    {
+        return indices != null;
+    }
+
+    /**
+     * @return The number of vertices that are drawn, which is the number of indices for an indexed mesh.
+     */
+    public int getDrawCount()
+    {
+        return indices == null ? vertices.size() : indices.length;
+    }
+
+    /**
+     * Merges the vertices that have exactly the same attributes into a single vertex, and makes this mesh an indexed
+     * mesh that references the merged vertices. A closed mesh built out of separate triangles usually ends up with a
+     * fraction of the vertices it had. Welding a mesh that is already indexed just merges its repeated vertices.
+     *
+     * @return This mesh, for chaining.
+     */
+    public Mesh weld()
+    {
+        final int vertexCount = vertices.size();
+
+        Map<VertexKey, Integer> unique = new HashMap<>();
+        int[] remap = new int[vertexCount];
+        int[] firstOccurrence = new int[vertexCount];
+
+        for (int i = 0; i < vertexCount; i++)
+        {
+            VertexKey key = new VertexKey(pack(i));
+            Integer index = unique.get(key);
+
+            if (index == null)
+            {
+                index = unique.size();
+                unique.put(key, index);
+                firstOccurrence[index] = i;
+            }
+
+            remap[i] = index;
+        }
+
+        final int uniqueCount = unique.size();
+
+        if (indices == null)
+        {
+            indices = new int[vertexCount];
+
+            for (int i = 0; i < vertexCount; i++)
+                indices[i] = remap[i];
+        }
+        else
+        {
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = remap[indices[i]];
+        }
+
+        if (uniqueCount != vertexCount)
+        {
+            compact(vertices, firstOccurrence, uniqueCount);
+            compact(colors, firstOccurrence, uniqueCount);
+            compact(normals, firstOccurrence, uniqueCount);
+            compact(tangents, firstOccurrence, uniqueCount);
+            compact(biTangents, firstOccurrence, uniqueCount);
+            compact(uvs, firstOccurrence, uniqueCount);
+        }
+
+        return this;
+    }
+
+    private float[] pack(int vertex)
+    {
+        float[] packed = new float[3 + (colors.isEmpty() ? 0 : 4) + (normals.isEmpty() ? 0 : 3)
+                                   + (tangents.isEmpty() ? 0 : 3) + (biTangents.isEmpty() ? 0 : 3)
+                                   + (uvs.isEmpty() ? 0 : 2)];
+
+        int i = pack(packed, 0, vertices.get(vertex));
+
+        if (!colors.isEmpty())
+        {
+            Color c = colors.get(vertex);
+
+            packed[i++] = c.r;
+            packed[i++] = c.g;
+            packed[i++] = c.b;
+            packed[i++] = c.a;
+        }
+
+        if (!normals.isEmpty()) i = pack(packed, i, normals.get(vertex));
+        if (!tangents.isEmpty()) i = pack(packed, i, tangents.get(vertex));
+        if (!biTangents.isEmpty()) i = pack(packed, i, biTangents.get(vertex));
+
+        if (!uvs.isEmpty())
+        {
+            Vector2 uv = uvs.get(vertex);
+
+            packed[i++] = uv.x;
+            packed[i] = uv.y;
+        }
+
+        return packed;
+    }
+
+    private static int pack(float[] packed, int i, Vector3 v)
+    {
+        packed[i++] = v.x;
+        packed[i++] = v.y;
+        packed[i++] = v.z;
+
+        return i;
+    }
+
+    private static <T> void compact(List<T> list, int[] firstOccurrence, int uniqueCount)
+    {
+        if (list.isEmpty())
+            return;
+
+        List<T> compacted = new ArrayList<>(uniqueCount);
+
+        for (int i = 0; i < uniqueCount; i++)
+            compacted.add(list.get(firstOccurrence[i]));
+
+        list.clear();
+        list.addAll(compacted);
+    }
+
+    private int vertexIndex(int i)
+    {
+        return indices == null ? i : indices[i];
+    }
+
     public void computeNormals()
     {
         normals.clear();
@@ -58,45 +298,46 @@ public class Mesh
         switch (renderMode)
         {
             case TRIANGLES:
-                for (int i = 0; i < vertices.size(); i += 3)
+                // The normals of the faces sharing a vertex of an indexed mesh are summed up, to smooth the shading
+                for (int i = 0; i + 2 < getDrawCount(); i += 3)
                 {
-                    Vector3 p1 = vertices.get(i);
-                    Vector3 p2 = vertices.get(i + 1);
-                    Vector3 p3 = vertices.get(i + 2);
+                    int i1 = vertexIndex(i);
+                    int i2 = vertexIndex(i + 1);
+                    int i3 = vertexIndex(i + 2);
 
-                    Vector3 normal = calculateNormal(p1, p2, p3);
+                    Vector3 normal = calculateNormal(vertices.get(i1), vertices.get(i2), vertices.get(i3));
 
-                    normals.get(i).add(normal);
-                    normals.get(i + 1).add(normal);
-                    normals.get(i + 2).add(normal);
+                    normals.get(i1).add(normal);
+                    normals.get(i2).add(normal);
+                    normals.get(i3).add(normal);
                 }
                 break;
 
             case TRIANGLE_STRIP:
-                for (int i = 0; i < vertices.size(); i++)
+                for (int i = 0; i < getDrawCount(); i++)
                 {
-                    Vector3 p1 = vertices.get(i);
-                    Vector3 p2 = vertices.get((i + 1) % vertices.size());
-                    Vector3 p3 = vertices.get((i + 2) % vertices.size());
+                    Vector3 p1 = vertices.get(vertexIndex(i));
+                    Vector3 p2 = vertices.get(vertexIndex((i + 1) % getDrawCount()));
+                    Vector3 p3 = vertices.get(vertexIndex((i + 2) % getDrawCount()));
 
                     Vector3 normal = calculateNormal(p1, p2, p3);
 
-                    normals.get(i).add(normal);
+                    normals.get(vertexIndex(i)).add(normal);
                 }
                 break;
 
             case TRIANGLE_FAN:
-                Vector3 p1 = vertices.get(0);
+                Vector3 p1 = vertices.get(vertexIndex(0));
 
-                for (int i = 1; i < vertices.size(); i += 2)
+                for (int i = 1; i < getDrawCount(); i += 2)
                 {
-                    Vector3 p2 = vertices.get(i);
-                    Vector3 p3 = vertices.get(i + 1);
+                    Vector3 p2 = vertices.get(vertexIndex(i));
+                    Vector3 p3 = vertices.get(vertexIndex(i + 1));
 
                     Vector3 normal = calculateNormal(p1, p2, p3);
 
-                    normals.get(i).add(normal);
-                    normals.get(i + 1).add(normal);
+                    normals.get(vertexIndex(i)).add(normal);
+                    normals.get(vertexIndex(i + 1)).add(normal);
                 }
                 break;
         }
@@ -124,4 +365,31 @@ public class Mesh
 
         return normal;
     }
+
+    /**
+     * The key of a vertex in the welding map, which compares the packed attributes bit by bit.
+     */
+    private static class VertexKey
+    {
+        private final float[] attributes;
+        private final int     hashCode;
+
+        VertexKey(float[] attributes)
+        {
+            this.attributes = attributes;
+            this.hashCode = Arrays.hashCode(attributes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof VertexKey && Arrays.equals(attributes, ((VertexKey) o).attributes);
+        }
+    }
 }
@@ -0,0 +1,498 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.graphics.opengl.Primitive;
+import com.shc.silenceengine.math.Vector3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reorders the triangles and vertices of indexed triangle meshes so that they render faster, without changing what is
+ * rendered. This is meant to be run once when the static geometry is built or loaded, before it is turned into a
+ * {@link MeshRenderer}. The passes are
+ *
+ * <ul>
+ * <li>Vertex cache optimization, which reorders the triangles with the Tipsify algorithm so that the vertices that are
+ * already transformed are reused from the post transform cache of the GPU.</li>
+ * <li>Overdraw optimization, which splits the triangles into the clusters found by the cache optimization, and draws
+ * the clusters that face outwards first, so that more of the hidden pixels are rejected by the depth test.</li>
+ * <li>Vertex fetch optimization, which reorders the vertices in the order they are first used, so that the vertex
+ * fetches are more or less sequential.</li>
+ * </ul>
+ *
+ * <p>The efficiency of the cache is measured as ACMR, the average cache miss ratio, which is the number of vertices
+ * that are transformed per triangle. It is 3 in the worst case, and approaches 0.5 for large regular meshes.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public final class MeshOptimizer
+{
+    // The size of the simulated post transform cache, a conservative estimate for most of the GPUs
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    // The maximum factor by which the overdraw optimization is allowed to increase the ACMR
+    public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05f;
+
+    private MeshOptimizer()
+    {
+    }
+
+    /**
+     * Runs all the passes on a mesh, with the default cache size and overdraw threshold. Meshes that are not indexed
+     * are welded first.
+     *
+     * @param mesh The triangle mesh to optimize.
+     *
+     * @return The report of the cache efficiency before and after the optimization.
+     */
+    public static Report optimize(Mesh mesh)
+    {
+        return optimize(mesh, DEFAULT_CACHE_SIZE, DEFAULT_OVERDRAW_THRESHOLD);
+    }
+
+    /**
+     * Runs all the passes on a mesh. Meshes that are not indexed are welded first.
+     *
+     * @param mesh              The triangle mesh to optimize.
+     * @param cacheSize         The size of the post transform cache to optimize for.
+     * @param overdrawThreshold The maximum factor the overdraw optimization may increase the ACMR by, or a value less
+     *                          than 1 to skip the overdraw optimization.
+     *
+     * @return The report of the cache efficiency before and after the optimization.
+     */
+    public static Report optimize(Mesh mesh, int cacheSize, float overdrawThreshold)
+    {
+        checkTriangles(mesh);
+
+        if (!mesh.isIndexed())
+            mesh.weld();
+
+        final int vertexCount = mesh.vertices.size();
+        final float acmrBefore = computeACMR(mesh.indices, vertexCount, cacheSize);
+
+        optimizeVertexCache(mesh, cacheSize);
+
+        if (overdrawThreshold >= 1)
+            optimizeOverdraw(mesh, cacheSize, overdrawThreshold);
+
+        optimizeVertexFetch(mesh);
+
+        return new Report(acmrBefore, computeACMR(mesh.indices, vertexCount, cacheSize), vertexCount,
+                mesh.indices.length / 3);
+    }
+
+    /**
+     * Reorders the triangles of an indexed mesh for the post transform vertex cache, using the Tipsify algorithm by
+     * Sander, Nehab and Barczak. The winding of the triangles is kept.
+     *
+     * @param mesh      The indexed triangle mesh.
+     * @param cacheSize The size of the cache to optimize for.
+     */
+    public static void optimizeVertexCache(Mesh mesh, int cacheSize)
+    {
+        checkIndexedTriangles(mesh);
+        mesh.indices = tipsify(mesh.indices, mesh.vertices.size(), cacheSize);
+    }
+
+    /**
+     * Reorders the triangles of an indexed mesh to reduce overdraw. The mesh should have been optimized for the vertex
+     * cache first, the clusters of triangles that the cache optimization produces are kept intact, and are sorted so
+     * that the ones facing away from the center of the mesh are drawn first. If the ACMR gets worse than the threshold
+     * allows, the order is left unchanged.
+     *
+     * @param mesh      The indexed triangle mesh.
+     * @param cacheSize The size of the cache to optimize for.
+     * @param threshold The maximum factor the ACMR may increase by.
+     */
+    public static void optimizeOverdraw(Mesh mesh, int cacheSize, float threshold)
+    {
+        checkIndexedTriangles(mesh);
+
+        final int[] indices = mesh.indices;
+        final int vertexCount = mesh.vertices.size();
+        final int triangleCount = indices.length / 3;
+
+        if (triangleCount == 0)
+            return;
+
+        // Find the clusters in the current order, which starts at the triangles where the cache is cold again
+        List<Integer> clusterStarts = new ArrayList<>();
+        int[] cachedAt = new int[vertexCount];
+        Arrays.fill(cachedAt, -cacheSize - 1);
+        int time = 0;
+
+        for (int t = 0; t < triangleCount; t++)
+        {
+            int misses = 0;
+
+            for (int k = 0; k < 3; k++)
+            {
+                int v = indices[t * 3 + k];
+
+                if (time - cachedAt[v] > cacheSize)
+                {
+                    cachedAt[v] = time++;
+                    misses++;
+                }
+            }
+
+            if (t == 0 || misses == 3)
+                clusterStarts.add(t);
+        }
+
+        final int clusterCount = clusterStarts.size();
+
+        if (clusterCount < 2)
+            return;
+
+        Vector3 meshCenter = new Vector3();
+
+        for (Vector3 v : mesh.vertices)
+            meshCenter.add(v);
+
+        meshCenter.scale(1f / vertexCount);
+
+        // The sort key of every cluster is how much its area weighted normal points away from the center of the mesh
+        final float[] keys = new float[clusterCount];
+        Integer[] order = new Integer[clusterCount];
+
+        Vector3 center = new Vector3();
+        Vector3 normal = new Vector3();
+        Vector3 u = new Vector3();
+        Vector3 w = new Vector3();
+
+        for (int c = 0; c < clusterCount; c++)
+        {
+            int start = clusterStarts.get(c);
+            int end = c + 1 < clusterCount ? clusterStarts.get(c + 1) : triangleCount;
+
+            center.set(0, 0, 0);
+            normal.set(0, 0, 0);
+
+            for (int t = start; t < end; t++)
+            {
+                Vector3 p1 = mesh.vertices.get(indices[t * 3]);
+                Vector3 p2 = mesh.vertices.get(indices[t * 3 + 1]);
+                Vector3 p3 = mesh.vertices.get(indices[t * 3 + 2]);
+
+                center.add(p1).add(p2).add(p3);
+
+                u.set(p2).subtract(p1);
+                w.set(p3).subtract(p1);
+                normal.add(u.cross(w));
+            }
+
+            center.scale(1f / (3 * (end - start))).subtract(meshCenter);
+
+            keys[c] = center.dot(normal);
+            order[c] = c;
+        }
+
+        Arrays.sort(order, (a, b) -> Float.compare(keys[b], keys[a]));
+
+        int[] sorted = new int[indices.length];
+        int index = 0;
+
+        for (int c : order)
+        {
+            int start = clusterStarts.get(c);
+            int end = c + 1 < clusterCount ? clusterStarts.get(c + 1) : triangleCount;
+
+            for (int i = start * 3; i < end * 3; i++)
+                sorted[index++] = indices[i];
+        }
+
+        if (computeACMR(sorted, vertexCount, cacheSize) <= computeACMR(indices, vertexCount, cacheSize) * threshold)
+            mesh.indices = sorted;
+    }
+
+    /**
+     * Reorders the vertices of an indexed mesh in the order they are first referenced by the indices, and updates the
+     * indices to match. The vertices that are not referenced at all are moved to the end.
+     *
+     * @param mesh The indexed mesh.
+     */
+    public static void optimizeVertexFetch(Mesh mesh)
+    {
+        if (!mesh.isIndexed())
+            throw new SilenceException("The mesh should be indexed to optimize the vertex fetches");
+
+        final int vertexCount = mesh.vertices.size();
+
+        int[] remap = new int[vertexCount];
+        int[] newToOld = new int[vertexCount];
+        Arrays.fill(remap, -1);
+
+        int next = 0;
+
+        for (int i = 0; i < mesh.indices.length; i++)
+        {
+            int v = mesh.indices[i];
+
+            if (remap[v] == -1)
+            {
+                remap[v] = next;
+                newToOld[next++] = v;
+            }
+
+            mesh.indices[i] = remap[v];
+        }
+
+        for (int v = 0; v < vertexCount; v++)
+        {
+            if (remap[v] == -1)
+            {
+                remap[v] = next;
+                newToOld[next++] = v;
+            }
+        }
+
+        permute(mesh.vertices, newToOld);
+        permute(mesh.colors, newToOld);
+        permute(mesh.normals, newToOld);
+        permute(mesh.tangents, newToOld);
+        permute(mesh.biTangents, newToOld);
+        permute(mesh.uvs, newToOld);
+    }
+
+    /**
+     * Simulates a FIFO post transform cache to compute the average cache miss ratio of a list of triangles.
+     *
+     * @param indices     The indices of the triangles.
+     * @param vertexCount The number of vertices referenced by the indices.
+     * @param cacheSize   The size of the cache.
+     *
+     * @return The number of vertices transformed per triangle, between 0.5 and 3 in practice.
+     */
+    public static float computeACMR(int[] indices, int vertexCount, int cacheSize)
+    {
+        final int triangleCount = indices.length / 3;
+
+        if (triangleCount == 0)
+            return 0;
+
+        int[] cachedAt = new int[vertexCount];
+        Arrays.fill(cachedAt, -cacheSize - 1);
+
+        int misses = 0;
+
+        for (int i = 0; i < triangleCount * 3; i++)
+        {
+            int v = indices[i];
+
+            // A vertex is evicted after cacheSize other vertices have entered the cache after it
+            if (misses - cachedAt[v] > cacheSize)
+                cachedAt[v] = misses++;
+        }
+
+        return (float) misses / triangleCount;
+    }
+
+    private static int[] tipsify(int[] indices, int vertexCount, int cacheSize)
+    {
+        final int triangleCount = indices.length / 3;
+
+        // The triangles that use every vertex, in a compressed adjacency list
+        int[] liveTriangles = new int[vertexCount];
+
+        for (int i = 0; i < triangleCount * 3; i++)
+            liveTriangles[indices[i]]++;
+
+        int[] adjacencyOffsets = new int[vertexCount + 1];
+
+        for (int v = 0; v < vertexCount; v++)
+            adjacencyOffsets[v + 1] = adjacencyOffsets[v] + liveTriangles[v];
+
+        int[] adjacency = new int[adjacencyOffsets[vertexCount]];
+        int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+
+        for (int t = 0; t < triangleCount; t++)
+            for (int k = 0; k < 3; k++)
+                adjacency[fill[indices[t * 3 + k]]++] = t;
+
+        int[] cacheTime = new int[vertexCount];
+        boolean[] emitted = new boolean[triangleCount];
+
+        int[] deadEnds = new int[triangleCount * 3];
+        int deadEndCount = 0;
+
+        int[] candidates = new int[triangleCount * 3];
+
+        int[] output = new int[triangleCount * 3];
+        int outputCount = 0;
+
+        int time = cacheSize + 1;
+        int cursor = 0;
+        int fanning = triangleCount > 0 ? indices[0] : -1;
+
+        while (fanning >= 0)
+        {
+            int candidateCount = 0;
+
+            // Emit all the remaining triangles around the fanning vertex
+            for (int a = adjacencyOffsets[fanning]; a < adjacencyOffsets[fanning + 1]; a++)
+            {
+                int t = adjacency[a];
+
+                if (emitted[t])
+                    continue;
+
+                for (int k = 0; k < 3; k++)
+                {
+                    int v = indices[t * 3 + k];
+
+                    output[outputCount++] = v;
+                    deadEnds[deadEndCount++] = v;
+                    candidates[candidateCount++] = v;
+
+                    liveTriangles[v]--;
+
+                    if (time - cacheTime[v] > cacheSize)
+                        cacheTime[v] = time++;
+                }
+
+                emitted[t] = true;
+            }
+
+            // Pick the candidate that will still be in the cache, and has the most triangles left
+            int next = -1;
+            int best = -1;
+
+            for (int c = 0; c < candidateCount; c++)
+            {
+                int v = candidates[c];
+
+                if (liveTriangles[v] <= 0)
+                    continue;
+
+                int priority = 0;
+
+                if (time - cacheTime[v] + 2 * liveTriangles[v] <= cacheSize)
+                    priority = time - cacheTime[v];
+
+                if (priority > best)
+                {
+                    best = priority;
+                    next = v;
+                }
+            }
+
+            if (next == -1)
+            {
+                // Dead end, continue from a recently used vertex, or from the next vertex in order
+                while (deadEndCount > 0 && next == -1)
+                {
+                    int v = deadEnds[--deadEndCount];
+
+                    if (liveTriangles[v] > 0)
+                        next = v;
+                }
+
+                while (next == -1 && cursor < vertexCount)
+                {
+                    if (liveTriangles[cursor] > 0)
+                        next = cursor;
+
+                    cursor++;
+                }
+            }
+
+            fanning = next;
+        }
+
+        return output;
+    }
+
+    private static <T> void permute(List<T> list, int[] newToOld)
+    {
+        if (list.isEmpty())
+            return;
+
+        List<T> permuted = new ArrayList<>(list.size());
+
+        for (int i = 0; i < list.size(); i++)
+            permuted.add(list.get(newToOld[i]));
+
+        list.clear();
+        list.addAll(permuted);
+    }
+
+    private static void checkTriangles(Mesh mesh)
+    {
+        if (mesh.renderMode != Primitive.TRIANGLES)
+            throw new SilenceException("Only the meshes made of TRIANGLES can be optimized");
+    }
+
+    private static void checkIndexedTriangles(Mesh mesh)
+    {
+        checkTriangles(mesh);
+
+        if (!mesh.isIndexed())
+            throw new SilenceException("The mesh should be indexed to reorder its triangles");
+    }
+
+    /**
+     * The efficiency of the vertex cache before and after an optimization.
+     */
+    public static class Report
+    {
+        public final float acmrBefore;
+        public final float acmrAfter;
+
+        public final int vertexCount;
+        public final int triangleCount;
+
+        Report(float acmrBefore, float acmrAfter, int vertexCount, int triangleCount)
+        {
+            this.acmrBefore = acmrBefore;
+            this.acmrAfter = acmrAfter;
+            this.vertexCount = vertexCount;
+            this.triangleCount = triangleCount;
+        }
+
+        /**
+         * @return The average transform to vertex ratio after the optimization, 1 is the ideal value.
+         */
+        public float getATVR()
+        {
+            return vertexCount == 0 ? 0 : acmrAfter * triangleCount / vertexCount;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "MeshOptimizer.Report{" +
+                   "acmrBefore=" + acmrBefore +
+                   ", acmrAfter=" + acmrAfter +
+                   ", vertexCount=" + vertexCount +
+                   ", triangleCount=" + triangleCount +
+                   '}';
+        }
+    }
+}
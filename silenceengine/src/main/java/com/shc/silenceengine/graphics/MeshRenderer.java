@@ -58,10 +58,19 @@ public class MeshRenderer implements IResource
     public final BufferObject tangentBuffer;
     public final BufferObject biTangentBuffer;
 
+    // The indices of the vertices, null if the vertices are drawn in order
+    public final BufferObject indexBuffer;
+    public final int          indexCount;
+    public final int          indexType;
+
     public final Primitive renderMode;
     public final int       vertexCount;
 
+    // The format of the interleaved data in the vertex buffer, null if each attribute has its own buffer
+    public final VertexFormat vertexFormat;
+
     public int vertexLocation    = -1;
+    public int colorLocation     = -1;
     public int normalLocation    = -1;
     public int uvLocation        = -1;
     public int tangentLocation   = -1;
@@ -72,41 +81,29 @@ public class MeshRenderer implements IResource
         vertexArray = new VertexArray();
         vertexArray.bind();
 
-        hasColors = renderer.getColorLocation() != -1;
-        hasNormals = renderer.getNormalLocation() != -1;
-        hasTexCoords = renderer.getTexCoordLocation() != -1;
+        // The data of the renderer is interleaved, so it is uploaded as is into a single buffer
+        vertexFormat = renderer.getActiveFormat();
+
+        hasColors = vertexFormat.has(VertexFormat.Attribute.COLOR);
+        hasNormals = vertexFormat.has(VertexFormat.Attribute.NORMAL);
+        hasTexCoords = vertexFormat.has(VertexFormat.Attribute.TEXCOORD);
 
         hasTangents = hasBiTangents = false;
 
         vertexBuffer = new BufferObject(BufferObject.Target.ARRAY_BUFFER);
-        colorBuffer = hasColors ? new BufferObject(BufferObject.Target.ARRAY_BUFFER) : null;
-        normalBuffer = hasNormals ? new BufferObject(BufferObject.Target.ARRAY_BUFFER) : null;
-        texCoordBuffer = hasTexCoords ? new BufferObject(BufferObject.Target.ARRAY_BUFFER) : null;
-
+        colorBuffer = normalBuffer = texCoordBuffer = null;
         tangentBuffer = biTangentBuffer = null;
 
         vertexCount = renderer.getVertexCount();
 
-        vertexBuffer.uploadData(vertexCount * DynamicRenderer.SIZE_OF_VERTEX, BufferObject.Usage.STATIC_DRAW);
-        vertexBuffer.uploadSubData(renderer.getVBuffer(), 0, vertexCount * DynamicRenderer.SIZE_OF_VERTEX);
+        indexBuffer = null;
+        indexCount = 0;
+        indexType = GL_UNSIGNED_SHORT;
 
-        if (hasNormals)
-        {
-            normalBuffer.uploadData(vertexCount * DynamicRenderer.SIZE_OF_NORMAL, BufferObject.Usage.STATIC_DRAW);
-            normalBuffer.uploadSubData(renderer.getVBuffer(), 0, vertexCount * DynamicRenderer.SIZE_OF_NORMAL);
-        }
+        final int sizeBytes = vertexCount * vertexFormat.getStride();
 
-        if (hasTexCoords)
-        {
-            texCoordBuffer.uploadData(vertexCount * DynamicRenderer.SIZE_OF_TEXCOORD, BufferObject.Usage.STATIC_DRAW);
-            texCoordBuffer.uploadSubData(renderer.getVBuffer(), 0, vertexCount * DynamicRenderer.SIZE_OF_TEXCOORD);
-        }
-
-        if (hasColors)
-        {
-            colorBuffer.uploadData(vertexCount * DynamicRenderer.SIZE_OF_COLOR, BufferObject.Usage.STATIC_DRAW);
-            colorBuffer.uploadSubData(renderer.getVBuffer(), 0, vertexCount * DynamicRenderer.SIZE_OF_COLOR);
-        }
+        vertexBuffer.uploadData(sizeBytes, BufferObject.Usage.STATIC_DRAW);
+        vertexBuffer.uploadSubData(renderer.getBuffer(), 0, sizeBytes);
 
         renderMode = renderer.getBeginMode();
     }
@@ -116,6 +113,8 @@ public class MeshRenderer implements IResource
         vertexArray = new VertexArray();
         vertexArray.bind();
 
+        vertexFormat = null;
+
         hasColors = !mesh.colors.isEmpty();
         hasNormals = !mesh.normals.isEmpty();
         hasTexCoords = !mesh.uvs.isEmpty();
@@ -129,65 +128,110 @@ public class MeshRenderer implements IResource
         tangentBuffer = hasTangents ? new BufferObject(BufferObject.Target.ARRAY_BUFFER) : null;
         biTangentBuffer = hasBiTangents ? new BufferObject(BufferObject.Target.ARRAY_BUFFER) : null;
 
-        uploadTo4Layout(mesh.vertices, vertexBuffer, 1);
-        if (hasNormals) uploadTo4Layout(mesh.normals, normalBuffer, 0);
-        if (hasTangents) uploadTo4Layout(mesh.tangents, tangentBuffer, 0);
-        if (hasBiTangents) uploadTo4Layout(mesh.biTangents, biTangentBuffer, 0);
-        if (hasTexCoords) uploadTo2Layout(mesh.uvs, tangentBuffer);
-        if (hasColors) uploadTo4Layout(mesh.colors, colorBuffer);
-
         vertexCount = mesh.vertices.size();
 
+        // A single scratch buffer that is large enough for any of the attributes is shared by all the uploads
+        DirectBuffer buffer = DirectBuffer.create(Math.max(1, vertexCount * 4 * PrimitiveSize.FLOAT));
+
+        uploadTo4Layout(mesh.vertices, vertexBuffer, 1, buffer);
+        if (hasNormals) uploadTo4Layout(mesh.normals, normalBuffer, 0, buffer);
+        if (hasTangents) uploadTo4Layout(mesh.tangents, tangentBuffer, 0, buffer);
+        if (hasBiTangents) uploadTo4Layout(mesh.biTangents, biTangentBuffer, 0, buffer);
+        if (hasTexCoords) uploadTo2Layout(mesh.uvs, texCoordBuffer, buffer);
+        if (hasColors) uploadTo4Layout(mesh.colors, colorBuffer, buffer);
+
+        DirectBuffer.free(buffer);
+
+        if (mesh.isIndexed())
+        {
+            indexCount = mesh.indices.length;
+
+            // Short indices take half the memory, and are enough for most of the meshes
+            indexType = vertexCount <= 0x10000 ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+            final int indexSize = indexType == GL_UNSIGNED_SHORT ? PrimitiveSize.SHORT : PrimitiveSize.INT;
+
+            DirectBuffer indexData = DirectBuffer.create(Math.max(1, indexCount * indexSize));
+
+            for (int i = 0; i < indexCount; i++)
+            {
+                if (indexType == GL_UNSIGNED_SHORT)
+                    indexData.writeShort(i * indexSize, (short) mesh.indices[i]);
+                else
+                    indexData.writeInt(i * indexSize, mesh.indices[i]);
+            }
+
+            // The element array buffer is bound while our VertexArray is bound, so it becomes a part of its state
+            indexBuffer = new BufferObject(BufferObject.Target.ELEMENT_ARRAY_BUFFER);
+            indexBuffer.bind(true);
+            indexBuffer.uploadData(indexData, BufferObject.Usage.STATIC_DRAW);
+
+            DirectBuffer.free(indexData);
+        }
+        else
+        {
+            indexBuffer = null;
+            indexCount = 0;
+            indexType = GL_UNSIGNED_SHORT;
+        }
+
         renderMode = mesh.renderMode;
     }
 
-    private void uploadTo4Layout(List<Vector3> data, BufferObject bufferObject, int w)
+    private void uploadTo4Layout(List<Vector3> data, BufferObject bufferObject, int w, DirectBuffer buffer)
     {
-        DirectBuffer buffer = DirectBuffer.create(data.size() * 4 * PrimitiveSize.FLOAT);
-
         int i = 0;
 
         for (Vector3 v : data)
-            buffer.writeFloat(i++, v.x)
-                    .writeFloat(i++, v.y)
-                    .writeFloat(i++, v.z)
-                    .writeFloat(i++, w);
+        {
+            buffer.writeFloat(i, v.x)
+                    .writeFloat(i + PrimitiveSize.FLOAT, v.y)
+                    .writeFloat(i + 2 * PrimitiveSize.FLOAT, v.z)
+                    .writeFloat(i + 3 * PrimitiveSize.FLOAT, w);
 
-        bufferObject.uploadData(buffer, BufferObject.Usage.STATIC_DRAW);
+            i += 4 * PrimitiveSize.FLOAT;
+        }
 
-        DirectBuffer.free(buffer);
+        upload(bufferObject, buffer, i);
     }
 
-    private void uploadTo4Layout(List<Color> data, BufferObject bufferObject)
+    private void uploadTo4Layout(List<Color> data, BufferObject bufferObject, DirectBuffer buffer)
     {
-        DirectBuffer buffer = DirectBuffer.create(data.size() * 4 * PrimitiveSize.FLOAT);
-
         int i = 0;
 
         for (Color c : data)
-            buffer.writeFloat(i++, c.r)
-                    .writeFloat(i++, c.g)
-                    .writeFloat(i++, c.b)
-                    .writeFloat(i++, c.a);
+        {
+            buffer.writeFloat(i, c.r)
+                    .writeFloat(i + PrimitiveSize.FLOAT, c.g)
+                    .writeFloat(i + 2 * PrimitiveSize.FLOAT, c.b)
+                    .writeFloat(i + 3 * PrimitiveSize.FLOAT, c.a);
 
-        bufferObject.uploadData(buffer, BufferObject.Usage.STATIC_DRAW);
+            i += 4 * PrimitiveSize.FLOAT;
+        }
 
-        DirectBuffer.free(buffer);
+        upload(bufferObject, buffer, i);
     }
 
-    private void uploadTo2Layout(List<Vector2> data, BufferObject bufferObject)
+    private void uploadTo2Layout(List<Vector2> data, BufferObject bufferObject, DirectBuffer buffer)
     {
-        DirectBuffer buffer = DirectBuffer.create(data.size() * 2 * PrimitiveSize.FLOAT);
-
         int i = 0;
 
         for (Vector2 v : data)
-            buffer.writeFloat(i++, v.x)
-                    .writeFloat(i++, v.y);
+        {
+            buffer.writeFloat(i, v.x)
+                    .writeFloat(i + PrimitiveSize.FLOAT, v.y);
 
-        bufferObject.uploadData(buffer, BufferObject.Usage.STATIC_DRAW);
+            i += 2 * PrimitiveSize.FLOAT;
+        }
 
-        DirectBuffer.free(buffer);
+        upload(bufferObject, buffer, i);
+    }
+
+    private void upload(BufferObject bufferObject, DirectBuffer buffer, int sizeBytes)
+    {
+        bufferObject.uploadData(sizeBytes, BufferObject.Usage.STATIC_DRAW);
+
+        if (sizeBytes > 0)
+            bufferObject.uploadSubData(buffer, 0, sizeBytes);
     }
 
     public void render(Material material)
@@ -196,37 +240,58 @@ public class MeshRenderer implements IResource
 
         vertexArray.bind();
 
-        if (vertexLocation != -1) vertexArray.pointAttribute(vertexLocation, 4, GL_FLOAT, vertexBuffer);
-        if (normalLocation != -1) vertexArray.pointAttribute(normalLocation, 4, GL_FLOAT, normalBuffer);
-        if (uvLocation != -1) vertexArray.pointAttribute(uvLocation, 2, GL_FLOAT, texCoordBuffer);
-        if (tangentLocation != -1) vertexArray.pointAttribute(tangentLocation, 4, GL_FLOAT, tangentBuffer);
-        if (biTangentLocation != -1) vertexArray.pointAttribute(biTangentLocation, 4, GL_FLOAT, biTangentBuffer);
+        if (vertexFormat != null)
+        {
+            pointInterleaved(vertexLocation, VertexFormat.Attribute.POSITION);
+            pointInterleaved(colorLocation, VertexFormat.Attribute.COLOR);
+            pointInterleaved(normalLocation, VertexFormat.Attribute.NORMAL);
+            pointInterleaved(uvLocation, VertexFormat.Attribute.TEXCOORD);
+        }
+        else
+        {
+            if (vertexLocation != -1) vertexArray.pointAttribute(vertexLocation, 4, GL_FLOAT, vertexBuffer);
+            if (colorLocation != -1) vertexArray.pointAttribute(colorLocation, 4, GL_FLOAT, colorBuffer);
+            if (normalLocation != -1) vertexArray.pointAttribute(normalLocation, 4, GL_FLOAT, normalBuffer);
+            if (uvLocation != -1) vertexArray.pointAttribute(uvLocation, 2, GL_FLOAT, texCoordBuffer);
+            if (tangentLocation != -1) vertexArray.pointAttribute(tangentLocation, 4, GL_FLOAT, tangentBuffer);
+            if (biTangentLocation != -1) vertexArray.pointAttribute(biTangentLocation, 4, GL_FLOAT, biTangentBuffer);
+        }
 
+        // The attribute arrays are a part of the state of our own VertexArray, so they stay enabled across the frames,
+        // and enabling them again is elided by the VertexArray itself.
         if (vertexLocation != -1) vertexArray.enableAttributeArray(vertexLocation);
+        if (colorLocation != -1) vertexArray.enableAttributeArray(colorLocation);
         if (normalLocation != -1) vertexArray.enableAttributeArray(normalLocation);
         if (uvLocation != -1) vertexArray.enableAttributeArray(uvLocation);
         if (tangentLocation != -1) vertexArray.enableAttributeArray(tangentLocation);
         if (biTangentLocation != -1) vertexArray.enableAttributeArray(biTangentLocation);
 
-        GLContext.drawArrays(vertexArray, renderMode, 0, vertexCount);
+        if (indexBuffer != null)
+            GLContext.drawElements(vertexArray, renderMode, 0, indexCount, indexType);
+        else
+            GLContext.drawArrays(vertexArray, renderMode, 0, vertexCount);
+    }
+
+    private void pointInterleaved(int location, VertexFormat.Attribute attribute)
+    {
+        VertexFormat.Element element = vertexFormat.get(attribute);
 
-        if (vertexLocation != -1) vertexArray.disableAttributeArray(vertexLocation);
-        if (normalLocation != -1) vertexArray.disableAttributeArray(normalLocation);
-        if (uvLocation != -1) vertexArray.disableAttributeArray(uvLocation);
-        if (tangentLocation != -1) vertexArray.disableAttributeArray(tangentLocation);
-        if (biTangentLocation != -1) vertexArray.disableAttributeArray(biTangentLocation);
+        if (location == -1 || element == null)
+            return;
 
-        GLContext.bindVertexArray(null);
+        vertexArray.pointAttribute(location, element.count, element.type, element.normalized,
+                vertexFormat.getStride(), element.offset, vertexBuffer);
     }
 
     public void dispose()
     {
         vertexArray.dispose();
         vertexBuffer.dispose();
-        if (hasColors) colorBuffer.dispose();
-        if (hasNormals) normalBuffer.dispose();
-        if (hasTexCoords) texCoordBuffer.dispose();
-        if (hasTangents) tangentBuffer.dispose();
-        if (hasBiTangents) biTangentBuffer.dispose();
+        if (colorBuffer != null) colorBuffer.dispose();
+        if (normalBuffer != null) normalBuffer.dispose();
+        if (texCoordBuffer != null) texCoordBuffer.dispose();
+        if (tangentBuffer != null) tangentBuffer.dispose();
+        if (biTangentBuffer != null) biTangentBuffer.dispose();
+        if (indexBuffer != null) indexBuffer.dispose();
     }
 }
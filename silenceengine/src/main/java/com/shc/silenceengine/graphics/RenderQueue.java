@@ -0,0 +1,580 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.graphics.opengl.GLContext;
+import com.shc.silenceengine.graphics.opengl.Primitive;
+import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.graphics.programs.DynamicProgram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
+/**
+ * <p>A queue of draw commands that are recorded first and executed later, in an order that needs the fewest state
+ * changes. Every command carries the program, texture and blend mode it is drawn with, a layer and a depth, and a range
+ * of triangle vertices that are stored in an arena shared by all the commands of the queue.</p>
+ *
+ * <p>When the queue is executed, the commands are sorted by a 64-bit key. The layer is the most significant part of
+ * the key, so layers are always drawn in order. Within a layer the opaque commands come first, grouped by program,
+ * texture and blend mode, and then front to back. The translucent commands follow from back to front, which is needed
+ * to blend them correctly, and only commands with equal depth are grouped by state. Commands with equal keys keep the
+ * order they were submitted in. Consecutive commands with the same state are merged into a single batch of the
+ * renderer.</p>
+ *
+ * <pre>
+ *     queue.clear();
+ *
+ *     queue.beginCommand(program, texture, RenderQueue.BlendMode.ALPHA, layer, depth);
+ *     {
+ *         queue.vertex(x, y);
+ *         queue.texCoord(u, v);
+ *         ...
+ *     }
+ *     queue.endCommand();
+ *
+ *     queue.execute();
+ * </pre>
+ *
+ * <p>The number of draw calls and state changes of the last execution, and of the same commands in the order they were
+ * submitted, can be queried to see how much the sorting saved.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class RenderQueue
+{
+    private static final int FLOATS_PER_POSITION = 3;
+    private static final int FLOATS_PER_TEXCOORD = 2;
+
+    private static final BlendMode[] BLEND_MODES = BlendMode.values();
+
+    private DynamicRenderer renderer;
+
+    // The state of the commands, indexed by the order they were submitted in
+    private int[]  commandProgram = new int[64];
+    private int[]  commandTexture = new int[64];
+    private int[]  commandBlend   = new int[64];
+    private int[]  commandFirst   = new int[64];
+    private int[]  commandCount   = new int[64];
+    private long[] commandKey     = new long[64];
+
+    private int commands;
+
+    // The programs and textures used this frame, the commands refer to them by their index
+    private List<DynamicProgram> programs = new ArrayList<>();
+    private List<Texture>        textures = new ArrayList<>();
+
+    private int lastProgram = -1;
+    private int lastTexture = -1;
+
+    // The vertex arena, shared by all the commands
+    private float[] positions = new float[1024 * FLOATS_PER_POSITION];
+    private float[] texCoords = new float[1024 * FLOATS_PER_TEXCOORD];
+    private int[]   colors    = new int[1024];
+
+    private int vertexCount;
+
+    // The counts of the vertex attributes of the command being recorded
+    private boolean recording;
+    private int     commandVertices;
+    private int     commandTexCoords;
+    private int     commandColors;
+
+    // Scratch arrays for sorting
+    private int[]  order     = new int[64];
+    private int[]  tempOrder = new int[64];
+    private long[] keys      = new long[64];
+    private long[] tempKeys  = new long[64];
+    private int[]  histogram = new int[256];
+
+    // Statistics of the last execution
+    private int drawCalls;
+    private int stateChanges;
+    private int naiveDrawCalls;
+    private int naiveStateChanges;
+
+    public RenderQueue(DynamicRenderer renderer)
+    {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Discards all the recorded commands and their vertices.
+     */
+    public void clear()
+    {
+        if (recording)
+            throw new SilenceException("RenderQueue cannot be cleared while a command is being recorded");
+
+        commands = 0;
+        vertexCount = 0;
+
+        programs.clear();
+        textures.clear();
+
+        lastProgram = -1;
+        lastTexture = -1;
+    }
+
+    public void beginCommand(DynamicProgram program, Texture texture, BlendMode blendMode, int layer, float depth)
+    {
+        if (recording)
+            throw new SilenceException("RenderQueue is already recording a command");
+
+        if (program == null)
+            throw new SilenceException("A command in the RenderQueue needs a program");
+
+        recording = true;
+
+        if (commands == commandKey.length)
+            growCommands();
+
+        int programIndex = indexOf(programs, program, lastProgram);
+        int textureIndex = indexOf(textures, texture == null ? Texture.EMPTY : texture, lastTexture);
+
+        lastProgram = programIndex;
+        lastTexture = textureIndex;
+
+        commandProgram[commands] = programIndex;
+        commandTexture[commands] = textureIndex;
+        commandBlend[commands] = blendMode.ordinal();
+        commandFirst[commands] = vertexCount;
+        commandKey[commands] = createKey(programIndex, textureIndex, blendMode, layer, depth);
+
+        commandVertices = commandTexCoords = commandColors = 0;
+    }
+
+    public void vertex(float x, float y)
+    {
+        vertex(x, y, 0);
+    }
+
+    public void vertex(float x, float y, float z)
+    {
+        checkRecording();
+        ensureVertexCapacity(commandVertices + 1);
+
+        int index = (commandFirst[commands] + commandVertices++) * FLOATS_PER_POSITION;
+
+        positions[index] = x;
+        positions[index + 1] = y;
+        positions[index + 2] = z;
+    }
+
+    public void texCoord(float u, float v)
+    {
+        checkRecording();
+        ensureVertexCapacity(commandTexCoords + 1);
+
+        int index = (commandFirst[commands] + commandTexCoords++) * FLOATS_PER_TEXCOORD;
+
+        texCoords[index] = u;
+        texCoords[index + 1] = v;
+    }
+
+    public void color(Color c)
+    {
+        color(c.getRGBA());
+    }
+
+    public void color(int packedRgba)
+    {
+        checkRecording();
+        ensureVertexCapacity(commandColors + 1);
+
+        colors[commandFirst[commands] + commandColors++] = packedRgba;
+    }
+
+    public void endCommand()
+    {
+        checkRecording();
+
+        int first = commandFirst[commands];
+
+        // Fill the missing attributes the same way the DynamicRenderer does
+        int fillColor = (commandTexCoords == commandVertices ? Color.BLACK : Color.WHITE).getRGBA();
+
+        for (int i = commandColors; i < commandVertices; i++)
+            colors[first + i] = fillColor;
+
+        for (int i = commandTexCoords; i < commandVertices; i++)
+        {
+            texCoords[(first + i) * FLOATS_PER_TEXCOORD] = 0;
+            texCoords[(first + i) * FLOATS_PER_TEXCOORD + 1] = 0;
+        }
+
+        // Leftover vertices that don't make a triangle are dropped
+        int count = commandVertices - commandVertices % 3;
+
+        recording = false;
+
+        if (count == 0)
+            return;
+
+        commandCount[commands] = count;
+        vertexCount += count;
+        commands++;
+    }
+
+    /**
+     * Sorts the recorded commands and draws them with the renderer. The commands are kept, so the queue can be
+     * executed again until it is cleared.
+     */
+    public void execute()
+    {
+        if (recording)
+            throw new SilenceException("RenderQueue cannot be executed while a command is being recorded");
+
+        countNaiveOrder();
+        sort();
+
+        drawCalls = 0;
+        stateChanges = 0;
+
+        if (commands == 0)
+            return;
+
+        Texture originalTexture = Texture.CURRENT;
+
+        int program = -1;
+        int texture = -1;
+        int blend = -1;
+
+        for (int i = 0; i < commands; i++)
+        {
+            int command = order[i];
+
+            boolean programChanged = commandProgram[command] != program;
+            boolean textureChanged = commandTexture[command] != texture;
+            boolean blendChanged = commandBlend[command] != blend;
+
+            if (programChanged || textureChanged || blendChanged)
+            {
+                if (renderer.isActive())
+                    renderer.end();
+
+                if (programChanged)
+                {
+                    program = commandProgram[command];
+
+                    DynamicProgram dynamicProgram = programs.get(program);
+                    dynamicProgram.use();
+                    dynamicProgram.applyToRenderer(renderer);
+                }
+
+                if (textureChanged)
+                {
+                    texture = commandTexture[command];
+                    textures.get(texture).bind(0);
+                }
+
+                if (blendChanged)
+                {
+                    blend = commandBlend[command];
+                    BLEND_MODES[blend].apply();
+                }
+
+                renderer.begin(Primitive.TRIANGLES);
+                drawCalls++;
+
+                if (i > 0)
+                    stateChanges += (programChanged ? 1 : 0) + (textureChanged ? 1 : 0) + (blendChanged ? 1 : 0);
+            }
+
+            writeVertices(commandFirst[command], commandCount[command]);
+        }
+
+        renderer.end();
+
+        if (originalTexture != null)
+            originalTexture.bind();
+    }
+
+    private void writeVertices(int first, int count)
+    {
+        for (int v = first; v < first + count; v += 3)
+        {
+            renderer.flushOnOverflow(3);
+
+            for (int i = v; i < v + 3; i++)
+            {
+                renderer.vertex(positions[i * FLOATS_PER_POSITION],
+                        positions[i * FLOATS_PER_POSITION + 1],
+                        positions[i * FLOATS_PER_POSITION + 2]);
+
+                renderer.texCoord(texCoords[i * FLOATS_PER_TEXCOORD], texCoords[i * FLOATS_PER_TEXCOORD + 1]);
+                renderer.color(colors[i]);
+            }
+        }
+    }
+
+    private void countNaiveOrder()
+    {
+        naiveDrawCalls = commands == 0 ? 0 : 1;
+        naiveStateChanges = 0;
+
+        for (int i = 1; i < commands; i++)
+        {
+            int changes = (commandProgram[i] != commandProgram[i - 1] ? 1 : 0)
+                          + (commandTexture[i] != commandTexture[i - 1] ? 1 : 0)
+                          + (commandBlend[i] != commandBlend[i - 1] ? 1 : 0);
+
+            if (changes > 0)
+                naiveDrawCalls++;
+
+            naiveStateChanges += changes;
+        }
+    }
+
+    /**
+     * Sorts the commands by their keys with a least significant digit radix sort, which is stable, so commands with
+     * the same key stay in the order they were submitted in. Digits that are the same in all the keys are skipped.
+     */
+    private void sort()
+    {
+        if (order.length < commands)
+        {
+            order = new int[commandKey.length];
+            tempOrder = new int[commandKey.length];
+            keys = new long[commandKey.length];
+            tempKeys = new long[commandKey.length];
+        }
+
+        for (int i = 0; i < commands; i++)
+        {
+            order[i] = i;
+            keys[i] = commandKey[i];
+        }
+
+        for (int shift = 0; shift < 64; shift += 8)
+        {
+            Arrays.fill(histogram, 0);
+
+            for (int i = 0; i < commands; i++)
+                histogram[(int) (keys[i] >>> shift) & 0xFF]++;
+
+            // All the keys have the same digit, this pass won't change the order
+            if (histogram[(int) (keys[0] >>> shift) & 0xFF] == commands)
+                continue;
+
+            for (int i = 0, sum = 0; i < 256; i++)
+            {
+                int count = histogram[i];
+                histogram[i] = sum;
+                sum += count;
+            }
+
+            for (int i = 0; i < commands; i++)
+            {
+                int position = histogram[(int) (keys[i] >>> shift) & 0xFF]++;
+
+                tempKeys[position] = keys[i];
+                tempOrder[position] = order[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = tempKeys;
+            tempKeys = swapKeys;
+
+            int[] swapOrder = order;
+            order = tempOrder;
+            tempOrder = swapOrder;
+        }
+    }
+
+    /**
+     * Creates the sort key of a command. From the most significant bit, the key has the layer in 8 bits and a bit
+     * that is set for translucent commands. Opaque commands follow that with the program in 8 bits, the texture in 16
+     * bits, the blend mode in 3 bits and the depth in 24 bits, ascending. Translucent commands have the depth first,
+     * descending, and then the program, texture and blend mode.
+     */
+    private static long createKey(int program, int texture, BlendMode blendMode, int layer, float depth)
+    {
+        long key = (long) ((layer + 128) & 0xFF) << 56;
+        long state = ((long) (program & 0xFF) << 19) | ((long) (texture & 0xFFFF) << 3) | blendMode.ordinal();
+        long depthBits = depthBits(depth);
+
+        if (blendMode == BlendMode.OPAQUE)
+            return key | (state << 28) | (depthBits << 4);
+
+        return key | (1L << 55) | ((0xFFFFFFL - depthBits) << 31) | (state << 4);
+    }
+
+    /**
+     * @return The upper 24 bits of the depth, flipped so that they sort the same as the floats when compared as
+     * unsigned integers.
+     */
+    private static long depthBits(float depth)
+    {
+        int bits = Float.floatToIntBits(depth);
+        bits ^= (bits >> 31) | 0x80000000;
+
+        return (bits >>> 8) & 0xFFFFFFL;
+    }
+
+    private static <T> int indexOf(List<T> list, T item, int lastIndex)
+    {
+        if (lastIndex != -1 && list.get(lastIndex) == item)
+            return lastIndex;
+
+        for (int i = 0; i < list.size(); i++)
+        {
+            if (list.get(i) == item)
+                return i;
+        }
+
+        list.add(item);
+        return list.size() - 1;
+    }
+
+    private void checkRecording()
+    {
+        if (!recording)
+            throw new SilenceException("RenderQueue is not recording a command");
+    }
+
+    private void growCommands()
+    {
+        int capacity = commandKey.length * 2;
+
+        commandProgram = Arrays.copyOf(commandProgram, capacity);
+        commandTexture = Arrays.copyOf(commandTexture, capacity);
+        commandBlend = Arrays.copyOf(commandBlend, capacity);
+        commandFirst = Arrays.copyOf(commandFirst, capacity);
+        commandCount = Arrays.copyOf(commandCount, capacity);
+        commandKey = Arrays.copyOf(commandKey, capacity);
+    }
+
+    private void ensureVertexCapacity(int commandVertexCount)
+    {
+        int required = commandFirst[commands] + commandVertexCount;
+
+        if (required <= colors.length)
+            return;
+
+        int capacity = Math.max(colors.length * 2, required);
+
+        positions = Arrays.copyOf(positions, capacity * FLOATS_PER_POSITION);
+        texCoords = Arrays.copyOf(texCoords, capacity * FLOATS_PER_TEXCOORD);
+        colors = Arrays.copyOf(colors, capacity);
+    }
+
+    /**
+     * @return The number of commands recorded in the queue.
+     */
+    public int getCommandCount()
+    {
+        return commands;
+    }
+
+    /**
+     * @return The number of batches the last execution was drawn in. A batch can take more than one draw call if it
+     * overflows the renderer.
+     */
+    public int getDrawCalls()
+    {
+        return drawCalls;
+    }
+
+    /**
+     * @return The number of program, texture and blend mode changes in the last execution.
+     */
+    public int getStateChanges()
+    {
+        return stateChanges;
+    }
+
+    /**
+     * @return The number of batches the commands of the last execution would need in the order they were submitted.
+     */
+    public int getNaiveDrawCalls()
+    {
+        return naiveDrawCalls;
+    }
+
+    /**
+     * @return The number of state changes the commands of the last execution would need in the order they were
+     * submitted.
+     */
+    public int getNaiveStateChanges()
+    {
+        return naiveStateChanges;
+    }
+
+    public int getSavedDrawCalls()
+    {
+        return naiveDrawCalls - drawCalls;
+    }
+
+    public int getSavedStateChanges()
+    {
+        return naiveStateChanges - stateChanges;
+    }
+
+    public DynamicRenderer getRenderer()
+    {
+        return renderer;
+    }
+
+    /**
+     * The blending state of a command.
+     */
+    public enum BlendMode
+    {
+        OPAQUE, ALPHA, PREMULTIPLIED_ALPHA, ADDITIVE, MULTIPLY;
+
+        public void apply()
+        {
+            switch (this)
+            {
+                case OPAQUE:
+                    GLContext.disable(GL_BLEND);
+                    return;
+
+                case ALPHA:
+                    GLContext.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+                    break;
+
+                case PREMULTIPLIED_ALPHA:
+                    GLContext.blendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+                    break;
+
+                case ADDITIVE:
+                    GLContext.blendFunc(GL_SRC_ALPHA, GL_ONE);
+                    break;
+
+                case MULTIPLY:
+                    GLContext.blendFunc(GL_DST_COLOR, GL_ZERO);
+                    break;
+            }
+
+            GLContext.enable(GL_BLEND);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.graphics.cameras.Camera;
+import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Transform;
+
+import java.util.Arrays;
+
+/**
+ * A copy of the state needed to draw the sprites of a frame: the camera matrices, and the current frame, transform and
+ * tint of every sprite. The snapshot is filled on the update thread and drawn later with a {@link SpriteRenderer},
+ * possibly on a different thread, as it keeps no references to the live sprites or transforms. It is meant to be used
+ * as the snapshot of an {@link com.shc.silenceengine.core.IRenderPipeline}, and is reused from frame to frame without
+ * allocating once it has grown to the number of sprites.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class RenderSnapshot
+{
+    private final SnapshotCamera camera = new SnapshotCamera();
+
+    private boolean hasCamera;
+
+    private Texture[] frames     = new Texture[64];
+    private Matrix4[] transforms = new Matrix4[64];
+    private int[]     tints      = new int[64];
+
+    private int spriteCount;
+
+    private Color tempColor = new Color();
+
+    public RenderSnapshot clear()
+    {
+        // Let go of the textures, the matrices are kept to be reused
+        Arrays.fill(frames, 0, spriteCount, null);
+
+        spriteCount = 0;
+        hasCamera = false;
+
+        return this;
+    }
+
+    /**
+     * Copies the matrices of a camera, which is applied before the sprites are drawn.
+     *
+     * @param camera The camera to copy the matrices of.
+     *
+     * @return This snapshot.
+     */
+    public RenderSnapshot setCamera(Camera camera)
+    {
+        this.camera.projection.set(camera.getProjection());
+        this.camera.view.set(camera.getView());
+
+        hasCamera = true;
+        return this;
+    }
+
+    public RenderSnapshot addSprite(Sprite sprite, Transform transform)
+    {
+        return addSprite(sprite, transform, Color.BLACK, 1);
+    }
+
+    public RenderSnapshot addSprite(Sprite sprite, Transform transform, Color tint)
+    {
+        return addSprite(sprite, transform, tint, 1);
+    }
+
+    public RenderSnapshot addSprite(Sprite sprite, Transform transform, Color tint, float opacity)
+    {
+        tempColor.set(tint).a *= opacity;
+        return addSprite(sprite.getCurrentFrame(), transform.matrix, tempColor.getRGBA());
+    }
+
+    public RenderSnapshot addSprite(Texture frame, Matrix4 matrix, int packedTint)
+    {
+        if (spriteCount == frames.length)
+        {
+            frames = Arrays.copyOf(frames, spriteCount * 2);
+            transforms = Arrays.copyOf(transforms, spriteCount * 2);
+            tints = Arrays.copyOf(tints, spriteCount * 2);
+        }
+
+        if (transforms[spriteCount] == null)
+            transforms[spriteCount] = new Matrix4();
+
+        frames[spriteCount] = frame;
+        transforms[spriteCount].set(matrix);
+        tints[spriteCount] = packedTint;
+
+        spriteCount++;
+        return this;
+    }
+
+    /**
+     * Draws the sprites of this snapshot in the order they were added. The camera of the snapshot is applied first if
+     * one was set.
+     *
+     * @param renderer The sprite renderer to draw the sprites with.
+     */
+    public void render(SpriteRenderer renderer)
+    {
+        if (hasCamera)
+            camera.apply();
+
+        if (spriteCount == 0)
+            return;
+
+        renderer.begin();
+
+        for (int i = 0; i < spriteCount; i++)
+            renderer.render(frames[i], transforms[i], tints[i]);
+
+        renderer.end();
+    }
+
+    public int getSpriteCount()
+    {
+        return spriteCount;
+    }
+
+    private static class SnapshotCamera extends Camera
+    {
+        private final Matrix4 projection = new Matrix4();
+        private final Matrix4 view       = new Matrix4();
+
+        @Override
+        public Matrix4 getProjection()
+        {
+            return projection;
+        }
+
+        @Override
+        public Matrix4 getView()
+        {
+            return view;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.IResource;
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.events.IResizeEventHandler;
+import com.shc.silenceengine.graphics.opengl.Framebuffer;
+import com.shc.silenceengine.graphics.opengl.GLContext;
+import com.shc.silenceengine.graphics.opengl.GLError;
+import com.shc.silenceengine.graphics.opengl.GLException;
+import com.shc.silenceengine.graphics.opengl.Texture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
+/**
+ * <p>A pool of off-screen render targets for passes that render into a {@link Framebuffer}, like post processing or
+ * blurring. Instead of every pass owning its framebuffer and textures, a pass obtains a target of the size and format
+ * it needs, renders into it, and the target goes back to the pool when the next frame begins. Passes that need targets
+ * of the same description in the same frame get different targets, and the following frames reuse them.</p>
+ *
+ * <pre>
+ *     pool.beginFrame();
+ *
+ *     RenderTargetPool.RenderTarget target = pool.obtainScaled(0.5f, RenderTargetPool.Format.RGBA, false);
+ *     target.bind();
+ *     {
+ *         ...
+ *     }
+ *     target.release();
+ * </pre>
+ *
+ * <p>Targets that are not obtained for a number of frames are disposed. Targets that are sized relative to the display
+ * are not reallocated when the display is resized, they are marked stale and get their new storage when they are
+ * obtained again, so targets that are no longer used never reallocate.</p>
+ *
+ * <p>The depth attachments are depth textures, so that later passes can sample them. They are available with OpenGL 3,
+ * OpenGL ES 3 and WebGL 2, but WebGL 1 only has them with the {@code WEBGL_depth_texture} extension. Obtaining a
+ * target with depth on a device without them fails with a {@link GLException}, see
+ * {@link IGraphicsDevice#isDepthTextureSupported()}.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class RenderTargetPool implements IResource, IResizeEventHandler
+{
+    public static final int DEFAULT_MAX_UNUSED_FRAMES = 60;
+
+    private List<RenderTarget> targets = new ArrayList<>();
+
+    private int maxUnusedFrames;
+    private int frame;
+
+    public RenderTargetPool()
+    {
+        this(DEFAULT_MAX_UNUSED_FRAMES);
+    }
+
+    /**
+     * Creates a new pool of render targets.
+     *
+     * @param maxUnusedFrames The number of frames a target can stay unused before it is disposed.
+     */
+    public RenderTargetPool(int maxUnusedFrames)
+    {
+        this.maxUnusedFrames = maxUnusedFrames;
+        SilenceEngine.eventManager.addResizeHandler(this);
+    }
+
+    /**
+     * Starts a new frame. All the targets obtained in the previous frame are returned to the pool, and the targets that
+     * have not been used for more than the maximum unused frames are disposed.
+     */
+    public void beginFrame()
+    {
+        frame++;
+
+        for (int i = targets.size() - 1; i >= 0; i--)
+        {
+            RenderTarget target = targets.get(i);
+            target.inUse = false;
+
+            if (frame - target.lastUsedFrame > maxUnusedFrames)
+            {
+                target.dispose();
+                targets.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Obtains a free target of a fixed size for this frame.
+     *
+     * @param width  The width of the target in pixels.
+     * @param height The height of the target in pixels.
+     * @param format The format of the color texture.
+     * @param depth  Whether the target needs a depth attachment, which needs depth texture support on the device.
+     *
+     * @return A target that is not used by anyone else in this frame.
+     *
+     * @throws GLException If a depth attachment is asked for and the device has no depth textures.
+     */
+    public RenderTarget obtain(int width, int height, Format format, boolean depth)
+    {
+        if (width <= 0 || height <= 0)
+            throw new GLException("Cannot create a render target of size " + width + "x" + height);
+
+        return obtain(width, height, 0, format, depth);
+    }
+
+    /**
+     * Obtains a free target for this frame whose size is relative to the size of the display.
+     *
+     * @param scale  The scale of the target with respect to the display, 1 is the size of the display.
+     * @param format The format of the color texture.
+     * @param depth  Whether the target needs a depth attachment, which needs depth texture support on the device.
+     *
+     * @return A target that is not used by anyone else in this frame.
+     *
+     * @throws GLException If a depth attachment is asked for and the device has no depth textures.
+     */
+    public RenderTarget obtainScaled(float scale, Format format, boolean depth)
+    {
+        if (scale <= 0)
+            throw new GLException("The scale of a render target should be greater than zero");
+
+        int width = Math.max(1, Math.round(SilenceEngine.display.getWidth() * scale));
+        int height = Math.max(1, Math.round(SilenceEngine.display.getHeight() * scale));
+
+        return obtain(width, height, scale, format, depth);
+    }
+
+    private RenderTarget obtain(int width, int height, float scale, Format format, boolean depth)
+    {
+        RenderTarget found = null;
+
+        for (RenderTarget target : targets)
+        {
+            if (target.inUse || target.format != format || target.depth != depth || target.scale != scale)
+                continue;
+
+            // Display relative targets match on the scale, their size is fixed up below
+            if (scale == 0 && (target.width != width || target.height != height))
+                continue;
+
+            found = target;
+            break;
+        }
+
+        if (found == null)
+        {
+            if (depth && !SilenceEngine.graphics.isDepthTextureSupported())
+                throw new GLException("Render targets with depth attachments need depth textures, which this device " +
+                                      "doesn't support. OpenGL ES 2.0 and WebGL 1 need the OES_depth_texture or " +
+                                      "WEBGL_depth_texture extension");
+
+            found = new RenderTarget(scale, format, depth);
+            targets.add(found);
+        }
+
+        if (found.stale || found.width != width || found.height != height)
+            found.allocate(width, height);
+
+        found.inUse = true;
+        found.lastUsedFrame = frame;
+
+        return found;
+    }
+
+    /**
+     * Returns a target to the pool before the frame ends, so that it can be obtained again in this frame.
+     *
+     * @param target The target to return.
+     */
+    public void recycle(RenderTarget target)
+    {
+        target.inUse = false;
+    }
+
+    @Override
+    public void resized()
+    {
+        for (RenderTarget target : targets)
+            if (target.scale != 0)
+                target.stale = true;
+    }
+
+    /**
+     * @return The GPU memory held by all the targets in the pool, in bytes.
+     */
+    public long getPooledBytes()
+    {
+        long bytes = 0;
+
+        for (RenderTarget target : targets)
+            bytes += target.sizeBytes;
+
+        return bytes;
+    }
+
+    /**
+     * @return The GPU memory held by the targets obtained in this frame, in bytes.
+     */
+    public long getInUseBytes()
+    {
+        long bytes = 0;
+
+        for (RenderTarget target : targets)
+            if (target.inUse)
+                bytes += target.sizeBytes;
+
+        return bytes;
+    }
+
+    public int getTargetCount()
+    {
+        return targets.size();
+    }
+
+    public int getInUseCount()
+    {
+        int count = 0;
+
+        for (RenderTarget target : targets)
+            if (target.inUse)
+                count++;
+
+        return count;
+    }
+
+    public int getMaxUnusedFrames()
+    {
+        return maxUnusedFrames;
+    }
+
+    public RenderTargetPool setMaxUnusedFrames(int maxUnusedFrames)
+    {
+        this.maxUnusedFrames = maxUnusedFrames;
+        return this;
+    }
+
+    @Override
+    public void dispose()
+    {
+        SilenceEngine.eventManager.removeResizeHandler(this);
+
+        for (RenderTarget target : targets)
+            target.dispose();
+
+        targets.clear();
+    }
+
+    /**
+     * The formats of the color texture of a target. They are unsized formats, so that the color attachments are also
+     * available with OpenGL ES 2.0 and WebGL 1.
+     */
+    public enum Format
+    {
+        RGBA(GL_RGBA, 4),
+        RGB(GL_RGB, 3);
+
+        private final int value;
+        private final int bytesPerPixel;
+
+        Format(int value, int bytesPerPixel)
+        {
+            this.value = value;
+            this.bytesPerPixel = bytesPerPixel;
+        }
+
+        public int getValue()
+        {
+            return value;
+        }
+
+        public int getBytesPerPixel()
+        {
+            return bytesPerPixel;
+        }
+    }
+
+    /**
+     * A framebuffer with a color texture and an optional depth texture, owned by a {@link RenderTargetPool}.
+     */
+    public static class RenderTarget
+    {
+        private static final int DEPTH_BYTES_PER_PIXEL = 4;
+
+        private Framebuffer framebuffer;
+        private Texture     colorTexture;
+        private Texture     depthTexture;
+
+        private Format  format;
+        private boolean depth;
+        private float   scale;
+
+        private int  width;
+        private int  height;
+        private long sizeBytes;
+
+        private int     lastUsedFrame;
+        private boolean inUse;
+        private boolean stale;
+
+        private RenderTarget(float scale, Format format, boolean depth)
+        {
+            this.scale = scale;
+            this.format = format;
+            this.depth = depth;
+
+            framebuffer = new Framebuffer();
+            colorTexture = createTexture();
+
+            if (depth)
+                depthTexture = createTexture();
+        }
+
+        private static Texture createTexture()
+        {
+            Texture original = Texture.CURRENT;
+
+            Texture texture = new Texture();
+            texture.setFilter(GL_LINEAR, GL_LINEAR);
+            texture.setWrapping(GL_CLAMP_TO_EDGE);
+
+            if (original != null)
+                original.bind();
+
+            return texture;
+        }
+
+        private void allocate(int width, int height)
+        {
+            Texture original = Texture.CURRENT;
+
+            colorTexture.image2d(null, GL_UNSIGNED_BYTE, format.getValue(), width, height, format.getValue());
+
+            if (depth)
+                depthTexture.image2d(null, GL_UNSIGNED_INT, GL_DEPTH_COMPONENT, width, height, GL_DEPTH_COMPONENT);
+
+            if (original != null)
+                original.bind();
+
+            // Attach without Framebuffer.bind(), which clears the framebuffer and changes the viewport
+            int target = framebuffer.getTarget().getValue();
+
+            SilenceEngine.graphics.glBindFramebuffer(target, framebuffer.getId());
+            GLError.check();
+
+            SilenceEngine.graphics.glFramebufferTexture2D(target, Framebuffer.Attachment.COLOR0.getValue(),
+                    GL_TEXTURE_2D, colorTexture.getID(), 0);
+            GLError.check();
+
+            if (depth)
+            {
+                SilenceEngine.graphics.glFramebufferTexture2D(target, Framebuffer.Attachment.DEPTH.getValue(),
+                        GL_TEXTURE_2D, depthTexture.getID(), 0);
+                GLError.check();
+            }
+
+            int status = SilenceEngine.graphics.glCheckFramebufferStatus(target);
+            GLError.check();
+
+            SilenceEngine.graphics.glBindFramebuffer(target, Framebuffer.CURRENT.getId());
+            GLError.check();
+
+            if (status != GL_FRAMEBUFFER_COMPLETE)
+                throw new GLException("Render target of size " + width + "x" + height + " is incomplete, status: "
+                                      + status);
+
+            this.width = width;
+            this.height = height;
+            this.sizeBytes = (long) width * height * (format.getBytesPerPixel() + (depth ? DEPTH_BYTES_PER_PIXEL : 0));
+            this.stale = false;
+        }
+
+        /**
+         * Binds the framebuffer of this target and sets the viewport to cover the whole target.
+         */
+        public void bind()
+        {
+            framebuffer.bind();
+            GLContext.viewport(0, 0, width, height);
+        }
+
+        public void release()
+        {
+            framebuffer.release();
+        }
+
+        private void dispose()
+        {
+            framebuffer.dispose();
+            colorTexture.dispose();
+
+            if (depthTexture != null)
+                depthTexture.dispose();
+        }
+
+        public Framebuffer getFramebuffer()
+        {
+            return framebuffer;
+        }
+
+        public Texture getColorTexture()
+        {
+            return colorTexture;
+        }
+
+        public Texture getDepthTexture()
+        {
+            return depthTexture;
+        }
+
+        public Format getFormat()
+        {
+            return format;
+        }
+
+        public boolean hasDepth()
+        {
+            return depth;
+        }
+
+        public int getWidth()
+        {
+            return width;
+        }
+
+        public int getHeight()
+        {
+            return height;
+        }
+
+        public long getSizeBytes()
+        {
+            return sizeBytes;
+        }
+    }
+}
@@ -24,50 +24,312 @@
 
 package com.shc.silenceengine.graphics;
 
+import com.shc.silenceengine.collision.broadphase.BoundsTree2D;
+import com.shc.silenceengine.graphics.cameras.Camera;
 import com.shc.silenceengine.graphics.opengl.Texture;
 import com.shc.silenceengine.math.Transform;
 import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.math.geom2d.Polygon;
 import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.Component;
+import com.shc.silenceengine.scene.Entity;
 import com.shc.silenceengine.scene.Scene;
 import com.shc.silenceengine.scene.components.BoundsRenderComponent2D;
 import com.shc.silenceengine.scene.components.CollisionComponent2D;
 import com.shc.silenceengine.scene.components.PolygonRenderComponent;
 import com.shc.silenceengine.scene.components.SpriteComponent;
 import com.shc.silenceengine.utils.functional.BiCallback;
+import com.shc.silenceengine.utils.functional.UniCallback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.shc.silenceengine.graphics.opengl.Primitive.*;
 
 /**
+ * Renders the sprites, polygons and bounds of the entities in a scene. Only the entities whose bounds intersect the
+ * part of the world visible through {@link Camera#CURRENT} are drawn, they are found through a {@link BoundsTree2D}
+ * of the bounds of all the entities. The static sprites are baked into a {@link StaticSpriteBatch}, whose chunks are
+ * culled by their own bounds.
+ *
+ * <p>The index and the static sprites are built once when a scene is rendered for the first time. After that, only the
+ * entities that the scene reports as changed are refreshed before drawing, so the cost of a frame depends on what has
+ * changed and on what is visible, not on the size of the world. The changes of the transforms, including the ones of
+ * the parents, and of the sprites are reported by the components. Other changes, like disabling a component or
+ * changing a polygon, have to be reported with {@link Entity#markChanged()}. Since the index keeps enlarged bounds,
+ * refreshing the bounds of an entity that moved a little doesn't change the index.</p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class SceneRenderSystem implements BiCallback<Scene, Float>
 {
-    private final SpriteBatch batch;
+    // The margin the bounds of the entities are enlarged by in the index, so small movements don't update the index
+    private static final float INDEX_MARGIN = 16;
+
+    private final SpriteBatch       batch;
+    private final StaticSpriteBatch staticBatch;
+
+    private final BoundsTree2D<Entity> index;
+    private final List<Entity>         visibleEntities;
+
+    // The entities that have changed since the last frame, and the static sprites that are baked for each entity
+    private final Set<Entity>                        changedEntities;
+    private final Map<Entity, List<SpriteComponent>> bakedSprites;
+    private final List<SpriteComponent>              staticSprites;
+
+    // The scene that the changes are tracked for, and the scenes that the change handler is registered with
+    private final List<Scene> registeredScenes;
+    private       Scene       trackedScene;
+
+    private final Rectangle viewBounds;
+    private final Rectangle entityBounds;
+    private final Vector3   tempVec;
+
+    private boolean cullingEnabled = true;
+    private boolean hasBounds;
 
     public SceneRenderSystem()
     {
         batch = new SpriteBatch(IGraphicsDevice.Renderers.sprite);
+        staticBatch = new StaticSpriteBatch();
+
+        index = new BoundsTree2D<>(INDEX_MARGIN);
+        visibleEntities = new ArrayList<>();
+        changedEntities = new LinkedHashSet<>();
+        bakedSprites = new HashMap<>();
+        staticSprites = new ArrayList<>();
+        registeredScenes = new ArrayList<>();
+
+        viewBounds = new Rectangle();
+        entityBounds = new Rectangle();
+        tempVec = new Vector3();
     }
 
     @Override
     public void invoke(Scene scene, Float elapsedTime)
     {
         Texture.EMPTY.bind();
-        drawSprites(scene);
-        drawPolygons(scene);
-        drawBounds(scene);
+
+        refreshChangedEntities(scene);
+        findVisibleEntities(scene);
+
+        drawSprites();
+        drawPolygons();
+        drawBounds();
+    }
+
+    private static boolean isRenderable(Entity e)
+    {
+        return e.hasComponent(SpriteComponent.class)
+               || e.hasComponent(PolygonRenderComponent.class)
+               || e.hasComponent(BoundsRenderComponent2D.class);
+    }
+
+    /**
+     * Refreshes the entities that have changed since the last frame. All the entities are refreshed the first time a
+     * scene is rendered, and the change handler that collects the changed entities is registered with the scene.
+     */
+    private void refreshChangedEntities(Scene scene)
+    {
+        if (trackedScene != scene)
+        {
+            index.clear();
+            staticBatch.clear();
+            bakedSprites.clear();
+            changedEntities.clear();
+
+            trackedScene = scene;
+
+            if (!registeredScenes.contains(scene))
+            {
+                scene.registerChangeHandler(e ->
+                {
+                    if (scene == trackedScene)
+                        changedEntities.add(e);
+                });
+
+                registeredScenes.add(scene);
+            }
+
+            scene.forEachEntity(this::refresh);
+            return;
+        }
+
+        for (Entity e : changedEntities)
+            refresh(e);
+
+        changedEntities.clear();
     }
 
-    private void drawSprites(Scene scene)
+    /**
+     * Bakes the static sprites of an entity again, and updates its bounds in the index. The destroyed entities are
+     * removed from both of them.
+     */
+    private void refresh(Entity e)
+    {
+        final boolean alive = !e.isDestroyed();
+
+        staticSprites.clear();
+
+        if (alive)
+            e.forEachComponentOfType(SpriteComponent.class, c ->
+            {
+                if (c.enabled && c.isStatic && c.sprite != null)
+                    staticSprites.add(c);
+            });
+
+        List<SpriteComponent> baked = bakedSprites.get(e);
+
+        if (baked != null)
+        {
+            for (SpriteComponent c : baked)
+                if (!staticSprites.contains(c))
+                    staticBatch.remove(c);
+
+            baked.clear();
+        }
+
+        if (!staticSprites.isEmpty())
+        {
+            if (baked == null)
+                bakedSprites.put(e, baked = new ArrayList<>());
+
+            for (SpriteComponent c : staticSprites)
+            {
+                staticBatch.submit(c, e.transformComponent);
+                baked.add(c);
+            }
+        }
+        else if (baked != null)
+            bakedSprites.remove(e);
+
+        if (!cullingEnabled)
+            return;
+
+        if (alive && isRenderable(e) && computeBounds(e))
+            index.update(e, entityBounds);
+        else
+            index.remove(e);
+    }
+
+    /**
+     * Collects the entities that are visible in the current camera.
+     */
+    private void findVisibleEntities(Scene scene)
+    {
+        visibleEntities.clear();
+
+        if (!cullingEnabled || Camera.CURRENT == null)
+        {
+            scene.forEachEntity(e ->
+            {
+                if (isRenderable(e))
+                    visibleEntities.add(e);
+            });
+
+            return;
+        }
+
+        visibleEntities.addAll(index.retrieve(Camera.CURRENT.getVisibleBounds2D(viewBounds)));
+    }
+
+    /**
+     * Computes the bounds of everything that is drawn for an entity into the entityBounds.
+     *
+     * @return Whether the entity has anything to draw.
+     */
+    private boolean computeBounds(Entity e)
+    {
+        hasBounds = false;
+
+        e.forEachComponentOfType(SpriteComponent.class, c ->
+        {
+            if (c.sprite == null)
+                return;
+
+            Texture texture = c.sprite.getCurrentFrame();
+            Transform transform = e.transformComponent.getWorldTransform();
+
+            final float tw = texture.getWidth() / 2;
+            final float th = texture.getHeight() / 2;
+
+            for (int corner = 0; corner < 4; corner++)
+            {
+                tempVec.set((corner & 1) == 0 ? -tw : tw, (corner & 2) == 0 ? -th : th, 0)
+                        .multiply(transform.matrix);
+
+                include(tempVec.x, tempVec.y, 0, 0);
+            }
+        });
+
+        e.forEachComponentOfType(PolygonRenderComponent.class, c ->
+        {
+            Polygon polygon = c.polygon;
+
+            if (polygon == null && e.hasComponent(CollisionComponent2D.class))
+                polygon = e.getComponent(CollisionComponent2D.class).polygon;
+
+            if (polygon != null)
+            {
+                Rectangle bounds = polygon.getBounds();
+                include(bounds.x, bounds.y, bounds.width, bounds.height);
+            }
+        });
+
+        e.forEachComponentOfType(BoundsRenderComponent2D.class, c ->
+        {
+            Rectangle bounds = c.bounds;
+
+            if (bounds == null && e.hasComponent(CollisionComponent2D.class))
+                bounds = e.getComponent(CollisionComponent2D.class).polygon.getBounds();
+
+            if (bounds != null)
+                include(bounds.x, bounds.y, bounds.width, bounds.height);
+        });
+
+        return hasBounds;
+    }
+
+    private void include(float x, float y, float width, float height)
+    {
+        if (!hasBounds)
+        {
+            entityBounds.set(x, y, width, height);
+            hasBounds = true;
+            return;
+        }
+
+        final float minX = Math.min(entityBounds.x, x);
+        final float minY = Math.min(entityBounds.y, y);
+        final float maxX = Math.max(entityBounds.x + entityBounds.width, x + width);
+        final float maxY = Math.max(entityBounds.y + entityBounds.height, y + height);
+
+        entityBounds.set(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    private void forEachVisibleEntityWithComponent(Class<? extends Component> klass, UniCallback<Entity> callback)
+    {
+        for (Entity e : visibleEntities)
+            if (e.hasComponent(klass))
+                callback.invoke(e);
+    }
+
+    private void drawSprites()
     {
         batch.begin();
+        staticBatch.begin();
         IGraphicsDevice.Programs.dynamic.use();
 
-        scene.forEachEntityWithComponent(SpriteComponent.class, e ->
+        // The static sprites are already in the static batch, which culls its own chunks
+        forEachVisibleEntityWithComponent(SpriteComponent.class, e ->
                 e.forEachComponentOfType(SpriteComponent.class, c ->
                 {
-                    if (c.enabled)
+                    if (c.enabled && !c.isStatic)
                     {
                         final Sprite sprite = c.sprite;
                         final Color tint = c.tint;
@@ -79,10 +341,44 @@ public class SceneRenderSystem implements BiCallback<Scene, Float>
                     }
                 }));
 
+        // The static sprites are drawn first, only the chunks that have changed are rebuilt
+        staticBatch.end(cullingEnabled && Camera.CURRENT != null ? viewBounds : null);
         batch.end();
     }
 
-    private void drawPolygons(Scene scene)
+    public StaticSpriteBatch getStaticBatch()
+    {
+        return staticBatch;
+    }
+
+    public boolean isCullingEnabled()
+    {
+        return cullingEnabled;
+    }
+
+    public SceneRenderSystem setCullingEnabled(boolean cullingEnabled)
+    {
+        // The index is not updated while culling is disabled, so everything is refreshed again when it is enabled
+        if (this.cullingEnabled != cullingEnabled)
+        {
+            index.clear();
+            trackedScene = null;
+        }
+
+        this.cullingEnabled = cullingEnabled;
+
+        return this;
+    }
+
+    /**
+     * @return The number of entities that were found to be visible in the last frame.
+     */
+    public int getVisibleEntityCount()
+    {
+        return visibleEntities.size();
+    }
+
+    private void drawPolygons()
     {
         Texture.EMPTY.bind();
         DynamicRenderer renderer = IGraphicsDevice.Renderers.dynamic;
@@ -93,7 +389,7 @@ public class SceneRenderSystem implements BiCallback<Scene, Float>
 
         Vector2 temp = Vector2.REUSABLE_STACK.pop();
 
-        scene.forEachEntityWithComponent(PolygonRenderComponent.class, e ->
+        forEachVisibleEntityWithComponent(PolygonRenderComponent.class, e ->
                 e.forEachComponentOfType(PolygonRenderComponent.class, c ->
                 {
                     if (c.enabled)
@@ -156,7 +452,7 @@ public class SceneRenderSystem implements BiCallback<Scene, Float>
         renderer.end();
     }
 
-    private void drawBounds(Scene scene)
+    private void drawBounds()
     {
         Texture.EMPTY.bind();
         DynamicRenderer renderer = IGraphicsDevice.Renderers.dynamic;
@@ -167,7 +463,7 @@ public class SceneRenderSystem implements BiCallback<Scene, Float>
 
         Vector2 temp = Vector2.REUSABLE_STACK.pop();
 
-        scene.forEachEntityWithComponent(BoundsRenderComponent2D.class, e ->
+        forEachVisibleEntityWithComponent(BoundsRenderComponent2D.class, e ->
                 e.forEachComponentOfType(BoundsRenderComponent2D.class, c ->
                 {
                     if (c.enabled)
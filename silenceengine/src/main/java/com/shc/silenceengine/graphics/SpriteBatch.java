@@ -25,31 +25,71 @@
 package com.shc.silenceengine.graphics;
 
 import com.shc.silenceengine.math.Transform;
-import com.shc.silenceengine.utils.ReusableStack;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
+ * Collects sprites and renders them sorted by layer, the higher layers first, and then by texture so that the sprites
+ * sharing a texture are drawn in a single batch. Sprites with the same layer and texture are drawn in the order they
+ * were submitted.
+ *
+ * <p>The entries are stored in parallel arrays which only grow, and are sorted with an LSD radix sort on a 64 bit key
+ * per entry, so submitting and sorting the sprites creates no garbage once the arrays are large enough.</p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public class SpriteBatch
 {
-    private static final ReusableStack<BatchEntry> REUSABLE_STACK = new ReusableStack<>(BatchEntry::new);
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final SpriteRenderer spriteRenderer;
+
+    // The entries, stored in parallel arrays
+    private Sprite[]    sprites;
+    private Transform[] transforms;
+    private Color[]     tints;
+    private float[]     opacities;
+    private long[]      keys;
+
+    // The indices of the entries in sorted order, and the scratch space for sorting them
+    private int[] order;
+    private int[] scratch;
 
-    private final List<BatchEntry> entries;
-    private final SpriteRenderer   spriteRenderer;
+    private final int[] histogram = new int[256];
+
+    private int count;
 
     public SpriteBatch(SpriteRenderer spriteRenderer)
     {
-        this.entries = new ArrayList<>();
         this.spriteRenderer = spriteRenderer;
+
+        sprites = new Sprite[INITIAL_CAPACITY];
+        transforms = new Transform[INITIAL_CAPACITY];
+        tints = new Color[INITIAL_CAPACITY];
+        opacities = new float[INITIAL_CAPACITY];
+        keys = new long[INITIAL_CAPACITY];
+        order = new int[INITIAL_CAPACITY];
+        scratch = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates the sort key of an entry. The upper half holds the layer, flipped so that higher layers come first and
+     * the signed layers sort correctly as unsigned, and the lower half holds the texture ID. The insertion order is not
+     * part of the key since the radix sort is stable.
+     */
+    private static long sortKey(int layer, int textureID)
+    {
+        return ((long) ~(layer ^ Integer.MIN_VALUE) << 32) | (textureID & 0xFFFFFFFFL);
     }
 
     public void begin()
     {
-        entries.forEach(REUSABLE_STACK::push);
-        entries.clear();
+        // Release the references of the previous frame
+        Arrays.fill(sprites, 0, count, null);
+        Arrays.fill(transforms, 0, count, null);
+        Arrays.fill(tints, 0, count, null);
+
+        count = 0;
     }
 
     public void render(Sprite sprite, Transform transform)
@@ -69,51 +109,94 @@ public class SpriteBatch
 
     public void render(Sprite sprite, Transform transform, Color tint, float opacity, int layer)
     {
-        BatchEntry entry = REUSABLE_STACK.pop();
+        if (count == keys.length)
+            grow();
 
-        entry.sprite = sprite;
-        entry.transform = transform;
-        entry.tint = tint;
-        entry.opacity = opacity;
-        entry.layer = layer;
+        sprites[count] = sprite;
+        transforms[count] = transform;
+        tints[count] = tint;
+        opacities[count] = opacity;
+        keys[count] = sortKey(layer, sprite.getCurrentFrame().getID());
 
-        entries.add(entry);
+        count++;
     }
 
     public void end()
     {
-        entries.sort(SpriteBatch::entryComparator);
+        sort();
         spriteRenderer.begin();
 
-        entries.forEach(entry ->
+        for (int i = 0; i < count; i++)
         {
-            Sprite sprite = entry.sprite;
-            Transform transform = entry.transform;
-            Color tint = entry.tint;
-            float opacity = entry.opacity;
-
-            spriteRenderer.render(sprite, transform, tint, opacity);
-        });
+            final int entry = order[i];
+            spriteRenderer.render(sprites[entry], transforms[entry], tints[entry], opacities[entry]);
+        }
 
         spriteRenderer.end();
     }
 
-    private static int entryComparator(BatchEntry e1, BatchEntry e2)
+    /**
+     * Sorts the indices of the entries by their keys, one byte at a time starting from the least significant byte.
+     * The bytes that are the same for all the entries, which are most of them in practice, are skipped.
+     */
+    private void sort()
     {
-        if (e1.layer == e2.layer)
-            return e1.sprite.getCurrentFrame().getID() - e2.sprite.getCurrentFrame().getID();
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+
+        if (count < 2)
+            return;
 
-        return e2.layer - e1.layer;
+        for (int shift = 0; shift < 64; shift += 8)
+        {
+            Arrays.fill(histogram, 0);
+
+            for (int i = 0; i < count; i++)
+                histogram[(int) (keys[i] >>> shift) & 0xFF]++;
+
+            // All the entries fall in a single bucket, this pass won't change the order
+            if (histogram[(int) (keys[0] >>> shift) & 0xFF] == count)
+                continue;
+
+            // Turn the counts into the starting positions of the buckets
+            for (int i = 0, position = 0; i < histogram.length; i++)
+            {
+                final int bucketSize = histogram[i];
+                histogram[i] = position;
+                position += bucketSize;
+            }
+
+            for (int i = 0; i < count; i++)
+            {
+                final int entry = order[i];
+                scratch[histogram[(int) (keys[entry] >>> shift) & 0xFF]++] = entry;
+            }
+
+            int[] temp = order;
+            order = scratch;
+            scratch = temp;
+        }
     }
 
-    private static class BatchEntry
+    private void grow()
     {
-        Sprite sprite;
-        Color  tint;
+        final int capacity = keys.length * 2;
+
+        sprites = Arrays.copyOf(sprites, capacity);
+        transforms = Arrays.copyOf(transforms, capacity);
+        tints = Arrays.copyOf(tints, capacity);
+        opacities = Arrays.copyOf(opacities, capacity);
+        keys = Arrays.copyOf(keys, capacity);
 
-        float opacity;
-        int   layer;
+        order = new int[capacity];
+        scratch = new int[capacity];
+    }
 
-        Transform transform;
+    /**
+     * @return The number of sprites submitted since the batch has begun.
+     */
+    public int getCount()
+    {
+        return count;
     }
 }
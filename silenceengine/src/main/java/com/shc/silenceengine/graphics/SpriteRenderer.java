@@ -25,14 +25,18 @@
 package com.shc.silenceengine.graphics;
 
 import com.shc.silenceengine.core.SilenceException;
-import com.shc.silenceengine.graphics.opengl.Primitive;
 import com.shc.silenceengine.graphics.opengl.Texture;
 import com.shc.silenceengine.graphics.programs.DynamicProgram;
+import com.shc.silenceengine.math.Matrix4;
 import com.shc.silenceengine.math.Transform;
 import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.utils.functional.UniCallback;
 
 /**
+ * Renders sprites in batches. The textures of the sprites are bound to as many texture units as the program can sample
+ * from, and every vertex carries the slot of its texture, so the batch is only flushed when a new texture is needed
+ * and all the slots are taken by the textures of the current batch. The least recently used slot is then replaced.
+ *
  * @author Sri Harsha Chilakapati
  */
 public class SpriteRenderer
@@ -45,18 +49,26 @@ public class SpriteRenderer
     private Color   tempCol = new Color();
 
     private DynamicRenderer renderer;
-    private Texture         currentTexture;
+
+    // The IDs of the textures in each slot, -1 if the slot is empty, and when each slot was last used
+    private int[]  slotTextures;
+    private long[] slotLastUsed;
+
+    private long useCounter;
+    private long lastFlushUse;
 
     private boolean disposed;
 
     // Instantiation should happen only via static method
     private SpriteRenderer()
     {
-        renderer = new DynamicRenderer(500 * 2 * 3);
+        renderer = new DynamicRenderer(VertexFormat.createPacked(3), 500 * 4, 500 * 4);
         program.applyToRenderer(renderer);
 
-        currentTexture = Texture.CURRENT != null ? Texture.CURRENT
-                                                 : Texture.fromColor(Color.BLACK, 16, 16);
+        slotTextures = new int[program.getMaxTextures()];
+        slotLastUsed = new long[program.getMaxTextures()];
+
+        clearSlots();
     }
 
     public static void create(UniCallback<SpriteRenderer> onComplete)
@@ -80,73 +92,127 @@ public class SpriteRenderer
     {
         program.use();
         program.applyToRenderer(renderer);
-        renderer.begin(Primitive.TRIANGLES);
-    }
+        renderer.beginQuads();
 
-    public void render(Sprite sprite, Transform transform)
-    {
-        render(sprite, transform, Color.BLACK);
+        // The texture units could have been changed since the last batch
+        clearSlots();
     }
 
-    public void render(Sprite sprite, Transform transform, Color tint)
+    private void clearSlots()
     {
-        render(sprite, transform, tint, 1);
+        for (int i = 0; i < slotTextures.length; i++)
+        {
+            slotTextures[i] = -1;
+            slotLastUsed[i] = 0;
+        }
+
+        useCounter = lastFlushUse = 0;
     }
 
-    public void render(Sprite sprite, Transform transform, Color tint, float opacity)
+    /**
+     * Finds the slot of a texture, binding it to the least recently used slot if it is not in any.
+     *
+     * @return The slot of the texture.
+     */
+    private int acquireSlot(Texture texture)
     {
-        Texture texture = sprite.getCurrentFrame();
+        final int id = texture.getID();
+
+        int lruSlot = 0;
 
-        if (currentTexture == null || texture.getID() != currentTexture.getID())
+        for (int i = 0; i < slotTextures.length; i++)
         {
-            flush();
-            texture.bind(0);
-            program.setUniform("tex", 0);
+            if (slotTextures[i] == id)
+            {
+                slotLastUsed[i] = ++useCounter;
+                return i;
+            }
+
+            if (slotLastUsed[i] < slotLastUsed[lruSlot])
+                lruSlot = i;
         }
 
-        currentTexture = texture;
+        // Even the least recently used slot is used by the current batch, so all of them are
+        if (slotTextures[lruSlot] != -1 && slotLastUsed[lruSlot] > lastFlushUse)
+            flush();
 
-        tempCol.set(tint).a *= opacity;
+        slotTextures[lruSlot] = id;
+        slotLastUsed[lruSlot] = ++useCounter;
 
-        final float tw = texture.getWidth() / 2;
-        final float th = texture.getHeight() / 2;
+        texture.bind(lruSlot);
 
-        renderer.flushOnOverflow(6);
+        return lruSlot;
+    }
 
-        renderer.vertex(tempVec.set(-1, -1, 0).scale(tw, th, 0).multiply(transform.matrix));
-        renderer.texCoord(currentTexture.getMinU(), currentTexture.getMinV());
-        renderer.color(tempCol);
+    public void render(Sprite sprite, Transform transform)
+    {
+        render(sprite, transform, Color.BLACK);
+    }
 
-        renderer.vertex(tempVec.set(1, -1, 0).scale(tw, th, 0).multiply(transform.matrix));
-        renderer.texCoord(currentTexture.getMaxU(), currentTexture.getMinV());
-        renderer.color(tempCol);
+    public void render(Sprite sprite, Transform transform, Color tint)
+    {
+        render(sprite, transform, tint, 1);
+    }
 
-        renderer.vertex(tempVec.set(-1, 1, 0).scale(tw, th, 0).multiply(transform.matrix));
-        renderer.texCoord(currentTexture.getMinU(), currentTexture.getMaxV());
-        renderer.color(tempCol);
+    public void render(Sprite sprite, Transform transform, Color tint, float opacity)
+    {
+        tempCol.set(tint).a *= opacity;
+        render(sprite.getCurrentFrame(), transform.matrix, tempCol.getRGBA());
+    }
 
-        renderer.vertex(tempVec.set(1, -1, 0).scale(tw, th, 0).multiply(transform.matrix));
-        renderer.texCoord(currentTexture.getMaxU(), currentTexture.getMinV());
-        renderer.color(tempCol);
+    /**
+     * Renders a single frame of a sprite with a transformation matrix and a packed color. This is what the other
+     * render methods end up calling, and is useful to draw sprites that were recorded earlier, like the ones in a
+     * {@link RenderSnapshot}.
+     *
+     * @param texture The frame of the sprite.
+     * @param matrix  The transformation matrix of the sprite.
+     * @param color   The packed RGBA tint of the sprite, with the opacity already applied.
+     */
+    public void render(Texture texture, Matrix4 matrix, int color)
+    {
+        // The slots used before an overflow belong to the flushed batch, and are free to be replaced
+        if (renderer.flushOnOverflow(4))
+            lastFlushUse = useCounter;
 
-        renderer.vertex(tempVec.set(1, 1, 0).scale(tw, th, 0).multiply(transform.matrix));
-        renderer.texCoord(currentTexture.getMaxU(), currentTexture.getMaxV());
-        renderer.color(tempCol);
+        final int slot = acquireSlot(texture);
 
-        renderer.vertex(tempVec.set(-1, 1, 0).scale(tw, th, 0).multiply(transform.matrix));
-        renderer.texCoord(currentTexture.getMinU(), currentTexture.getMaxV());
-        renderer.color(tempCol);
+        final float tw = texture.getWidth() / 2;
+        final float th = texture.getHeight() / 2;
+
+        renderer.vertex(tempVec.set(-1, -1, 0).scale(tw, th, 0).multiply(matrix));
+        renderer.texCoord(texture.getMinU(), texture.getMinV());
+        renderer.color(color);
+        renderer.textureSlot(slot);
+
+        renderer.vertex(tempVec.set(1, -1, 0).scale(tw, th, 0).multiply(matrix));
+        renderer.texCoord(texture.getMaxU(), texture.getMinV());
+        renderer.color(color);
+        renderer.textureSlot(slot);
+
+        renderer.vertex(tempVec.set(1, 1, 0).scale(tw, th, 0).multiply(matrix));
+        renderer.texCoord(texture.getMaxU(), texture.getMaxV());
+        renderer.color(color);
+        renderer.textureSlot(slot);
+
+        renderer.vertex(tempVec.set(-1, 1, 0).scale(tw, th, 0).multiply(matrix));
+        renderer.texCoord(texture.getMinU(), texture.getMaxV());
+        renderer.color(color);
+        renderer.textureSlot(slot);
     }
 
     public void flush()
     {
         renderer.flush();
+        lastFlushUse = useCounter;
     }
 
     public void end()
     {
         renderer.end();
-        currentTexture = null;
+
+        // Other renderers expect the first unit to be active
+        Texture.setActiveUnit(0);
     }
 
     public boolean isActive()
@@ -0,0 +1,448 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.IResource;
+import com.shc.silenceengine.graphics.opengl.Primitive;
+import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.graphics.programs.DynamicProgram;
+import com.shc.silenceengine.math.Matrix4;
+import com.shc.silenceengine.math.Vector3;
+import com.shc.silenceengine.math.geom2d.Rectangle;
+import com.shc.silenceengine.scene.components.SpriteComponent;
+import com.shc.silenceengine.scene.components.TransformComponent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bakes the sprites that don't move into persistent vertex buffers, so that they are not rebuilt and streamed every
+ * frame like the sprites in a {@link SpriteBatch}. The sprites are grouped into chunks by their layer, their texture
+ * and the square region of the world they are in, and each chunk is a single {@link MeshRenderer} drawn with a single
+ * draw call. A chunk is only rebuilt when one of its sprites is moved, changes its frame, tint, opacity or layer, or is
+ * removed, so a change in one part of the world doesn't rebuild the rest of it.
+ *
+ * <p>The sprites are kept by the batch once they are submitted. They only have to be submitted again when they have
+ * changed, and removed when they are no longer drawn, so the frames in which nothing changes cost nothing but the draw
+ * calls of the visible chunks. The chunks are drawn in the same order as a SpriteBatch would, the higher layers first,
+ * but all of them are drawn before the sprites that are not static.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class StaticSpriteBatch implements IResource
+{
+    // The default size of the square regions of the world the chunks are made of
+    public static final float DEFAULT_CHUNK_SIZE = 512;
+
+    private final float chunkSize;
+
+    private final Map<SpriteComponent, Member> members = new HashMap<>();
+    private final Map<ChunkKey, Chunk>         chunks  = new HashMap<>();
+
+    // The chunks in the order they are drawn, sorted again only when chunks are added
+    private final List<Chunk> drawOrder = new ArrayList<>();
+
+    // The chunks that have to be rebuilt or dropped at the end of this frame
+    private final List<Chunk> dirtyChunks = new ArrayList<>();
+
+    private boolean orderDirty;
+
+    private DynamicRenderer captureRenderer;
+    private Material        material;
+
+    private Vector3 tempVec = new Vector3();
+    private Color   tempCol = new Color();
+
+    // The bounds of the vertices of the chunk being rebuilt
+    private float minX, minY, maxX, maxY;
+
+    private int rebuiltChunks;
+
+    public StaticSpriteBatch()
+    {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public StaticSpriteBatch(float chunkSize)
+    {
+        this.chunkSize = chunkSize;
+
+        captureRenderer = new DynamicRenderer(VertexFormat.createPacked(3), 4096, 1024 * 1024);
+
+        material = new DefaultMaterial(IGraphicsDevice.Programs.dynamic, renderer ->
+        {
+            DynamicProgram program = IGraphicsDevice.Programs.dynamic;
+
+            renderer.vertexLocation = program.getAttribute(DynamicProgram.VERTEX_ATTRIB);
+            renderer.colorLocation = program.getAttribute(DynamicProgram.COLOR_ATTRIB);
+            renderer.uvLocation = program.getAttribute(DynamicProgram.TEXCOORD_ATTRIB);
+        });
+    }
+
+    public void begin()
+    {
+        rebuiltChunks = 0;
+    }
+
+    /**
+     * Submits a static sprite that is new or has changed. The sprite is baked into its chunk the first time it is
+     * submitted, and the chunk is only rebuilt if the sprite has changed since then.
+     *
+     * @param component The sprite component.
+     * @param transform The transform component of the entity of the sprite.
+     */
+    public void submit(SpriteComponent component, TransformComponent transform)
+    {
+        Member member = members.get(component);
+
+        if (member == null)
+        {
+            member = new Member();
+            members.put(component, member);
+        }
+
+        Texture texture = component.sprite.getCurrentFrame();
+
+        tempCol.set(component.tint).a *= component.opacity;
+        final int color = tempCol.getRGBA();
+
+        // The matrix is compared by value, the transform can change any number of times between two frames
+        final Matrix4 matrix = transform.getWorldTransform().matrix;
+
+        final boolean changed = member.chunk == null
+                                || !member.matrix.equals(matrix)
+                                || member.texture != texture
+                                || member.color != color
+                                || member.layer != component.layer;
+
+        if (!changed)
+            return;
+
+        member.matrix.set(matrix);
+        member.texture = texture;
+        member.color = color;
+        member.layer = component.layer;
+
+        tempVec.set(0, 0, 0).multiply(member.matrix);
+
+        ChunkKey key = new ChunkKey(component.layer, texture.getID(),
+                (int) Math.floor(tempVec.x / chunkSize), (int) Math.floor(tempVec.y / chunkSize));
+
+        Chunk chunk = chunks.get(key);
+
+        if (chunk == null)
+        {
+            chunk = new Chunk(key, texture);
+            chunks.put(key, chunk);
+            drawOrder.add(chunk);
+
+            orderDirty = true;
+        }
+
+        if (member.chunk != chunk)
+        {
+            if (member.chunk != null)
+                markDirty(member.chunk.remove(member));
+
+            chunk.add(member);
+        }
+
+        markDirty(chunk);
+    }
+
+    /**
+     * Removes a static sprite that is no longer drawn.
+     *
+     * @param component The sprite component that was submitted before.
+     */
+    public void remove(SpriteComponent component)
+    {
+        Member member = members.remove(component);
+
+        if (member != null && member.chunk != null)
+            markDirty(member.chunk.remove(member));
+    }
+
+    /**
+     * Removes all the sprites from the batch.
+     */
+    public void clear()
+    {
+        for (Chunk chunk : drawOrder)
+            chunk.dispose();
+
+        drawOrder.clear();
+        dirtyChunks.clear();
+        chunks.clear();
+        members.clear();
+    }
+
+    /**
+     * Rebuilds the chunks that have changed and renders all the chunks.
+     */
+    public void end()
+    {
+        end(null);
+    }
+
+    /**
+     * Rebuilds the chunks that have changed and renders the chunks that intersect a view rectangle.
+     *
+     * @param view The visible part of the world, or null to render all the chunks.
+     */
+    public void end(Rectangle view)
+    {
+        for (Chunk chunk : dirtyChunks)
+        {
+            if (chunk.members.isEmpty())
+            {
+                chunk.dispose();
+                chunks.remove(chunk.key);
+                drawOrder.remove(chunk);
+            }
+            else
+                rebuild(chunk);
+        }
+
+        dirtyChunks.clear();
+
+        if (orderDirty)
+        {
+            Collections.sort(drawOrder, (a, b) -> a.key.layer != b.key.layer ? Integer.compare(b.key.layer, a.key.layer)
+                                                                                : Integer.compare(a.key.textureID,
+                                                                                        b.key.textureID));
+            orderDirty = false;
+        }
+
+        render(view);
+    }
+
+    private void render(Rectangle view)
+    {
+        if (drawOrder.isEmpty())
+            return;
+
+        IGraphicsDevice.Programs.dynamic.prepareFrame();
+
+        for (Chunk chunk : drawOrder)
+        {
+            if (view != null && !view.intersects(chunk.bounds))
+                continue;
+
+            chunk.texture.bind(0);
+            chunk.meshRenderer.render(material);
+        }
+    }
+
+    private void markDirty(Chunk chunk)
+    {
+        if (!chunk.dirty)
+        {
+            chunk.dirty = true;
+            dirtyChunks.add(chunk);
+        }
+    }
+
+    private void rebuild(Chunk chunk)
+    {
+        IGraphicsDevice.Programs.dynamic.applyToRenderer(captureRenderer);
+        captureRenderer.begin(Primitive.TRIANGLES, DynamicRenderer.RenderPolicy.NO_RENDER);
+
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+
+        for (Member member : chunk.members)
+        {
+            final Texture texture = member.texture;
+            final float tw = texture.getWidth() / 2;
+            final float th = texture.getHeight() / 2;
+
+            // Two triangles per sprite, the same corners as the SpriteRenderer uses for its quads
+            corner(member, -1, -1, tw, th, texture.getMinU(), texture.getMinV());
+            corner(member, 1, -1, tw, th, texture.getMaxU(), texture.getMinV());
+            corner(member, 1, 1, tw, th, texture.getMaxU(), texture.getMaxV());
+
+            corner(member, 1, 1, tw, th, texture.getMaxU(), texture.getMaxV());
+            corner(member, -1, 1, tw, th, texture.getMinU(), texture.getMaxV());
+            corner(member, -1, -1, tw, th, texture.getMinU(), texture.getMinV());
+        }
+
+        captureRenderer.end();
+
+        // The sprites can extend out of the region of the chunk, so the bounds are those of the vertices
+        chunk.bounds.set(minX, minY, maxX - minX, maxY - minY);
+
+        if (chunk.meshRenderer != null)
+            chunk.meshRenderer.dispose();
+
+        chunk.meshRenderer = new MeshRenderer(captureRenderer);
+        chunk.dirty = false;
+
+        rebuiltChunks++;
+    }
+
+    private void corner(Member member, float x, float y, float tw, float th, float u, float v)
+    {
+        tempVec.set(x, y, 0).scale(tw, th, 0).multiply(member.matrix);
+
+        minX = Math.min(minX, tempVec.x);
+        minY = Math.min(minY, tempVec.y);
+        maxX = Math.max(maxX, tempVec.x);
+        maxY = Math.max(maxY, tempVec.y);
+
+        captureRenderer.vertex(tempVec);
+        captureRenderer.texCoord(u, v);
+        captureRenderer.color(member.color);
+        captureRenderer.textureSlot(0);
+    }
+
+    /**
+     * @return The number of chunks that are drawn, which is also the number of draw calls.
+     */
+    public int getChunkCount()
+    {
+        return drawOrder.size();
+    }
+
+    /**
+     * @return The number of chunks that were rebuilt in the current frame.
+     */
+    public int getRebuiltChunks()
+    {
+        return rebuiltChunks;
+    }
+
+    public int getSpriteCount()
+    {
+        return members.size();
+    }
+
+    @Override
+    public void dispose()
+    {
+        clear();
+        captureRenderer.dispose();
+    }
+
+    private static class Member
+    {
+        private final Matrix4 matrix = new Matrix4();
+
+        private Texture texture;
+        private int     color;
+        private int     layer;
+
+        // The chunk of the member, and the index of the member in it
+        private Chunk chunk;
+        private int   index;
+    }
+
+    private static class Chunk
+    {
+        private final ChunkKey     key;
+        private final Texture      texture;
+        private final List<Member> members = new ArrayList<>();
+        private final Rectangle    bounds  = new Rectangle();
+
+        private MeshRenderer meshRenderer;
+        private boolean      dirty;
+
+        Chunk(ChunkKey key, Texture texture)
+        {
+            this.key = key;
+            this.texture = texture;
+        }
+
+        void add(Member member)
+        {
+            member.chunk = this;
+            member.index = members.size();
+            members.add(member);
+        }
+
+        Chunk remove(Member member)
+        {
+            // The last member takes the place of the removed one, the order of the sprites in a chunk doesn't matter
+            Member last = members.remove(members.size() - 1);
+
+            if (last != member)
+            {
+                members.set(member.index, last);
+                last.index = member.index;
+            }
+
+            member.chunk = null;
+            return this;
+        }
+
+        void dispose()
+        {
+            if (meshRenderer != null)
+                meshRenderer.dispose();
+
+            meshRenderer = null;
+        }
+    }
+
+    private static class ChunkKey
+    {
+        private final int layer;
+        private final int textureID;
+        private final int x;
+        private final int y;
+
+        ChunkKey(int layer, int textureID, int x, int y)
+        {
+            this.layer = layer;
+            this.textureID = textureID;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ChunkKey chunkKey = (ChunkKey) o;
+
+            return layer == chunkKey.layer && textureID == chunkKey.textureID && x == chunkKey.x && y == chunkKey.y;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = layer;
+            result = 31 * result + textureID;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            return result;
+        }
+    }
+}
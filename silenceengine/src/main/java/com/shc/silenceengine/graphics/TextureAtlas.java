@@ -0,0 +1,501 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.core.IResource;
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.graphics.opengl.SubTexture;
+import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.io.DirectBuffer;
+import com.shc.silenceengine.utils.TaskManager;
+import com.shc.silenceengine.utils.functional.UniCallback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Packs many images into a few large textures, called pages, so that the sprites using them can be drawn in a single
+ * batch instead of breaking it on every change of the texture. The images are packed using the MaxRects algorithm
+ * with the best short side fit heuristic, and every image becomes a {@link SubTexture} region of a page, which can be
+ * used by a {@link Sprite}, an {@link Animation} or a {@link SpriteSheet} like any other texture.
+ *
+ * <p>To keep the neighbouring regions from bleeding into each other when filtered, the regions are separated by a
+ * padding of transparent pixels, and the edges of the images can be extruded, that is, repeated outside the region.
+ * </p>
+ *
+ * <p>Packing is done on the CPU in {@link #pack()}, and uploading the pages needs the graphics context, so it is done
+ * separately in {@link #upload()}. The {@link #build(UniCallback)} method packs the atlas off the game thread where the
+ * platform allows it, and the {@link com.shc.silenceengine.core.ResourceLoader} can pack all the textures it loads
+ * into an atlas using it.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class TextureAtlas implements IResource
+{
+    private final int pageWidth;
+    private final int pageHeight;
+
+    private int padding   = 2;
+    private int extrusion = 1;
+
+    private final List<Image>  images;
+    private final List<Region> regions;
+
+    private final List<DirectBuffer> pageData;
+    private final List<Texture>      pages;
+    private final List<SubTexture>   subTextures;
+
+    private boolean packed;
+    private boolean disposed;
+
+    public TextureAtlas()
+    {
+        this(2048, 2048);
+    }
+
+    /**
+     * Creates an empty TextureAtlas.
+     *
+     * @param pageWidth  The width of every page in pixels.
+     * @param pageHeight The height of every page in pixels.
+     */
+    public TextureAtlas(int pageWidth, int pageHeight)
+    {
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+
+        images = new ArrayList<>();
+        regions = new ArrayList<>();
+        pageData = new ArrayList<>();
+        pages = new ArrayList<>();
+        subTextures = new ArrayList<>();
+    }
+
+    /**
+     * Adds an image to be packed. The image is only read while packing, and it is not disposed by the atlas.
+     *
+     * @param image The image to add.
+     *
+     * @return The index of the region of this image, to be used with {@link #getRegion(int)}.
+     */
+    public int add(Image image)
+    {
+        if (packed)
+            throw new SilenceException("Cannot add images to an atlas that is already packed");
+
+        images.add(image);
+        return images.size() - 1;
+    }
+
+    /**
+     * Builds the atlas, by packing it off the game thread where possible and uploading the pages with the render tasks.
+     *
+     * @param onComplete The callback to invoke on the game thread once the atlas is ready to be used.
+     */
+    public void build(UniCallback<TextureAtlas> onComplete)
+    {
+        SilenceEngine.io.runAsync(() ->
+        {
+            pack();
+
+            return () -> TaskManager.runOnRender(() ->
+            {
+                upload();
+                return this;
+            }, onComplete);
+        });
+    }
+
+    /**
+     * Packs the images into pages in main memory. This doesn't need the graphics context, so it can be called from a
+     * worker thread.
+     */
+    public void pack()
+    {
+        if (packed)
+            throw new SilenceException("The atlas is already packed");
+
+        final int border = extrusion * 2 + padding;
+
+        List<Integer> order = new ArrayList<>();
+
+        for (int i = 0; i < images.size(); i++)
+        {
+            Image image = images.get(i);
+
+            if (image.getWidth() + extrusion * 2 > pageWidth || image.getHeight() + extrusion * 2 > pageHeight)
+                throw new SilenceException("Image " + i + " of size " + image.getWidth() + "x" + image.getHeight()
+                                           + " doesn't fit into the atlas pages");
+
+            regions.add(null);
+            order.add(i);
+        }
+
+        // Packing the larger images first leaves less wasted space
+        Collections.sort(order, (a, b) ->
+        {
+            Image i1 = images.get(a);
+            Image i2 = images.get(b);
+
+            int side = Math.max(i2.getWidth(), i2.getHeight()) - Math.max(i1.getWidth(), i1.getHeight());
+
+            if (side != 0)
+                return side;
+
+            return i2.getWidth() * i2.getHeight() - i1.getWidth() * i1.getHeight();
+        });
+
+        List<MaxRects> packers = new ArrayList<>();
+
+        for (int index : order)
+        {
+            Image image = images.get(index);
+
+            final int width = image.getWidth() + border;
+            final int height = image.getHeight() + border;
+
+            Region region = null;
+
+            for (int page = 0; page < packers.size() && region == null; page++)
+                region = packers.get(page).insert(page, width, height);
+
+            if (region == null)
+            {
+                // The padding is only needed between the regions, so let it hang over the edges of the page
+                MaxRects packer = new MaxRects(pageWidth + padding, pageHeight + padding);
+                packers.add(packer);
+
+                region = packer.insert(packers.size() - 1, width, height);
+            }
+
+            regions.set(index, region);
+        }
+
+        for (int i = 0; i < packers.size(); i++)
+        {
+            DirectBuffer data = SilenceEngine.io.create(pageWidth * pageHeight * 4);
+
+            // The padding should be transparent
+            for (int offset = 0; offset < data.sizeBytes(); offset += 4)
+                data.writeInt(offset, 0);
+
+            pageData.add(data);
+        }
+
+        for (int i = 0; i < images.size(); i++)
+            blit(images.get(i), regions.get(i));
+
+        packed = true;
+    }
+
+    /**
+     * Copies an image into its region of a page, along with the extruded edges.
+     */
+    private void blit(Image image, Region region)
+    {
+        DirectBuffer page = pageData.get(region.page);
+
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        for (int y = -extrusion; y < height + extrusion; y++)
+        {
+            final int srcY = Math.max(0, Math.min(height - 1, y));
+            final int dstY = region.y + extrusion + y;
+
+            for (int x = -extrusion; x < width + extrusion; x++)
+            {
+                final int srcX = Math.max(0, Math.min(width - 1, x));
+                final int dstX = region.x + extrusion + x;
+
+                final int rgba = image.getPixelRGBA(srcX, srcY);
+                final int offset = 4 * (dstY * pageWidth + dstX);
+
+                page.writeByte(offset, (byte) (rgba >>> 24))
+                        .writeByte(offset + 1, (byte) (rgba >> 16))
+                        .writeByte(offset + 2, (byte) (rgba >> 8))
+                        .writeByte(offset + 3, (byte) rgba);
+            }
+        }
+    }
+
+    /**
+     * Uploads the packed pages to the GPU and creates the regions. This needs to be called on the game thread.
+     */
+    public void upload()
+    {
+        if (!packed)
+            throw new SilenceException("The atlas has to be packed before uploading it");
+
+        for (DirectBuffer data : pageData)
+        {
+            pages.add(Texture.fromDirectBuffer(data, pageWidth, pageHeight, 4));
+            SilenceEngine.io.free(data);
+        }
+
+        pageData.clear();
+
+        for (int i = 0; i < images.size(); i++)
+        {
+            Image image = images.get(i);
+            Region region = regions.get(i);
+            Texture page = pages.get(region.page);
+
+            final float minU = (float) (region.x + extrusion) / pageWidth;
+            final float minV = (float) (region.y + extrusion) / pageHeight;
+            final float maxU = (float) (region.x + extrusion + image.getWidth()) / pageWidth;
+            final float maxV = (float) (region.y + extrusion + image.getHeight()) / pageHeight;
+
+            subTextures.add(page.getSubTexture(minU, minV, maxU, maxV,
+                    image.getOriginalWidth(), image.getOriginalHeight()));
+        }
+
+        // The atlas doesn't own the images, but it no longer needs them either
+        images.clear();
+    }
+
+    public SubTexture getRegion(int index)
+    {
+        return subTextures.get(index);
+    }
+
+    public int getRegionCount()
+    {
+        return subTextures.size();
+    }
+
+    public List<Texture> getPages()
+    {
+        return Collections.unmodifiableList(pages);
+    }
+
+    public int getPageWidth()
+    {
+        return pageWidth;
+    }
+
+    public int getPageHeight()
+    {
+        return pageHeight;
+    }
+
+    public int getPadding()
+    {
+        return padding;
+    }
+
+    /**
+     * @param padding The number of transparent pixels between two regions.
+     *
+     * @return This TextureAtlas for chaining.
+     */
+    public TextureAtlas setPadding(int padding)
+    {
+        this.padding = padding;
+        return this;
+    }
+
+    public int getExtrusion()
+    {
+        return extrusion;
+    }
+
+    /**
+     * @param extrusion The number of times the edge pixels of an image are repeated outside its region.
+     *
+     * @return This TextureAtlas for chaining.
+     */
+    public TextureAtlas setExtrusion(int extrusion)
+    {
+        this.extrusion = extrusion;
+        return this;
+    }
+
+    public boolean isPacked()
+    {
+        return packed;
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (disposed)
+            throw new SilenceException("Cannot dispose an already disposed object");
+
+        for (DirectBuffer data : pageData)
+            SilenceEngine.io.free(data);
+
+        for (Texture page : pages)
+            page.dispose();
+
+        pageData.clear();
+        pages.clear();
+        subTextures.clear();
+
+        disposed = true;
+    }
+
+    public boolean isDisposed()
+    {
+        return disposed;
+    }
+
+    private static class Region
+    {
+        int page;
+        int x, y;
+        int width, height;
+
+        Region(int page, int x, int y, int width, int height)
+        {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean contains(Region other)
+        {
+            return other.x >= x && other.y >= y
+                   && other.x + other.width <= x + width
+                   && other.y + other.height <= y + height;
+        }
+
+        boolean intersects(Region other)
+        {
+            return other.x < x + width && other.x + other.width > x
+                   && other.y < y + height && other.y + other.height > y;
+        }
+    }
+
+    /**
+     * A MaxRects bin packer for a single page. It keeps a list of the maximal free rectangles, and places every new
+     * rectangle into the free rectangle which leaves the shortest leftover side.
+     */
+    private static class MaxRects
+    {
+        private List<Region> freeRects = new ArrayList<>();
+
+        MaxRects(int width, int height)
+        {
+            freeRects.add(new Region(0, 0, 0, width, height));
+        }
+
+        Region insert(int page, int width, int height)
+        {
+            Region best = null;
+
+            int bestShortSide = Integer.MAX_VALUE;
+            int bestLongSide = Integer.MAX_VALUE;
+
+            for (Region free : freeRects)
+            {
+                if (free.width < width || free.height < height)
+                    continue;
+
+                int leftoverX = free.width - width;
+                int leftoverY = free.height - height;
+
+                int shortSide = Math.min(leftoverX, leftoverY);
+                int longSide = Math.max(leftoverX, leftoverY);
+
+                if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide))
+                {
+                    best = free;
+                    bestShortSide = shortSide;
+                    bestLongSide = longSide;
+                }
+            }
+
+            if (best == null)
+                return null;
+
+            Region placed = new Region(page, best.x, best.y, width, height);
+
+            split(placed);
+            prune();
+
+            return placed;
+        }
+
+        private void split(Region placed)
+        {
+            List<Region> newRects = new ArrayList<>();
+
+            for (int i = freeRects.size() - 1; i >= 0; i--)
+            {
+                Region free = freeRects.get(i);
+
+                if (!free.intersects(placed))
+                    continue;
+
+                freeRects.remove(i);
+
+                // Left and right of the placed rectangle
+                if (placed.x > free.x)
+                    newRects.add(new Region(0, free.x, free.y, placed.x - free.x, free.height));
+
+                if (placed.x + placed.width < free.x + free.width)
+                    newRects.add(new Region(0, placed.x + placed.width, free.y,
+                            free.x + free.width - placed.x - placed.width, free.height));
+
+                // Above and below the placed rectangle
+                if (placed.y > free.y)
+                    newRects.add(new Region(0, free.x, free.y, free.width, placed.y - free.y));
+
+                if (placed.y + placed.height < free.y + free.height)
+                    newRects.add(new Region(0, free.x, placed.y + placed.height, free.width,
+                            free.y + free.height - placed.y - placed.height));
+            }
+
+            freeRects.addAll(newRects);
+        }
+
+        private void prune()
+        {
+            // Remove the free rectangles that are completely contained in another one
+            for (int i = 0; i < freeRects.size(); i++)
+            {
+                for (int j = i + 1; j < freeRects.size(); j++)
+                {
+                    Region a = freeRects.get(i);
+                    Region b = freeRects.get(j);
+
+                    if (b.contains(a))
+                    {
+                        freeRects.remove(i--);
+                        break;
+                    }
+
+                    if (a.contains(b))
+                        freeRects.remove(j--);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics;
+
+import com.shc.silenceengine.graphics.opengl.GLException;
+import com.shc.silenceengine.io.PrimitiveSize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
+/**
+ * Describes the layout of a single interleaved vertex. A VertexFormat is a list of elements, each of which specifies
+ * the attribute it stores, the number of components, the GL type of the components and whether they are normalized.
+ * The offsets of the elements and the stride of the vertex are computed as the elements are added, with every element
+ * aligned to a four byte boundary.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class VertexFormat
+{
+    private final List<Element> elements;
+    private final Element[]     elementsByAttribute;
+
+    private int stride;
+
+    public VertexFormat()
+    {
+        elements = new ArrayList<>();
+        elementsByAttribute = new Element[Attribute.values().length];
+    }
+
+    /**
+     * Creates the default format used by the {@link DynamicRenderer}, which stores the position, color, texture
+     * coordinates, normal and the texture slot of the vertex all as floats.
+     *
+     * @return A new VertexFormat with the default layout.
+     */
+    public static VertexFormat createDefault()
+    {
+        return new VertexFormat()
+                .add(Attribute.POSITION, 4)
+                .add(Attribute.COLOR, 4)
+                .add(Attribute.TEXCOORD, 2)
+                .add(Attribute.NORMAL, 4)
+                .add(Attribute.TEXTURE_SLOT, 1);
+    }
+
+    /**
+     * Creates a packed format for 2D rendering, which stores the position as two floats, the color as four normalized
+     * unsigned bytes and the texture coordinates as two normalized unsigned shorts, which is 16 bytes per vertex, and
+     * the texture slot as an unsigned byte if the program uses one. The texture coordinates are clamped to the range of
+     * 0-1, so it can't be used for repeating textures.
+     *
+     * @return A new VertexFormat with the packed 2D layout.
+     */
+    public static VertexFormat createPacked2D()
+    {
+        return createPacked(2);
+    }
+
+    /**
+     * Creates a packed format similar to {@link #createPacked2D()}, but with a custom number of position components.
+     * Components of the position that are not stored are read as 0 for z and 1 for w by the shader.
+     *
+     * @param positionComponents The number of components in the position, usually 2 or 3.
+     *
+     * @return A new VertexFormat with the packed layout.
+     */
+    public static VertexFormat createPacked(int positionComponents)
+    {
+        return new VertexFormat()
+                .add(Attribute.POSITION, positionComponents)
+                .add(Attribute.COLOR, 4, GL_UNSIGNED_BYTE, true)
+                .add(Attribute.TEXCOORD, 2, GL_UNSIGNED_SHORT, true)
+                .add(Attribute.TEXTURE_SLOT, 1, GL_UNSIGNED_BYTE, false);
+    }
+
+    /**
+     * Returns the size in bytes of a single component of a GL type.
+     *
+     * @param type The GL type of the component.
+     *
+     * @return The size in bytes of the component.
+     */
+    public static int sizeOf(int type)
+    {
+        switch (type)
+        {
+            case GL_BYTE:
+            case GL_UNSIGNED_BYTE:
+                return PrimitiveSize.BYTE;
+
+            case GL_SHORT:
+            case GL_UNSIGNED_SHORT:
+                return PrimitiveSize.SHORT;
+
+            case GL_INT:
+            case GL_UNSIGNED_INT:
+                return PrimitiveSize.INT;
+
+            case GL_FLOAT:
+                return PrimitiveSize.FLOAT;
+        }
+
+        throw new GLException("Unsupported vertex component type: " + type);
+    }
+
+    public VertexFormat add(Attribute attribute, int count)
+    {
+        return add(attribute, count, GL_FLOAT, false);
+    }
+
+    /**
+     * Adds an element to the end of this format.
+     *
+     * @param attribute  The attribute stored in the element. An attribute can only be added once.
+     * @param count      The number of components in the element. Must be in range of 1-4.
+     * @param type       The GL type of the components.
+     * @param normalized Whether the components should be normalized when they are read by the shader.
+     *
+     * @return This VertexFormat for chaining.
+     */
+    public VertexFormat add(Attribute attribute, int count, int type, boolean normalized)
+    {
+        if (elementsByAttribute[attribute.ordinal()] != null)
+            throw new GLException("The attribute " + attribute + " is already present in this format");
+
+        if (count < 1 || count > 4)
+            throw new GLException("An element must have 1-4 components");
+
+        Element element = new Element(attribute, count, type, normalized, stride);
+
+        elements.add(element);
+        elementsByAttribute[attribute.ordinal()] = element;
+
+        // Keep every element aligned to four bytes
+        stride += (element.size + 3) & ~3;
+
+        return this;
+    }
+
+    public boolean has(Attribute attribute)
+    {
+        return elementsByAttribute[attribute.ordinal()] != null;
+    }
+
+    /**
+     * @param attribute The attribute to look for.
+     *
+     * @return The element which stores the attribute, or null if this format doesn't store it.
+     */
+    public Element get(Attribute attribute)
+    {
+        return elementsByAttribute[attribute.ordinal()];
+    }
+
+    public List<Element> getElements()
+    {
+        return Collections.unmodifiableList(elements);
+    }
+
+    /**
+     * @return The size in bytes of a single vertex in this format.
+     */
+    public int getStride()
+    {
+        return stride;
+    }
+
+    public enum Attribute
+    {
+        POSITION,
+        COLOR,
+        TEXCOORD,
+        NORMAL,
+        TEXTURE_SLOT
+    }
+
+    public static final class Element
+    {
+        public final Attribute attribute;
+
+        public final int     count;
+        public final int     type;
+        public final boolean normalized;
+
+        public final int offset;
+        public final int size;
+
+        private Element(Attribute attribute, int count, int type, boolean normalized, int offset)
+        {
+            this.attribute = attribute;
+            this.count = count;
+            this.type = type;
+            this.normalized = normalized;
+            this.offset = offset;
+
+            size = count * sizeOf(type);
+        }
+    }
+}
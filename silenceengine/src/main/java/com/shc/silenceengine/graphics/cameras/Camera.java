@@ -29,6 +29,7 @@ import com.shc.silenceengine.input.Mouse;
 import com.shc.silenceengine.math.Matrix4;
 import com.shc.silenceengine.math.Ray;
 import com.shc.silenceengine.math.Vector4;
+import com.shc.silenceengine.math.geom2d.Rectangle;
 
 /**
  * @author Sri Harsha Chilakapati
@@ -96,4 +97,66 @@ public abstract class Camera
 
         return dest;
     }
+
+    /**
+     * Computes the rectangle of the z = 0 plane that is visible through this camera, which is the part of a 2D world
+     * that can be seen. For orthographic cameras this is exact, for perspective cameras the corners of the view are cast
+     * onto the plane, and clamped to the near and far planes if they don't reach it.
+     *
+     * @param dest The rectangle to write the visible bounds to.
+     *
+     * @return The visible bounds of the plane.
+     */
+    public Rectangle getVisibleBounds2D(Rectangle dest)
+    {
+        if (dest == null)
+            dest = new Rectangle();
+
+        Matrix4 inverseWorld = Matrix4.REUSABLE_STACK.pop().set(getView())
+                .multiply(getProjection()).invert();
+
+        Vector4 ndc = Vector4.REUSABLE_STACK.pop();
+        Vector4 near = Vector4.REUSABLE_STACK.pop();
+        Vector4 far = Vector4.REUSABLE_STACK.pop();
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        for (int corner = 0; corner < 4; corner++)
+        {
+            final float x = (corner & 1) == 0 ? -1 : 1;
+            final float y = (corner & 2) == 0 ? -1 : 1;
+
+            inverseWorld.multiply(ndc.set(x, y, -1, 1), near);
+            near.scale(1f / near.w);
+
+            inverseWorld.multiply(ndc.set(x, y, 1, 1), far);
+            far.scale(1f / far.w);
+
+            // Where the line from the near to the far plane crosses z = 0
+            float t = 0;
+
+            if (near.z != far.z)
+                t = Math.max(0, Math.min(1, near.z / (near.z - far.z)));
+
+            final float px = near.x + (far.x - near.x) * t;
+            final float py = near.y + (far.y - near.y) * t;
+
+            minX = Math.min(minX, px);
+            minY = Math.min(minY, py);
+            maxX = Math.max(maxX, px);
+            maxY = Math.max(maxY, py);
+        }
+
+        dest.set(minX, minY, maxX - minX, maxY - minY);
+
+        Vector4.REUSABLE_STACK.push(ndc);
+        Vector4.REUSABLE_STACK.push(near);
+        Vector4.REUSABLE_STACK.push(far);
+        Matrix4.REUSABLE_STACK.push(inverseWorld);
+
+        return dest;
+    }
 }
@@ -31,9 +31,11 @@ import com.shc.silenceengine.graphics.opengl.Texture;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.Vector4;
+import com.shc.silenceengine.utils.TaskManager;
 import com.shc.silenceengine.utils.functional.SimpleCallback;
 import com.shc.silenceengine.utils.functional.UniCallback;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,14 +46,14 @@ import java.util.Map;
 public class BitmapFont implements IFont
 {
     public final Map<Integer, Texture> pages = new HashMap<>();
-    public final Map<Integer, Char>    chars = new HashMap<>();
 
     public final Info   info;
     public final Common common;
 
-    private final Map<Char, Map<Char, Integer>> kerningPairs = new HashMap<>();
+    private final GlyphTable   chars        = new GlyphTable();
+    private final KerningTable kerningPairs = new KerningTable();
 
-    private boolean hadKerning = false;
+    private Texture[] pageTextures = new Texture[0];
 
     private BitmapFont(Info info, Common common)
     {
@@ -128,34 +130,22 @@ public class BitmapFont implements IFont
                 fChar.page = Integer.parseInt(charTag.getAttribute("page").value);
                 fChar.chnl = Integer.parseInt(charTag.getAttribute("chnl").value);
 
-                bitmapFont.chars.put(fChar.id, fChar);
+                bitmapFont.chars.put(fChar);
             }
 
             List<XmlTag> kerningTags = font.getTagsByName("kernings");
             if (kerningTags.size() == 1)
             {
-                // There is kerning support for this font.
-                bitmapFont.hadKerning = true;
-
-                // Initialize kerning pairs
-                for (Char a : bitmapFont.chars.values())
-                {
-                    bitmapFont.kerningPairs.put(a, new HashMap<>());
-
-                    for (Char b : bitmapFont.chars.values())
-                        bitmapFont.kerningPairs.get(a).put(b, 0);
-                }
-
+                // There is kerning support for this font. Only the pairs that are listed are stored, every other pair
+                // of characters has no kerning.
                 for (XmlTag kerningTag : kerningTags.get(0).children)
                 {
                     int first = Integer.parseInt(kerningTag.getAttribute("first").value);
                     int second = Integer.parseInt(kerningTag.getAttribute("second").value);
                     int amount = Integer.parseInt(kerningTag.getAttribute("amount").value);
 
-                    Char fChar = bitmapFont.chars.get(first);
-                    Char sChar = bitmapFont.chars.get(second);
-
-                    bitmapFont.kerningPairs.get(fChar).put(sChar, amount);
+                    if (amount != 0)
+                        bitmapFont.kerningPairs.put(first, second, amount);
                 }
             }
 
@@ -173,16 +163,24 @@ public class BitmapFont implements IFont
 
                 // Reassign the loading callback so the callbacks stack up dynamically.
                 loadingCallback = () ->
-                        SilenceEngine.io.getImageReader().readImage(file, image ->
+                        SilenceEngine.io.getImageReader().readImage(file, image -> TaskManager.runOnRender(() ->
                         {
                             Texture texture = Texture.fromImage(image);
+                            image.dispose();
+
+                            return texture;
+                        }, texture ->
+                        {
                             bitmapFont.pages.put(id, texture);
 
-                            image.dispose();
+                            if (id >= bitmapFont.pageTextures.length)
+                                bitmapFont.pageTextures = Arrays.copyOf(bitmapFont.pageTextures, id + 1);
+
+                            bitmapFont.pageTextures[id] = texture;
 
                             // Invoke the next callback
                             finalLoadingCallback.invoke();
-                        });
+                        }));
             }
 
             loadingCallback.invoke();
@@ -191,7 +189,48 @@ public class BitmapFont implements IFont
 
     public int getKerning(Char first, Char second)
     {
-        return hadKerning ? kerningPairs.get(first).get(second) : 0;
+        return kerningPairs.get(first.id, second.id);
+    }
+
+    /**
+     * @param id The code point of the character.
+     *
+     * @return The glyph of the character, or {@code null} if the font doesn't have it.
+     */
+    public Char getChar(int id)
+    {
+        return chars.get(id);
+    }
+
+    /**
+     * @param id The code point of the character.
+     *
+     * @return The glyph of the character, or the glyph of the space character if the font doesn't have it.
+     */
+    public Char getCharOrSpace(int id)
+    {
+        Char fChar = chars.get(id);
+        return fChar == null ? chars.get(' ') : fChar;
+    }
+
+    public int getCharCount()
+    {
+        return chars.size;
+    }
+
+    public int getKerningPairCount()
+    {
+        return kerningPairs.size;
+    }
+
+    /**
+     * @param id The ID of the page.
+     *
+     * @return The texture of the page, or {@code null} if there is no such page.
+     */
+    public Texture getPage(int id)
+    {
+        return id < pageTextures.length ? pageTextures[id] : null;
     }
 
     public void dispose()
@@ -208,8 +247,10 @@ public class BitmapFont implements IFont
 
         Char last = null;
 
-        for (char ch : text.toCharArray())
+        for (int i = 0; i < text.length(); i++)
         {
+            char ch = text.charAt(i);
+
             if (ch == '\n')
             {
                 width = Math.max(x, width);
@@ -218,8 +259,7 @@ public class BitmapFont implements IFont
                 continue;
             }
 
-            Char curr = chars.get((int) ch);
-            curr = curr == null ? chars.get((int) ' ') : curr;
+            Char curr = getCharOrSpace(ch);
 
             x += curr.xAdvance;
 
@@ -282,4 +322,199 @@ public class BitmapFont implements IFont
         public  int chnl;
         private int id;
     }
+
+    /**
+     * A table of glyphs by their code point. The glyphs of Latin-1 are kept in a direct array, and the rest in an open
+     * addressed hash table, so that looking up a glyph doesn't box the code point.
+     */
+    private static class GlyphTable
+    {
+        private static final int DIRECT_SIZE = 256;
+
+        private final Char[] direct = new Char[DIRECT_SIZE];
+
+        // Code points above Latin-1 are never zero, so zero marks an empty slot
+        private int[]  keys   = new int[16];
+        private Char[] values = new Char[16];
+
+        private int size;
+        private int hashedSize;
+
+        void put(Char fChar)
+        {
+            int id = fChar.id;
+
+            if (id >= 0 && id < DIRECT_SIZE)
+            {
+                if (direct[id] == null)
+                    size++;
+
+                direct[id] = fChar;
+                return;
+            }
+
+            if ((hashedSize + 1) * 4 > keys.length * 3)
+                grow();
+
+            int mask = keys.length - 1;
+            int slot = mix(id) & mask;
+
+            while (keys[slot] != 0 && keys[slot] != id)
+                slot = (slot + 1) & mask;
+
+            if (keys[slot] == 0)
+            {
+                size++;
+                hashedSize++;
+            }
+
+            keys[slot] = id;
+            values[slot] = fChar;
+        }
+
+        Char get(int id)
+        {
+            if (id >= 0 && id < DIRECT_SIZE)
+                return direct[id];
+
+            if (hashedSize == 0)
+                return null;
+
+            int mask = keys.length - 1;
+            int slot = mix(id) & mask;
+
+            while (keys[slot] != 0)
+            {
+                if (keys[slot] == id)
+                    return values[slot];
+
+                slot = (slot + 1) & mask;
+            }
+
+            return null;
+        }
+
+        private void grow()
+        {
+            int[] oldKeys = keys;
+            Char[] oldValues = values;
+
+            keys = new int[oldKeys.length * 2];
+            values = new Char[oldKeys.length * 2];
+
+            int mask = keys.length - 1;
+
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] == 0)
+                    continue;
+
+                int slot = mix(oldKeys[i]) & mask;
+
+                while (keys[slot] != 0)
+                    slot = (slot + 1) & mask;
+
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int mix(int key)
+        {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * A sparse table of kerning amounts, keyed by the pair of code points packed as {@code (first << 32 | second)} in
+     * an open addressed hash table. Pairs that are not in the table have no kerning.
+     */
+    private static class KerningTable
+    {
+        // The pair of two zero code points is never kerned, so a zero key marks an empty slot
+        private long[] keys    = new long[16];
+        private int[]  amounts = new int[16];
+
+        private int size;
+
+        void put(int first, int second, int amount)
+        {
+            long key = pack(first, second);
+
+            if (key == 0)
+                return;
+
+            if ((size + 1) * 4 > keys.length * 3)
+                grow();
+
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+
+            while (keys[slot] != 0 && keys[slot] != key)
+                slot = (slot + 1) & mask;
+
+            if (keys[slot] == 0)
+                size++;
+
+            keys[slot] = key;
+            amounts[slot] = amount;
+        }
+
+        int get(int first, int second)
+        {
+            if (size == 0)
+                return 0;
+
+            long key = pack(first, second);
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+
+            while (keys[slot] != 0)
+            {
+                if (keys[slot] == key)
+                    return amounts[slot];
+
+                slot = (slot + 1) & mask;
+            }
+
+            return 0;
+        }
+
+        private void grow()
+        {
+            long[] oldKeys = keys;
+            int[] oldAmounts = amounts;
+
+            keys = new long[oldKeys.length * 2];
+            amounts = new int[oldKeys.length * 2];
+
+            int mask = keys.length - 1;
+
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] == 0)
+                    continue;
+
+                int slot = mix(oldKeys[i]) & mask;
+
+                while (keys[slot] != 0)
+                    slot = (slot + 1) & mask;
+
+                keys[slot] = oldKeys[i];
+                amounts[slot] = oldAmounts[i];
+            }
+        }
+
+        private static long pack(int first, int second)
+        {
+            return ((long) first << 32) | (second & 0xFFFFFFFFL);
+        }
+
+        private static int mix(long key)
+        {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
 }
@@ -26,7 +26,7 @@ package com.shc.silenceengine.graphics.fonts;
 
 import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.DynamicRenderer;
-import com.shc.silenceengine.graphics.opengl.Primitive;
+import com.shc.silenceengine.graphics.VertexFormat;
 import com.shc.silenceengine.graphics.programs.FontProgram;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.utils.functional.UniCallback;
@@ -39,6 +39,7 @@ public class BitmapFontRenderer
     private DynamicRenderer renderer;
     private FontProgram     fontProgram;
     private boolean         ownsRenderer;
+    private TextLayout      scratchLayout;
 
     private BitmapFontRenderer()
     {
@@ -46,7 +47,7 @@ public class BitmapFontRenderer
 
     public static void create(UniCallback<BitmapFontRenderer> callback)
     {
-        create(callback, new DynamicRenderer(100), true);
+        create(callback, new DynamicRenderer(VertexFormat.createPacked2D(), 100, 100), true);
     }
 
     public static void create(UniCallback<BitmapFontRenderer> callback, DynamicRenderer renderer)
@@ -71,7 +72,7 @@ public class BitmapFontRenderer
     {
         fontProgram.use();
         fontProgram.applyToRenderer(renderer);
-        renderer.begin(Primitive.TRIANGLES);
+        renderer.beginQuads();
     }
 
     public void flush()
@@ -86,89 +87,63 @@ public class BitmapFontRenderer
 
     public void render(BitmapFont font, String text, float x, float y, Color color)
     {
-        final float startX = x;
-        final float startY = y;
+        if (scratchLayout == null)
+            scratchLayout = new TextLayout(font);
 
-        BitmapFont.Char last;
+        scratchLayout.setFont(font).setText(text);
+        render(scratchLayout, x, y, color);
+    }
+
+    /**
+     * Renders a text layout at the given position. The glyphs were laid out by the layout beforehand, so this only
+     * binds the pages that are used and copies the quads into the renderer.
+     *
+     * @param layout The layout of the text to render.
+     * @param x      The x-coordinate of the top left of the text.
+     * @param y      The y-coordinate of the top left of the text.
+     * @param color  The color to render the text in.
+     */
+    public void render(TextLayout layout, float x, float y, Color color)
+    {
+        final int packedColor = color.getRGBA();
+        final BitmapFont font = layout.getFont();
 
-        for (int page : font.pages.keySet())
+        for (TextLayout.Page page : layout.pages)
         {
-            x = startX;
-            y = startY;
-            last = null;
+            if (page == null || page.glyphCount == 0)
+                continue;
 
             end();
-            font.pages.get(page).bind(0);
+            font.getPage(page.id).bind(0);
             begin();
 
-            for (char ch : text.toCharArray())
-            {
-                if (ch == '\n')
-                {
-                    x = startX;
-                    y += font.common.lineHeight;
+            final float[] data = page.data;
+            final int length = page.glyphCount * TextLayout.FLOATS_PER_GLYPH;
 
-                    continue;
-                }
-
-                BitmapFont.Char fChar = font.chars.get((int) ch);
-                fChar = fChar == null ? font.chars.get((int) ' ') : fChar;
-
-                if (last != null)
-                    x += font.getKerning(last, fChar);
+            for (int i = 0; i < length; i += TextLayout.FLOATS_PER_GLYPH)
+            {
+                renderer.flushOnOverflow(4);
 
-                if (page == fChar.page)
+                for (int v = i; v < i + TextLayout.FLOATS_PER_GLYPH; v += 4)
                 {
-                    float sLeft = fChar.x;
-                    float sTop = fChar.y;
-                    float sRight = fChar.x + fChar.width;
-                    float sBot = fChar.y + fChar.height;
-
-                    float dLeft = x + fChar.xOffset;
-                    float dTop = y + fChar.yOffset;
-                    float dRight = dLeft + fChar.width;
-                    float dBot = dTop + fChar.height;
-
-                    // Draw the character here
-                    float u1 = sLeft / font.common.scaleW;
-                    float v1 = sTop / font.common.scaleH;
-                    float u2 = sRight / font.common.scaleW;
-                    float v2 = sBot / font.common.scaleH;
-
-                    renderer.flushOnOverflow(6);
-
-                    renderer.vertex(dLeft, dTop);
-                    renderer.texCoord(u1, v1);
-                    renderer.color(color);
-
-                    renderer.vertex(dRight, dTop);
-                    renderer.texCoord(u2, v1);
-                    renderer.color(color);
-
-                    renderer.vertex(dLeft, dBot);
-                    renderer.texCoord(u1, v2);
-                    renderer.color(color);
-
-                    renderer.vertex(dRight, dTop);
-                    renderer.texCoord(u2, v1);
-                    renderer.color(color);
-
-                    renderer.vertex(dRight, dBot);
-                    renderer.texCoord(u2, v2);
-                    renderer.color(color);
-
-                    renderer.vertex(dLeft, dBot);
-                    renderer.texCoord(u1, v2);
-                    renderer.color(color);
+                    renderer.vertex(x + data[v], y + data[v + 1]);
+                    renderer.texCoord(data[v + 2], data[v + 3]);
+                    renderer.color(packedColor);
                 }
-
-                x += fChar.xAdvance;
-
-                last = fChar;
             }
         }
     }
 
+    public void render(TextLayout layout, float x, float y)
+    {
+        render(layout, x, y, layout.getColor());
+    }
+
+    public void render(TextLayout layout, Vector2 position)
+    {
+        render(layout, position.x, position.y, layout.getColor());
+    }
+
     public void render(BitmapFont font, String text, Vector2 position, Color color)
     {
         render(font, text, position.x, position.y, color);
@@ -0,0 +1,290 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics.fonts;
+
+import com.shc.silenceengine.graphics.Color;
+
+import java.util.Arrays;
+
+/**
+ * <p>A string that is laid out once with a {@link BitmapFont}, and can then be drawn as many times as needed by the
+ * {@link BitmapFontRenderer} without looking up glyphs or kerning again. The glyph quads are grouped by the page of
+ * the font they are on, so every page that is used is bound only once when the layout is drawn, and pages that are not
+ * used are not bound at all.</p>
+ *
+ * <p>The layout is only rebuilt when the font is changed or the text is replaced with a different one. Appending text,
+ * or setting a text that starts with the current one, lays out just the new characters in place, which suits things
+ * like HUD counters and chat logs. The color is applied when the layout is drawn, so it never causes a rebuild.</p>
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class TextLayout
+{
+    // Four vertices for every glyph, each with a position and a texture coordinate
+    static final int FLOATS_PER_GLYPH = 16;
+
+    private final StringBuilder text = new StringBuilder();
+
+    private BitmapFont font;
+    private Color      color = Color.WHITE.copy();
+
+    Page[] pages = new Page[0];
+
+    private int glyphCount;
+
+    // The state of the pen, so that appended text continues where the layout left off
+    private float penX;
+    private float penY;
+    private float width;
+
+    private BitmapFont.Char last;
+
+    public TextLayout(BitmapFont font)
+    {
+        this(font, "");
+    }
+
+    public TextLayout(BitmapFont font, String text)
+    {
+        this.font = font;
+        append(text);
+    }
+
+    public TextLayout setText(CharSequence text)
+    {
+        int length = this.text.length();
+
+        if (text.length() >= length && regionMatches(text, length))
+        {
+            // Only the characters that follow the current text need to be laid out
+            if (text.length() > length)
+                append(text.subSequence(length, text.length()));
+
+            return this;
+        }
+
+        clear();
+        return append(text);
+    }
+
+    private boolean regionMatches(CharSequence other, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (text.charAt(i) != other.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    public TextLayout append(CharSequence text)
+    {
+        for (int i = 0; i < text.length(); i++)
+            layoutChar(text.charAt(i));
+
+        this.text.append(text);
+        return this;
+    }
+
+    public TextLayout append(char ch)
+    {
+        layoutChar(ch);
+        text.append(ch);
+        return this;
+    }
+
+    public TextLayout clear()
+    {
+        text.setLength(0);
+
+        for (Page page : pages)
+        {
+            if (page != null)
+                page.glyphCount = 0;
+        }
+
+        glyphCount = 0;
+        penX = penY = width = 0;
+        last = null;
+
+        return this;
+    }
+
+    private void layoutChar(char ch)
+    {
+        if (ch == '\n')
+        {
+            width = Math.max(width, penX);
+            penX = 0;
+            penY += font.common.lineHeight;
+            last = null;
+
+            return;
+        }
+
+        BitmapFont.Char fChar = font.getCharOrSpace(ch);
+
+        if (fChar == null)
+            return;
+
+        if (last != null)
+            penX += font.getKerning(last, fChar);
+
+        if (fChar.width > 0 && fChar.height > 0)
+        {
+            float u1 = (float) fChar.x / font.common.scaleW;
+            float v1 = (float) fChar.y / font.common.scaleH;
+            float u2 = (float) (fChar.x + fChar.width) / font.common.scaleW;
+            float v2 = (float) (fChar.y + fChar.height) / font.common.scaleH;
+
+            float dLeft = penX + fChar.xOffset;
+            float dTop = penY + fChar.yOffset;
+            float dRight = dLeft + fChar.width;
+            float dBot = dTop + fChar.height;
+
+            Page page = getPage(fChar.page);
+            float[] data = page.reserve();
+
+            int i = page.glyphCount++ * FLOATS_PER_GLYPH;
+
+            data[i++] = dLeft;
+            data[i++] = dTop;
+            data[i++] = u1;
+            data[i++] = v1;
+
+            data[i++] = dRight;
+            data[i++] = dTop;
+            data[i++] = u2;
+            data[i++] = v1;
+
+            data[i++] = dRight;
+            data[i++] = dBot;
+            data[i++] = u2;
+            data[i++] = v2;
+
+            data[i++] = dLeft;
+            data[i++] = dBot;
+            data[i++] = u1;
+            data[i] = v2;
+
+            glyphCount++;
+        }
+
+        penX += fChar.xAdvance;
+        last = fChar;
+    }
+
+    private Page getPage(int index)
+    {
+        if (index >= pages.length)
+            pages = Arrays.copyOf(pages, index + 1);
+
+        if (pages[index] == null)
+            pages[index] = new Page(index);
+
+        return pages[index];
+    }
+
+    public String getText()
+    {
+        return text.toString();
+    }
+
+    public BitmapFont getFont()
+    {
+        return font;
+    }
+
+    public TextLayout setFont(BitmapFont font)
+    {
+        if (this.font != font)
+        {
+            this.font = font;
+
+            String current = text.toString();
+            clear();
+            append(current);
+        }
+
+        return this;
+    }
+
+    public Color getColor()
+    {
+        return color;
+    }
+
+    public TextLayout setColor(Color color)
+    {
+        this.color.set(color);
+        return this;
+    }
+
+    /**
+     * @return The width of the widest line in the layout.
+     */
+    public float getWidth()
+    {
+        return Math.max(width, penX);
+    }
+
+    /**
+     * @return The height of all the lines in the layout.
+     */
+    public float getHeight()
+    {
+        return penY + font.common.lineHeight;
+    }
+
+    /**
+     * @return The number of glyph quads in the layout, which excludes line breaks and empty glyphs like spaces.
+     */
+    public int getGlyphCount()
+    {
+        return glyphCount;
+    }
+
+    static class Page
+    {
+        final int id;
+
+        float[] data = new float[FLOATS_PER_GLYPH * 16];
+        int     glyphCount;
+
+        Page(int id)
+        {
+            this.id = id;
+        }
+
+        float[] reserve()
+        {
+            if ((glyphCount + 1) * FLOATS_PER_GLYPH > data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+
+            return data;
+        }
+    }
+}
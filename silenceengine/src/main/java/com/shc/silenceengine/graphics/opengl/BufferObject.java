@@ -47,6 +47,9 @@ public class BufferObject
 
     private int id;
     private int capacity;
+    private int streamOffset;
+
+    private Usage   usage;
 
     private Target  target;
     private boolean disposed;
@@ -85,6 +88,9 @@ public class BufferObject
     {
         bind();
         capacity = data.sizeBytes();
+        streamOffset = capacity;
+
+        this.usage = usage;
 
         SilenceEngine.graphics.glBufferData(target.getValue(), data, usage.getValue());
         GLError.check();
@@ -95,18 +101,37 @@ public class BufferObject
      * constructor.
      */
     public void bind()
+    {
+        bind(false);
+    }
+
+    /**
+     * Binds this VertexBufferObject to the OpenGL binding point specified by the target you specified in the
+     * constructor. The binding of the element array buffer is part of the state of the bound VertexArray, so use force
+     * to bind it to a VertexArray even if it is already bound to some other one.
+     *
+     * @param force Force binding the object.
+     */
+    public void bind(boolean force)
     {
         if (disposed)
             throw new GLException("BufferObject is already disposed!");
 
         // Prevent un-necessary bindings, they are costly
-        if (current.containsKey(target.getValue()) && current.get(target.getValue()) == this)
+        if (!force && current.get(target.getValue()) == this)
+        {
+            GLContext.stateChangeElided();
             return;
+        }
 
         SilenceEngine.graphics.glBindBuffer(target.getValue(), id);
         current.put(target.getValue(), this);
 
         GLError.check();
+        GLContext.stateChangeIssued();
+
+        if (target.getValue() == GL_ELEMENT_ARRAY_BUFFER && VertexArray.CURRENT != null)
+            VertexArray.CURRENT.setElementBuffer(this);
     }
 
     /**
@@ -120,11 +145,65 @@ public class BufferObject
     {
         bind();
         this.capacity = capacity;
+        this.usage = usage;
+
+        streamOffset = 0;
         SilenceEngine.graphics.glBufferData(target.getValue(), capacity, usage.getValue());
 
         GLError.check();
     }
 
+    /**
+     * Orphans the data store of this BufferObject by re-specifying it with the same capacity and usage. The driver
+     * hands out a fresh store while the draw calls still using the old one complete, so the contents are lost.
+     */
+    public void orphan()
+    {
+        if (usage == null)
+            throw new GLException("Cannot orphan a BufferObject without a data store");
+
+        uploadData(capacity, usage);
+    }
+
+    /**
+     * Streams data into this BufferObject, treating its data store as a ring buffer. The data is written right after
+     * the data that was streamed previously without waiting for the GPU, and the store is orphaned only when the data
+     * no longer fits at the end. This avoids re-specifying the data store on every upload. The data store has to be
+     * created first with {@link #uploadData(int, Usage)}, ideally with {@link Usage#STREAM_DRAW} usage and a capacity
+     * of several batches.
+     *
+     * @param data      The buffer with data to be streamed.
+     * @param size      The number of bytes to stream, starting at the beginning of the data.
+     * @param alignment The alignment of the offset at which the data is written. Pass the stride of the vertices so
+     *                  that the offset can be converted into the index of the first vertex when drawing.
+     *
+     * @return The byte offset in the data store at which the data was written.
+     */
+    public int streamData(DirectBuffer data, int size, int alignment)
+    {
+        if (size > capacity)
+            throw new GLException("Not enough capacity");
+
+        // Align the offset to the next multiple of alignment
+        int offset = ((streamOffset + alignment - 1) / alignment) * alignment;
+
+        if (offset + size > capacity)
+        {
+            // Wrap around to the beginning of a fresh store
+            orphan();
+            offset = 0;
+        }
+
+        bind();
+
+        SilenceEngine.graphics.glBufferSubDataUnsynchronized(target.getValue(), offset, size, data);
+        GLError.check();
+
+        streamOffset = offset + size;
+
+        return offset;
+    }
+
     /**
      * Updates a subset of data starting from the offset in the BufferObject's data store with the data from a direct
      * buffer
@@ -158,7 +237,7 @@ public class BufferObject
      */
     public void uploadSubData(DirectBuffer data, int offset, int size)
     {
-        if (capacity < data.sizeBytes() - offset)
+        if (offset + size > capacity)
             throw new GLException("Not enough capacity");
 
         bind();
@@ -179,6 +258,11 @@ public class BufferObject
         SilenceEngine.graphics.glDeleteBuffers(id);
         GLError.check();
         disposed = true;
+
+        current.remove(target.getValue());
+
+        if (target.getValue() == GL_ELEMENT_ARRAY_BUFFER && VertexArray.CURRENT != null)
+            VertexArray.CURRENT.setElementBuffer(null);
     }
 
     public boolean isValid()
@@ -203,6 +287,22 @@ public class BufferObject
         return capacity;
     }
 
+    /**
+     * @return The byte offset in the data store at which the next streamed data will be written.
+     */
+    public int getStreamOffset()
+    {
+        return streamOffset;
+    }
+
+    /**
+     * @return The usage of the data store of this VertexBufferObject, or null if no data store is created yet.
+     */
+    public Usage getUsage()
+    {
+        return usage;
+    }
+
     /**
      * @return The binding target of this VertexBufferObject
      */
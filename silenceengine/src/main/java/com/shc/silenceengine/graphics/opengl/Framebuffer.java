@@ -104,8 +104,7 @@ public class Framebuffer
         SilenceEngine.graphics.glBindFramebuffer(target.getValue(), id);
         GLError.check();
 
-        SilenceEngine.graphics.glViewport(0, 0, SilenceEngine.display.getWidth(), SilenceEngine.display.getHeight());
-        GLError.check();
+        GLContext.viewport(0, 0, SilenceEngine.display.getWidth(), SilenceEngine.display.getHeight());
 
         SilenceEngine.graphics.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
         GLError.check();
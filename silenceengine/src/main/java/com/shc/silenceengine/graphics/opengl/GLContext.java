@@ -26,34 +26,184 @@ package com.shc.silenceengine.graphics.opengl;
 
 import com.shc.silenceengine.core.SilenceEngine;
 import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.graphics.IGraphicsDevice;
+
+import java.util.Arrays;
 
 import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
 
 /**
+ * The GLContext wraps the global state of the OpenGL context. It shadows the state that is set through it, so that
+ * the calls that wouldn't change anything never reach the driver. The counts of the issued and the elided state changes
+ * are kept in {@link IGraphicsDevice.Data}. If the state is changed by any code that doesn't go through the engine, the
+ * shadowed state should be invalidated with {@link #invalidateState()}.
+ *
  * @author Sri Harsha Chilakapati
  */
 public final class GLContext
 {
+    // The shadowed state of the context, -1 means that the state is unknown
+    private static final byte CAPABILITY_UNKNOWN  = 0;
+    private static final byte CAPABILITY_ENABLED  = 1;
+    private static final byte CAPABILITY_DISABLED = 2;
+
+    // The capabilities are kept in an open addressed table, no capability has the value zero which marks a free slot
+    private static int[]  capabilityKeys   = new int[32];
+    private static byte[] capabilityStates = new byte[32];
+    private static int    capabilityCount;
+
+    private static int blendSrc  = -1;
+    private static int blendDst  = -1;
+    private static int depthFunc = -1;
+    private static int depthMask = -1;
+    private static int cullFace  = -1;
+
+    private static boolean viewportKnown;
+    private static int     viewportX;
+    private static int     viewportY;
+    private static int     viewportWidth;
+    private static int     viewportHeight;
+
+    private static boolean clearColorKnown;
+    private static float   clearR;
+    private static float   clearG;
+    private static float   clearB;
+    private static float   clearA;
+
     private GLContext()
     {
     }
 
+    /**
+     * Forgets all the shadowed state of the context, including the bound objects. The next state changes will all
+     * reach the driver. Call this after the context is lost or recreated, or after some external code changed the
+     * state of the context behind the engine.
+     */
+    public static void invalidateState()
+    {
+        Arrays.fill(capabilityStates, CAPABILITY_UNKNOWN);
+
+        blendSrc = blendDst = -1;
+        depthFunc = depthMask = cullFace = -1;
+
+        viewportKnown = false;
+        clearColorKnown = false;
+
+        VertexArray.CURRENT = null;
+        BufferObject.current.clear();
+        Program.CURRENT = null;
+        Texture.invalidateBindings();
+    }
+
+    /**
+     * Resets the total counts of the issued and the elided state changes.
+     */
+    public static void resetStateCounters()
+    {
+        IGraphicsDevice.Data.totalStateChanges = 0;
+        IGraphicsDevice.Data.totalElidedStateChanges = 0;
+    }
+
+    static void stateChangeIssued()
+    {
+        IGraphicsDevice.Data.stateChangesThisFrame++;
+        IGraphicsDevice.Data.totalStateChanges++;
+    }
+
+    static void stateChangeElided()
+    {
+        IGraphicsDevice.Data.elidedStateChangesThisFrame++;
+        IGraphicsDevice.Data.totalElidedStateChanges++;
+    }
+
+    private static int capabilitySlot(int capability)
+    {
+        int mask = capabilityKeys.length - 1;
+        int slot = (capability ^ (capability >>> 7)) & mask;
+
+        while (capabilityKeys[slot] != capability)
+        {
+            if (capabilityKeys[slot] == 0)
+            {
+                // Keep the table at most half full, so that the probes stay short
+                if (++capabilityCount > capabilityKeys.length / 2)
+                {
+                    growCapabilities();
+                    return capabilitySlot(capability);
+                }
+
+                capabilityKeys[slot] = capability;
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private static void growCapabilities()
+    {
+        int[] keys = capabilityKeys;
+        byte[] states = capabilityStates;
+
+        capabilityKeys = new int[keys.length * 2];
+        capabilityStates = new byte[keys.length * 2];
+        capabilityCount = 0;
+
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != 0)
+                capabilityStates[capabilitySlot(keys[i])] = states[i];
+    }
+
     public static void enable(int capability)
     {
+        final int slot = capabilitySlot(capability);
+
+        if (capabilityStates[slot] == CAPABILITY_ENABLED)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glEnable(capability);
         GLError.check();
+
+        capabilityStates[slot] = CAPABILITY_ENABLED;
+        stateChangeIssued();
     }
 
     public static void blendFunc(int src, int dst)
     {
+        if (blendSrc == src && blendDst == dst)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glBlendFunc(src, dst);
         GLError.check();
+
+        blendSrc = src;
+        blendDst = dst;
+        stateChangeIssued();
     }
 
     public static void disable(int capability)
     {
+        final int slot = capabilitySlot(capability);
+
+        if (capabilityStates[slot] == CAPABILITY_DISABLED)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glDisable(capability);
         GLError.check();
+
+        capabilityStates[slot] = CAPABILITY_DISABLED;
+        stateChangeIssued();
     }
 
     /**
@@ -76,8 +226,21 @@ public final class GLContext
      */
     public static void clearColor(float r, float g, float b, float a)
     {
+        if (clearColorKnown && clearR == r && clearG == g && clearB == b && clearA == a)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glClearColor(r, g, b, a);
         GLError.check();
+
+        clearR = r;
+        clearG = g;
+        clearB = b;
+        clearA = a;
+        clearColorKnown = true;
+        stateChangeIssued();
     }
 
     /**
@@ -108,6 +271,22 @@ public final class GLContext
 //        SilenceEngine.graphics.renderCalls++;
     }
 
+    /**
+     * Binds a {@link VertexArray} and draws several instances of it to the screen
+     *
+     * @param vao           The {@code VertexArray} to be drawn
+     * @param mode          The GL Primitive to be used for drawing
+     * @param offset        The position in the {@code vao} to begin drawing (Use 0 for the beginning)
+     * @param vertexCount   The amount of vertices in every instance
+     * @param instanceCount The amount of instances to be drawn
+     */
+    public static void drawArraysInstanced(VertexArray vao, Primitive mode, int offset, int vertexCount, int instanceCount)
+    {
+        vao.bind();
+        SilenceEngine.graphics.glDrawArraysInstanced(mode.getGlPrimitive(), offset, vertexCount, instanceCount);
+        GLError.check();
+    }
+
     public static void drawElements(VertexArray vao, Primitive mode, int offset, int vertexCount, int type)
     {
         vao.bind();
@@ -126,10 +305,18 @@ public final class GLContext
     {
         if (vao == null)
         {
+            if (VertexArray.CURRENT == null)
+            {
+                stateChangeElided();
+                return;
+            }
+
             SilenceEngine.graphics.glBindVertexArray(0);
             GLError.check();
 
             VertexArray.CURRENT = null;
+            BufferObject.current.remove(GL_ELEMENT_ARRAY_BUFFER);
+            stateChangeIssued();
             return;
         }
 
@@ -148,7 +335,8 @@ public final class GLContext
             SilenceEngine.graphics.glBindBuffer(GL_ARRAY_BUFFER, 0);
             GLError.check();
 
-            BufferObject.current.clear();
+            BufferObject.current.remove(GL_ARRAY_BUFFER);
+            stateChangeIssued();
             return;
         }
 
@@ -165,8 +353,21 @@ public final class GLContext
      */
     public static void viewport(int x, int y, int width, int height)
     {
+        if (viewportKnown && viewportX == x && viewportY == y && viewportWidth == width && viewportHeight == height)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glViewport(x, y, width, height);
         GLError.check();
+
+        viewportX = x;
+        viewportY = y;
+        viewportWidth = width;
+        viewportHeight = height;
+        viewportKnown = true;
+        stateChangeIssued();
     }
 
     /**
@@ -176,19 +377,48 @@ public final class GLContext
      */
     public static void depthMask(boolean value)
     {
+        int mask = value ? 1 : 0;
+
+        if (depthMask == mask)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glDepthMask(value);
         GLError.check();
+
+        depthMask = mask;
+        stateChangeIssued();
     }
 
     public static void depthFunc(int func)
     {
+        if (depthFunc == func)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glDepthFunc(func);
         GLError.check();
+
+        depthFunc = func;
+        stateChangeIssued();
     }
 
     public static void cullFace(int mode)
     {
+        if (cullFace == mode)
+        {
+            stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glCullFace(mode);
         GLError.check();
+
+        cullFace = mode;
+        stateChangeIssued();
     }
 }
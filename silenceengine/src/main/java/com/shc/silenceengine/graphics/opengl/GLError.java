@@ -33,10 +33,25 @@ import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
  * Static Utility class to check for OpenGL errors. If you want to check for errors anytime, just make a call to
  * {@code GlError.check()} and you are done.
  *
+ * <p>Calling {@code glGetError} synchronizes with the driver on many platforms, so how often it is actually done is
+ * controlled by the {@link Mode} of the checks. The default mode is {@link Mode#DEBUG} in development mode and {@link
+ * Mode#OFF} otherwise.</p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public final class GLError
 {
+    private static Mode mode;
+
+    // The call site of the last checked call, recorded in the per-frame mode only when asked for
+    private static Throwable lastCallSite;
+    private static boolean   callSiteTracking;
+
+    // The debug output of the context, when it is available in the debug mode
+    private static boolean debugOutputRequested;
+    private static boolean debugOutputAvailable;
+    private static String  debugMessage;
+
     /**
      * Prevent instantiation, this is just a utility class
      */
@@ -45,43 +60,176 @@ public final class GLError
     }
 
     /**
-     * Checks for OpenGL errors. If any error is found, it throws a GLException which is a runtime exception. Use this
-     * if you are suspecting if there is some error in your OpenGL code. This does not run if the game is not in
+     * @return The mode of error checking that is currently used.
+     */
+    public static Mode getMode()
+    {
+        if (mode == null)
+            return Game.DEVELOPMENT ? Mode.DEBUG : Mode.OFF;
+
+        return mode;
+    }
+
+    /**
+     * Sets the mode of error checking. Passing null restores the default mode, which depends on whether the game is in
      * development mode.
+     *
+     * @param mode The new mode of error checking.
+     */
+    public static void setMode(Mode mode)
+    {
+        GLError.mode = mode;
+        lastCallSite = null;
+        debugMessage = null;
+    }
+
+    /**
+     * @return Whether the call site of every checked call is recorded in the {@link Mode#PER_FRAME} mode.
+     */
+    public static boolean isCallSiteTracking()
+    {
+        return callSiteTracking;
+    }
+
+    /**
+     * Sets whether the call site of every checked call is recorded in the {@link Mode#PER_FRAME} mode, so that the
+     * error at the end of the frame is reported with the last call that was checked before it. Recording a call site
+     * captures a stack trace, which costs far more than {@code glGetError}, so this is off by default and is only meant
+     * for tracking down an error that was already reported.
+     *
+     * @param callSiteTracking Whether to record the call sites.
+     */
+    public static void setCallSiteTracking(boolean callSiteTracking)
+    {
+        GLError.callSiteTracking = callSiteTracking;
+        lastCallSite = null;
+    }
+
+    /**
+     * Checks for OpenGL errors according to the current {@link Mode}. If any error is found, it throws a GLException
+     * which is a runtime exception. This is called after the calls to OpenGL throughout the engine.
      */
     public static void check()
     {
-        check(false);
+        switch (getMode())
+        {
+            case OFF:
+                return;
+
+            case PER_FRAME:
+                // The error is read once at the end of the frame, only remember where we are if asked to
+                if (callSiteTracking)
+                    lastCallSite = new Throwable("Last checked OpenGL call");
+                return;
+
+            case DEBUG:
+                if (requestDebugOutput())
+                {
+                    // The debug output is synchronous, so any error of the last call is already reported
+                    throwDebugMessage();
+                    return;
+                }
+                break;
+        }
+
+        check(true);
     }
 
     /**
      * Checks for OpenGL errors. If any error is found, it throws a GLException which is a runtime exception. Use this
      * if you are suspecting if there is some error in your OpenGL code.
      *
-     * @param force Forces the running of glGetError even in Deployed mode. By default, it is only executed in
-     *              development mode
+     * @param force Forces the running of glGetError even when the error checking is turned off. By default, it is
+     *              only executed in the modes that check every call.
      */
     public static void check(boolean force)
     {
-        // We don't want to run GL checks
-        if (!force && !Game.DEVELOPMENT)
+        if (!force)
+        {
+            check();
             return;
+        }
 
-        switch (SilenceEngine.graphics.glGetError())
+        GLException exception = getException(SilenceEngine.graphics.glGetError());
+
+        if (exception != null)
+            throw exception;
+    }
+
+    /**
+     * Checks for the errors that happened during the frame. This is called by the engine once every frame after all
+     * the rendering is done, and is where the errors are reported in the {@link Mode#PER_FRAME} mode. The exception
+     * thrown is caused by the call site of the last checked call, if call sites are tracked.
+     */
+    public static void checkFrame()
+    {
+        switch (getMode())
         {
-            case GL_NO_ERROR:
+            case PER_FRAME:
+                GLException exception = getException(SilenceEngine.graphics.glGetError());
+                Throwable callSite = lastCallSite;
+                lastCallSite = null;
+
+                if (exception != null)
+                {
+                    if (callSite != null)
+                        exception.initCause(callSite);
+
+                    throw exception;
+                }
+                break;
+
+            case DEBUG:
+                if (debugOutputAvailable)
+                    throwDebugMessage();
                 break;
+        }
+    }
+
+    private static boolean requestDebugOutput()
+    {
+        if (!debugOutputRequested)
+        {
+            debugOutputRequested = true;
+            debugOutputAvailable = SilenceEngine.graphics.setDebugOutputCallback(message ->
+            {
+                // Keep the first message, the later ones are usually caused by it
+                if (debugMessage == null)
+                    debugMessage = message;
+            });
+        }
+
+        return debugOutputAvailable;
+    }
+
+    private static void throwDebugMessage()
+    {
+        if (debugMessage == null)
+            return;
+
+        String message = debugMessage;
+        debugMessage = null;
+
+        throw new GLException(message);
+    }
+
+    private static GLException getException(int error)
+    {
+        switch (error)
+        {
             case GL_INVALID_ENUM:
-                throw new GLException.InvalidEnum();
+                return new GLException.InvalidEnum();
             case GL_INVALID_VALUE:
-                throw new GLException.InvalidValue();
+                return new GLException.InvalidValue();
             case GL_INVALID_OPERATION:
-                throw new GLException.InvalidOperation();
+                return new GLException.InvalidOperation();
             case GL_INVALID_FRAMEBUFFER_OPERATION:
-                throw new GLException.InvalidFramebufferOperation();
+                return new GLException.InvalidFramebufferOperation();
             case GL_OUT_OF_MEMORY:
-                throw new GLException.OutOfMemory();
+                return new GLException.OutOfMemory();
         }
+
+        return null;
     }
 
     public static Value get()
@@ -103,6 +251,34 @@ public final class GLError
         return Value.NO_ERROR;
     }
 
+    /**
+     * The modes of checking for the errors.
+     */
+    public enum Mode
+    {
+        /**
+         * Never checks for errors, unless a check is forced.
+         */
+        OFF,
+
+        /**
+         * Checks for errors once at the end of every frame. With {@link #setCallSiteTracking(boolean)}, the call site of
+         * the last checked call is reported along with the error.
+         */
+        PER_FRAME,
+
+        /**
+         * Checks for errors after every call, with {@code glGetError}.
+         */
+        PER_CALL,
+
+        /**
+         * Reports the errors from the debug output of the context as they happen, which doesn't need {@code
+         * glGetError}. Falls back to {@link #PER_CALL} when the device doesn't support the debug output.
+         */
+        DEBUG
+    }
+
     /**
      * Encapsulates the Glenum error.
      */
@@ -33,6 +33,7 @@ import com.shc.silenceengine.math.Transform;
 import com.shc.silenceengine.math.Vector2;
 import com.shc.silenceengine.math.Vector3;
 import com.shc.silenceengine.math.Vector4;
+import com.shc.silenceengine.utils.ReflectionUtils;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -54,6 +55,7 @@ public class Program
 
     private Map<String, Integer> uniformLocations;
     private Map<String, Integer> attributeLocations;
+    private Map<String, Uniform> uniforms;
 
     public Program()
     {
@@ -62,6 +64,7 @@ public class Program
 
         uniformLocations = new HashMap<>();
         attributeLocations = new HashMap<>();
+        uniforms = new HashMap<>();
 
         if (m3Buffer == null)
             m3Buffer = new DirectFloatBuffer(9);
@@ -107,7 +110,10 @@ public class Program
     public void use()
     {
         if (CURRENT == this)
+        {
+            GLContext.stateChangeElided();
             return;
+        }
 
         if (disposed)
             throw new GLException("Cannot use disposed Program");
@@ -116,6 +122,7 @@ public class Program
         GLError.check();
 
         CURRENT = this;
+        GLContext.stateChangeIssued();
 
         prepareFrame();
     }
@@ -138,9 +145,74 @@ public class Program
         return location;
     }
 
+    public Uniform1i getUniform1i(String name)
+    {
+        return getUniform(name, Uniform1i.class, Uniform1i::new);
+    }
+
+    public Uniform1f getUniform1f(String name)
+    {
+        return getUniform(name, Uniform1f.class, Uniform1f::new);
+    }
+
+    public Uniform2f getUniform2f(String name)
+    {
+        return getUniform(name, Uniform2f.class, Uniform2f::new);
+    }
+
+    public Uniform3f getUniform3f(String name)
+    {
+        return getUniform(name, Uniform3f.class, Uniform3f::new);
+    }
+
+    public Uniform4f getUniform4f(String name)
+    {
+        return getUniform(name, Uniform4f.class, Uniform4f::new);
+    }
+
+    public UniformMat3 getUniformMat3(String name)
+    {
+        return getUniform(name, UniformMat3.class, UniformMat3::new);
+    }
+
+    public UniformMat4 getUniformMat4(String name)
+    {
+        return getUniform(name, UniformMat4.class, UniformMat4::new);
+    }
+
+    /**
+     * Gets the handle of a uniform, creating it the first time the uniform is asked for. A uniform can only be used with
+     * a single type of handle, as the handles remember the last value they uploaded.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Uniform> T getUniform(String name, Class<T> klass, UniformFactory<T> factory)
+    {
+        Uniform uniform = uniforms.get(name);
+
+        if (uniform == null)
+        {
+            uniform = factory.create(this, getUniform(name));
+            uniforms.put(name, uniform);
+        }
+        else if (!ReflectionUtils.isInstanceOf(klass, uniform))
+            throw new GLException("Uniform " + name + " is already used as a " + uniform.getClass().getSimpleName());
+
+        return (T) uniform;
+    }
+
+    /**
+     * Forgets the last values uploaded by the uniform handles at a location, since it is being set directly.
+     */
+    private void invalidateUniform(int location)
+    {
+        for (Uniform uniform : uniforms.values())
+            if (uniform.getLocation() == location)
+                uniform.invalidate();
+    }
+
     public void setUniform(String name, boolean value)
     {
-        setUniform(getUniform(name), value);
+        getUniform1i(name).set(value);
     }
 
     public void setUniform(int location, boolean value)
@@ -148,6 +220,8 @@ public class Program
         use();
         SilenceEngine.graphics.glUniform1i(location, value ? GL_TRUE : GL_FALSE);
         GLError.check();
+
+        invalidateUniform(location);
     }
 
     public void setUniform(int location, int... values)
@@ -177,16 +251,40 @@ public class Program
         }
 
         GLError.check();
+        invalidateUniform(location);
     }
 
     public void setUniform(String name, int... values)
     {
-        setUniform(getUniform(name), values);
+        if (values.length == 1)
+            getUniform1i(name).set(values[0]);
+        else
+            setUniform(getUniform(name), values);
     }
 
     public void setUniform(String name, float... values)
     {
-        setUniform(getUniform(name), values);
+        switch (values.length)
+        {
+            case 1:
+                getUniform1f(name).set(values[0]);
+                break;
+
+            case 2:
+                getUniform2f(name).set(values[0], values[1]);
+                break;
+
+            case 3:
+                getUniform3f(name).set(values[0], values[1], values[2]);
+                break;
+
+            case 4:
+                getUniform4f(name).set(values[0], values[1], values[2], values[3]);
+                break;
+
+            default:
+                setUniform(getUniform(name), values);
+        }
     }
 
     public void setUniform(int location, Vector2 value)
@@ -221,6 +319,7 @@ public class Program
         }
 
         GLError.check();
+        invalidateUniform(location);
     }
 
     public void setUniform(int location, Vector3 value)
@@ -240,22 +339,22 @@ public class Program
 
     public void setUniform(String name, Vector2 value)
     {
-        setUniform(name, value.x, value.y);
+        getUniform2f(name).set(value);
     }
 
     public void setUniform(String name, Vector3 value)
     {
-        setUniform(name, value.x, value.y, value.z);
+        getUniform3f(name).set(value);
     }
 
     public void setUniform(String name, Vector4 value)
     {
-        setUniform(name, value.x, value.y, value.z, value.w);
+        getUniform4f(name).set(value);
     }
 
     public void setUniform(String name, Color value)
     {
-        setUniform(name, value.r, value.g, value.b, value.a);
+        getUniform4f(name).set(value);
     }
 
     public void setUniform(int location, Matrix3 value)
@@ -270,6 +369,7 @@ public class Program
         SilenceEngine.graphics.glUniformMatrix3fv(location, transpose, value.storeInto(m3Buffer));
 
         GLError.check();
+        invalidateUniform(location);
     }
 
     public void setUniform(int location, Matrix4 value)
@@ -288,11 +388,13 @@ public class Program
 
         SilenceEngine.graphics.glUniformMatrix4fv(location, transpose, value.storeInto(m4Buffer));
         GLError.check();
+
+        invalidateUniform(location);
     }
 
     public void setUniform(String name, boolean transpose, Matrix3 value)
     {
-        setUniform(getUniform(name), transpose, value);
+        getUniformMat3(name).set(value, transpose);
     }
 
     public void setUniform(String name, Matrix3 value)
@@ -302,7 +404,7 @@ public class Program
 
     public void setUniform(String name, boolean transpose, Matrix4 value)
     {
-        setUniform(getUniform(name), transpose, value);
+        getUniformMat4(name).set(value, transpose);
     }
 
     public void setUniform(String name, Matrix4 value)
@@ -336,4 +438,9 @@ public class Program
     {
         return SilenceEngine.graphics.glIsProgram(id);
     }
+
+    private interface UniformFactory<T extends Uniform>
+    {
+        T create(Program program, int location);
+    }
 }
@@ -78,17 +78,24 @@ public class SubTexture extends Texture
     @Override
     public SubTexture getSubTexture(float minU, float minV, float maxU, float maxV)
     {
-        minU = (minU * getWidth()) / getParent().getWidth();
-        minV = (minV * getHeight()) / getParent().getHeight();
-        maxU = (maxU * getWidth()) / getParent().getWidth();
-        maxV = (maxV * getHeight()) / getParent().getHeight();
+        return getSubTexture(minU, minV, maxU, maxV, (maxU - minU) * getWidth(), (maxV - minV) * getHeight());
+    }
 
-        minU += this.minU;
-        minV += this.minV;
-        maxU += minU;
-        maxV += minV;
+    /**
+     * Creates a region of this sub texture. The coordinates are relative to this sub texture, and are mapped to the
+     * coordinates of the parent texture, so the regions of a texture atlas can be split further, like into the cells
+     * of a {@link com.shc.silenceengine.graphics.SpriteSheet}.
+     */
+    @Override
+    public SubTexture getSubTexture(float minU, float minV, float maxU, float maxV, float width, float height)
+    {
+        final float uSpan = this.maxU - this.minU;
+        final float vSpan = this.maxV - this.minV;
 
-        return new SubTexture(parent, minU, minV, maxU, maxV);
+        return new SubTexture(parent,
+                this.minU + minU * uSpan, this.minV + minV * vSpan,
+                this.minU + maxU * uSpan, this.minV + maxV * vSpan,
+                width, height);
     }
 
     @Override
@@ -28,10 +28,14 @@ import com.shc.silenceengine.core.IResource;
 import com.shc.silenceengine.core.SilenceEngine;
 import com.shc.silenceengine.core.SilenceException;
 import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.graphics.CompressedImage;
+import com.shc.silenceengine.graphics.CompressedImageDecoder;
 import com.shc.silenceengine.graphics.Image;
 import com.shc.silenceengine.io.DirectBuffer;
 import com.shc.silenceengine.math.Vector2;
 
+import java.util.Arrays;
+
 import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
 
 /**
@@ -41,6 +45,9 @@ public class Texture implements IResource
 {
     private static int activeUnit;
 
+    // The textures bound to each of the texture units
+    private static Texture[] unitTextures = new Texture[16];
+
     public static Texture CURRENT;
     public static Texture EMPTY;
 
@@ -68,22 +75,56 @@ public class Texture implements IResource
     public static void setActiveUnit(int unit)
     {
         if (unit == activeUnit)
+        {
+            GLContext.stateChangeElided();
             return;
+        }
 
         GLError.check();
         SilenceEngine.graphics.glActiveTexture(GL_TEXTURE0 + unit);
         GLError.check();
 
         activeUnit = unit;
+        CURRENT = getBound(unit);
+
+        GLContext.stateChangeIssued();
+    }
+
+    /**
+     * Forgets the textures bound to all the texture units, and resets the active texture unit to the first one. This is
+     * used when the state of the context is invalidated.
+     */
+    static void invalidateBindings()
+    {
+        for (int i = 0; i < unitTextures.length; i++)
+            unitTextures[i] = null;
+
+        SilenceEngine.graphics.glActiveTexture(GL_TEXTURE0);
+        GLError.check();
+
+        CURRENT = null;
+        activeUnit = 0;
+    }
+
+    /**
+     * @param unit The texture unit.
+     *
+     * @return The texture that is bound to the texture unit, or null if it is not known.
+     */
+    public static Texture getBound(int unit)
+    {
+        return unit < unitTextures.length ? unitTextures[unit] : null;
     }
 
     public static Texture fromColor(Color c, int width, int height)
     {
-        Image image = new Image(width, height);
+        Image image = new Image(width, height, Image.Format.RGBA8);
+
+        int[] row = new int[width];
+        Arrays.fill(row, c.getRGBA());
 
         for (int y = 0; y < height; y++)
-            for (int x = 0; x < width; x++)
-                image.setPixel(x, y, c);
+            image.writeRow(y, row);
 
         Texture texture = fromImage(image);
 
@@ -97,37 +138,103 @@ public class Texture implements IResource
         int width = image.getWidth();
         int height = image.getHeight();
 
-        DirectBuffer data = SilenceEngine.io.create(width * height * 4);
+        Texture texture;
 
-        Color color = Color.REUSABLE_STACK.pop();
+        if (image.getFormat() == Image.Format.RGBA8)
+        {
+            // The pixels are already in the format of the texture
+            texture = fromDirectBuffer(image.getImageData(), width, height, 4);
+        }
+        else
+        {
+            DirectBuffer data = SilenceEngine.io.create(width * height * 4);
+            byte[] row = new byte[width * 4];
 
-        int index = 0;
+            int index = 0;
 
-        for (int y = 0; y < height; y++)
-        {
-            for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
             {
-                image.getPixel(x, y, color);
+                image.readRow(y, row);
+
+                for (byte value : row)
+                    data.writeByte(index++, value);
+            }
+
+            texture = fromDirectBuffer(data, width, height, 4);
+            SilenceEngine.io.free(data);
+        }
+
+        texture.width = image.getOriginalWidth();
+        texture.height = image.getOriginalHeight();
+
+        return texture;
+    }
+
+    /**
+     * Creates a texture from a GPU compressed image, along with all the mip levels stored in the image. The compressed
+     * blocks are uploaded as they are if the graphics device supports the format, otherwise every level is decoded to
+     * RGBA8 on the CPU first.
+     *
+     * @param image The compressed image to create the texture from.
+     *
+     * @return The created texture.
+     *
+     * @throws SilenceException If the format is not supported and can't be decoded.
+     */
+    public static Texture fromCompressedImage(CompressedImage image)
+    {
+        CompressedImage.Format format = image.getFormat();
+        int internalFormat = format.getGlInternalFormat();
+
+        boolean supported = format.isSupported();
 
-                int r = (int) (color.r * 255f);
-                int g = (int) (color.g * 255f);
-                int b = (int) (color.b * 255f);
-                int a = (int) (color.a * 255f);
+        // ETC2 decoders can decode the ETC1 blocks too, as the ETC1 is a subset of ETC2
+        if (!supported && format == CompressedImage.Format.ETC1 && CompressedImage.Format.ETC2_RGB.isSupported())
+        {
+            internalFormat = CompressedImage.Format.ETC2_RGB.getGlInternalFormat();
+            supported = true;
+        }
+
+        if (!supported && !CompressedImageDecoder.canDecode(format))
+            throw new SilenceException(format + " images are not supported by the graphics device");
 
-                data.writeByte(index++, (byte) r)
-                        .writeByte(index++, (byte) g)
-                        .writeByte(index++, (byte) b)
-                        .writeByte(index++, (byte) a);
+        Texture texture = new Texture();
+        texture.bind();
+
+        for (int level = 0; level < image.getLevelCount(); level++)
+        {
+            CompressedImage.Level mip = image.getLevel(level);
+
+            if (supported)
+                texture.compressedImage2d(image.getData(), mip.offset, mip.size, level, internalFormat, mip.width,
+                        mip.height);
+            else
+            {
+                Image decoded = CompressedImageDecoder.decode(image, level);
+                texture.image2d(decoded.getImageData(), level, GL_UNSIGNED_BYTE, GL_RGBA, mip.width, mip.height, GL_RGBA);
+                decoded.dispose();
             }
         }
 
-        Color.REUSABLE_STACK.push(color);
+        boolean mipmapped = image.getLevelCount() > 1;
 
-        Texture texture = fromDirectBuffer(data, width, height, 4);
-        SilenceEngine.io.free(data);
+        // The mip chain in the file is used as it is, so the sampling should stop at the last level it has. Without the
+        // max level parameter an incomplete chain can't be sampled, so only the first level is used.
+        if (mipmapped && !image.hasCompleteMipChain())
+        {
+            if (SilenceEngine.graphics.isTextureMaxLevelSupported())
+            {
+                SilenceEngine.graphics.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, image.getLevelCount() - 1);
+                GLError.check();
+            }
+            else
+                mipmapped = false;
+        }
 
-        texture.width = image.getOriginalWidth();
-        texture.height = image.getOriginalHeight();
+        texture.setFilter(mipmapped ? GL_LINEAR_MIPMAP_LINEAR : GL_LINEAR, GL_LINEAR);
+
+        texture.width = image.getWidth();
+        texture.height = image.getHeight();
 
         return texture;
     }
@@ -152,7 +259,10 @@ public class Texture implements IResource
     public void bind()
     {
         if (CURRENT == this)
+        {
+            GLContext.stateChangeElided();
             return;
+        }
 
         if (disposed)
             throw new GLException("Cannot bind a disposed texture!");
@@ -161,6 +271,16 @@ public class Texture implements IResource
         GLError.check();
 
         CURRENT = this;
+        GLContext.stateChangeIssued();
+
+        if (activeUnit >= unitTextures.length)
+        {
+            Texture[] textures = new Texture[activeUnit + 1];
+            System.arraycopy(unitTextures, 0, textures, 0, unitTextures.length);
+            unitTextures = textures;
+        }
+
+        unitTextures[activeUnit] = this;
     }
 
     public void bind(int unit)
@@ -195,6 +315,30 @@ public class Texture implements IResource
         this.height = height;
     }
 
+    /**
+     * Uploads a level of compressed blocks to this texture.
+     *
+     * @param data           The buffer containing the blocks.
+     * @param offset         The offset of the level in the buffer, in bytes.
+     * @param size           The size of the level in bytes.
+     * @param level          The mip level to upload to.
+     * @param internalFormat The compressed format of the blocks.
+     * @param width          The width of the level in pixels.
+     * @param height         The height of the level in pixels.
+     */
+    public void compressedImage2d(DirectBuffer data, int offset, int size, int level, int internalFormat, int width,
+                                  int height)
+    {
+        bind();
+
+        SilenceEngine.graphics.glCompressedTexImage2D(GL_TEXTURE_2D, level, internalFormat, width, height, 0, data,
+                offset, size);
+        GLError.check();
+
+        this.width = width;
+        this.height = height;
+    }
+
     public void generateMipMaps()
     {
         bind();
@@ -244,6 +388,14 @@ public class Texture implements IResource
         GLError.check();
         disposed = true;
 
+        // Deleting a texture unbinds it from all the units
+        for (int i = 0; i < unitTextures.length; i++)
+            if (unitTextures[i] != null && unitTextures[i].id == id)
+                unitTextures[i] = null;
+
+        if (CURRENT != null && CURRENT.id == id)
+            CURRENT = null;
+
         EMPTY.bind(activeUnit);
     }
 
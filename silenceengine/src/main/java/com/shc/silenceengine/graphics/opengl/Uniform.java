@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics.opengl;
+
+/**
+ * A handle to a uniform of a {@link Program}, whose location is resolved once when the handle is created. Every handle
+ * keeps a copy of the last value it uploaded, so setting the same value again doesn't reach the driver. Handles are
+ * obtained from the {@code getUniform*()} methods of the Program, which return the same handle for the same name.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public abstract class Uniform
+{
+    protected final Program program;
+    protected final int     location;
+
+    // Whether the shadowed value is the one in the program
+    protected boolean known;
+
+    Uniform(Program program, int location)
+    {
+        this.program = program;
+        this.location = location;
+    }
+
+    /**
+     * Forgets the last uploaded value, so that the next value is uploaded even if it is the same.
+     */
+    public void invalidate()
+    {
+        known = false;
+    }
+
+    /**
+     * Checks whether a value has to be uploaded, and if so, makes the program current so that it can be.
+     *
+     * @param same Whether the new value is the same as the last uploaded one.
+     *
+     * @return True if the value has to be uploaded, else False.
+     */
+    protected boolean beginUpload(boolean same)
+    {
+        // Inactive uniforms are silently ignored by OpenGL, so we don't even bother
+        if (location == -1)
+            return false;
+
+        if (known && same)
+        {
+            GLContext.stateChangeElided();
+            return false;
+        }
+
+        program.use();
+        return true;
+    }
+
+    protected void endUpload()
+    {
+        GLError.check();
+        GLContext.stateChangeIssued();
+
+        known = true;
+    }
+
+    /**
+     * @return True if the uniform is used by the program, else False.
+     */
+    public boolean isActive()
+    {
+        return location != -1;
+    }
+
+    public int getLocation()
+    {
+        return location;
+    }
+
+    public Program getProgram()
+    {
+        return program;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics.opengl;
+
+import com.shc.silenceengine.core.SilenceEngine;
+
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
+/**
+ * A handle to an {@code int}, {@code bool} or sampler uniform.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class Uniform1i extends Uniform
+{
+    private int value;
+
+    Uniform1i(Program program, int location)
+    {
+        super(program, location);
+    }
+
+    public Uniform1i set(boolean value)
+    {
+        return set(value ? GL_TRUE : GL_FALSE);
+    }
+
+    public Uniform1i set(int value)
+    {
+        if (!beginUpload(this.value == value))
+            return this;
+
+        SilenceEngine.graphics.glUniform1i(location, value);
+        this.value = value;
+
+        endUpload();
+        return this;
+    }
+
+    public int get()
+    {
+        return value;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics.opengl;
+
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.graphics.Color;
+import com.shc.silenceengine.math.Vector4;
+
+/**
+ * A handle to a {@code vec4} uniform.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class Uniform4f extends Uniform
+{
+    private float x;
+    private float y;
+    private float z;
+    private float w;
+
+    Uniform4f(Program program, int location)
+    {
+        super(program, location);
+    }
+
+    public Uniform4f set(Vector4 value)
+    {
+        return set(value.x, value.y, value.z, value.w);
+    }
+
+    public Uniform4f set(Color value)
+    {
+        return set(value.r, value.g, value.b, value.a);
+    }
+
+    public Uniform4f set(float x, float y, float z, float w)
+    {
+        if (!beginUpload(this.x == x && this.y == y && this.z == z && this.w == w))
+            return this;
+
+        SilenceEngine.graphics.glUniform4f(location, x, y, z, w);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+
+        endUpload();
+        return this;
+    }
+
+    public Vector4 get(Vector4 dest)
+    {
+        return dest.set(x, y, z, w);
+    }
+}
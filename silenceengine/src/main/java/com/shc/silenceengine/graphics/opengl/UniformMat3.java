@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.graphics.opengl;
+
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.io.DirectFloatBuffer;
+import com.shc.silenceengine.math.Matrix3;
+
+/**
+ * A handle to a {@code mat3} uniform. The matrix is compared with the last uploaded one element by element, which is
+ * much cheaper than uploading it again, so the matrices that rarely change (like the camera matrices) can be set every
+ * time a program is used.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public class UniformMat3 extends Uniform
+{
+    private static DirectFloatBuffer buffer;
+
+    private float[] value = new float[9];
+    private boolean transpose;
+
+    UniformMat3(Program program, int location)
+    {
+        super(program, location);
+
+        if (buffer == null)
+            buffer = new DirectFloatBuffer(9);
+    }
+
+    public UniformMat3 set(Matrix3 value)
+    {
+        return set(value, false);
+    }
+
+    public UniformMat3 set(Matrix3 value, boolean transpose)
+    {
+        if (!beginUpload(this.transpose == transpose && isSame(value)))
+            return this;
+
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 3; j++)
+                this.value[i * 3 + j] = value.get(i, j);
+
+        this.transpose = transpose;
+
+        SilenceEngine.graphics.glUniformMatrix3fv(location, transpose, value.storeInto(buffer));
+
+        endUpload();
+        return this;
+    }
+
+    private boolean isSame(Matrix3 matrix)
+    {
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 3; j++)
+                if (value[i * 3 + j] != matrix.get(i, j))
+                    return false;
+
+        return true;
+    }
+
+    public Matrix3 get(Matrix3 dest)
+    {
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 3; j++)
+                dest.set(i, j, value[i * 3 + j]);
+
+        return dest;
+    }
+}
@@ -26,6 +26,8 @@ package com.shc.silenceengine.graphics.opengl;
 
 import com.shc.silenceengine.core.SilenceEngine;
 
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
 /**
  * This class encapsulates OpenGL Vertex Array Objects nicely and cleanly allowing you to use OpenGL in an object
  * oriented way. An OpenGL VAO is an OpenGL object that keeps track of the links between the attributes and
@@ -40,6 +42,11 @@ public class VertexArray
     private int     id;
     private boolean disposed;
 
+    // The attribute arrays enabled in this VertexArray, and the element array buffer bound to it. Both of them are a
+    // part of the state of the VertexArray, so they are shadowed here instead of in the GLContext.
+    private long         enabledAttributes;
+    private BufferObject elementBuffer;
+
     /**
      * Constructs a VertexArrayObject.
      */
@@ -62,8 +69,30 @@ public class VertexArray
     public void enableAttributeArray(int index)
     {
         bind();
+
+        if (isAttributeArrayEnabled(index))
+        {
+            GLContext.stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glEnableVertexAttribArray(index);
         GLError.check();
+
+        if (index < 64)
+            enabledAttributes |= 1L << index;
+
+        GLContext.stateChangeIssued();
+    }
+
+    /**
+     * @param index The index of the vertex attribute
+     *
+     * @return True if the attribute array at the index is enabled in this VertexArray, else False.
+     */
+    public boolean isAttributeArrayEnabled(int index)
+    {
+        return index < 64 && (enabledAttributes & (1L << index)) != 0;
     }
 
     /**
@@ -84,13 +113,23 @@ public class VertexArray
         if (disposed)
             throw new GLException("VertexArray is disposed!");
 
-        if (force || CURRENT != this)
+        if (!force && CURRENT == this)
         {
-            SilenceEngine.graphics.glBindVertexArray(id);
-            GLError.check();
-
-            CURRENT = this;
+            GLContext.stateChangeElided();
+            return;
         }
+
+        SilenceEngine.graphics.glBindVertexArray(id);
+        GLError.check();
+
+        CURRENT = this;
+        GLContext.stateChangeIssued();
+
+        // The element array buffer binding changes along with the VertexArray
+        if (elementBuffer == null || elementBuffer.isDisposed())
+            BufferObject.current.remove(GL_ELEMENT_ARRAY_BUFFER);
+        else
+            BufferObject.current.put(GL_ELEMENT_ARRAY_BUFFER, elementBuffer);
     }
 
     /**
@@ -101,8 +140,33 @@ public class VertexArray
     public void disableAttributeArray(int index)
     {
         bind();
+
+        if (index < 64 && !isAttributeArrayEnabled(index))
+        {
+            GLContext.stateChangeElided();
+            return;
+        }
+
         SilenceEngine.graphics.glDisableVertexAttribArray(index);
         GLError.check();
+
+        if (index < 64)
+            enabledAttributes &= ~(1L << index);
+
+        GLContext.stateChangeIssued();
+    }
+
+    /**
+     * Specifies the number of instances that share each value of a vertex attribute when drawing instanced
+     *
+     * @param index   The index of the vertex attribute
+     * @param divisor The divisor of the attribute, 0 to advance it once per vertex
+     */
+    public void setAttributeDivisor(int index, int divisor)
+    {
+        bind();
+        SilenceEngine.graphics.glVertexAttribDivisor(index, divisor);
+        GLError.check();
     }
 
     /**
@@ -166,6 +230,14 @@ public class VertexArray
         SilenceEngine.graphics.glDeleteVertexArrays(id);
         GLError.check();
         disposed = true;
+
+        CURRENT = null;
+        BufferObject.current.remove(GL_ELEMENT_ARRAY_BUFFER);
+    }
+
+    void setElementBuffer(BufferObject elementBuffer)
+    {
+        this.elementBuffer = elementBuffer;
     }
 
     public boolean isValid()
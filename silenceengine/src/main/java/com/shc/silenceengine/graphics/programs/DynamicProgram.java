@@ -29,10 +29,13 @@ import com.shc.silenceengine.graphics.DynamicRenderer;
 import com.shc.silenceengine.graphics.cameras.Camera;
 import com.shc.silenceengine.graphics.opengl.Program;
 import com.shc.silenceengine.graphics.opengl.Shader;
+import com.shc.silenceengine.graphics.opengl.UniformMat4;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.io.FileReader;
 import com.shc.silenceengine.utils.functional.UniCallback;
 
+import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
+
 /**
  * @author Sri Harsha Chilakapati
  */
@@ -42,21 +45,36 @@ public class DynamicProgram extends Program
     public static final String COLOR_ATTRIB    = "color";
     public static final String TEXCOORD_ATTRIB = "texCoords";
 
+    public static final String TEXTURE_SLOT_ATTRIB = "texSlot";
+
+    // The maximum number of textures a single batch can sample from
+    public static final int MAX_TEXTURE_SLOTS = 16;
+
+    private int maxTextures;
+
+    private UniformMat4 proj;
+    private UniformMat4 view;
+
     public static void create(UniCallback<DynamicProgram> uniCallback)
     {
         FileReader fileReader = SilenceEngine.io.getFileReader();
 
+        // Use as many textures as there are units in the fragment shader
+        final int maxTextures = Math.min(MAX_TEXTURE_SLOTS,
+                SilenceEngine.graphics.glGetInteger(GL_MAX_TEXTURE_IMAGE_UNITS));
+        final String defines = "#define MAX_TEXTURES " + maxTextures + "\n";
+
         fileReader.readTextFile(FilePath.getResourceFile("engine_resources/shaders/dynamic.vert"), vSource ->
                 fileReader.readTextFile(FilePath.getResourceFile("engine_resources/shaders/dynamic.frag"), fSource ->
                 {
                     DynamicProgram program = new DynamicProgram();
 
                     Shader vShader = new Shader(Shader.Type.VERTEX_SHADER);
-                    vShader.source(vSource);
+                    vShader.source(defines, vSource);
                     vShader.compile();
 
                     Shader fShader = new Shader(Shader.Type.FRAGMENT_SHADER);
-                    fShader.source(fSource);
+                    fShader.source(defines, fSource);
                     fShader.compile();
 
                     program.attach(vShader);
@@ -66,6 +84,12 @@ public class DynamicProgram extends Program
                     vShader.dispose();
                     fShader.dispose();
 
+                    // Every slot samples the texture bound to the unit of the same index
+                    program.maxTextures = maxTextures;
+
+                    for (int i = 0; i < maxTextures; i++)
+                        program.setUniform("tex[" + i + "]", i);
+
                     uniCallback.invoke(program);
                 })
         );
@@ -77,6 +101,16 @@ public class DynamicProgram extends Program
         dynamicRenderer.setColorLocation(getAttribute(COLOR_ATTRIB));
         dynamicRenderer.setTexCoordLocation(getAttribute(TEXCOORD_ATTRIB));
         dynamicRenderer.setNormalLocation(-1);
+        dynamicRenderer.setTextureSlotLocation(maxTextures > 1 ? getAttribute(TEXTURE_SLOT_ATTRIB) : -1);
+    }
+
+    /**
+     * @return The number of textures this program can sample from in a single batch, each bound to the texture unit
+     * of the same index.
+     */
+    public int getMaxTextures()
+    {
+        return maxTextures;
     }
 
     @Override
@@ -84,7 +118,14 @@ public class DynamicProgram extends Program
     {
         use();
 
-        setUniform("proj", Camera.CURRENT.getProjection());
-        setUniform("view", Camera.CURRENT.getView());
+        if (proj == null)
+        {
+            proj = getUniformMat4("proj");
+            view = getUniformMat4("view");
+        }
+
+        // The camera matrices are only uploaded when they are changed
+        proj.set(Camera.CURRENT.getProjection());
+        view.set(Camera.CURRENT.getView());
     }
 }
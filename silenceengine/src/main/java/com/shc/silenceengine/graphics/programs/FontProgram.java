@@ -29,6 +29,8 @@ import com.shc.silenceengine.graphics.DynamicRenderer;
 import com.shc.silenceengine.graphics.cameras.Camera;
 import com.shc.silenceengine.graphics.opengl.Program;
 import com.shc.silenceengine.graphics.opengl.Shader;
+import com.shc.silenceengine.graphics.opengl.Uniform1i;
+import com.shc.silenceengine.graphics.opengl.UniformMat4;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.io.FileReader;
 import com.shc.silenceengine.utils.functional.UniCallback;
@@ -42,6 +44,10 @@ public class FontProgram extends Program
     public static final String COLOR_ATTRIB    = "color";
     public static final String TEXCOORD_ATTRIB = "texCoords";
 
+    private UniformMat4 proj;
+    private UniformMat4 view;
+    private Uniform1i   tex;
+
     public static void create(UniCallback<FontProgram> uniCallback)
     {
         FileReader fileReader = SilenceEngine.io.getFileReader();
@@ -77,6 +83,7 @@ public class FontProgram extends Program
         dynamicRenderer.setColorLocation(getAttribute(COLOR_ATTRIB));
         dynamicRenderer.setTexCoordLocation(getAttribute(TEXCOORD_ATTRIB));
         dynamicRenderer.setNormalLocation(-1);
+        dynamicRenderer.setTextureSlotLocation(-1);
     }
 
     @Override
@@ -84,8 +91,16 @@ public class FontProgram extends Program
     {
         use();
 
-        setUniform("proj", Camera.CURRENT.getProjection());
-        setUniform("view", Camera.CURRENT.getView());
-        setUniform("tex", 0);
+        if (proj == null)
+        {
+            proj = getUniformMat4("proj");
+            view = getUniformMat4("view");
+            tex = getUniform1i("tex");
+        }
+
+        // The camera matrices are only uploaded when they are changed
+        proj.set(Camera.CURRENT.getProjection());
+        view.set(Camera.CURRENT.getView());
+        tex.set(0);
     }
 }
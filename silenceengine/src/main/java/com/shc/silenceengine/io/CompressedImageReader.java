@@ -0,0 +1,295 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Sri Harsha Chilakapati
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.shc.silenceengine.io;
+
+import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.graphics.CompressedImage;
+import com.shc.silenceengine.utils.functional.Promise;
+import com.shc.silenceengine.utils.functional.UniCallback;
+
+/**
+ * Reads the GPU compressed images from the KTX (version 1) and DDS container files. The containers are not copied, the
+ * {@link CompressedImage} that is read keeps the buffer of the file, and its mip levels point into that buffer. Only
+ * the 2D images in the block compressed formats known to {@link CompressedImage.Format} are supported, that is BCn in
+ * DDS files, and BCn, ETC and ASTC in KTX files.
+ *
+ * @author Sri Harsha Chilakapati
+ */
+public final class CompressedImageReader
+{
+    private static final byte[] KTX_IDENTIFIER = {
+            (byte) 0xAB, 0x4B, 0x54, 0x58, 0x20, 0x31, 0x31, (byte) 0xBB, 0x0D, 0x0A, 0x1A, 0x0A
+    };
+
+    private static final int KTX_ENDIANNESS = 0x04030201;
+    private static final int KTX_HEADER_SIZE = 64;
+
+    private static final int DDS_MAGIC        = fourCC("DDS ");
+    private static final int DDS_HEADER_SIZE  = 128;
+    private static final int DDS_DX10_SIZE    = 20;
+    private static final int DDSD_MIPMAPCOUNT = 0x20000;
+    private static final int DDSCAPS2_CUBEMAP = 0x200;
+
+    // Large enough for any texture, and small enough that the size of a level can't overflow
+    private static final int MAX_SIZE = 16384;
+
+    private CompressedImageReader()
+    {
+    }
+
+    private static int fourCC(String code)
+    {
+        return code.charAt(0) | (code.charAt(1) << 8) | (code.charAt(2) << 16) | (code.charAt(3) << 24);
+    }
+
+    /**
+     * @param file The path of the file.
+     *
+     * @return Whether the file is a container that this reader can read, judging by its extension.
+     */
+    public static boolean isSupportedFile(FilePath file)
+    {
+        String extension = file.getExtension().toLowerCase();
+        return extension.equals("ktx") || extension.equals("dds");
+    }
+
+    public static Promise<CompressedImage> readImage(FilePath file)
+    {
+        return new Promise<>((resolve, reject) -> readImage(file, resolve, reject));
+    }
+
+    public static void readImage(FilePath file, UniCallback<CompressedImage> uniCallback,
+                                 UniCallback<Throwable> error)
+    {
+        SilenceEngine.io.getFileReader().readBinaryFile(file, directBuffer ->
+        {
+            CompressedImage image;
+
+            try
+            {
+                image = readImage(directBuffer);
+            }
+            catch (RuntimeException e)
+            {
+                SilenceEngine.io.free(directBuffer);
+                error.invoke(e);
+                return;
+            }
+
+            uniCallback.invoke(image);
+        }, error);
+    }
+
+    /**
+     * Parses a KTX or DDS container in memory. The returned image takes the ownership of the buffer, and frees it when
+     * it is disposed.
+     *
+     * @param memory The contents of the container file.
+     *
+     * @return The compressed image in the container.
+     *
+     * @throws SilenceException If the container is not valid, or is not in a supported format.
+     */
+    public static CompressedImage readImage(DirectBuffer memory)
+    {
+        if (isKTX(memory))
+            return readKTX(memory);
+
+        if (memory.sizeBytes() >= DDS_HEADER_SIZE && readIntLE(memory, 0) == DDS_MAGIC)
+            return readDDS(memory);
+
+        throw new SilenceException("The data is neither a KTX nor a DDS container");
+    }
+
+    private static boolean isKTX(DirectBuffer memory)
+    {
+        if (memory.sizeBytes() < KTX_HEADER_SIZE)
+            return false;
+
+        for (int i = 0; i < KTX_IDENTIFIER.length; i++)
+            if (memory.readByte(i) != KTX_IDENTIFIER[i])
+                return false;
+
+        return true;
+    }
+
+    private static CompressedImage readKTX(DirectBuffer memory)
+    {
+        // The header says which endianness the file was written in, the values are swapped if it is different
+        boolean swap = readIntLE(memory, 12) != KTX_ENDIANNESS;
+
+        int glType = readInt(memory, 16, swap);
+        int glInternalFormat = readInt(memory, 28, swap);
+        int width = readInt(memory, 36, swap);
+        int height = readInt(memory, 40, swap);
+        int depth = readInt(memory, 44, swap);
+        int arrayElements = readInt(memory, 48, swap);
+        int faces = readInt(memory, 52, swap);
+        int levels = Math.max(1, readInt(memory, 56, swap));
+        int keyValueBytes = readInt(memory, 60, swap);
+
+        if (glType != 0)
+            throw new SilenceException("The KTX file is not compressed");
+
+        if (depth > 1 || arrayElements > 0 || faces > 1)
+            throw new SilenceException("Only the 2D textures are supported in KTX files");
+
+        CompressedImage.Format format = CompressedImage.Format.fromGlInternalFormat(glInternalFormat);
+
+        if (format == null)
+            throw new SilenceException("Unknown compressed format in KTX file: 0x" + Integer.toHexString(glInternalFormat));
+
+        checkSize(width, height);
+
+        CompressedImage image = new CompressedImage(memory, format);
+        int offset = KTX_HEADER_SIZE + keyValueBytes;
+
+        for (int level = 0; level < levels; level++)
+        {
+            checkBounds(memory, offset, 4);
+            int size = readInt(memory, offset, swap);
+            offset += 4;
+
+            if (size < format.getLevelSize(width, height))
+                throw new SilenceException("Level " + level + " of the KTX file is too small for its size");
+
+            checkBounds(memory, offset, size);
+            image.addLevel(width, height, offset, size);
+
+            // Every level is padded to a multiple of four bytes
+            offset += (size + 3) & ~3;
+
+            width = Math.max(1, width >> 1);
+            height = Math.max(1, height >> 1);
+        }
+
+        return image;
+    }
+
+    private static CompressedImage readDDS(DirectBuffer memory)
+    {
+        int flags = readIntLE(memory, 8);
+        int height = readIntLE(memory, 12);
+        int width = readIntLE(memory, 16);
+        int levels = (flags & DDSD_MIPMAPCOUNT) != 0 ? Math.max(1, readIntLE(memory, 28)) : 1;
+        int fourCC = readIntLE(memory, 84);
+        int caps2 = readIntLE(memory, 112);
+
+        if ((caps2 & DDSCAPS2_CUBEMAP) != 0)
+            throw new SilenceException("Cube maps are not supported in DDS files");
+
+        CompressedImage.Format format;
+        int offset = DDS_HEADER_SIZE;
+
+        if (fourCC == fourCC("DXT1"))
+            format = CompressedImage.Format.BC1_RGBA;
+        else if (fourCC == fourCC("DXT3"))
+            format = CompressedImage.Format.BC2;
+        else if (fourCC == fourCC("DXT5"))
+            format = CompressedImage.Format.BC3;
+        else if (fourCC == fourCC("DX10"))
+        {
+            checkBounds(memory, offset, DDS_DX10_SIZE);
+            format = dxgiFormat(readIntLE(memory, offset));
+            offset += DDS_DX10_SIZE;
+        }
+        else
+            throw new SilenceException("The DDS file is not in a supported compressed format");
+
+        checkSize(width, height);
+
+        CompressedImage image = new CompressedImage(memory, format);
+
+        for (int level = 0; level < levels; level++)
+        {
+            int size = format.getLevelSize(width, height);
+
+            checkBounds(memory, offset, size);
+            image.addLevel(width, height, offset, size);
+
+            offset += size;
+
+            width = Math.max(1, width >> 1);
+            height = Math.max(1, height >> 1);
+        }
+
+        return image;
+    }
+
+    private static CompressedImage.Format dxgiFormat(int dxgiFormat)
+    {
+        switch (dxgiFormat)
+        {
+            case 71: // DXGI_FORMAT_BC1_UNORM
+                return CompressedImage.Format.BC1_RGBA;
+
+            case 72: // DXGI_FORMAT_BC1_UNORM_SRGB
+                return CompressedImage.Format.BC1_SRGB_ALPHA;
+
+            case 74: // DXGI_FORMAT_BC2_UNORM
+                return CompressedImage.Format.BC2;
+
+            case 75: // DXGI_FORMAT_BC2_UNORM_SRGB
+                return CompressedImage.Format.BC2_SRGB;
+
+            case 77: // DXGI_FORMAT_BC3_UNORM
+                return CompressedImage.Format.BC3;
+
+            case 78: // DXGI_FORMAT_BC3_UNORM_SRGB
+                return CompressedImage.Format.BC3_SRGB;
+
+            default:
+                throw new SilenceException("Unsupported DXGI format in DDS file: " + dxgiFormat);
+        }
+    }
+
+    private static void checkSize(int width, int height)
+    {
+        if (width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE)
+            throw new SilenceException("Unsupported image size in the container: " + width + "x" + height);
+    }
+
+    private static void checkBounds(DirectBuffer memory, int offset, int size)
+    {
+        if (offset < 0 || size < 0 || (long) offset + size > memory.sizeBytes())
+            throw new SilenceException("The container is truncated");
+    }
+
+    private static int readInt(DirectBuffer memory, int index, boolean swap)
+    {
+        int value = readIntLE(memory, index);
+        return swap ? Integer.reverseBytes(value) : value;
+    }
+
+    // The DirectBuffers are in the native order, so the container values are read a byte at a time
+    private static int readIntLE(DirectBuffer memory, int index)
+    {
+        return (memory.readByte(index) & 0xFF)
+               | ((memory.readByte(index + 1) & 0xFF) << 8)
+               | ((memory.readByte(index + 2) & 0xFF) << 16)
+               | ((memory.readByte(index + 3) & 0xFF) << 24);
+    }
+}
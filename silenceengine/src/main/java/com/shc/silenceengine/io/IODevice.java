@@ -25,6 +25,8 @@
 package com.shc.silenceengine.io;
 
 import com.shc.easyjson.JSONObject;
+import com.shc.silenceengine.utils.functional.Provider;
+import com.shc.silenceengine.utils.functional.SimpleCallback;
 
 /**
  * @author Sri Harsha Chilakapati
@@ -48,4 +50,16 @@ public interface IODevice
     JSONObject getPreferences(String name);
 
     void savePreferences(String name, JSONObject preferences);
+
+    /**
+     * Runs a CPU bound task off the game thread where the platform allows it. The task returns a callback which is then
+     * invoked back on the game thread, so it should not touch the graphics or the game state itself. Platforms without
+     * threads run the task on the game thread, which is what this default does.
+     *
+     * @param task The task to run, which provides the callback to be invoked on completion.
+     */
+    default void runAsync(Provider<SimpleCallback> task)
+    {
+        task.provide().invoke();
+    }
 }
@@ -25,7 +25,6 @@
 package com.shc.silenceengine.math.geom2d;
 
 import com.shc.silenceengine.collision.Collision2D;
-import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.Image;
 import com.shc.silenceengine.math.Vector2;
 
@@ -77,32 +76,35 @@ public class Polygon
         Polygon polygon = new Polygon();
 
         List<Vector2> vertices = new ArrayList<>();
-        Color pixelOut = Color.REUSABLE_STACK.pop();
+        int[] row = new int[image.getWidth()];
 
         // Start scanning the image from left to right, and then from top to bottom
         for (int y = srcY; y < Math.min(srcY + srcH, image.getHeight()); y++)
         {
             boolean found = false;
 
+            image.readRow(y, row);
+
             for (int x = srcX; x < Math.min(srcX + srcW, image.getWidth()); x++)
             {
-                image.getPixel(x, y, pixelOut);
+                // The alpha is in the lowest byte of the packed RGBA pixel
+                boolean opaque = (row[x] & 0xFF) != 0;
 
                 // Add the pixel if it is the corner of the src rect and is not transparent
-                if ((srcX == x || srcX + srcW - 1 == x) && pixelOut.a != 0)
+                if ((srcX == x || srcX + srcW - 1 == x) && opaque)
                 {
                     vertices.add(new Vector2(x, y));
                     found = !found;
                 }
 
                 // Add the first non-transparent pixel
-                else if (!found && pixelOut.a != 0)
+                else if (!found && opaque)
                 {
                     vertices.add(new Vector2(x, y));
                     found = true;
                 }
                 // Add the last non-transparent pixel
-                else if (found && pixelOut.a == 0)
+                else if (found && !opaque)
                 {
                     vertices.add(new Vector2(x - 1, y));
                     found = false;
@@ -186,7 +188,6 @@ public class Polygon
         Collections.sort(vertices, (v1, v2) -> (int) (v1.angle(imgCenter)) - (int) (v2.angle(imgCenter)));
 
         Vector2.REUSABLE_STACK.push(imgCenter);
-        Color.REUSABLE_STACK.push(pixelOut);
 
         for (Vector2 v : vertices)
             polygon.addVertex(v);
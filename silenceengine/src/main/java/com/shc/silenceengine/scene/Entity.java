@@ -69,6 +69,11 @@ public class Entity
      */
     public TransformComponent transformComponent;
 
+    /**
+     * The scene that this entity is added to, which is notified when this entity changes.
+     */
+    Scene scene;
+
     public Entity()
     {
         addComponent(transformComponent = new TransformComponent());
@@ -96,6 +101,7 @@ public class Entity
         typedComponents.add(component);
 
         component.setup(this);
+        markChanged();
     }
 
     /**
@@ -118,6 +124,7 @@ public class Entity
             typedComponents.remove(component);
 
         component.onDestroyed();
+        markChanged();
     }
 
     /**
@@ -252,5 +259,18 @@ public class Entity
 
         components.clear();
         destroyed = true;
+
+        markChanged();
+    }
+
+    /**
+     * Notifies the change handlers of the scene that something that is drawn for this entity has changed. The transform
+     * and the sprite components call this by themselves, it only has to be called after changes that they can't see,
+     * like enabling or disabling a component, or changing a polygon or the bounds that are drawn for this entity.
+     */
+    public void markChanged()
+    {
+        if (scene != null)
+            scene.entityChanged(this);
     }
 }
@@ -63,6 +63,11 @@ public class Scene
      */
     private final List<BiCallback<Scene, Float>> renderSystems = new ArrayList<>();
 
+    /**
+     * The list of handlers that are notified when an entity in the scene changes.
+     */
+    private final List<UniCallback<Entity>> changeHandlers = new ArrayList<>();
+
     /**
      * A flag used to find whether to delay insertion of entities.
      */
@@ -117,6 +122,9 @@ public class Scene
     {
         entity.forEachComponent(Component::onInit);
 
+        entity.scene = this;
+        entityChanged(entity);
+
         if (isOperationInProgress)
             newEntities.add(entity);
         else
@@ -195,6 +203,29 @@ public class Scene
         renderSystems.add(system);
     }
 
+    /**
+     * Registers a handler that is notified whenever an entity is added to the scene, changes or is destroyed, so that
+     * systems can keep their own state of the entities without looking at all of them every frame. See {@link
+     * Entity#markChanged()} for the changes that are reported.
+     *
+     * @param handler The handler that accepts the entity that has changed.
+     */
+    public void registerChangeHandler(UniCallback<Entity> handler)
+    {
+        changeHandlers.add(handler);
+    }
+
+    /**
+     * Called by an entity of this scene when it has changed.
+     *
+     * @param entity The entity that has changed.
+     */
+    void entityChanged(Entity entity)
+    {
+        for (UniCallback<Entity> handler : changeHandlers)
+            handler.invoke(entity);
+    }
+
     /**
      * Runs a callback for all the active entities in this scene.
      *
@@ -26,6 +26,7 @@ package com.shc.silenceengine.scene.components;
 
 import com.shc.silenceengine.graphics.Color;
 import com.shc.silenceengine.graphics.Sprite;
+import com.shc.silenceengine.graphics.opengl.Texture;
 import com.shc.silenceengine.scene.Component;
 
 /**
@@ -40,6 +41,18 @@ public class SpriteComponent extends Component
     public float opacity = 1;
     public int   layer   = 0;
 
+    // Static sprites are baked into a StaticSpriteBatch instead of being batched again every frame
+    public boolean isStatic = false;
+
+    // The state in the last update, to notify the entity of the changes
+    private final Color lastTint = new Color();
+
+    private Sprite  lastSprite;
+    private Texture lastFrame;
+    private float   lastOpacity;
+    private int     lastLayer;
+    private boolean lastStatic;
+
     public SpriteComponent()
     {
         this.sprite = null;
@@ -54,5 +67,35 @@ public class SpriteComponent extends Component
     protected void onUpdate(float elapsedTime)
     {
         sprite.update(elapsedTime);
+
+        if (checkChanged())
+            entity.markChanged();
+    }
+
+    /**
+     * Compares the sprite with the state it had in the last update. The tint and the opacity only matter for the static
+     * sprites, which are baked with them.
+     */
+    private boolean checkChanged()
+    {
+        final Texture frame = sprite.getCurrentFrame();
+
+        final boolean changed = sprite != lastSprite
+                                || frame != lastFrame
+                                || layer != lastLayer
+                                || isStatic != lastStatic
+                                || (isStatic && (opacity != lastOpacity || !tint.equals(lastTint)));
+
+        if (changed)
+        {
+            lastSprite = sprite;
+            lastFrame = frame;
+            lastLayer = layer;
+            lastStatic = isStatic;
+            lastOpacity = opacity;
+            lastTint.set(tint);
+        }
+
+        return changed;
     }
 }
@@ -65,6 +65,10 @@ public class TransformComponent extends Component
         if (parent != null)
             worldTransform.set(localTransform)
                     .apply(parent.getWorldTransform());
+
+        // The parents are checked too, the children move along with them
+        if (hasChanged())
+            entity.markChanged();
     }
 
     @Override
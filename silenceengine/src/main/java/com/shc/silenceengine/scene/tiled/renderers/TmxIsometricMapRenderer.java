@@ -28,12 +28,11 @@ import com.shc.silenceengine.graphics.DynamicRenderer;
 import com.shc.silenceengine.graphics.opengl.Primitive;
 import com.shc.silenceengine.graphics.opengl.Texture;
 import com.shc.silenceengine.math.Vector2;
+import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.tiled.TmxMap;
 import com.shc.silenceengine.scene.tiled.TmxTileSet;
 import com.shc.silenceengine.scene.tiled.layers.TmxImageLayer;
-import com.shc.silenceengine.scene.tiled.layers.TmxTileLayer;
 import com.shc.silenceengine.scene.tiled.tiles.TmxMapTile;
-import com.shc.silenceengine.scene.tiled.tiles.TmxTile;
 import com.shc.silenceengine.utils.functional.UniCallback;
 
 /**
@@ -57,6 +56,14 @@ public class TmxIsometricMapRenderer extends TmxMapRenderer
         return tempVector.add(map.getWidth() * map.getTileWidth() / 2, 0);
     }
 
+    private Vector2 isoToOrtho(float x, float y)
+    {
+        float u = (x - map.getWidth() * map.getTileWidth() / 2) / (map.getTileWidth() / 2f);
+        float v = y / (map.getTileHeight() / 2f);
+
+        return tempVector.set((u + v) / 2, (v - u) / 2);
+    }
+
     @Override
     protected void renderBackgroundColor(DynamicRenderer renderer)
     {
@@ -113,114 +120,117 @@ public class TmxIsometricMapRenderer extends TmxMapRenderer
     }
 
     @Override
-    protected void renderTileLayer(DynamicRenderer renderer, TmxTileLayer tileLayer)
+    protected void getVisibleTileRange(Rectangle view, int[] range)
     {
-        if (!tileLayer.isVisible())
-            return;
+        float tileWidth = map.getTileWidth();
+        float tileHeight = map.getTileHeight();
 
-        Texture original = Texture.CURRENT;
-        Texture current = textureMap.get(map.getTileset(0).getImage().getSource().getAbsolutePath());
-        current.bind();
+        // The largest tile quad, as tiles of a tileset can be bigger than the tiles of the map
+        float quadWidth = tileWidth;
+        float quadHeight = tileHeight;
 
-        renderer.begin(Primitive.TRIANGLES);
+        for (TmxTileSet tileSet : map.getTileSets())
         {
-            for (int x = 0; x < tileLayer.getWidth(); x++)
-            {
-                for (int y = 0; y < tileLayer.getHeight(); y++)
-                {
-                    TmxMapTile mapTile = tileLayer.getTile(x, y);
-
-                    if (mapTile.getTileSetID() == -1)
-                        continue;
-
-                    TmxTileSet tileSet = map.getTileset(mapTile.getTileSetID());
-                    TmxTile tile = tileSet.getTile(mapTile.getGID() - tileSet.getFirstGID());
-
-                    Texture texture = textureMap.get(tileSet.getImage().getSource().getAbsolutePath());
-
-                    if (texture.getID() != current.getID())
-                    {
-                        renderer.end();
-                        current = texture;
-                        texture.bind();
-                        renderer.begin(Primitive.TRIANGLES);
-                    }
-
-                    long tileID = mapTile.getGID() - tileSet.getFirstGID();
-                    if (tile.isAnimated())
-                        tileID = tileAnimators.get(tile).getCurrentFrame().getTileID();
-
-                    int numColsPerRow = tileSet.getImage().getWidth() / tileSet.getTileWidth();
-
-                    long tileSetCol = tileID % numColsPerRow;
-                    long tileSetRow = tileID / numColsPerRow;
-
-                    float tileWidth = tileSet.getTileWidth();
-                    float tileHeight = tileSet.getTileHeight();
-
-                    // The clip space of the tile in the texture
-                    float clipX = (tileSet.getMargin() + (tileSet.getTileWidth() + tileSet.getSpacing()) * tileSetCol);
-                    float clipY = (tileSet.getMargin() + (tileSet.getTileHeight() + tileSet.getSpacing()) * tileSetRow);
-
-                    // The texture coordinates of the tile
-                    float minU = clipX / tileSet.getImage().getWidth();
-                    float maxU = (clipX + tileWidth) / tileSet.getImage().getWidth();
-                    float minV = clipY / tileSet.getImage().getHeight();
-                    float maxV = (clipY + tileHeight) / tileSet.getImage().getHeight();
-
-                    // Flip the texture coordinates to flip the tile
-                    boolean flipX = mapTile.isFlippedHorizontally();
-                    boolean flipY = mapTile.isFlippedVertically();
-                    boolean flipZ = mapTile.isFlippedDiagonally();
-
-                    if (flipZ)
-                    {
-                        flipX = !flipX;
-                        flipY = !flipY;
-                    }
-
-                    if (flipX)
-                    {
-                        float temp = minU;
-                        minU = maxU;
-                        maxU = temp;
-                    }
-
-                    if (flipY)
-                    {
-                        float temp = minV;
-                        minV = maxV;
-                        maxV = temp;
-                    }
-
-                    float uvCorrectionX = (0.5f / tileSet.getImage().getWidth());
-                    float uvCorrectionY = (0.5f / tileSet.getImage().getHeight());
-
-                    renderer.flushOnOverflow(6);
-
-                    // Draw the tile
-                    renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(0, 0));
-                    renderer.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
-
-                    renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
-                    renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
-
-                    renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
-                    renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
-
-                    renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
-                    renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
-
-                    renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(tileWidth, tileHeight));
-                    renderer.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
-
-                    renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
-                    renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
-                }
-            }
+            quadWidth = Math.max(quadWidth, tileSet.getTileWidth());
+            quadHeight = Math.max(quadHeight, tileSet.getTileHeight());
         }
-        renderer.end();
 
-        original.bind();
+        // A tile is visible when the top corner of its diamond lies in the view grown by the size of its quad, which
+        // hangs down from that corner. The corners of that region are projected back into tile space.
+        float left = view.x - quadWidth / 2;
+        float right = view.x + view.width + quadWidth / 2;
+        float top = view.y - quadHeight;
+        float bottom = view.y + view.height;
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < 4; i++)
+        {
+            isoToOrtho((i & 1) == 0 ? left : right, (i & 2) == 0 ? top : bottom);
+
+            minX = Math.min(minX, tempVector.x);
+            minY = Math.min(minY, tempVector.y);
+            maxX = Math.max(maxX, tempVector.x);
+            maxY = Math.max(maxY, tempVector.y);
+        }
+
+        range[0] = (int) Math.floor(minX);
+        range[1] = (int) Math.floor(minY);
+        range[2] = (int) Math.floor(maxX) + 1;
+        range[3] = (int) Math.floor(maxY) + 1;
+    }
+
+    @Override
+    protected void writeTile(DynamicRenderer renderer, int x, int y, TmxMapTile mapTile, TmxTileSet tileSet, int tileID)
+    {
+        int numColsPerRow = tileSet.getImage().getWidth() / tileSet.getTileWidth();
+
+        int tileSetCol = tileID % numColsPerRow;
+        int tileSetRow = tileID / numColsPerRow;
+
+        float tileWidth = tileSet.getTileWidth();
+        float tileHeight = tileSet.getTileHeight();
+
+        // The clip space of the tile in the texture
+        float clipX = (tileSet.getMargin() + (tileSet.getTileWidth() + tileSet.getSpacing()) * tileSetCol);
+        float clipY = (tileSet.getMargin() + (tileSet.getTileHeight() + tileSet.getSpacing()) * tileSetRow);
+
+        // The texture coordinates of the tile
+        float minU = clipX / tileSet.getImage().getWidth();
+        float maxU = (clipX + tileWidth) / tileSet.getImage().getWidth();
+        float minV = clipY / tileSet.getImage().getHeight();
+        float maxV = (clipY + tileHeight) / tileSet.getImage().getHeight();
+
+        // Flip the texture coordinates to flip the tile
+        boolean flipX = mapTile.isFlippedHorizontally();
+        boolean flipY = mapTile.isFlippedVertically();
+        boolean flipZ = mapTile.isFlippedDiagonally();
+
+        if (flipZ)
+        {
+            flipX = !flipX;
+            flipY = !flipY;
+        }
+
+        if (flipX)
+        {
+            float temp = minU;
+            minU = maxU;
+            maxU = temp;
+        }
+
+        if (flipY)
+        {
+            float temp = minV;
+            minV = maxV;
+            maxV = temp;
+        }
+
+        float uvCorrectionX = (0.5f / tileSet.getImage().getWidth());
+        float uvCorrectionY = (0.5f / tileSet.getImage().getHeight());
+
+        renderer.flushOnOverflow(6);
+
+        // Draw the tile
+        renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(0, 0));
+        renderer.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
+
+        renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
+        renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+
+        renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
+        renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
+
+        renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? 0 : tileWidth, flipZ ? tileHeight : 0));
+        renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+
+        renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(tileWidth, tileHeight));
+        renderer.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
+
+        renderer.vertex(orthoToIso(x, y).add(-tileWidth / 2, 0).add(flipZ ? tileWidth : 0, flipZ ? 0 : tileHeight));
+        renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
     }
 }
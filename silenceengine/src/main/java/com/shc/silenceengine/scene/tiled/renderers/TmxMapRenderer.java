@@ -26,38 +26,75 @@ package com.shc.silenceengine.scene.tiled.renderers;
 
 import com.shc.silenceengine.core.SilenceEngine;
 import com.shc.silenceengine.core.SilenceException;
+import com.shc.silenceengine.graphics.DefaultMaterial;
 import com.shc.silenceengine.graphics.DynamicRenderer;
+import com.shc.silenceengine.graphics.IGraphicsDevice;
+import com.shc.silenceengine.graphics.Material;
+import com.shc.silenceengine.graphics.MeshRenderer;
+import com.shc.silenceengine.graphics.VertexFormat;
 import com.shc.silenceengine.graphics.opengl.GLContext;
 import com.shc.silenceengine.graphics.opengl.Primitive;
+import com.shc.silenceengine.graphics.opengl.Program;
 import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.graphics.programs.DynamicProgram;
 import com.shc.silenceengine.io.FilePath;
 import com.shc.silenceengine.io.ImageReader;
+import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.tiled.TmxMap;
 import com.shc.silenceengine.scene.tiled.TmxTileSet;
 import com.shc.silenceengine.scene.tiled.layers.TmxImageLayer;
 import com.shc.silenceengine.scene.tiled.layers.TmxMapLayer;
 import com.shc.silenceengine.scene.tiled.layers.TmxTileLayer;
 import com.shc.silenceengine.scene.tiled.tiles.TmxAnimationFrame;
+import com.shc.silenceengine.scene.tiled.tiles.TmxMapTile;
 import com.shc.silenceengine.scene.tiled.tiles.TmxTile;
+import com.shc.silenceengine.utils.TaskManager;
 import com.shc.silenceengine.utils.TimeUtils;
 import com.shc.silenceengine.utils.functional.SimpleCallback;
 import com.shc.silenceengine.utils.functional.UniCallback;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.shc.silenceengine.graphics.IGraphicsDevice.Constants.*;
 
 /**
+ * <p>The base class of the TMX map renderers. Tile layers are baked once into chunks of static vertex buffers, and only
+ * those cached chunks are drawn in every frame. When a view is given to {@link #render(DynamicRenderer, Rectangle)},
+ * only the chunks in the visible tile range are visited. Animated tiles are not baked, they are drawn through the
+ * dynamic renderer since their frames change over time.</p>
+ *
+ * <p>The tiles are drawn column by column. When the tiles of a map can't overlap, like on orthogonal maps, the order
+ * doesn't matter, so a chunk is {@link #CHUNK_SIZE} by {@link #CHUNK_SIZE} tiles with one buffer per tileset texture,
+ * and its animated tiles are drawn after them. When they can overlap, like on isometric maps or with tiles larger than
+ * the grid, the chunks are runs of whole columns that are drawn in order, and a chunk is only split where the texture
+ * changes or an animated tile comes in that order, so every tile is still drawn over the ones before it.</p>
+ *
  * @author Sri Harsha Chilakapati
  */
 public abstract class TmxMapRenderer
 {
+    /**
+     * The number of tiles along each side of a chunk.
+     */
+    public static final int CHUNK_SIZE = 32;
+
     protected TmxMap map;
 
     protected Map<String, Texture>       textureMap;
     protected Map<TmxTile, TileAnimator> tileAnimators;
 
+    private Map<TmxTileLayer, LayerCache> layerCaches = new IdentityHashMap<>();
+
+    private DynamicRenderer captureRenderer;
+    private DynamicProgram  chunkProgram;
+    private Material        chunkMaterial;
+
+    private int[] visibleRange = new int[4];
+
     public static void create(TmxMap map, UniCallback<TmxMapRenderer> callback)
     {
         switch (map.getOrientation())
@@ -94,13 +131,17 @@ public abstract class TmxMapRenderer
                 SimpleCallback lastFinishCallback = finishCallback;
 
                 finishCallback = () ->
-                        imageReader.readImage(path, image ->
+                        imageReader.readImage(path, image -> TaskManager.runOnRender(() ->
                         {
-                            textureMap.put(path.getAbsolutePath(), Texture.fromImage(image));
+                            Texture texture = Texture.fromImage(image);
                             image.dispose();
 
+                            return texture;
+                        }, texture ->
+                        {
+                            textureMap.put(path.getAbsolutePath(), texture);
                             lastFinishCallback.invoke();
-                        });
+                        }));
             }
 
             for (TmxTile tile : tileSet.getTiles())
@@ -122,13 +163,17 @@ public abstract class TmxMapRenderer
                 SimpleCallback lastFinishCallback = finishCallback;
 
                 finishCallback = () ->
-                        imageReader.readImage(path, image ->
+                        imageReader.readImage(path, image -> TaskManager.runOnRender(() ->
                         {
-                            textureMap.put(path.getAbsolutePath(), Texture.fromImage(image));
+                            Texture texture = Texture.fromImage(image);
                             image.dispose();
 
+                            return texture;
+                        }, texture ->
+                        {
+                            textureMap.put(path.getAbsolutePath(), texture);
                             lastFinishCallback.invoke();
-                        });
+                        }));
             }
         }
 
@@ -142,6 +187,19 @@ public abstract class TmxMapRenderer
     }
 
     public void render(DynamicRenderer renderer)
+    {
+        render(renderer, null);
+    }
+
+    /**
+     * Renders the map, drawing only the tiles that fall in the given view. Only the chunks and animated tiles in the
+     * visible tile range are visited, so the work done per frame depends on the size of the view and not on the size
+     * of the map.
+     *
+     * @param renderer The renderer to draw the background, image layers and animated tiles with.
+     * @param view     The visible region in world coordinates, or {@code null} to render the whole map.
+     */
+    public void render(DynamicRenderer renderer, Rectangle view)
     {
         GLContext.enable(GL_BLEND);
         GLContext.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
@@ -152,7 +210,7 @@ public abstract class TmxMapRenderer
         for (TmxMapLayer mapLayer : map.getLayers())
         {
             if (mapLayer instanceof TmxTileLayer)
-                renderTileLayer(renderer, (TmxTileLayer) mapLayer);
+                renderTileLayer(renderer, (TmxTileLayer) mapLayer, view);
 
             if (mapLayer instanceof TmxImageLayer)
                 renderImageLayer(renderer, (TmxImageLayer) mapLayer);
@@ -199,26 +257,440 @@ public abstract class TmxMapRenderer
     protected abstract void renderImageLayer(DynamicRenderer renderer, TmxImageLayer imageLayer);
 
     public void renderTileLayers(DynamicRenderer renderer, int... layerIDs)
+    {
+        renderTileLayers(renderer, null, layerIDs);
+    }
+
+    public void renderTileLayers(DynamicRenderer renderer, Rectangle view, int... layerIDs)
     {
         if (layerIDs == null || layerIDs.length == 0)
         {
             for (TmxTileLayer tileLayer : map.getTileLayers())
-                renderTileLayer(renderer, tileLayer);
+                renderTileLayer(renderer, tileLayer, view);
         }
         else
         {
             for (int layerIndex : layerIDs)
             {
-                if (layerIndex > map.getNumTileLayers())
-                    renderTileLayer(renderer, map.getTileLayer(layerIndex));
+                if (layerIndex < map.getNumTileLayers())
+                    renderTileLayer(renderer, map.getTileLayer(layerIndex), view);
+            }
+        }
+    }
+
+    protected void renderTileLayer(DynamicRenderer renderer, TmxTileLayer tileLayer)
+    {
+        renderTileLayer(renderer, tileLayer, null);
+    }
+
+    protected void renderTileLayer(DynamicRenderer renderer, TmxTileLayer tileLayer, Rectangle view)
+    {
+        if (!tileLayer.isVisible())
+            return;
+
+        // The chunks are drawn with the dynamic program in use, so that custom dynamic programs keep working
+        chunkProgram = Program.CURRENT instanceof DynamicProgram ? (DynamicProgram) Program.CURRENT
+                                                                 : IGraphicsDevice.Programs.dynamic;
+
+        LayerCache cache = layerCaches.get(tileLayer);
+
+        if (cache == null)
+        {
+            cache = bakeLayer(tileLayer);
+            layerCaches.put(tileLayer, cache);
+        }
+
+        // The range of visible chunks, with the max bounds being exclusive
+        int minChunkX = 0;
+        int minChunkY = 0;
+        int maxChunkX = cache.chunksX;
+        int maxChunkY = cache.chunksY;
+
+        if (view != null)
+        {
+            getVisibleTileRange(view, visibleRange);
+
+            int minX = Math.max(visibleRange[0], 0);
+            int minY = Math.max(visibleRange[1], 0);
+            int maxX = Math.min(visibleRange[2], tileLayer.getWidth());
+            int maxY = Math.min(visibleRange[3], tileLayer.getHeight());
+
+            if (minX >= maxX || minY >= maxY)
+                return;
+
+            minChunkX = minX / cache.chunkWidth;
+            minChunkY = minY / cache.chunkHeight;
+            maxChunkX = (maxX + cache.chunkWidth - 1) / cache.chunkWidth;
+            maxChunkY = (maxY + cache.chunkHeight - 1) / cache.chunkHeight;
+        }
+
+        Texture original = Texture.CURRENT;
+        boolean frameReady = false;
+
+        // The chunks are visited column by column, which is the order of the tiles
+        for (int cx = minChunkX; cx < maxChunkX; cx++)
+        {
+            for (int cy = minChunkY; cy < maxChunkY; cy++)
+            {
+                Chunk chunk = cache.chunks[cx * cache.chunksY + cy];
+
+                if (chunk == null)
+                    continue;
+
+                for (ChunkPart part : chunk.parts)
+                {
+                    if (part.animatedTiles != null)
+                    {
+                        renderAnimatedTiles(renderer, tileLayer, part.animatedTiles);
+                        continue;
+                    }
+
+                    if (!frameReady)
+                    {
+                        chunkProgram.prepareFrame();
+                        frameReady = true;
+                    }
+
+                    part.texture.bind();
+                    part.meshRenderer.render(chunkMaterial);
+                }
+            }
+        }
+
+        if (original != null)
+            original.bind();
+    }
+
+    /**
+     * Computes the range of tiles that can be seen in the given view. The range doesn't need to be clamped to the size
+     * of the layer, but it must be conservative, that is, it must include every tile whose quad overlaps the view.
+     *
+     * @param view  The visible region in world coordinates.
+     * @param range The array to store the range in, as {@code minX, minY, maxX, maxY} with exclusive max bounds.
+     */
+    protected abstract void getVisibleTileRange(Rectangle view, int[] range);
+
+    /**
+     * @return Whether the tiles of the map can overlap each other on the screen, in which case they are baked and drawn
+     * in their order. Renderers whose tiles always stay inside their own cell of the grid should return false.
+     */
+    protected boolean canTilesOverlap()
+    {
+        return true;
+    }
+
+    private void renderAnimatedTiles(DynamicRenderer renderer, TmxTileLayer tileLayer, List<Integer> animatedTiles)
+    {
+        Texture current = null;
+
+        for (int i = 0; i < animatedTiles.size(); i += 2)
+            current = renderAnimatedTile(renderer, tileLayer, animatedTiles.get(i), animatedTiles.get(i + 1), current);
+
+        if (current != null)
+            renderer.end();
+    }
+
+    private Texture renderAnimatedTile(DynamicRenderer renderer, TmxTileLayer tileLayer, int x, int y, Texture current)
+    {
+        TmxMapTile mapTile = tileLayer.getTile(x, y);
+        TmxTileSet tileSet = map.getTileset(mapTile.getTileSetID());
+        TmxTile tile = tileSet.getTile(mapTile.getGID() - tileSet.getFirstGID());
+
+        Texture texture = getTileSetTexture(tileSet);
+
+        if (texture != current)
+        {
+            if (current != null)
+                renderer.end();
+
+            current = texture;
+            texture.bind();
+            renderer.begin(Primitive.TRIANGLES);
+        }
+
+        writeTile(renderer, x, y, mapTile, tileSet, tileAnimators.get(tile).getCurrentFrame().getTileID());
+
+        return current;
+    }
+
+    private LayerCache bakeLayer(TmxTileLayer tileLayer)
+    {
+        if (captureRenderer == null)
+        {
+            captureRenderer = new DynamicRenderer(VertexFormat.createPacked(3), CHUNK_SIZE * CHUNK_SIZE * 6,
+                    1024 * 1024);
+
+            chunkMaterial = new DefaultMaterial(chunkProgram, meshRenderer ->
+            {
+                meshRenderer.vertexLocation = chunkProgram.getAttribute(DynamicProgram.VERTEX_ATTRIB);
+                meshRenderer.colorLocation = chunkProgram.getAttribute(DynamicProgram.COLOR_ATTRIB);
+                meshRenderer.uvLocation = chunkProgram.getAttribute(DynamicProgram.TEXCOORD_ATTRIB);
+            });
+        }
+
+        chunkProgram.applyToRenderer(captureRenderer);
+
+        LayerCache cache = new LayerCache();
+
+        final int width = tileLayer.getWidth();
+        final int height = tileLayer.getHeight();
+        final boolean ordered = canTilesOverlap();
+
+        if (ordered)
+        {
+            // Runs of whole columns, or of parts of a column on tall maps, are consecutive in the order of the tiles
+            final int chunkTiles = CHUNK_SIZE * CHUNK_SIZE;
+
+            cache.chunkHeight = Math.max(1, Math.min(height, chunkTiles));
+            cache.chunkWidth = cache.chunkHeight < height ? 1 : Math.max(1, chunkTiles / cache.chunkHeight);
+        }
+        else
+        {
+            cache.chunkWidth = CHUNK_SIZE;
+            cache.chunkHeight = CHUNK_SIZE;
+        }
+
+        cache.chunksX = (width + cache.chunkWidth - 1) / cache.chunkWidth;
+        cache.chunksY = (height + cache.chunkHeight - 1) / cache.chunkHeight;
+        cache.chunks = new Chunk[cache.chunksX * cache.chunksY];
+
+        // The chunks are baked column by column, the same order in which the tiles are drawn
+        for (int cx = 0; cx < width; cx += cache.chunkWidth)
+        {
+            for (int cy = 0; cy < height; cy += cache.chunkHeight)
+            {
+                int endX = Math.min(cx + cache.chunkWidth, width);
+                int endY = Math.min(cy + cache.chunkHeight, height);
+
+                Chunk chunk = ordered ? bakeOrderedChunk(tileLayer, cx, cy, endX, endY)
+                                      : bakeGroupedChunk(tileLayer, cx, cy, endX, endY);
+
+                if (!chunk.parts.isEmpty())
+                {
+                    cache.chunks[(cx / cache.chunkWidth) * cache.chunksY + cy / cache.chunkHeight] = chunk;
+
+                    for (ChunkPart part : chunk.parts)
+                        if (part.meshRenderer != null)
+                            cache.partCount++;
+                }
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Bakes a chunk with one part for each texture and one part for all the animated tiles, which is only correct when
+     * the tiles can't overlap.
+     */
+    private Chunk bakeGroupedChunk(TmxTileLayer tileLayer, int startX, int startY, int endX, int endY)
+    {
+        Chunk chunk = new Chunk();
+        ChunkPart animated = new ChunkPart();
+        animated.animatedTiles = new ArrayList<>();
+
+        // Find the textures used in this chunk, and note down the animated tiles on the way
+        List<Texture> textures = new ArrayList<>();
+
+        for (int x = startX; x < endX; x++)
+        {
+            for (int y = startY; y < endY; y++)
+            {
+                TmxMapTile mapTile = tileLayer.getTile(x, y);
+
+                if (mapTile.getTileSetID() == -1)
+                    continue;
+
+                TmxTileSet tileSet = map.getTileset(mapTile.getTileSetID());
+                TmxTile tile = tileSet.getTile(mapTile.getGID() - tileSet.getFirstGID());
+
+                if (tile.isAnimated())
+                {
+                    animated.animatedTiles.add(x);
+                    animated.animatedTiles.add(y);
+                    continue;
+                }
+
+                Texture texture = getTileSetTexture(tileSet);
+
+                if (!textures.contains(texture))
+                    textures.add(texture);
+            }
+        }
+
+        for (Texture texture : textures)
+        {
+            captureRenderer.begin(Primitive.TRIANGLES, DynamicRenderer.RenderPolicy.NO_RENDER);
+
+            for (int x = startX; x < endX; x++)
+            {
+                for (int y = startY; y < endY; y++)
+                {
+                    TmxMapTile mapTile = tileLayer.getTile(x, y);
+
+                    if (mapTile.getTileSetID() == -1)
+                        continue;
+
+                    TmxTileSet tileSet = map.getTileset(mapTile.getTileSetID());
+                    int tileID = mapTile.getGID() - tileSet.getFirstGID();
+
+                    if (!tileSet.getTile(tileID).isAnimated() && getTileSetTexture(tileSet) == texture)
+                        writeTile(captureRenderer, x, y, mapTile, tileSet, tileID);
+                }
             }
+
+            chunk.parts.add(finishBakedPart(texture));
         }
+
+        if (!animated.animatedTiles.isEmpty())
+            chunk.parts.add(animated);
+
+        return chunk;
     }
 
-    protected abstract void renderTileLayer(DynamicRenderer renderer, TmxTileLayer tileLayer);
+    /**
+     * Bakes a chunk whose parts keep the order of the tiles. A new part is started whenever the texture changes or the
+     * tiles switch between animated and static ones.
+     */
+    private Chunk bakeOrderedChunk(TmxTileLayer tileLayer, int startX, int startY, int endX, int endY)
+    {
+        Chunk chunk = new Chunk();
+
+        // The part being filled, either baked with a texture or a run of animated tiles
+        Texture bakedTexture = null;
+        ChunkPart animated = null;
+
+        for (int x = startX; x < endX; x++)
+        {
+            for (int y = startY; y < endY; y++)
+            {
+                TmxMapTile mapTile = tileLayer.getTile(x, y);
+
+                if (mapTile.getTileSetID() == -1)
+                    continue;
+
+                TmxTileSet tileSet = map.getTileset(mapTile.getTileSetID());
+                int tileID = mapTile.getGID() - tileSet.getFirstGID();
+
+                if (tileSet.getTile(tileID).isAnimated())
+                {
+                    if (bakedTexture != null)
+                    {
+                        chunk.parts.add(finishBakedPart(bakedTexture));
+                        bakedTexture = null;
+                    }
+
+                    if (animated == null)
+                    {
+                        animated = new ChunkPart();
+                        animated.animatedTiles = new ArrayList<>();
+                        chunk.parts.add(animated);
+                    }
+
+                    animated.animatedTiles.add(x);
+                    animated.animatedTiles.add(y);
+                    continue;
+                }
+
+                Texture texture = getTileSetTexture(tileSet);
+                animated = null;
+
+                if (texture != bakedTexture)
+                {
+                    if (bakedTexture != null)
+                        chunk.parts.add(finishBakedPart(bakedTexture));
+
+                    bakedTexture = texture;
+                    captureRenderer.begin(Primitive.TRIANGLES, DynamicRenderer.RenderPolicy.NO_RENDER);
+                }
+
+                writeTile(captureRenderer, x, y, mapTile, tileSet, tileID);
+            }
+        }
+
+        if (bakedTexture != null)
+            chunk.parts.add(finishBakedPart(bakedTexture));
+
+        return chunk;
+    }
+
+    private ChunkPart finishBakedPart(Texture texture)
+    {
+        captureRenderer.end();
+
+        ChunkPart part = new ChunkPart();
+        part.texture = texture;
+        part.meshRenderer = new MeshRenderer(captureRenderer);
+
+        return part;
+    }
+
+    /**
+     * Writes the six vertices of a single tile into the renderer. This is used both to bake the static chunks and to
+     * draw the animated tiles, so implementations should only emit the vertices and texture coordinates of the tile.
+     *
+     * @param renderer The renderer to write the vertices into. It has already begun with {@link
+     *                 Primitive#TRIANGLES}.
+     * @param x        The column of the tile in the layer.
+     * @param y        The row of the tile in the layer.
+     * @param mapTile  The tile in the layer.
+     * @param tileSet  The tileset that the tile belongs to.
+     * @param tileID   The ID of the tile in the tileset to draw, which is the current frame for animated tiles.
+     */
+    protected abstract void writeTile(DynamicRenderer renderer, int x, int y, TmxMapTile mapTile, TmxTileSet tileSet,
+                                      int tileID);
+
+    protected Texture getTileSetTexture(TmxTileSet tileSet)
+    {
+        return textureMap.get(tileSet.getImage().getSource().getAbsolutePath());
+    }
+
+    /**
+     * Discards the baked chunks of all the tile layers, so that they are built again when they are next rendered.
+     * Call this after changing the tiles of the map.
+     */
+    public void invalidate()
+    {
+        for (LayerCache cache : layerCaches.values())
+            cache.dispose();
+
+        layerCaches.clear();
+    }
+
+    /**
+     * Discards the baked chunks of a single tile layer, so that it is built again when it is next rendered.
+     *
+     * @param tileLayer The tile layer to invalidate.
+     */
+    public void invalidate(TmxTileLayer tileLayer)
+    {
+        LayerCache cache = layerCaches.remove(tileLayer);
+
+        if (cache != null)
+            cache.dispose();
+    }
+
+    /**
+     * @return The number of baked chunk buffers across all the tile layers, which is the number of draw calls used to
+     * render the static tiles.
+     */
+    public int getChunkCount()
+    {
+        int count = 0;
+
+        for (LayerCache cache : layerCaches.values())
+            count += cache.partCount;
+
+        return count;
+    }
 
     public void dispose()
     {
+        invalidate();
+
+        if (captureRenderer != null)
+            captureRenderer.dispose();
+
         for (Texture texture : textureMap.values())
             texture.dispose();
     }
@@ -258,4 +730,42 @@ public abstract class TmxMapRenderer
             return tile.getFrames().get(currentFrameIndex);
         }
     }
+
+    private static class ChunkPart
+    {
+        private Texture      texture;
+        private MeshRenderer meshRenderer;
+
+        // The coordinates of the animated tiles, for the parts that are drawn with the dynamic renderer
+        private List<Integer> animatedTiles;
+    }
+
+    private static class Chunk
+    {
+        private List<ChunkPart> parts = new ArrayList<>();
+    }
+
+    private static class LayerCache
+    {
+        private Chunk[] chunks;
+
+        private int chunkWidth;
+        private int chunkHeight;
+        private int chunksX;
+        private int chunksY;
+        private int partCount;
+
+        private void dispose()
+        {
+            for (Chunk chunk : chunks)
+            {
+                if (chunk == null)
+                    continue;
+
+                for (ChunkPart part : chunk.parts)
+                    if (part.meshRenderer != null)
+                        part.meshRenderer.dispose();
+            }
+        }
+    }
 }
@@ -27,12 +27,11 @@ package com.shc.silenceengine.scene.tiled.renderers;
 import com.shc.silenceengine.graphics.DynamicRenderer;
 import com.shc.silenceengine.graphics.opengl.Primitive;
 import com.shc.silenceengine.graphics.opengl.Texture;
+import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.tiled.TmxMap;
 import com.shc.silenceengine.scene.tiled.TmxTileSet;
 import com.shc.silenceengine.scene.tiled.layers.TmxImageLayer;
-import com.shc.silenceengine.scene.tiled.layers.TmxTileLayer;
 import com.shc.silenceengine.scene.tiled.tiles.TmxMapTile;
-import com.shc.silenceengine.scene.tiled.tiles.TmxTile;
 import com.shc.silenceengine.utils.functional.UniCallback;
 
 /**
@@ -73,118 +72,97 @@ public class TmxOrthogonalMapRenderer extends TmxMapRenderer
         originalTexture.bind();
     }
 
-    protected void renderTileLayer(DynamicRenderer renderer, TmxTileLayer tileLayer)
+    @Override
+    protected boolean canTilesOverlap()
     {
-        if (!tileLayer.isVisible())
-            return;
+        // The quads of the tiles are always the size of the grid, whatever the size of the tiles in the tileset
+        return false;
+    }
+
+    @Override
+    protected void getVisibleTileRange(Rectangle view, int[] range)
+    {
+        float tileWidth = map.getTileWidth();
+        float tileHeight = map.getTileHeight();
+
+        range[0] = (int) Math.floor(view.x / tileWidth);
+        range[1] = (int) Math.floor(view.y / tileHeight);
+        range[2] = (int) Math.floor((view.x + view.width) / tileWidth) + 1;
+        range[3] = (int) Math.floor((view.y + view.height) / tileHeight) + 1;
+    }
+
+    @Override
+    protected void writeTile(DynamicRenderer renderer, int x, int y, TmxMapTile mapTile, TmxTileSet tileSet, int tileID)
+    {
+        int numColsPerRow = tileSet.getImage().getWidth() / tileSet.getTileWidth();
+
+        int tileSetCol = tileID % numColsPerRow;
+        int tileSetRow = tileID / numColsPerRow;
+
+        float tileWidth = map.getTileWidth();
+        float tileHeight = map.getTileHeight();
+
+        // The position of the tile in the world
+        float posX = x * tileWidth;
+        float posY = y * tileHeight;
 
-        Texture original = Texture.CURRENT;
-        Texture current = textureMap.get(map.getTileset(0).getImage().getSource().getAbsolutePath());
-        current.bind();
+        // The clip space of the tile in the texture
+        float clipX = (tileSet.getMargin() + (tileSet.getTileWidth() + tileSet.getSpacing()) * tileSetCol);
+        float clipY = (tileSet.getMargin() + (tileSet.getTileHeight() + tileSet.getSpacing()) * tileSetRow);
 
-        renderer.begin(Primitive.TRIANGLES);
+        // The texture coordinates of the tile
+        float minU = clipX / tileSet.getImage().getWidth();
+        float maxU = (clipX + tileWidth) / tileSet.getImage().getWidth();
+        float minV = clipY / tileSet.getImage().getHeight();
+        float maxV = (clipY + tileHeight) / tileSet.getImage().getHeight();
+
+        // Flip the texture coordinates to flip the tile
+        boolean flipX = mapTile.isFlippedHorizontally();
+        boolean flipY = mapTile.isFlippedVertically();
+        boolean flipZ = mapTile.isFlippedDiagonally();
+
+        if (flipZ)
         {
-            for (int x = 0; x < tileLayer.getWidth(); x++)
-            {
-                for (int y = 0; y < tileLayer.getHeight(); y++)
-                {
-                    TmxMapTile mapTile = tileLayer.getTile(x, y);
-
-                    if (mapTile.getTileSetID() == -1)
-                        continue;
-
-                    TmxTileSet tileSet = map.getTileset(mapTile.getTileSetID());
-                    TmxTile tile = tileSet.getTile(mapTile.getGID() - tileSet.getFirstGID());
-
-                    Texture texture = textureMap.get(tileSet.getImage().getSource().getAbsolutePath());
-
-                    if (texture.getID() != current.getID())
-                    {
-                        renderer.end();
-                        current = texture;
-                        texture.bind();
-                        renderer.begin(Primitive.TRIANGLES);
-                    }
-
-                    int tileID = mapTile.getGID() - tileSet.getFirstGID();
-                    if (tile.isAnimated())
-                        tileID = tileAnimators.get(tile).getCurrentFrame().getTileID();
-
-                    int numColsPerRow = tileSet.getImage().getWidth() / tileSet.getTileWidth();
-
-                    int tileSetCol = tileID % numColsPerRow;
-                    int tileSetRow = tileID / numColsPerRow;
-
-                    float tileWidth = map.getTileWidth();
-                    float tileHeight = map.getTileHeight();
-
-                    // The position of the tile in the world
-                    float posX = x * tileWidth;
-                    float posY = y * tileWidth;
-
-                    // The clip space of the tile in the texture
-                    float clipX = (tileSet.getMargin() + (tileSet.getTileWidth() + tileSet.getSpacing()) * tileSetCol);
-                    float clipY = (tileSet.getMargin() + (tileSet.getTileHeight() + tileSet.getSpacing()) * tileSetRow);
-
-                    // The texture coordinates of the tile
-                    float minU = clipX / tileSet.getImage().getWidth();
-                    float maxU = (clipX + tileWidth) / tileSet.getImage().getWidth();
-                    float minV = clipY / tileSet.getImage().getHeight();
-                    float maxV = (clipY + tileHeight) / tileSet.getImage().getHeight();
-
-                    // Flip the texture coordinates to flip the tile
-                    boolean flipX = mapTile.isFlippedHorizontally();
-                    boolean flipY = mapTile.isFlippedVertically();
-                    boolean flipZ = mapTile.isFlippedDiagonally();
-
-                    if (flipZ)
-                    {
-                        flipX = !flipX;
-                        flipY = !flipY;
-                    }
-
-                    if (flipX)
-                    {
-                        float temp = minU;
-                        minU = maxU;
-                        maxU = temp;
-                    }
-
-                    if (flipY)
-                    {
-                        float temp = minV;
-                        minV = maxV;
-                        maxV = temp;
-                    }
-
-                    float uvCorrectionX = (0.2f / tileSet.getImage().getWidth());
-                    float uvCorrectionY = (0.2f / tileSet.getImage().getHeight());
-
-                    renderer.flushOnOverflow(6);
-
-                    // Draw the tile
-                    renderer.vertex(posX, posY);
-                    renderer.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
-
-                    renderer.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
-                    renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
-
-                    renderer.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
-                    renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
-
-                    renderer.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
-                    renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
-
-                    renderer.vertex(posX + tileWidth, posY + tileHeight);
-                    renderer.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
-
-                    renderer.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
-                    renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
-                }
-            }
+            flipX = !flipX;
+            flipY = !flipY;
         }
-        renderer.end();
 
-        original.bind();
+        if (flipX)
+        {
+            float temp = minU;
+            minU = maxU;
+            maxU = temp;
+        }
+
+        if (flipY)
+        {
+            float temp = minV;
+            minV = maxV;
+            maxV = temp;
+        }
+
+        float uvCorrectionX = (0.2f / tileSet.getImage().getWidth());
+        float uvCorrectionY = (0.2f / tileSet.getImage().getHeight());
+
+        renderer.flushOnOverflow(6);
+
+        // Draw the tile
+        renderer.vertex(posX, posY);
+        renderer.texCoord(minU + uvCorrectionX, minV + uvCorrectionY);
+
+        renderer.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
+        renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+
+        renderer.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
+        renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
+
+        renderer.vertex(flipZ ? posX : posX + tileWidth, flipZ ? posY + tileHeight : posY);
+        renderer.texCoord(maxU - uvCorrectionX, minV + uvCorrectionY);
+
+        renderer.vertex(posX + tileWidth, posY + tileHeight);
+        renderer.texCoord(maxU - uvCorrectionX, maxV - uvCorrectionY);
+
+        renderer.vertex(flipZ ? posX + tileWidth : posX, flipZ ? posY : posY + tileHeight);
+        renderer.texCoord(minU + uvCorrectionX, maxV - uvCorrectionY);
     }
 }
@@ -25,7 +25,9 @@
 package com.shc.silenceengine.utils;
 
 import com.shc.silenceengine.core.SilenceEngine;
+import com.shc.silenceengine.utils.functional.Provider;
 import com.shc.silenceengine.utils.functional.SimpleCallback;
+import com.shc.silenceengine.utils.functional.UniCallback;
 
 import java.util.LinkedList;
 import java.util.Queue;
@@ -63,6 +65,24 @@ public final class TaskManager
         checkInitialized();
     }
 
+    /**
+     * Runs a task that needs the graphics context with the render tasks, and passes its result to a callback with the
+     * update tasks. The loaders use this to create their textures, as the update thread doesn't have the context when
+     * the frames are rendered on a separate thread.
+     *
+     * @param task     The task that does the graphics work.
+     * @param callback The callback that receives the result of the task on the update thread.
+     * @param <T>      The type of the result of the task.
+     */
+    public static <T> void runOnRender(Provider<T> task, UniCallback<T> callback)
+    {
+        runOnRender(() ->
+        {
+            T result = task.provide();
+            runOnUpdate(() -> callback.invoke(result));
+        });
+    }
+
     public static void clearUpdateTasks()
     {
         synchronized (updateTasksLock)
@@ -81,23 +101,30 @@ public final class TaskManager
 
     public static void forceUpdateTasks(float deltaTime)
     {
-        synchronized (updateTasksLock)
-        {
-            SimpleCallback task;
+        SimpleCallback task;
 
-            while ((task = updateTasks.poll()) != null)
-                task.invoke();
-        }
+        while ((task = poll(updateTasks, updateTasksLock)) != null)
+            task.invoke();
     }
 
     public static void forceRenderTasks(float delta)
     {
-        synchronized (renderTasksLock)
-        {
-            SimpleCallback task;
+        SimpleCallback task;
+
+        while ((task = poll(renderTasks, renderTasksLock)) != null)
+            task.invoke();
+    }
 
-            while ((task = renderTasks.poll()) != null)
-                task.invoke();
+    /**
+     * Takes the next task out of a queue. The lock is only held while taking the task and not while running it, as a
+     * render task posts to the update tasks and the other way round, which would deadlock when the update tasks and the
+     * render tasks run on different threads.
+     */
+    private static SimpleCallback poll(Queue<SimpleCallback> tasks, Object lock)
+    {
+        synchronized (lock)
+        {
+            return tasks.poll();
         }
     }
 
@@ -1,10 +1,72 @@
-uniform sampler2D tex;
+#ifndef MAX_TEXTURES
+#define MAX_TEXTURES 1
+#endif
+
+uniform sampler2D tex[MAX_TEXTURES];
 
 in vec4 vColor;
 in vec2 vTexCoords;
 
+#if MAX_TEXTURES > 1
+in float vTexSlot;
+#endif
+
+vec4 sampleTexture(vec2 texCoords)
+{
+#if MAX_TEXTURES > 1
+    // Samplers can only be indexed with constants, so select the slot with branches
+    int slot = int(vTexSlot + 0.5);
+
+    if (slot == 1) return texture(tex[1], texCoords);
+#if MAX_TEXTURES > 2
+    if (slot == 2) return texture(tex[2], texCoords);
+#endif
+#if MAX_TEXTURES > 3
+    if (slot == 3) return texture(tex[3], texCoords);
+#endif
+#if MAX_TEXTURES > 4
+    if (slot == 4) return texture(tex[4], texCoords);
+#endif
+#if MAX_TEXTURES > 5
+    if (slot == 5) return texture(tex[5], texCoords);
+#endif
+#if MAX_TEXTURES > 6
+    if (slot == 6) return texture(tex[6], texCoords);
+#endif
+#if MAX_TEXTURES > 7
+    if (slot == 7) return texture(tex[7], texCoords);
+#endif
+#if MAX_TEXTURES > 8
+    if (slot == 8) return texture(tex[8], texCoords);
+#endif
+#if MAX_TEXTURES > 9
+    if (slot == 9) return texture(tex[9], texCoords);
+#endif
+#if MAX_TEXTURES > 10
+    if (slot == 10) return texture(tex[10], texCoords);
+#endif
+#if MAX_TEXTURES > 11
+    if (slot == 11) return texture(tex[11], texCoords);
+#endif
+#if MAX_TEXTURES > 12
+    if (slot == 12) return texture(tex[12], texCoords);
+#endif
+#if MAX_TEXTURES > 13
+    if (slot == 13) return texture(tex[13], texCoords);
+#endif
+#if MAX_TEXTURES > 14
+    if (slot == 14) return texture(tex[14], texCoords);
+#endif
+#if MAX_TEXTURES > 15
+    if (slot == 15) return texture(tex[15], texCoords);
+#endif
+#endif
+
+    return texture(tex[0], texCoords);
+}
+
 void main()
 {
-    vec4 texColor = texture(tex, vTexCoords);
+    vec4 texColor = sampleTexture(vTexCoords);
     g_FragColor = vec4(texColor.rgb + vColor.rgb, texColor.a * vColor.a);
 }
\ No newline at end of file
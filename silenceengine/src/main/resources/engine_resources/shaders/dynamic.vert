@@ -1,3 +1,7 @@
+#ifndef MAX_TEXTURES
+#define MAX_TEXTURES 1
+#endif
+
 uniform mat4 proj;
 uniform mat4 view;
 
@@ -8,10 +12,19 @@ in vec2 texCoords;
 out vec4 vColor;
 out vec2 vTexCoords;
 
+#if MAX_TEXTURES > 1
+in float texSlot;
+out float vTexSlot;
+#endif
+
 void main()
 {
     vColor = color;
     vTexCoords = texCoords;
 
+#if MAX_TEXTURES > 1
+    vTexSlot = texSlot;
+#endif
+
     gl_Position = proj * view * position;
 }
\ No newline at end of file
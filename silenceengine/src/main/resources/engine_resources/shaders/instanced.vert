@@ -0,0 +1,22 @@
+uniform mat4 proj;
+uniform mat4 view;
+
+in vec2 corner;
+
+in vec4 transform;
+in vec3 translation;
+in vec4 uvRect;
+in vec4 tint;
+
+out vec4 vColor;
+out vec2 vTexCoords;
+
+void main()
+{
+    vec2 position = mat2(transform.xy, transform.zw) * (corner * 2.0 - 1.0) + translation.xy;
+
+    vColor = tint;
+    vTexCoords = mix(uvRect.xy, uvRect.zw, corner);
+
+    gl_Position = proj * view * vec4(position, translation.z, 1.0);
+}
\ No newline at end of file
@@ -30,6 +30,7 @@ import com.shc.silenceengine.graphics.IGraphicsDevice;
 import com.shc.silenceengine.graphics.cameras.OrthoCam;
 import com.shc.silenceengine.graphics.fonts.BitmapFont;
 import com.shc.silenceengine.graphics.fonts.BitmapFontRenderer;
+import com.shc.silenceengine.graphics.fonts.TextLayout;
 import com.shc.silenceengine.graphics.opengl.GLContext;
 import com.shc.silenceengine.input.Keyboard;
 import com.shc.silenceengine.io.FilePath;
@@ -40,6 +41,7 @@ import com.shc.silenceengine.io.FilePath;
 public class FontRendererTest extends SilenceTest
 {
     private BitmapFont bitmapFont;
+    private TextLayout helloLayout;
     private OrthoCam   camera;
 
     @Override
@@ -48,7 +50,10 @@ public class FontRendererTest extends SilenceTest
         SilenceEngine.display.setTitle("FontRendererTest");
 
         BitmapFont.load(FilePath.getResourceFile("/engine_resources/fonts/roboto32px.fnt"), font ->
-                bitmapFont = font);
+        {
+            bitmapFont = font;
+            helloLayout = new TextLayout(font, "Hello World").setColor(Color.RED);
+        });
 
         camera = new OrthoCam(SilenceEngine.display.getWidth(), SilenceEngine.display.getHeight());
         camera.apply();
@@ -71,7 +76,7 @@ public class FontRendererTest extends SilenceTest
 
         fontRenderer.begin();
         {
-            fontRenderer.render(bitmapFont, "Hello World", 10, 10, Color.RED);
+            fontRenderer.render(helloLayout, 10, 10);
             fontRenderer.render(bitmapFont, "\nFPS: " + SilenceEngine.gameLoop.getFPS(), 10, 10);
             fontRenderer.render(bitmapFont, "\n\nUPS: " + SilenceEngine.gameLoop.getUPS(), 10, 10);
             fontRenderer.render(bitmapFont, "\n\n\nRC: " + IGraphicsDevice.Data.renderCallsThisFrame, 10, 10);
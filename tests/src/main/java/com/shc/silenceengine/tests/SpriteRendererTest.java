@@ -89,6 +89,8 @@ public class SpriteRendererTest extends SilenceTest
         SilenceEngine.display.setTitle("UPS: " + SilenceEngine.gameLoop.getUPS()
                                        + " | FPS: " + SilenceEngine.gameLoop.getFPS()
                                        + " | RC: " + IGraphicsDevice.Data.renderCallsThisFrame
+                                       + " | SC: " + IGraphicsDevice.Data.stateChangesThisFrame
+                                       + " (" + IGraphicsDevice.Data.elidedStateChangesThisFrame + " elided)"
                                        + " | SpriteRendererTest");
     }
 
@@ -33,6 +33,7 @@ import com.shc.silenceengine.graphics.opengl.GLContext;
 import com.shc.silenceengine.graphics.programs.DynamicProgram;
 import com.shc.silenceengine.input.Keyboard;
 import com.shc.silenceengine.io.FilePath;
+import com.shc.silenceengine.math.geom2d.Rectangle;
 import com.shc.silenceengine.scene.tiled.TmxMap;
 import com.shc.silenceengine.scene.tiled.renderers.TmxMapRenderer;
 
@@ -41,8 +42,9 @@ import com.shc.silenceengine.scene.tiled.renderers.TmxMapRenderer;
  */
 public class TmxMapTest extends SilenceTest
 {
-    private OrthoCam camera;
-    private TmxMap   map;
+    private OrthoCam  camera;
+    private TmxMap    map;
+    private Rectangle view = new Rectangle();
 
     private TmxMapRenderer  mapRenderer;
     private DynamicRenderer dynamicRenderer;
@@ -100,7 +102,7 @@ public class TmxMapTest extends SilenceTest
 
         dynamicProgram.use();
         dynamicProgram.applyToRenderer(dynamicRenderer);
-        mapRenderer.render(dynamicRenderer);
+        mapRenderer.render(dynamicRenderer, camera.getVisibleBounds2D(view));
     }
 
     @Override